@@ -18,16 +18,25 @@ package org.jplus.hyb.database.adapter;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.SQLTransactionRollbackException;
 import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.List;
 import org.jplus.hyb.database.bean.FieldColumn;
 import org.jplus.hyb.database.bean.ParmeterPair;
+import org.jplus.hyb.database.bulk.BatchLoader;
+import org.jplus.hyb.database.bulk.BulkLoader;
 import org.jplus.hyb.database.config.ConfigCenter;
+import org.jplus.hyb.database.metrics.MetricsRegistry;
+import org.jplus.hyb.database.sql.Select;
+import org.jplus.hyb.database.sql.SqlBuffer;
 import org.jplus.hyb.database.util.ISqlout;
+import org.jplus.hyb.database.util.Pager;
 import org.jplus.hyb.log.Logger;
 import org.jplus.hyb.log.LoggerManager;
+import org.jplus.util.DateUtils;
 import org.jplus.util.NumberUtils;
 import org.jplus.util.ObjectHelper;
 
@@ -40,26 +49,20 @@ public abstract class AAdapter implements IAdapter {
     protected static final Logger log = LoggerManager.getLogger(AAdapter.class);
     /** 预处理参数 */
     protected List<ParmeterPair> parmeters = new ArrayList(0);
+    /** 批处理的每一行参数 */
+    protected List<List<ParmeterPair>> batches = new ArrayList(0);
     protected String sql;
 
     protected Statement createStatement(Connection conn, String sql) throws SQLException {
         this.sql = sql;
         sqlout();
         Statement stm;
+        MetricsRegistry.INSTANCE.increment(MetricsRegistry.SQL_STATEMENTS);
         if (ConfigCenter.INSTANCE.getConfigurator().prepare()) {
             log.trace("createStatement:prepare");
+            MetricsRegistry.INSTANCE.increment(MetricsRegistry.SQL_PREPARED);
             stm = conn.prepareStatement(sql);
-            int index = 1;
-            if (ObjectHelper.isNotEmpty(parmeters)) {
-                for (ParmeterPair parmeter : parmeters) {
-                    FieldColumn fieldColumn = parmeter.getFieldColumn();
-                    if(fieldColumn!=null&&fieldColumn.getSqltype()!=-1){
-                        ((PreparedStatement) stm).setObject(index++, parmeter.getParmeter(),fieldColumn.getSqltype());
-                    }else{
-                        ((PreparedStatement) stm).setObject(index++, parmeter.getParmeter());
-                    }
-                }
-            }
+            setParameters((PreparedStatement) stm, parmeters);
         } else {
             log.trace("createStatement:not prepareStatement");
             stm = conn.createStatement();
@@ -67,6 +70,219 @@ public abstract class AAdapter implements IAdapter {
         return stm;
     }
 
+    /**
+     * 给预处理语句设置参数.
+     * @param stm 预处理语句
+     * @param parmeters 参数
+     * @throws SQLException
+     */
+    protected void setParameters(PreparedStatement stm, List<ParmeterPair> parmeters) throws SQLException {
+        int index = 1;
+        if (ObjectHelper.isNotEmpty(parmeters)) {
+            for (ParmeterPair parmeter : parmeters) {
+                FieldColumn fieldColumn = parmeter.getFieldColumn();
+                Object value = DateUtils.toSqlValue(parmeter.getParmeter());
+                if(fieldColumn!=null&&fieldColumn.getSqltype()!=-1){
+                    stm.setObject(index++, value,fieldColumn.getSqltype());
+                }else{
+                    stm.setObject(index++, value);
+                }
+            }
+        }
+    }
+
+    /**
+     * 执行更新语句并统计受影响的行数.
+     * @param stm 由createStatement创建的语句
+     * @param sql sql语句
+     * @return 影响的条数
+     * @throws SQLException
+     */
+    protected int executeUpdate(Statement stm, String sql) throws SQLException {
+        int update = stm instanceof PreparedStatement ? ((PreparedStatement) stm).executeUpdate() : stm.executeUpdate(sql);
+        MetricsRegistry.INSTANCE.add(MetricsRegistry.SQL_ROWS_UPDATED, update);
+        return update;
+    }
+
+    @Override
+    public void addBatch() {
+        batches.add(parmeters);
+        parmeters = new ArrayList(parmeters.size());
+    }
+
+    @Override
+    public int[] updateBatch(Connection connection, String sql) throws SQLException {
+        PreparedStatement stm = prepareBatch(connection, sql, null);
+        try {
+            return executeBatch(stm);
+        } finally {
+            stm.close();
+        }
+    }
+
+    @Override
+    public int[] insertBatch(Connection connection, String sql, String keyColumn, List<Object> keys) throws SQLException {
+        PreparedStatement stm = prepareBatch(connection, sql, keyColumn);
+        try {
+            int[] update = executeBatch(stm);
+            readKeys(stm, keys);
+            return update;
+        } finally {
+            stm.close();
+        }
+    }
+
+    private PreparedStatement prepareBatch(Connection connection, String sql, String keyColumn) throws SQLException {
+        this.sql = sql;
+        if (!batches.isEmpty()) {
+            parmeters = batches.get(0);
+            sqlout();
+            parmeters = new ArrayList(0);
+        }
+        MetricsRegistry.INSTANCE.increment(MetricsRegistry.SQL_STATEMENTS);
+        MetricsRegistry.INSTANCE.increment(MetricsRegistry.SQL_PREPARED);
+        return keyColumn == null ? connection.prepareStatement(sql) : prepareInsert(connection, sql, keyColumn);
+    }
+
+    private int[] executeBatch(PreparedStatement stm) throws SQLException {
+        for (List<ParmeterPair> batch : batches) {
+            setParameters(stm, batch);
+            stm.addBatch();
+        }
+        int[] update = stm.executeBatch();
+        MetricsRegistry.INSTANCE.add(MetricsRegistry.SQL_BATCH_ROWS, batches.size());
+        for (int count : update) {
+            if (count > 0) {
+                MetricsRegistry.INSTANCE.add(MetricsRegistry.SQL_ROWS_UPDATED, count);
+            }
+        }
+        batches.clear();
+        return update;
+    }
+
+    @Override
+    public int upsert(Connection connection, String table, List<String> columns, List<String> keys) throws SQLException {
+        return update(connection, getUpsert(table, columns, keys));
+    }
+
+    @Override
+    public int[] upsertBatch(Connection connection, String table, List<String> columns, List<String> keys) throws SQLException {
+        return updateBatch(connection, getUpsert(table, columns, keys));
+    }
+
+    @Override
+    public int insert(Connection connection, String sql, String keyColumn, List<Object> keys) throws SQLException {
+        this.sql = sql;
+        sqlout();
+        MetricsRegistry.INSTANCE.increment(MetricsRegistry.SQL_STATEMENTS);
+        MetricsRegistry.INSTANCE.increment(MetricsRegistry.SQL_PREPARED);
+        PreparedStatement stm = prepareInsert(connection, sql, keyColumn);
+        try {
+            setParameters(stm, parmeters);
+            int update = executeUpdate(stm, sql);
+            readKeys(stm, keys);
+            return update;
+        } finally {
+            stm.close();
+        }
+    }
+
+    /**
+     * 创建返回自动生成主键的插入语句.
+     * @param connection 数据库连接
+     * @param sql sql语句
+     * @param keyColumn 自动生成的主键字段名
+     * @return
+     * @throws SQLException
+     */
+    protected PreparedStatement prepareInsert(Connection connection, String sql, String keyColumn) throws SQLException {
+        return connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+    }
+
+    private void readKeys(Statement stm, List<Object> keys) throws SQLException {
+        ResultSet rs = stm.getGeneratedKeys();
+        if (rs == null) {
+            return;
+        }
+        try {
+            while (rs.next()) {
+                keys.add(rs.getObject(1));
+            }
+        } finally {
+            rs.close();
+        }
+    }
+
+    @Override
+    public String getSequenceNextValue(String sequence) {
+        return "next value for " + sequence;
+    }
+
+    @Override
+    public String getSequenceQuery(String sequence) {
+        return "select " + getSequenceNextValue(sequence) + getMergeFrom();
+    }
+
+    /**
+     * 生成标准的merge语句.数据源子查询的from部分由getMergeFrom提供.
+     * @param table 表名
+     * @param columns 所有字段名
+     * @param keys 判断记录是否存在的字段名
+     * @return
+     */
+    @Override
+    public String getUpsert(String table, List<String> columns, List<String> keys) {
+        StringBuilder sb = new StringBuilder("merge into ").append(table).append(" t using (select ");
+        for (int i = 0; i < columns.size(); i++) {
+            sb.append(i == 0 ? "" : ",").append("? ").append(quote(columns.get(i)));
+        }
+        sb.append(getMergeFrom()).append(") s on (");
+        for (int i = 0; i < keys.size(); i++) {
+            String key = quote(keys.get(i));
+            sb.append(i == 0 ? "" : " and ").append("t.").append(key).append("=s.").append(key);
+        }
+        sb.append(")");
+        boolean first = true;
+        for (String column : columns) {
+            if (!keys.contains(column)) {
+                sb.append(first ? " when matched then update set " : ",");
+                sb.append("t.").append(quote(column)).append("=s.").append(quote(column));
+                first = false;
+            }
+        }
+        StringBuilder values = new StringBuilder();
+        sb.append(" when not matched then insert (");
+        for (int i = 0; i < columns.size(); i++) {
+            sb.append(i == 0 ? "" : ",").append(quote(columns.get(i)));
+            values.append(i == 0 ? "" : ",").append("s.").append(quote(columns.get(i)));
+        }
+        sb.append(") values (").append(values).append(")");
+        return sb.toString();
+    }
+
+    /**
+     * merge语句数据源子查询的from部分,如oracle的" from dual".
+     * @return
+     */
+    protected String getMergeFrom() {
+        return "";
+    }
+
+    @Override
+    public BulkLoader getBulkLoader() {
+        return new BatchLoader(getQuote());
+    }
+
+    /**
+     * 用关键字括号括起字段名.
+     * @param column 字段名
+     * @return
+     */
+    protected String quote(String column) {
+        char[] quote = getQuote();
+        return quote[0] + column + quote[1];
+    }
+
     @Override
     public void addParameter(Object o) {
         log.trace("addParameter {}", o);
@@ -95,11 +311,75 @@ public abstract class AAdapter implements IAdapter {
      */
     @Override
     public int getCount(Connection connection, String sql) throws SQLException {
-        sql = "select count(*) from (" + sql + ") as count";
-        Object findUnique =findUnique(connection, sql);
+        return getCount(connection, Select.parse(sql));
+    }
+
+    @Override
+    public int getCount(Connection connection, Select select) throws SQLException {
+        Object findUnique = findUnique(connection, select.toCount().toSql(this));
         return NumberUtils.parseInt(findUnique);
     }
 
+    @Override
+    public ResultSet findPageList(Connection connection, String sql, Pager pager) throws SQLException {
+        return findPageList(connection, Select.parse(sql), pager);
+    }
+
+    @Override
+    public ResultSet findPageList(Connection connection, Select select, Pager pager) throws SQLException {
+        return findList(connection, select.copy().limit(pager.getTop(), pager.getSize()).toSql(this));
+    }
+
+    /**
+     * 标准SQL的分页,offset ... rows fetch next ... rows only.
+     * @param select 有limit的查询
+     * @param sql 输出
+     */
+    @Override
+    public void renderPage(Select select, SqlBuffer sql) {
+        select.renderBody(this, sql);
+        sql.append(" offset ").append(select.getOffset()).append(" rows fetch next ").append(select.getLimit()).append(" rows only");
+    }
+
+    /**
+     * 判断异常是否是可以重试的事务冲突.
+     * 依次检查异常链,SQLState为40001(串行化失败)、40P01(死锁)或者驱动抛出事务回滚异常时可以重试,
+     * 其它情况由各数据库的错误码判断.
+     * @param ex 执行时抛出的异常
+     * @return
+     */
+    @Override
+    public boolean isRetryable(SQLException ex) {
+        for (Throwable t = ex; t != null; t = next(t)) {
+            if (t instanceof SQLTransactionRollbackException) {
+                return true;
+            }
+            if (t instanceof SQLException) {
+                SQLException e = (SQLException) t;
+                if ("40001".equals(e.getSQLState()) || "40P01".equals(e.getSQLState()) || isRetryableCode(e.getErrorCode())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static Throwable next(Throwable t) {
+        if (t instanceof SQLException && ((SQLException) t).getNextException() != null) {
+            return ((SQLException) t).getNextException();
+        }
+        return t.getCause() == t ? null : t.getCause();
+    }
+
+    /**
+     * 数据库错误码是否表示可以重试的事务冲突.
+     * @param errorCode 错误码
+     * @return
+     */
+    protected boolean isRetryableCode(int errorCode) {
+        return false;
+    }
+
     @Override
     public void sqlout() {
         if (ConfigCenter.INSTANCE.getConfigurator().sqlOut()) {
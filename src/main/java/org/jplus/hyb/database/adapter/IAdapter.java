@@ -21,13 +21,16 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.List;
 import org.jplus.hyb.database.bean.FieldColumn;
+import org.jplus.hyb.database.bulk.BulkLoader;
+import org.jplus.hyb.database.sql.Select;
+import org.jplus.hyb.database.sql.SqlDialect;
 import org.jplus.hyb.database.util.Pager;
 
 /**
  * 各种数据查询的适配器接口
  * @author Hyberbin
  */
-public interface IAdapter {
+public interface IAdapter extends SqlDialect {
 
     /**
      * 添加预处理参数
@@ -67,6 +70,16 @@ public interface IAdapter {
      */
     public ResultSet findPageList(Connection connection,String sql,Pager pager) throws SQLException;
 
+    /**
+     * 分页查询,分页条件按本数据库的方言加在语句上
+     * @param connection 数据库连接
+     * @param select 查询语句
+     * @param pager 分页对象
+     * @return 查到的结果
+     * @throws java.sql.SQLException
+     */
+    public ResultSet findPageList(Connection connection,Select select,Pager pager) throws SQLException;
+
     /**
      * 单例查询
      * @param connection 数据库连接
@@ -94,6 +107,15 @@ public interface IAdapter {
      */
     public int getCount(Connection connection,String sql) throws SQLException;
 
+    /**
+     * 查询总数,简单查询直接改写为count(*)而不包子查询
+     * @param connection 数据库连接
+     * @param select 查询语句
+     * @return 查到的结果
+     * @throws java.sql.SQLException
+     */
+    public int getCount(Connection connection,Select select) throws SQLException;
+
     /**
      * 更新操作
      * @param connection 数据库连接
@@ -104,14 +126,104 @@ public interface IAdapter {
     public int update(Connection connection,String sql) throws SQLException;
 
     /**
-     * 获取用于区分系统关键字的括号字符
+     * 插入操作,并取回数据库生成的主键.
+     * @param connection 数据库连接
+     * @param sql sql语句
+     * @param keyColumn 自动生成的主键字段名
+     * @param keys 存放生成的主键值
+     * @return 影响的条数
+     * @throws SQLException
+     */
+    public int insert(Connection connection,String sql,String keyColumn,List<Object> keys) throws SQLException;
+
+    /**
+     * 批量插入,并取回数据库生成的主键.执行成功后清空批处理.
+     * 有的驱动批处理只返回最后一行的主键,此时keys的个数少于行数.
+     * @param connection 数据库连接
+     * @param sql sql语句
+     * @param keyColumn 自动生成的主键字段名
+     * @param keys 存放生成的主键值
+     * @return 每一行影响的条数
+     * @throws SQLException
+     */
+    public int[] insertBatch(Connection connection,String sql,String keyColumn,List<Object> keys) throws SQLException;
+
+    /**
+     * 获取序列下一个值的表达式,用于插入语句中.
+     * @param sequence 序列名
+     * @return
+     */
+    public String getSequenceNextValue(String sequence);
+
+    /**
+     * 获取查询序列下一个值的语句.
+     * @param sequence 序列名
+     * @return
+     */
+    public String getSequenceQuery(String sequence);
+
+    /**
+     * 把当前的预处理参数作为一行加入批处理,之后的参数属于下一行.
+     */
+    public void addBatch();
+
+    /**
+     * 批量执行更新操作,每一行参数执行一次.执行成功后清空批处理.
+     * @param connection 数据库连接
+     * @param sql sql语句
+     * @return 每一行影响的条数
+     * @throws SQLException
+     */
+    public int[] updateBatch(Connection connection,String sql) throws SQLException;
+
+    /**
+     * 生成插入或更新(upsert)语句,按主键存在与否插入或更新一行.
+     * 每个字段对应一个预处理参数,顺序与columns相同.
+     * @param table 表名
+     * @param columns 所有字段名
+     * @param keys 判断记录是否存在的字段名,需要有唯一约束
      * @return
      */
-    public char[] getQuote();
+    public String getUpsert(String table, List<String> columns, List<String> keys);
+
+    /**
+     * 插入或更新一行.当前的预处理参数与columns一一对应.
+     * @param connection 数据库连接
+     * @param table 表名
+     * @param columns 所有字段名
+     * @param keys 判断记录是否存在的字段名,需要有唯一约束
+     * @return 影响的条数
+     * @throws SQLException
+     */
+    public int upsert(Connection connection, String table, List<String> columns, List<String> keys) throws SQLException;
+
+    /**
+     * 批量插入或更新.批处理的每一行参数与columns一一对应,执行成功后清空批处理.
+     * @param connection 数据库连接
+     * @param table 表名
+     * @param columns 所有字段名
+     * @param keys 判断记录是否存在的字段名,需要有唯一约束
+     * @return 每一行影响的条数
+     * @throws SQLException
+     */
+    public int[] upsertBatch(Connection connection, String table, List<String> columns, List<String> keys) throws SQLException;
+
+    /**
+     * 获取本数据库的大批量导入器.
+     * @return
+     */
+    public BulkLoader getBulkLoader();
 
     /**
      * 输出SQL语句
      */
     public void sqlout();
 
+    /**
+     * 判断异常是否是可以重试的事务冲突,如死锁或串行化失败.
+     * @param ex 执行时抛出的异常
+     * @return
+     */
+    public boolean isRetryable(SQLException ex);
+
 }
@@ -21,7 +21,11 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
-import org.jplus.hyb.database.util.Pager;
+import java.util.List;
+import org.jplus.hyb.database.bulk.BulkLoader;
+import org.jplus.hyb.database.bulk.MysqlLoader;
+import org.jplus.hyb.database.sql.Select;
+import org.jplus.hyb.database.sql.SqlBuffer;
 
 /**
  * Mysql适配器
@@ -44,8 +48,9 @@ public class MysqlAdapter extends AAdapter {
     }
 
     @Override
-    public ResultSet findPageList(Connection connection,String sql,Pager pager) throws SQLException {
-        return findList(connection, sql+" limit "+pager.getTop()+","+pager.getSize());
+    public void renderPage(Select select, SqlBuffer sql) {
+        select.renderBody(this, sql);
+        sql.append(" limit ").append(select.getOffset()).append(',').append(select.getLimit());
     }
 
     @Override
@@ -62,11 +67,7 @@ public class MysqlAdapter extends AAdapter {
     @Override
     public int update(Connection connection,String sql) throws SQLException {
         Statement stm = createStatement(connection, sql);
-        if (stm instanceof PreparedStatement) {
-            return ((PreparedStatement) stm).executeUpdate();
-        } else {
-            return stm.executeUpdate(sql);
-        }
+        return executeUpdate(stm, sql);
     }
 
     @Override
@@ -74,4 +75,60 @@ public class MysqlAdapter extends AAdapter {
         return QUOTE;
     }
 
+    /**
+     * 1213死锁,1205锁等待超时.
+     * @param errorCode 错误码
+     * @return
+     */
+    @Override
+    protected boolean isRetryableCode(int errorCode) {
+        return errorCode == 1213 || errorCode == 1205;
+    }
+
+    /**
+     * insert ... on duplicate key update.
+     * @param table 表名
+     * @param columns 所有字段名
+     * @param keys 判断记录是否存在的字段名
+     * @return
+     */
+    @Override
+    public String getUpsert(String table, List<String> columns, List<String> keys) {
+        StringBuilder sb = new StringBuilder(getInsert(table, columns)).append(" on duplicate key update ");
+        boolean first = true;
+        for (String column : columns) {
+            if (!keys.contains(column)) {
+                sb.append(first ? "" : ",").append(quote(column)).append("=values(").append(quote(column)).append(")");
+                first = false;
+            }
+        }
+        if (first) {//只有主键字段
+            sb.append(quote(keys.get(0))).append("=").append(quote(keys.get(0)));
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public BulkLoader getBulkLoader() {
+        return new MysqlLoader(getQuote());
+    }
+
+    /**
+     * 生成所有字段都是预处理参数的插入语句.
+     * @param table 表名
+     * @param columns 所有字段名
+     * @return
+     */
+    protected String getInsert(String table, List<String> columns) {
+        StringBuilder sb = new StringBuilder("insert into ").append(table).append("(");
+        for (int i = 0; i < columns.size(); i++) {
+            sb.append(i == 0 ? "" : ",").append(quote(columns.get(i)));
+        }
+        sb.append(") values(");
+        for (int i = 0; i < columns.size(); i++) {
+            sb.append(i == 0 ? "?" : ",?");
+        }
+        return sb.append(")").toString();
+    }
+
 }
@@ -21,8 +21,10 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
-import org.jplus.hyb.database.util.Pager;
-import org.jplus.util.NumberUtils;
+import org.jplus.hyb.database.bulk.BulkLoader;
+import org.jplus.hyb.database.bulk.OracleLoader;
+import org.jplus.hyb.database.sql.Select;
+import org.jplus.hyb.database.sql.SqlBuffer;
 
 /**
  * Oracle适配器
@@ -47,9 +49,10 @@ public class OracleAdapter extends AAdapter {
     }
 
     @Override
-    public ResultSet findPageList(Connection connection, String sql, Pager pager) throws SQLException {
-        sql = "select * from ( select row_.*, rownum rownum_ from ( "+sql+") row_ where rownum <= "+(pager.getTop()+pager.getSize())+") where rownum_ > "+pager.getTop();
-        return findList(connection, sql);
+    public void renderPage(Select select, SqlBuffer sql) {
+        sql.append("select * from ( select row_.*, rownum rownum_ from ( ");
+        select.renderBody(this, sql);
+        sql.append(") row_ where rownum <= ").append(select.getOffset() + select.getLimit()).append(") where rownum_ > ").append(select.getOffset());
     }
 
     @Override
@@ -66,25 +69,41 @@ public class OracleAdapter extends AAdapter {
     @Override
     public int update(Connection connection, String sql) throws SQLException {
         Statement statement = createStatement(connection, sql);
-        if (statement instanceof PreparedStatement) {
-            return ((PreparedStatement) statement).executeUpdate();
-        } else {
-            return statement.executeUpdate(sql);
-        }
+        return executeUpdate(statement, sql);
     }
 
     /**
-     * 查询总数
-     *
-     * @param connection 数据库连接
-     * @param sql        sql语句
-     * @return 查到的结果
-     * @throws SQLException
+     * ORA-08177串行化失败,ORA-00060死锁.
+     * @param errorCode 错误码
+     * @return
      */
     @Override
-    public int getCount(Connection connection, String sql) throws SQLException {
-        sql = "select count(*) from (" + sql + ")";
-        Object findUnique =findUnique(connection, sql);
-        return NumberUtils.parseInt(findUnique);
+    protected boolean isRetryableCode(int errorCode) {
+        return errorCode == 8177 || errorCode == 60;
+    }
+
+    /**
+     * oracle不支持RETURN_GENERATED_KEYS取回主键,只能按字段名取回,
+     * 驱动会在语句后加上returning ... into.
+     */
+    @Override
+    protected PreparedStatement prepareInsert(Connection connection, String sql, String keyColumn) throws SQLException {
+        return connection.prepareStatement(sql, new String[]{keyColumn});
+    }
+
+    @Override
+    public String getSequenceNextValue(String sequence) {
+        return sequence + ".nextval";
+    }
+
+    @Override
+    public BulkLoader getBulkLoader() {
+        return new OracleLoader(getQuote());
     }
+
+    @Override
+    protected String getMergeFrom() {
+        return " from dual";
+    }
+
 }
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2015 www.hyberbin.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * Email:hyberbin@qq.com
+ */
+package org.jplus.hyb.database.adapter;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import org.jplus.hyb.database.bean.ParmeterPair;
+import org.jplus.hyb.database.bulk.BulkLoader;
+import org.jplus.hyb.database.bulk.SqliteLoader;
+
+/**
+ * Sqlite适配器.
+ * 分页和引号与mysql相同.
+ * @author hyberbin
+ */
+public class SqliteAdapter extends MysqlAdapter {
+
+    /**
+     * insert or replace,记录存在时先删除再插入,未列出的字段恢复默认值并触发删除的级联.
+     * 这不是真正的upsert,upsert和upsertBatch不使用本语句.
+     * 需要keys上有唯一约束.
+     * @param table 表名
+     * @param columns 所有字段名
+     * @param keys 判断记录是否存在的字段名
+     * @return
+     */
+    @Override
+    public String getUpsert(String table, List<String> columns, List<String> keys) {
+        return "insert or replace" + getInsert(table, columns).substring("insert".length());
+    }
+
+    /**
+     * 先按keys更新,没有更新到记录时再插入.未列出的字段保持原值.
+     * sqlite 3.24之前不支持on conflict do update,所以分两条语句执行.
+     * @param connection 数据库连接
+     * @param table 表名
+     * @param columns 所有字段名
+     * @param keys 判断记录是否存在的字段名
+     * @return 影响的条数
+     * @throws SQLException
+     */
+    @Override
+    public int upsert(Connection connection, String table, List<String> columns, List<String> keys) throws SQLException {
+        List<ParmeterPair> row = parmeters;
+        parmeters = toUpdateParameters(row, columns, keys);
+        int update = update(connection, getUpdate(table, columns, keys));
+        if (update == 0) {
+            parmeters = row;
+            update = update(connection, getInsert(table, columns));
+        }
+        return update;
+    }
+
+    /**
+     * 先批量更新,再批量插入没有更新到记录的行.
+     * @param connection 数据库连接
+     * @param table 表名
+     * @param columns 所有字段名
+     * @param keys 判断记录是否存在的字段名
+     * @return 每一行影响的条数
+     * @throws SQLException
+     */
+    @Override
+    public int[] upsertBatch(Connection connection, String table, List<String> columns, List<String> keys) throws SQLException {
+        List<List<ParmeterPair>> rows = batches;
+        batches = new ArrayList(rows.size());
+        for (List<ParmeterPair> row : rows) {
+            batches.add(toUpdateParameters(row, columns, keys));
+        }
+        int[] update = updateBatch(connection, getUpdate(table, columns, keys));
+        List<Integer> missing = new ArrayList<Integer>();
+        for (int i = 0; i < update.length; i++) {
+            if (update[i] == 0) {
+                missing.add(i);
+                batches.add(rows.get(i));
+            }
+        }
+        if (!missing.isEmpty()) {
+            int[] inserted = updateBatch(connection, getInsert(table, columns));
+            for (int i = 0; i < inserted.length; i++) {
+                update[missing.get(i)] = inserted[i];
+            }
+        }
+        return update;
+    }
+
+    /**
+     * 按keys更新其它字段的语句,参数顺序为其它字段在前,keys在后.
+     * @param table 表名
+     * @param columns 所有字段名
+     * @param keys 判断记录是否存在的字段名
+     * @return
+     */
+    private String getUpdate(String table, List<String> columns, List<String> keys) {
+        StringBuilder sb = new StringBuilder("update ").append(table).append(" set ");
+        boolean first = true;
+        for (String column : columns) {
+            if (!keys.contains(column)) {
+                sb.append(first ? "" : ",").append(quote(column)).append("=?");
+                first = false;
+            }
+        }
+        if (first) {//只有主键字段
+            sb.append(quote(keys.get(0))).append("=").append(quote(keys.get(0)));
+        }
+        for (int i = 0; i < keys.size(); i++) {
+            sb.append(i == 0 ? " where " : " and ").append(quote(keys.get(i))).append("=?");
+        }
+        return sb.toString();
+    }
+
+    private static List<ParmeterPair> toUpdateParameters(List<ParmeterPair> row, List<String> columns, List<String> keys) {
+        List<ParmeterPair> ordered = new ArrayList<ParmeterPair>(row.size());
+        for (int i = 0; i < columns.size(); i++) {
+            if (!keys.contains(columns.get(i))) {
+                ordered.add(row.get(i));
+            }
+        }
+        for (String key : keys) {
+            ordered.add(row.get(columns.indexOf(key)));
+        }
+        return ordered;
+    }
+
+    /**
+     * 5(SQLITE_BUSY)和6(SQLITE_LOCKED)为锁冲突.
+     * @param errorCode 错误码
+     * @return
+     */
+    @Override
+    protected boolean isRetryableCode(int errorCode) {
+        return errorCode == 5 || errorCode == 6;
+    }
+
+    @Override
+    public BulkLoader getBulkLoader() {
+        return new SqliteLoader(getQuote());
+    }
+}
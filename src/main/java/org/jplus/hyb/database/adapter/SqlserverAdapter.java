@@ -21,6 +21,9 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.List;
+import org.jplus.hyb.database.sql.Select;
+import org.jplus.hyb.database.sql.SqlBuffer;
 import org.jplus.hyb.database.util.Pager;
 
 /**
@@ -41,15 +44,37 @@ public class SqlserverAdapter extends AAdapter {
         }
     }
 
+    /**
+     * 兼容以前用冒号分开查询和order by的写法.
+     */
     @Override
     public ResultSet findPageList(Connection connection, String sql, Pager pager) throws SQLException {
-        String[] sqlAndOrder = sql.split(":");
-        if (sql.contains("order") && sqlAndOrder.length == 1) {
-            log.error("sqlserver: The two statement of select and order must be written separately, separated by a colon ");
+        int colon = sql.lastIndexOf(':');
+        if (colon > 0 && sql.substring(colon + 1).trim().toLowerCase().startsWith("order")) {
+            sql = sql.substring(0, colon) + " " + sql.substring(colon + 1);
         }
-        String order = sqlAndOrder.length == 1 ? " order by id " : sqlAndOrder[1];
-        sql = "select * from (select res.*,row_number() over (" + order + ") rn from (" + sqlAndOrder[0] + ") res ) _temp where _temp.rn>" + pager.getTop() + " and _temp.rn<=" + (pager.getTop() + pager.getSize());
-        return findList(connection, sql);
+        return super.findPageList(connection, sql, pager);
+    }
+
+    /**
+     * 用row_number()分页,sqlserver2005及以上都支持.
+     * 排序在外层对查询结果进行,所以order by中的字段不能带表的别名;
+     * 没有排序时按主键排序,没有设置主键时按id排序.
+     * @param select 有limit的查询
+     * @param sql 输出
+     */
+    @Override
+    public void renderPage(Select select, SqlBuffer sql) {
+        sql.append("select * from (select res.*,row_number() over (");
+        if (select.hasOrder()) {
+            select.renderOrder(this, sql);
+        } else {
+            sql.append("order by ").appendQuoted(select.getKey() == null ? "id" : select.getKey(), QUOTE);
+        }
+        sql.append(") rn_ from (");
+        select.renderQuery(this, sql);
+        sql.append(") res) page_ where page_.rn_>").append(select.getOffset())
+                .append(" and page_.rn_<=").append(select.getOffset() + select.getLimit()).append(" order by page_.rn_");
     }
 
     @Override
@@ -66,11 +91,7 @@ public class SqlserverAdapter extends AAdapter {
     @Override
     public int update(Connection connection, String sql) throws SQLException {
         Statement statement = createStatement(connection, sql);
-        if (statement instanceof PreparedStatement) {
-            return ((PreparedStatement) statement).executeUpdate();
-        } else {
-            return statement.executeUpdate(sql);
-        }
+        return executeUpdate(statement, sql);
     }
 
     @Override
@@ -78,4 +99,26 @@ public class SqlserverAdapter extends AAdapter {
         return QUOTE;
     }
 
+    /**
+     * 1205死锁牺牲品.
+     * @param errorCode 错误码
+     * @return
+     */
+    @Override
+    protected boolean isRetryableCode(int errorCode) {
+        return errorCode == 1205;
+    }
+
+    /**
+     * sqlserver的merge语句必须以分号结束.
+     * @param table 表名
+     * @param columns 所有字段名
+     * @param keys 判断记录是否存在的字段名
+     * @return
+     */
+    @Override
+    public String getUpsert(String table, List<String> columns, List<String> keys) {
+        return super.getUpsert(table, columns, keys) + ";";
+    }
+
 }
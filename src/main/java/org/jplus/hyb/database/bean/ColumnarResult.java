@@ -0,0 +1,473 @@
+/*
+ * Copyright 2015 www.hyberbin.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * Email:hyberbin@qq.com
+ */
+package org.jplus.hyb.database.bean;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.Set;
+import org.jplus.util.CaseInsensitiveMap;
+import org.jplus.util.ConverterRegistry;
+
+/**
+ * 按列存放的查询结果.
+ * 所有行共用一份列名索引,每一列按数据库类型存成int[]、long[]、double[]或String[],
+ * 空值记录在每列的位图里,数字只在取值时才装箱.
+ * 作为List使用时每一行是一个只读的Map视图,列名不区分大小写,视图本身不保存数据.
+ * @author hyberbin
+ */
+public class ColumnarResult extends AbstractList<Map<String, Object>> implements RandomAccess {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final String[] names;
+    /** 列名到列序号的索引 */
+    private final CaseInsensitiveMap<Integer> index;
+    private final Column[] columns;
+    private int rows;
+
+    private ColumnarResult(String[] names, Column[] columns) {
+        this.names = names;
+        this.columns = columns;
+        this.index = new CaseInsensitiveMap<Integer>(names.length);
+        for (int i = names.length - 1; i >= 0; i--) {
+            index.put(names[i], i);
+        }
+    }
+
+    /**
+     * 读取结果集的所有行.
+     * @param rs 结果集,为null时返回空结果
+     * @return ColumnarResult
+     * @throws SQLException
+     */
+    public static ColumnarResult read(ResultSet rs) throws SQLException {
+        if (rs == null) {
+            return new ColumnarResult(new String[0], new Column[0]);
+        }
+        ResultSetMetaData metaData = rs.getMetaData();
+        int count = metaData.getColumnCount();
+        String[] names = new String[count];
+        Column[] columns = new Column[count];
+        for (int i = 0; i < count; i++) {
+            names[i] = metaData.getColumnName(i + 1);
+            columns[i] = newColumn(metaData.getColumnType(i + 1));
+        }
+        ColumnarResult result = new ColumnarResult(names, columns);
+        int row = 0;
+        while (rs.next()) {
+            for (int i = 0; i < count; i++) {
+                columns[i] = columns[i].read(rs, i + 1, row);
+            }
+            row++;
+        }
+        result.rows = row;
+        return result;
+    }
+
+    private static Column newColumn(int type) {
+        switch (type) {
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+                return new IntColumn();
+            case Types.BIGINT:
+                return new LongColumn();
+            case Types.FLOAT:
+            case Types.REAL:
+            case Types.DOUBLE:
+                return new DoubleColumn();
+            case Types.CHAR:
+            case Types.VARCHAR:
+            case Types.LONGVARCHAR:
+            case Types.NCHAR:
+            case Types.NVARCHAR:
+            case Types.LONGNVARCHAR:
+                return new StringColumn();
+            default:
+                return new ObjectColumn();
+        }
+    }
+
+    public int getColumnCount() {
+        return names.length;
+    }
+
+    public String getColumnName(int column) {
+        return names[column];
+    }
+
+    /**
+     * 获取列序号,列名不区分大小写.
+     * @param name 列名
+     * @return 不存在时返回-1
+     */
+    public int getColumnIndex(Object name) {
+        Integer column = index.get(name);
+        return column == null ? -1 : column;
+    }
+
+    public boolean isNull(int row, int column) {
+        return columns[column].isNull(row);
+    }
+
+    public int getInt(int row, int column) {
+        return (int) columns[column].getLong(row);
+    }
+
+    public long getLong(int row, int column) {
+        return columns[column].getLong(row);
+    }
+
+    public double getDouble(int row, int column) {
+        return columns[column].getDouble(row);
+    }
+
+    public String getString(int row, int column) {
+        return columns[column].getString(row);
+    }
+
+    /**
+     * 获取单元格的值,数字在这里才装箱.
+     * @param row 行号
+     * @param column 列序号
+     * @return 值
+     */
+    public Object getObject(int row, int column) {
+        return columns[column].get(row);
+    }
+
+    public Object getObject(int row, String column) {
+        int i = getColumnIndex(column);
+        return i < 0 ? null : columns[i].get(row);
+    }
+
+    /**
+     * 获取一行的Map视图.
+     * @param row 行号
+     * @return 只读的Map
+     */
+    @Override
+    public Map<String, Object> get(int row) {
+        if (row < 0 || row >= rows) {
+            throw new IndexOutOfBoundsException("row:" + row + ",size:" + rows);
+        }
+        return new RowView(row);
+    }
+
+    @Override
+    public int size() {
+        return rows;
+    }
+
+    /**
+     * 一行数据的Map视图,只保存行号.
+     */
+    private final class RowView extends AbstractMap<String, Object> {
+
+        private final int row;
+
+        RowView(int row) {
+            this.row = row;
+        }
+
+        @Override
+        public Object get(Object key) {
+            int column = getColumnIndex(key);
+            return column < 0 ? null : columns[column].get(row);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return getColumnIndex(key) >= 0;
+        }
+
+        @Override
+        public int size() {
+            return names.length;
+        }
+
+        @Override
+        public Set<Entry<String, Object>> entrySet() {
+            return new AbstractSet<Entry<String, Object>>() {
+                @Override
+                public Iterator<Entry<String, Object>> iterator() {
+                    return new Iterator<Entry<String, Object>>() {
+                        private int column;
+
+                        @Override
+                        public boolean hasNext() {
+                            return column < names.length;
+                        }
+
+                        @Override
+                        public Entry<String, Object> next() {
+                            if (column >= names.length) {
+                                throw new NoSuchElementException();
+                            }
+                            int i = column++;
+                            return new SimpleImmutableEntry<String, Object>(names[i], columns[i].get(row));
+                        }
+
+                        @Override
+                        public void remove() {
+                            throw new UnsupportedOperationException();
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return names.length;
+                }
+            };
+        }
+    }
+
+    /**
+     * 一列数据,空值记在位图里.
+     */
+    private abstract static class Column {
+
+        private long[] nulls = new long[0];
+
+        /**
+         * 读取当前行的这一列.
+         * @return 存放数据的列,整数超出int范围时会换成long列
+         */
+        abstract Column read(ResultSet rs, int index, int row) throws SQLException;
+
+        abstract Object get(int row);
+
+        boolean isNull(int row) {
+            int word = row >>> 6;
+            return word < nulls.length && (nulls[word] & (1L << row)) != 0;
+        }
+
+        void setNull(int row) {
+            int word = row >>> 6;
+            if (word >= nulls.length) {
+                nulls = Arrays.copyOf(nulls, Math.max(word + 1, nulls.length * 2));
+            }
+            nulls[word] |= 1L << row;
+        }
+
+        long getLong(int row) {
+            return (Long) ConverterRegistry.INSTANCE.convert(get(row), Long.TYPE);
+        }
+
+        double getDouble(int row) {
+            return (Double) ConverterRegistry.INSTANCE.convert(get(row), Double.TYPE);
+        }
+
+        String getString(int row) {
+            Object value = get(row);
+            return value == null ? null : value.toString();
+        }
+
+        static int grow(int length, int row) {
+            return row < length ? length : Math.max(INITIAL_CAPACITY, Math.max(row + 1, length + (length >> 1)));
+        }
+    }
+
+    private static final class IntColumn extends Column {
+
+        private int[] values = new int[0];
+
+        @Override
+        Column read(ResultSet rs, int index, int row) throws SQLException {
+            long value = rs.getLong(index);
+            if (value != (int) value) {
+                LongColumn wide = new LongColumn(this, row);
+                return wide.read(rs, value, row);
+            }
+            if (row >= values.length) {
+                values = Arrays.copyOf(values, grow(values.length, row));
+            }
+            values[row] = (int) value;
+            if (rs.wasNull()) {
+                setNull(row);
+            }
+            return this;
+        }
+
+        @Override
+        Object get(int row) {
+            return isNull(row) ? null : Integer.valueOf(values[row]);
+        }
+
+        @Override
+        long getLong(int row) {
+            return values[row];
+        }
+
+        @Override
+        double getDouble(int row) {
+            return values[row];
+        }
+    }
+
+    private static final class LongColumn extends Column {
+
+        private long[] values;
+
+        LongColumn() {
+            values = new long[0];
+        }
+
+        /**
+         * 从int列换成long列,复制已经读取的行.
+         */
+        LongColumn(IntColumn column, int rows) {
+            values = new long[grow(0, rows)];
+            for (int i = 0; i < rows; i++) {
+                values[i] = column.values[i];
+                if (column.isNull(i)) {
+                    setNull(i);
+                }
+            }
+        }
+
+        @Override
+        Column read(ResultSet rs, int index, int row) throws SQLException {
+            long value = rs.getLong(index);
+            read(rs, value, row);
+            return this;
+        }
+
+        Column read(ResultSet rs, long value, int row) throws SQLException {
+            if (row >= values.length) {
+                values = Arrays.copyOf(values, grow(values.length, row));
+            }
+            values[row] = value;
+            if (rs.wasNull()) {
+                setNull(row);
+            }
+            return this;
+        }
+
+        @Override
+        Object get(int row) {
+            return isNull(row) ? null : Long.valueOf(values[row]);
+        }
+
+        @Override
+        long getLong(int row) {
+            return values[row];
+        }
+
+        @Override
+        double getDouble(int row) {
+            return values[row];
+        }
+    }
+
+    private static final class DoubleColumn extends Column {
+
+        private double[] values = new double[0];
+
+        @Override
+        Column read(ResultSet rs, int index, int row) throws SQLException {
+            double value = rs.getDouble(index);
+            if (row >= values.length) {
+                values = Arrays.copyOf(values, grow(values.length, row));
+            }
+            values[row] = value;
+            if (rs.wasNull()) {
+                setNull(row);
+            }
+            return this;
+        }
+
+        @Override
+        Object get(int row) {
+            return isNull(row) ? null : Double.valueOf(values[row]);
+        }
+
+        @Override
+        long getLong(int row) {
+            return (long) values[row];
+        }
+
+        @Override
+        double getDouble(int row) {
+            return values[row];
+        }
+    }
+
+    private static final class StringColumn extends Column {
+
+        private String[] values = new String[0];
+
+        @Override
+        Column read(ResultSet rs, int index, int row) throws SQLException {
+            if (row >= values.length) {
+                values = Arrays.copyOf(values, grow(values.length, row));
+            }
+            values[row] = rs.getString(index);
+            return this;
+        }
+
+        @Override
+        boolean isNull(int row) {
+            return values[row] == null;
+        }
+
+        @Override
+        Object get(int row) {
+            return values[row];
+        }
+
+        @Override
+        String getString(int row) {
+            return values[row];
+        }
+    }
+
+    private static final class ObjectColumn extends Column {
+
+        private Object[] values = new Object[0];
+
+        @Override
+        Column read(ResultSet rs, int index, int row) throws SQLException {
+            if (row >= values.length) {
+                values = Arrays.copyOf(values, grow(values.length, row));
+            }
+            values[row] = rs.getObject(index);
+            return this;
+        }
+
+        @Override
+        boolean isNull(int row) {
+            return values[row] == null;
+        }
+
+        @Override
+        Object get(int row) {
+            return values[row];
+        }
+    }
+}
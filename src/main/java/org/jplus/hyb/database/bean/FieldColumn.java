@@ -17,6 +17,10 @@
 package org.jplus.hyb.database.bean;
 
 import java.lang.reflect.Field;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import org.jplus.util.CaseInsensitiveMap;
 
 /**
  *
@@ -33,6 +37,10 @@ public class FieldColumn {
     private boolean hasGetterAndSetter;
     /**是否被忽略 忽略的时候CRUD操作均不计*/
     private boolean ignore;
+    /**是否是乐观锁的版本号*/
+    private boolean version;
+    /**是否是java.time类型,按JDBC 4.2读取 为空时还没有计算*/
+    private Boolean javaTime;
     
     private int sqltype;
 
@@ -53,6 +61,7 @@ public class FieldColumn {
 
     public void setField(Field field) {
         this.field = field;
+        this.javaTime = null;
     }
 
     public String getColumn() {
@@ -95,21 +104,45 @@ public class FieldColumn {
         this.sqltype = sqltype;
     }
 
+    public boolean isVersion() {
+        return version;
+    }
+
+    public void setVersion(boolean version) {
+        this.version = version;
+    }
+
+    /**
+     * 字段是否是LocalDateTime、LocalDate或Instant,这些类型通过getObject(column,type)读取.
+     * @return
+     */
+    public boolean isJavaTime() {
+        if (javaTime == null) {
+            Class<?> type = field.getType();
+            javaTime = type == LocalDateTime.class || type == LocalDate.class || type == Instant.class;
+        }
+        return javaTime;
+    }
 
+    /**
+     * 列名不区分大小写比较,和表的列名Map一致.
+     */
     @Override
     public boolean equals(Object obj) {
-        return obj.getClass().equals(FieldColumn.class) && column.equals(((FieldColumn) obj).getColumn());
+        return obj != null && obj.getClass().equals(FieldColumn.class) && column.equalsIgnoreCase(((FieldColumn) obj).getColumn());
     }
 
     @Override
     public int hashCode() {
         int hash = 5;
-        hash = 67 * hash + (this.column != null ? this.column.hashCode() : 0);
+        hash = 67 * hash + (this.column != null ? CaseInsensitiveMap.hash(this.column) : 0);
         return hash;
     }
 
     public FieldColumn cloneMe(Field field) {
-        return new FieldColumn(field, column, length, hasGetterAndSetter, ignore);
+        FieldColumn clone = new FieldColumn(field, column, length, hasGetterAndSetter, ignore);
+        clone.setVersion(version);
+        return clone;
     }
 
 }
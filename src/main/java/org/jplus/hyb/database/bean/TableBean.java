@@ -18,9 +18,12 @@ package org.jplus.hyb.database.bean;
 
 import org.jplus.util.ObjectHelper;
 
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import org.jplus.util.IgnoreCaseMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.jplus.util.CaseInsensitiveMap;
 
 /**
  *
@@ -32,6 +35,16 @@ public class TableBean {
     private List<FieldColumn> columns;
     private Map<String, FieldColumn> columnMap;
     private String primaryKey="id";
+    /** 生成主键的序列名,没有时为空 */
+    private String sequenceName;
+    /** 主键生成器名,没有时为空 */
+    private String generator;
+    /** 乐观锁版本号字段,没有时为空 */
+    private FieldColumn versionColumn;
+    /** 字段在columns中的位置 */
+    private Map<FieldColumn, Integer> columnIndex;
+    /** 按修改字段缓存的部分更新语句 */
+    private final ConcurrentMap<List<Object>, String> updateCache = new ConcurrentHashMap<List<Object>, String>();
 
     public String getTableName() {
         return tableName;
@@ -53,12 +66,39 @@ public class TableBean {
         this.primaryKey = primaryKey;
     }
 
+    public String getSequenceName() {
+        return sequenceName;
+    }
+
+    public void setSequenceName(String sequenceName) {
+        this.sequenceName = sequenceName;
+    }
+
+    public String getGenerator() {
+        return generator;
+    }
+
+    public void setGenerator(String generator) {
+        this.generator = generator;
+    }
+
+    public FieldColumn getVersionColumn() {
+        return versionColumn;
+    }
+
     public void setColumns(List<FieldColumn> columns) {
         this.columns = columns;
-        this.columnMap = new IgnoreCaseMap<String, FieldColumn>();
+        this.columnMap = new CaseInsensitiveMap<FieldColumn>(columns == null ? 0 : columns.size());
+        this.versionColumn = null;
+        this.columnIndex = new HashMap<FieldColumn, Integer>();
+        this.updateCache.clear();
         if (ObjectHelper.isNotEmpty(columns)) {
             for (FieldColumn column : columns) {
                 columnMap.put(column.getColumn(), column);
+                columnIndex.put(column, columnIndex.size());
+                if (column.isVersion()) {
+                    versionColumn = column;
+                }
             }
         }
     }
@@ -66,6 +106,24 @@ public class TableBean {
     public Map<String, FieldColumn> getColumnMap() {
         return columnMap;
     }
+
+    /**
+     * 获取字段在columns中的位置.
+     * @param column 字段
+     * @return 不是本表的字段时返回-1
+     */
+    public int getColumnIndex(FieldColumn column) {
+        Integer index = columnIndex.get(column);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * 按修改字段缓存的部分更新语句.
+     * @return
+     */
+    public ConcurrentMap<List<Object>, String> getUpdateCache() {
+        return updateCache;
+    }
     
     
 }
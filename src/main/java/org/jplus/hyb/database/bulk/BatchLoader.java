@@ -0,0 +1,110 @@
+/*
+ * Copyright 2015 www.hyberbin.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * Email:hyberbin@qq.com
+ */
+package org.jplus.hyb.database.bulk;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.List;
+import org.jplus.hyb.database.bean.FieldColumn;
+import org.jplus.hyb.database.metrics.MetricsRegistry;
+import org.jplus.hyb.log.Logger;
+import org.jplus.hyb.log.LoggerManager;
+import org.jplus.util.DateUtils;
+import org.jplus.util.FieldUtil;
+
+/**
+ * 通用的批处理导入.用一条预处理插入语句,每batchSize行执行一次批处理.
+ * @author hyberbin
+ */
+public class BatchLoader implements BulkLoader {
+
+    protected static final Logger log = LoggerManager.getLogger(BatchLoader.class);
+    /** 默认每批的行数 */
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+    private final char[] quote;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+
+    /**
+     * @param quote 字段名的括号字符
+     */
+    public BatchLoader(char[] quote) {
+        this.quote = quote;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    @Override
+    public long load(Connection connection, String table, List<FieldColumn> columns, Iterator<?> rows) throws SQLException {
+        String sql = getInsert(table, columns);
+        log.debug("bulk load:{}", sql);
+        PreparedStatement stm = connection.prepareStatement(sql);
+        long count = 0;
+        try {
+            int pending = 0;
+            while (rows.hasNext()) {
+                Object row = rows.next();
+                for (int i = 0; i < columns.size(); i++) {
+                    stm.setObject(i + 1, DateUtils.toSqlValue(FieldUtil.getColumnValue(row, columns.get(i))));
+                }
+                stm.addBatch();
+                if (++pending == batchSize) {
+                    stm.executeBatch();
+                    count += pending;
+                    pending = 0;
+                }
+            }
+            if (pending > 0) {
+                stm.executeBatch();
+                count += pending;
+            }
+        } finally {
+            stm.close();
+        }
+        MetricsRegistry.INSTANCE.add(MetricsRegistry.BULK_ROWS, table, count);
+        return count;
+    }
+
+    /**
+     * 生成所有字段都是预处理参数的插入语句.
+     * @param table 表名
+     * @param columns 字段
+     * @return
+     */
+    protected String getInsert(String table, List<FieldColumn> columns) {
+        StringBuilder sb = new StringBuilder("insert into ").append(table).append("(");
+        for (int i = 0; i < columns.size(); i++) {
+            sb.append(i == 0 ? "" : ",").append(quote(columns.get(i)));
+        }
+        sb.append(") values(");
+        for (int i = 0; i < columns.size(); i++) {
+            sb.append(i == 0 ? "?" : ",?");
+        }
+        return sb.append(")").toString();
+    }
+
+    protected String quote(FieldColumn column) {
+        return quote[0] + column.getColumn() + quote[1];
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2015 www.hyberbin.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * Email:hyberbin@qq.com
+ */
+package org.jplus.hyb.database.bulk;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.List;
+import org.jplus.hyb.database.bean.FieldColumn;
+
+/**
+ * 大批量导入.每种数据库用最快的原生方式写入,数据从迭代器中边读边写,内存占用不随行数增长.
+ * 由各适配器的getBulkLoader提供.
+ * @author hyberbin
+ */
+public interface BulkLoader {
+
+    /**
+     * 导入数据.
+     * @param connection 数据库连接,事务由调用方提交
+     * @param table 表名
+     * @param columns 要写入的字段
+     * @param rows 要写入的实体
+     * @return 写入的行数
+     * @throws SQLException
+     */
+    public long load(Connection connection, String table, List<FieldColumn> columns, Iterator<?> rows) throws SQLException;
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright 2015 www.hyberbin.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * Email:hyberbin@qq.com
+ */
+package org.jplus.hyb.database.bulk;
+
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.nio.charset.Charset;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import org.jplus.hyb.database.bean.FieldColumn;
+import org.jplus.hyb.database.metrics.MetricsRegistry;
+import org.jplus.util.DateUtils;
+import org.jplus.util.FieldUtil;
+
+/**
+ * mysql导入.用LOAD DATA LOCAL INFILE从内存流中导入,流在驱动读取时才从迭代器生成数据.
+ * 需要驱动支持setLocalInfileInputStream并且连接参数有allowLoadLocalInfile=true,
+ * 服务端要开启local_infile.驱动不支持时用批处理导入.
+ * byte[]字段按十六进制写入流,导入时用SET子句unhex还原.
+ * @author hyberbin
+ */
+public class MysqlLoader extends BatchLoader {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+    /** 各版本驱动中有setLocalInfileInputStream方法的接口 */
+    private static final String[] STATEMENT_CLASSES = {"com.mysql.cj.jdbc.JdbcStatement", "com.mysql.jdbc.Statement"};
+
+    public MysqlLoader(char[] quote) {
+        super(quote);
+    }
+
+    @Override
+    public long load(Connection connection, String table, List<FieldColumn> columns, Iterator<?> rows) throws SQLException {
+        Statement stm = connection.createStatement();
+        try {
+            Method method = findSetter(stm);
+            if (method == null) {
+                log.debug("driver not support local infile stream,use batch");
+                stm.close();
+                return super.load(connection, table, columns, rows);
+            }
+            RowInputStream in = new RowInputStream(columns, rows);
+            method.invoke(stm.unwrap(method.getDeclaringClass()), in);
+            String sql = getLoadData(table, columns);
+            log.debug("bulk load:{}", sql);
+            stm.executeUpdate(sql);
+            long loaded = stm.getUpdateCount();//服务端实际导入的行数,重复键被忽略的行不计
+            MetricsRegistry.INSTANCE.add(MetricsRegistry.BULK_ROWS, table, loaded);
+            return loaded;
+        } catch (ReflectiveOperationException ex) {
+            throw new SQLException("set local infile stream error!", ex);
+        } finally {
+            stm.close();
+        }
+    }
+
+    private static Method findSetter(Statement stm) throws SQLException {
+        for (String name : STATEMENT_CLASSES) {
+            try {
+                Class<?> clazz = Class.forName(name, false, stm.getClass().getClassLoader());
+                if (stm.isWrapperFor(clazz)) {
+                    return clazz.getMethod("setLocalInfileInputStream", InputStream.class);
+                }
+            } catch (ClassNotFoundException | NoSuchMethodException ex) {
+                log.trace("no {}", name);
+            }
+        }
+        return null;
+    }
+
+    String getLoadData(String table, List<FieldColumn> columns) {
+        StringBuilder sb = new StringBuilder("load data local infile 'stream' into table ").append(table)
+                .append(" character set utf8mb4 fields terminated by '\\t' escaped by '\\\\' lines terminated by '\\n' (");
+        StringBuilder set = new StringBuilder();
+        for (int i = 0; i < columns.size(); i++) {
+            sb.append(i == 0 ? "" : ",");
+            if (isBinary(columns.get(i))) {
+                sb.append("@c").append(i);
+                set.append(set.length() == 0 ? " set " : ",").append(quote(columns.get(i))).append("=unhex(@c").append(i).append(")");
+            } else {
+                sb.append(quote(columns.get(i)));
+            }
+        }
+        return sb.append(")").append(set).toString();
+    }
+
+    private static boolean isBinary(FieldColumn column) {
+        return column.getField().getType() == byte[].class;
+    }
+
+    /**
+     * 把实体按行编码成LOAD DATA的默认格式:制表符分隔,换行结束,空值为\N,特殊字符用反斜杠转义.
+     * 每次只编码一行.
+     */
+    static final class RowInputStream extends InputStream {
+
+        private final List<FieldColumn> columns;
+        private final Iterator<?> rows;
+        private final StringBuilder line = new StringBuilder(256);
+        private byte[] buffer = new byte[0];
+        private int position;
+        private long count;
+
+        RowInputStream(List<FieldColumn> columns, Iterator<?> rows) {
+            this.columns = columns;
+            this.rows = rows;
+        }
+
+        long getRows() {
+            return count;
+        }
+
+        private boolean fill() {
+            while (position >= buffer.length) {
+                if (!rows.hasNext()) {
+                    return false;
+                }
+                encode(rows.next());
+                buffer = line.toString().getBytes(UTF8);
+                position = 0;
+                count++;
+            }
+            return true;
+        }
+
+        private void encode(Object row) {
+            line.setLength(0);
+            for (int i = 0; i < columns.size(); i++) {
+                if (i > 0) {
+                    line.append('\t');
+                }
+                Object value = DateUtils.toSqlValue(FieldUtil.getColumnValue(row, columns.get(i)));
+                if (value == null) {
+                    line.append("\\N");
+                    continue;
+                }
+                if (isBinary(columns.get(i)) && value instanceof byte[]) {
+                    appendHex(line, (byte[]) value);
+                    continue;
+                }
+                if (value instanceof Boolean) {
+                    value = ((Boolean) value) ? 1 : 0;
+                }
+                String str = value instanceof Date && !(value instanceof java.sql.Date) && !(value instanceof Time)
+                        ? new Timestamp(((Date) value).getTime()).toString() : value.toString();
+                for (int j = 0; j < str.length(); j++) {
+                    char c = str.charAt(j);
+                    switch (c) {
+                        case '\\':
+                            line.append("\\\\");
+                            break;
+                        case '\t':
+                            line.append("\\t");
+                            break;
+                        case '\n':
+                            line.append("\\n");
+                            break;
+                        case '\r':
+                            line.append("\\r");
+                            break;
+                        case '\0':
+                            line.append("\\0");
+                            break;
+                        default:
+                            line.append(c);
+                    }
+                }
+            }
+            line.append('\n');
+        }
+
+        private static void appendHex(StringBuilder sb, byte[] bytes) {
+            for (byte b : bytes) {
+                sb.append(HEX[(b >> 4) & 0xf]).append(HEX[b & 0xf]);
+            }
+        }
+
+        @Override
+        public int read() {
+            return fill() ? buffer[position++] & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            int read = 0;
+            while (read < len && fill()) {
+                int n = Math.min(len - read, buffer.length - position);
+                System.arraycopy(buffer, position, b, off + read, n);
+                position += n;
+                read += n;
+            }
+            return read == 0 ? -1 : read;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2015 www.hyberbin.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * Email:hyberbin@qq.com
+ */
+package org.jplus.hyb.database.bulk;
+
+import java.util.List;
+import org.jplus.hyb.database.bean.FieldColumn;
+
+/**
+ * oracle导入.oracle驱动执行批处理时把每个参数的所有行作为数组一次发送(数组绑定),
+ * 这里加大每批的行数,并用APPEND_VALUES提示直接路径插入,数据写在高水位线之上不经过缓冲区.
+ * 直接路径插入会锁表,提交前本会话不能再读这张表.
+ * @author hyberbin
+ */
+public class OracleLoader extends BatchLoader {
+
+    public OracleLoader(char[] quote) {
+        super(quote);
+        setBatchSize(5000);
+    }
+
+    @Override
+    protected String getInsert(String table, List<FieldColumn> columns) {
+        return "insert /*+ APPEND_VALUES */" + super.getInsert(table, columns).substring("insert".length());
+    }
+}
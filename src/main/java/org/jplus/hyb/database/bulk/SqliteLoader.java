@@ -0,0 +1,80 @@
+/*
+ * Copyright 2015 www.hyberbin.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * Email:hyberbin@qq.com
+ */
+package org.jplus.hyb.database.bulk;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Iterator;
+import java.util.List;
+import org.jplus.hyb.database.bean.FieldColumn;
+
+/**
+ * sqlite导入.整个导入在一个单独的事务中完成,导入期间关闭同步写盘并加大页缓存,完成后恢复原来的设置.
+ * sqlite只能在事务外修改同步级别,所以连接上之前未提交的操作会先被提交.
+ * 导入中途断电可能损坏数据库文件,只适合可以重新导入的数据.
+ * @author hyberbin
+ */
+public class SqliteLoader extends BatchLoader {
+
+    /** 导入期间的页缓存大小,负数表示KB */
+    private static final int CACHE_SIZE = -65536;
+
+    public SqliteLoader(char[] quote) {
+        super(quote);
+        setBatchSize(10000);
+    }
+
+    @Override
+    public long load(Connection connection, String table, List<FieldColumn> columns, Iterator<?> rows) throws SQLException {
+        boolean autoCommit = connection.getAutoCommit();
+        if (!autoCommit) {//同步级别只能在事务外修改,连接上之前的操作先提交
+            connection.setAutoCommit(true);
+        }
+        Statement stm = connection.createStatement();
+        String synchronous = pragma(stm, "synchronous");
+        String cacheSize = pragma(stm, "cache_size");
+        try {
+            stm.execute("PRAGMA synchronous=OFF");
+            stm.execute("PRAGMA cache_size=" + CACHE_SIZE);
+            stm.execute("PRAGMA temp_store=MEMORY");
+            connection.setAutoCommit(false);
+            long count = super.load(connection, table, columns, rows);
+            connection.commit();
+            return count;
+        } catch (SQLException | RuntimeException ex) {
+            connection.rollback();
+            throw ex;
+        } finally {
+            connection.setAutoCommit(true);
+            stm.execute("PRAGMA synchronous=" + synchronous);
+            stm.execute("PRAGMA cache_size=" + cacheSize);
+            stm.close();
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    private static String pragma(Statement stm, String name) throws SQLException {
+        ResultSet rs = stm.executeQuery("PRAGMA " + name);
+        try {
+            return rs.next() ? rs.getString(1) : null;
+        } finally {
+            rs.close();
+        }
+    }
+}
@@ -18,7 +18,11 @@ package org.jplus.hyb.database.config;
 
 import org.jplus.hyb.database.adapter.IAdapter;
 import org.jplus.hyb.database.adapter.MysqlAdapter;
+import org.jplus.hyb.database.adapter.OracleAdapter;
+import org.jplus.hyb.database.adapter.SqliteAdapter;
+import org.jplus.hyb.database.adapter.SqlserverAdapter;
 import org.jplus.hyb.database.crud.DatabaseAccess;
+import org.jplus.hyb.database.metrics.MetricsRegistry;
 import org.jplus.hyb.database.transaction.IDbManager;
 import org.jplus.hyb.database.transaction.SimpleManager;
 import org.jplus.hyb.database.util.ISqlout;
@@ -46,6 +50,8 @@ public class ConfigCenter {
     private String sqlout;
     /** 数据操作适配器 */
     private String adapter;
+    /** 是否记录查询出来的实体快照 */
+    private volatile boolean dirtyTracking;
 
     /**
      * 私有构造方法禁止外部创建
@@ -90,6 +96,24 @@ public class ConfigCenter {
         return (IAdapter) Reflections.instance(adapter);
     }
 
+    /**
+     * 根据驱动名获取一个新的适配器,不能识别的驱动使用默认适配器.
+     * @param driver 驱动类名
+     * @return
+     */
+    public IAdapter getAdapter(String driver) {
+        if (driver.contains("oracle")) {
+            return new OracleAdapter();
+        } else if (driver.contains("mysql")) {
+            return new MysqlAdapter();
+        } else if (driver.contains("sqlite")) {
+            return new SqliteAdapter();
+        } else if (driver.contains("sqlserver")) {
+            return new SqlserverAdapter();
+        }
+        return getDefaultAdapter();
+    }
+
     /**
      * 获取一个数据库操作对象.
      *
@@ -126,4 +150,26 @@ public class ConfigCenter {
         log.trace("setSqlout {}", sqlout);
     }
 
+    /**
+     * 设置是否记录查询出来的实体快照.
+     * 开启后Hyberbin.updateChanged只更新修改过的字段,每个查询出来的实体要多占一份字段值的内存.
+     * @param dirtyTracking
+     */
+    public void setDirtyTracking(boolean dirtyTracking) {
+        this.dirtyTracking = dirtyTracking;
+        log.info("dirty tracking:{}", dirtyTracking);
+    }
+
+    public boolean isDirtyTracking() {
+        return dirtyTracking;
+    }
+
+    /**
+     * 获取运行指标注册中心.
+     * @return
+     */
+    public MetricsRegistry getMetrics() {
+        return MetricsRegistry.INSTANCE;
+    }
+
 }
@@ -16,6 +16,8 @@
  */
 package org.jplus.hyb.database.config;
 
+import org.jplus.util.MD5Util;
+
 /**
  * 数据配置接口
  * @author Hyberbin
@@ -71,6 +73,8 @@ public class DbConfig {
     private String password;
     /** 配置名称 */
     private final String configName;
+    /** 连接参数的摘要,连接参数改变后重新计算 */
+    private volatile String identityKey;
 
     public String getDriver() {
         return driver;
@@ -78,6 +82,7 @@ public class DbConfig {
 
     public void setDriver(String driver) {
         this.driver = driver;
+        this.identityKey = null;
     }
 
     public String getUrl() {
@@ -86,6 +91,7 @@ public class DbConfig {
 
     public void setUrl(String url) {
         this.url = url;
+        this.identityKey = null;
     }
 
     public String getUsername() {
@@ -94,6 +100,7 @@ public class DbConfig {
 
     public void setUsername(String username) {
         this.username = username;
+        this.identityKey = null;
     }
 
     public String getPassword() {
@@ -102,12 +109,27 @@ public class DbConfig {
 
     public void setPassword(String password) {
         this.password = password;
+        this.identityKey = null;
     }
 
     public String getConfigName() {
         return configName;
     }
 
+    /**
+     * 获取连接参数的摘要.
+     * 由驱动、地址、用户名、密码计算,只在参数改变后重新计算,用来判断缓存的连接是否还对应当前配置.
+     * @return
+     */
+    public String getIdentityKey() {
+        String key = identityKey;
+        if (key == null) {
+            key = MD5Util.MD5(driver + url + username + password);
+            identityKey = key;
+        }
+        return key;
+    }
+
     public static String getMysqlUrl(String ip, String dbname, int port) {
         return "jdbc:mysql://" + ip + ":" + port + "/" + dbname + "?useUnicode=true&characterEncoding=UTF-8&generateSimpleParameterMetadata=true&useOldAliasMetadataBehavior=true&UseOldSyntax=true";
     }
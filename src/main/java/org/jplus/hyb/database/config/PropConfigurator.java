@@ -16,11 +16,22 @@
  */
 package org.jplus.hyb.database.config;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Collections;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
 import java.util.HashMap;
 import java.util.Map;
+import org.jplus.hyb.database.transaction.AutoManager;
+import org.jplus.hyb.database.transaction.SingleManager;
+import org.jplus.hyb.database.transaction.StripedManager;
 import org.jplus.hyb.log.Logger;
 import org.jplus.hyb.log.LoggerManager;
 import org.jplus.util.LoadProperties;
@@ -36,24 +47,30 @@ import org.jplus.util.NullUtils;
  * prepare=true.<br/>
  * tranceaction=true.<br/>
  * 如果有多个数据则在driver,url,user,pass前加上配置名称.<br/>
- * 如：name-driver,name-url...
+ * 如：name-driver,name-url...<br/>
+ * 文件读取后生成不可变的配置快照,查找配置和开关不加锁.
+ * 从文件读取时可以调用reload重新读取,或者startWatching在文件修改后自动重新读取,
+ * 连接参数改变了的配置的旧连接在用完后关闭.
  * @author Hyberbin
  */
 public class PropConfigurator implements IConfigurator {
 
     private static final Logger log = LoggerManager.getLogger(PropConfigurator.class);
-    private final LoadProperties dbProperties;
-    private static final Map<String, DbConfig> configMap = Collections.synchronizedMap(new HashMap<String, DbConfig>());
-    private Boolean sqlout;
-    private Boolean prepare;
-    private Boolean tranceaction;
+    /** 文件修改后等待写完再读取的毫秒数 */
+    private static final long SETTLE_MILLIS = 100;
+    /** 配置文件路径,从输入流读取时为空 */
+    private final String proptiesPath;
+    private volatile Snapshot snapshot;
+    private Thread watcher;
 
     public PropConfigurator(String proptiesPath) {
-        dbProperties = new LoadProperties(proptiesPath);
+        this.proptiesPath = proptiesPath;
+        this.snapshot = new Snapshot(new LoadProperties(proptiesPath));
     }
 
     public PropConfigurator(InputStream inputStream) {
-        dbProperties = new LoadProperties(inputStream);
+        this.proptiesPath = null;
+        this.snapshot = new Snapshot(new LoadProperties(inputStream));
     }
 
     public PropConfigurator() throws IOException {
@@ -66,14 +83,7 @@ public class PropConfigurator implements IConfigurator {
      */
     @Override
     public DbConfig getDefaultConfig() {
-        log.trace("in getDefaultConfig");
-        NullUtils.validateNull(dbProperties, "配置文件");
-        DbConfig defaultDbConfig = configMap.get(DbConfig.DEFAULT_CONFIG_NAME);
-        if (defaultDbConfig == null) {
-            defaultDbConfig = new DbConfig(dbProperties.getProperty("driver"), dbProperties.getProperty("url"), dbProperties.getProperty("user"), dbProperties.getProperty("pass"), DbConfig.DEFAULT_CONFIG_NAME);
-            configMap.put(DbConfig.DEFAULT_CONFIG_NAME, defaultDbConfig);
-        }
-        return defaultDbConfig;
+        return snapshot.configs.get(DbConfig.DEFAULT_CONFIG_NAME);
     }
 
     /**
@@ -83,15 +93,10 @@ public class PropConfigurator implements IConfigurator {
      */
     @Override
     public DbConfig getDbConfig(String name) {
-        log.trace("in DbConfig");
         NullUtils.validateNull(name, "配置:" + name);
-        NullUtils.validateNull(dbProperties, "配置文件");
-        DbConfig DbConfig = configMap.get(name);
-        if (DbConfig == null) {
-            DbConfig = new DbConfig(dbProperties.getProperty(name + "-driver"), dbProperties.getProperty(name + "-url"), dbProperties.getProperty(name + "-user"), dbProperties.getProperty(name + "-pass"), name);
-            configMap.put(name, DbConfig);
-        }
-        return DbConfig;
+        Snapshot current = snapshot;
+        DbConfig config = current.configs.get(name);
+        return config == null ? current.create(name) : config;
     }
 
     /**
@@ -100,12 +105,7 @@ public class PropConfigurator implements IConfigurator {
      */
     @Override
     public boolean sqlOut() {
-        log.trace("in sqlOut");
-        if (sqlout == null) {
-            sqlout = dbProperties.getBoolProperties("sqlout");
-        }
-        log.debug("sql out is :{}", sqlout);
-        return sqlout;
+        return snapshot.sqlout;
     }
 
     /**
@@ -114,22 +114,179 @@ public class PropConfigurator implements IConfigurator {
      */
     @Override
     public boolean prepare() {
-        log.trace("in prepare");
-        if (prepare == null) {
-            prepare = dbProperties.getBoolProperties("prepare");
-        }
-        log.debug("prepare is :{}", prepare);
-        return prepare;
+        return snapshot.prepare;
     }
 
     @Override
     public boolean tranceaction() {
-        log.trace("in tranceaction");
-        if (tranceaction == null) {
-            tranceaction = dbProperties.getBoolProperties("tranceaction");
+        return snapshot.tranceaction;
+    }
+
+    /**
+     * 重新读取配置文件并替换配置快照.
+     * 连接参数改变的配置的旧连接退役:StripedManager、SingleManager的连接在正在使用的管理器归还后关闭,
+     * AutoManager的线程内连接在事务结束后下次获取时更换.
+     * 文件可能还没有写完,原来有driver和url的配置在新文件中缺少任何一项时保留原来的配置.
+     * @return 是否替换了配置
+     */
+    public synchronized boolean reload() {
+        if (proptiesPath == null) {
+            throw new IllegalStateException("configurator is not loaded from a file");
+        }
+        Snapshot old = snapshot;
+        Snapshot loaded = new Snapshot(new LoadProperties(proptiesPath));
+        for (Map.Entry<String, DbConfig> entry : old.configs.entrySet()) {
+            if (isComplete(entry.getValue()) && !isComplete(loaded.configs.get(entry.getKey()))) {
+                log.warn("config:{} is incomplete in file:{},keep the old config", entry.getKey(), proptiesPath);
+                return false;
+            }
+        }
+        snapshot = loaded;
+        for (Map.Entry<String, DbConfig> entry : old.configs.entrySet()) {
+            DbConfig config = loaded.configs.get(entry.getKey());
+            if (isComplete(entry.getValue()) && !config.getIdentityKey().equals(entry.getValue().getIdentityKey())) {
+                drain(entry.getKey());
+            }
+        }
+        log.info("reload config file:{}", proptiesPath);
+        return true;
+    }
+
+    private static boolean isComplete(DbConfig config) {
+        return config != null && config.getDriver() != null && config.getUrl() != null;
+    }
+
+    /**
+     * 让一个配置的旧连接退役.
+     * @param configName 配置名
+     */
+    private void drain(String configName) {
+        StripedManager.invalidate(configName);
+        SingleManager.invalidate(configName);
+        AutoManager.invalidate(configName);
+        log.info("config:{} changed,drain old connections", configName);
+    }
+
+    /**
+     * 开始监视配置文件,文件修改后自动重新读取.
+     * 只支持文件系统中的文件,包括从类路径中读取但在目录中(而不是jar中)的文件.
+     * @throws IOException 文件不能被监视
+     */
+    public synchronized void startWatching() throws IOException {
+        if (watcher != null) {
+            return;
+        }
+        final Path file = resolveFile().toPath().toAbsolutePath();
+        final WatchService service = file.getFileSystem().newWatchService();
+        file.getParent().register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        watcher = new Thread("hyberbin-config-watcher") {
+            @Override
+            public void run() {
+                try {
+                    while (!isInterrupted()) {
+                        WatchKey key = service.take();
+                        boolean changed = false;
+                        for (WatchEvent<?> event : key.pollEvents()) {
+                            changed |= file.getFileName().equals(event.context());
+                        }
+                        key.reset();
+                        if (changed) {
+                            Thread.sleep(SETTLE_MILLIS);
+                            reload();
+                        }
+                    }
+                } catch (InterruptedException ex) {
+                    //停止监视
+                } catch (ClosedWatchServiceException ex) {
+                    //停止监视
+                } finally {
+                    try {
+                        service.close();
+                    } catch (IOException ex) {
+                        log.debug("close watch service error!", ex);
+                    }
+                }
+            }
+        };
+        watcher.setDaemon(true);
+        watcher.start();
+        log.info("watching config file:{}", file);
+    }
+
+    /**
+     * 停止监视配置文件.
+     */
+    public synchronized void stopWatching() {
+        if (watcher != null) {
+            watcher.interrupt();
+            watcher = null;
+        }
+    }
+
+    /**
+     * 找到配置文件在文件系统中的位置.
+     * @return
+     * @throws IOException
+     */
+    private File resolveFile() throws IOException {
+        if (proptiesPath == null) {
+            throw new IOException("configurator is not loaded from a file");
+        }
+        String path = snapshot.properties.getFilePath();
+        if (proptiesPath.replace("\\", "/").contains("/")) {
+            return new File(path);
+        }
+        URL url = getClass().getClassLoader().getResource(path);
+        if (url == null || !"file".equals(url.getProtocol())) {
+            throw new IOException("config file:" + path + " is not in a directory");
+        }
+        try {
+            return new File(url.toURI());
+        } catch (URISyntaxException ex) {
+            throw new IOException(ex);
+        }
+    }
+
+    /**
+     * 一次读取的所有配置,创建后不再修改.
+     */
+    private static final class Snapshot {
+
+        private static final String[] SUFFIXES = {"-driver", "-url", "-user", "-pass"};
+        private final LoadProperties properties;
+        private final Map<String, DbConfig> configs = new HashMap<String, DbConfig>();
+        private final boolean sqlout;
+        private final boolean prepare;
+        private final boolean tranceaction;
+
+        Snapshot(LoadProperties properties) {
+            this.properties = properties;
+            configs.put(DbConfig.DEFAULT_CONFIG_NAME, new DbConfig(properties.getProperty("driver"), properties.getProperty("url"),
+                    properties.getProperty("user"), properties.getProperty("pass"), DbConfig.DEFAULT_CONFIG_NAME));
+            for (String key : properties.getProps().stringPropertyNames()) {
+                for (String suffix : SUFFIXES) {
+                    if (key.length() > suffix.length() && key.endsWith(suffix)) {
+                        String name = key.substring(0, key.length() - suffix.length());
+                        if (!configs.containsKey(name)) {
+                            configs.put(name, create(name));
+                        }
+                    }
+                }
+            }
+            this.sqlout = properties.getBoolProperties("sqlout");
+            this.prepare = properties.getBoolProperties("prepare");
+            this.tranceaction = properties.getBoolProperties("tranceaction");
+        }
+
+        /**
+         * 按名称前缀读取一个配置.
+         * @param name 配置名
+         * @return
+         */
+        DbConfig create(String name) {
+            return new DbConfig(properties.getProperty(name + "-driver"), properties.getProperty(name + "-url"),
+                    properties.getProperty(name + "-user"), properties.getProperty(name + "-pass"), name);
         }
-        log.debug("tranceaction is :{}", tranceaction);
-        return tranceaction;
     }
 
 }
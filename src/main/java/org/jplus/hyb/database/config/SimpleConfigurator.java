@@ -16,18 +16,19 @@
  */
 package org.jplus.hyb.database.config;
 
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
 /**
  * 简单的配置器.
  * 可以添加多个配置用来在一个项目中连接多个数据库.
+ * 配置保存在不可变的快照中,添加配置时复制一份再替换,查找配置不加锁.
  * @author Hyberbin
  */
 public final class SimpleConfigurator implements IConfigurator {
 
-    private static final Map<String, DbConfig> DBCONFIGS = Collections.synchronizedMap(new HashMap<String, DbConfig>());
+    /** 配置快照,只替换不修改 */
+    private static volatile Map<String, DbConfig> dbConfigs = new HashMap<String, DbConfig>();
     public static final SimpleConfigurator INSTANCE = new SimpleConfigurator();
 
     static {//自动添加一个默认的配置
@@ -40,8 +41,10 @@ public final class SimpleConfigurator implements IConfigurator {
      * 添加一个数据配置.
      * @param config 
      */
-    public static void addConfigurator(DbConfig config) {
-        DBCONFIGS.put(config.getConfigName(), config);
+    public static synchronized void addConfigurator(DbConfig config) {
+        Map<String, DbConfig> configs = new HashMap<String, DbConfig>(dbConfigs);
+        configs.put(config.getConfigName(), config);
+        dbConfigs = configs;
     }
     /**
      * 获取默认配置
@@ -49,7 +52,7 @@ public final class SimpleConfigurator implements IConfigurator {
      */
     @Override
     public DbConfig getDefaultConfig() {
-        return DBCONFIGS.get(DbConfig.DEFAULT_CONFIG_NAME);
+        return dbConfigs.get(DbConfig.DEFAULT_CONFIG_NAME);
     }
     /**
      * 获取指定名称的数据库配置
@@ -58,7 +61,7 @@ public final class SimpleConfigurator implements IConfigurator {
      */
     @Override
     public DbConfig getDbConfig(String name) {
-        return DBCONFIGS.get(name);
+        return dbConfigs.get(name);
     }
     /**
      * 是否输出数据库
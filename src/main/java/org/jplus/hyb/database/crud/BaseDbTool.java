@@ -19,10 +19,9 @@ package org.jplus.hyb.database.crud;
 import java.sql.Connection;
 import java.sql.SQLException;
 import org.jplus.hyb.database.adapter.IAdapter;
-import org.jplus.hyb.database.adapter.MysqlAdapter;
-import org.jplus.hyb.database.adapter.OracleAdapter;
-import org.jplus.hyb.database.adapter.SqlserverAdapter;
 import org.jplus.hyb.database.config.ConfigCenter;
+import org.jplus.hyb.database.metrics.MetricsRegistry;
+import org.jplus.hyb.database.transaction.ConnectionCallback;
 import org.jplus.hyb.database.transaction.IDbManager;
 import org.jplus.hyb.log.Logger;
 import org.jplus.hyb.log.LoggerManager;
@@ -41,18 +40,7 @@ public abstract class BaseDbTool {
 
     protected BaseDbTool(IDbManager tx) {
         this.tx = tx;
-        String driver = tx.getDefaultDbConfig().getDriver();
-        if(driver.contains("oracle")){
-            adapter=new OracleAdapter();
-        }else if(driver.contains("mysql")){
-            adapter=new MysqlAdapter();
-        }else if(driver.contains("sqlite")){
-            adapter=new MysqlAdapter();
-        }else if(driver.contains("sqlserver")){
-            adapter=new SqlserverAdapter();
-        }else{
-            adapter= ConfigCenter.INSTANCE.getDefaultAdapter();
-        }
+        adapter = ConfigCenter.INSTANCE.getAdapter(tx.getDefaultDbConfig().getDriver());
     }
 
     /**
@@ -64,6 +52,55 @@ public abstract class BaseDbTool {
         return tx.getConnection();
     }
 
+    /**
+     * 在连接上执行操作.
+     * 如果连接已经断开,连接管理器丢弃该连接,但不重试:语句可能已经在服务器上执行,重试会重复写入.
+     * @param <V> 返回值类型
+     * @param callback 数据库操作
+     * @return 操作的返回值
+     * @throws SQLException
+     */
+    protected <V> V execute(ConnectionCallback<V> callback) throws SQLException {
+        return execute(callback, false, false);
+    }
+
+    /**
+     * 在连接上执行可以重复执行的操作,如查询.
+     * 如果连接已经断开,连接管理器丢弃该连接后在新连接上重试一次.
+     * @param <V> 返回值类型
+     * @param callback 数据库操作
+     * @return 操作的返回值
+     * @throws SQLException
+     */
+    protected <V> V executeIdempotent(ConnectionCallback<V> callback) throws SQLException {
+        return execute(callback, false, true);
+    }
+
+    /**
+     * 在只读连接上执行查询.读写分离时可能分配到从库.
+     * 如果连接已经断开,在新连接上重试一次.
+     * @param <V> 返回值类型
+     * @param callback 数据库操作
+     * @return 操作的返回值
+     * @throws SQLException
+     */
+    protected <V> V executeRead(ConnectionCallback<V> callback) throws SQLException {
+        return execute(callback, true, true);
+    }
+
+    private <V> V execute(ConnectionCallback<V> callback, boolean read, boolean retry) throws SQLException {
+        try {
+            return callback.doInConnection(read ? tx.getReadConnection() : getConnection());
+        } catch (SQLException ex) {
+            if (!tx.recover(ex) || !retry) {
+                throw ex;
+            }
+            log.info("connection broken,retry on new connection:{}", ex.getMessage());
+            MetricsRegistry.INSTANCE.increment(MetricsRegistry.CONNECTION_RETRIED);
+            return callback.doInConnection(read ? tx.getReadConnection() : getConnection());
+        }
+    }
+
     public IAdapter getAdapter() {
         return adapter;
     }
@@ -64,7 +64,7 @@ public class DatabaseAccess extends BaseDbTool{
      * @throws java.sql.SQLException
      */
     public int update(String sql) throws SQLException {
-        int update = adapter.update(getConnection(), sql);
+        int update = execute(conn -> adapter.update(conn, sql));
         tx.closeConnection();
         return update;
     }
@@ -76,7 +76,7 @@ public class DatabaseAccess extends BaseDbTool{
      * @throws java.sql.SQLException
      */
     public ResultSet query(String sql) throws SQLException {
-        ResultSet findList = adapter.findList(getConnection(), sql);
+        ResultSet findList = executeIdempotent(conn -> adapter.findList(conn, sql));
         tx.closeConnection();
         return findList;
     }
@@ -88,7 +88,7 @@ public class DatabaseAccess extends BaseDbTool{
      * @throws java.sql.SQLException
      */
     public ResultSet querySingle(String sql) throws SQLException {
-        ResultSet findSingle = adapter.findSingle(getConnection(), sql);
+        ResultSet findSingle = executeIdempotent(conn -> adapter.findSingle(conn, sql));
         tx.closeConnection();
         return findSingle;
     }
@@ -100,7 +100,7 @@ public class DatabaseAccess extends BaseDbTool{
      * @throws java.sql.SQLException
      */
     public Object queryUnique(String sql) throws SQLException {
-        Object findUnique = adapter.findUnique(getConnection(), sql);
+        Object findUnique = executeIdempotent(conn -> adapter.findUnique(conn, sql));
         tx.closeConnection();
         return findUnique;
     }
@@ -0,0 +1,224 @@
+/*
+ * Copyright 2015 www.hyberbin.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * Email:hyberbin@qq.com
+ */
+package org.jplus.hyb.database.crud;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Array;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.jplus.hyb.database.bean.FieldColumn;
+import org.jplus.hyb.database.bean.TableBean;
+import org.jplus.hyb.database.metrics.Gauge;
+import org.jplus.hyb.database.metrics.MetricsRegistry;
+import org.jplus.util.FieldUtil;
+
+/**
+ * 实体快照.记录查询出来的实体各字段的值,更新时和当前值比较得到修改过的字段.
+ * 快照按对象标识弱引用实体,实体被回收后快照随之清除.
+ * 快照只保存查询时加载了的字段,值按TableBean中字段的位置存放在数组中.
+ * 数组、Date和Calendar等可变的值保存副本,原地修改也能被发现.
+ * 通过ConfigCenter.INSTANCE.setDirtyTracking(true)开启.
+ * @author hyberbin
+ */
+public class DirtyTracker {
+
+    public static final DirtyTracker INSTANCE = new DirtyTracker();
+    private final ConcurrentMap<IdentityKey, Snapshot> snapshots = new ConcurrentHashMap<IdentityKey, Snapshot>();
+    private final ReferenceQueue<Object> queue = new ReferenceQueue<Object>();
+
+    private DirtyTracker() {
+        MetricsRegistry.INSTANCE.registerGauge("dirty.snapshots", new Gauge() {
+            @Override
+            public long getValue() {
+                return snapshots.size();
+            }
+        });
+    }
+
+    /**
+     * 记录实体的快照.
+     * @param entity 实体
+     * @param table 实体的表信息
+     * @param loaded 查询时加载了的字段
+     */
+    public void snapshot(Object entity, TableBean table, List<FieldColumn> loaded) {
+        expunge();
+        Object[] values = new Object[table.getColumns().size()];
+        BitSet mask = new BitSet(values.length);
+        for (FieldColumn column : loaded) {
+            int index = table.getColumnIndex(column);
+            if (index >= 0 && !column.isIgnore()) {
+                values[index] = copy(FieldUtil.getColumnValue(entity, column));
+                mask.set(index);
+            }
+        }
+        snapshots.put(new IdentityKey(entity, queue), new Snapshot(table, values, mask));
+    }
+
+    /**
+     * 用实体的当前值刷新快照,在更新成功后调用.
+     * @param entity 实体
+     */
+    public void refresh(Object entity) {
+        Snapshot snapshot = snapshots.get(new IdentityKey(entity, null));
+        if (snapshot != null) {
+            List<FieldColumn> columns = snapshot.table.getColumns();
+            for (int i = snapshot.loaded.nextSetBit(0); i >= 0; i = snapshot.loaded.nextSetBit(i + 1)) {
+                snapshot.values[i] = copy(FieldUtil.getColumnValue(entity, columns.get(i)));
+            }
+        }
+    }
+
+    /**
+     * 获取修改过的字段.
+     * @param entity 实体
+     * @return 修改过的字段在TableBean中的位置,没有快照时返回空
+     */
+    public BitSet getChanged(Object entity) {
+        Snapshot snapshot = snapshots.get(new IdentityKey(entity, null));
+        if (snapshot == null) {
+            return null;
+        }
+        List<FieldColumn> columns = snapshot.table.getColumns();
+        BitSet changed = new BitSet(columns.size());
+        for (int i = snapshot.loaded.nextSetBit(0); i >= 0; i = snapshot.loaded.nextSetBit(i + 1)) {
+            if (!same(snapshot.values[i], FieldUtil.getColumnValue(entity, columns.get(i)))) {
+                changed.set(i);
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * 是否有实体的快照.
+     * @param entity 实体
+     * @return
+     */
+    public boolean isTracked(Object entity) {
+        return snapshots.containsKey(new IdentityKey(entity, null));
+    }
+
+    /**
+     * 删除实体的快照.
+     * @param entity 实体
+     */
+    public void forget(Object entity) {
+        snapshots.remove(new IdentityKey(entity, null));
+    }
+
+    public int size() {
+        expunge();
+        return snapshots.size();
+    }
+
+    private static boolean same(Object a, Object b) {
+        if (a == b) {
+            return true;
+        }
+        if (a == null || b == null) {
+            return false;
+        }
+        if (a.getClass().isArray() && b.getClass().isArray()) {
+            return Arrays.deepEquals(new Object[]{a}, new Object[]{b});
+        }
+        return a.equals(b);
+    }
+
+    /**
+     * 复制可变的值.
+     * @param value 字段值
+     * @return 数组、Date、Calendar返回副本,其它返回原值
+     */
+    private static Object copy(Object value) {
+        if (value == null) {
+            return null;
+        }
+        if (value.getClass().isArray()) {
+            int length = Array.getLength(value);
+            Object copy = Array.newInstance(value.getClass().getComponentType(), length);
+            System.arraycopy(value, 0, copy, 0, length);
+            return copy;
+        }
+        if (value instanceof Date) {
+            return ((Date) value).clone();
+        }
+        if (value instanceof Calendar) {
+            return ((Calendar) value).clone();
+        }
+        return value;
+    }
+
+    private void expunge() {
+        Reference<?> ref;
+        while ((ref = queue.poll()) != null) {
+            snapshots.remove(ref);
+        }
+    }
+
+    /**
+     * 一个实体的快照.
+     */
+    private static final class Snapshot {
+
+        private final TableBean table;
+        private final Object[] values;
+        private final BitSet loaded;
+
+        Snapshot(TableBean table, Object[] values, BitSet loaded) {
+            this.table = table;
+            this.values = values;
+            this.loaded = loaded;
+        }
+    }
+
+    /**
+     * 按对象标识比较的弱引用.
+     */
+    private static final class IdentityKey extends WeakReference<Object> {
+
+        private final int hash;
+
+        IdentityKey(Object referent, ReferenceQueue<Object> queue) {
+            super(referent, queue);
+            this.hash = System.identityHashCode(referent);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof IdentityKey)) {
+                return false;
+            }
+            Object referent = get();
+            return referent != null && referent == ((IdentityKey) obj).get();
+        }
+    }
+}
@@ -16,14 +16,22 @@
  */
 package org.jplus.hyb.database.crud;
 
+import org.jplus.hyb.database.bean.ColumnarResult;
 import org.jplus.hyb.database.bean.FieldColumn;
 import org.jplus.hyb.database.bean.TableBean;
 import org.jplus.hyb.database.config.ConfigCenter;
+import org.jplus.hyb.database.id.IdGenerator;
+import org.jplus.hyb.database.metrics.MetricsRegistry;
+import org.jplus.hyb.database.sql.Condition;
+import org.jplus.hyb.database.sql.Delete;
+import org.jplus.hyb.database.sql.Insert;
+import org.jplus.hyb.database.sql.Select;
+import org.jplus.hyb.database.sql.Update;
+import org.jplus.hyb.database.sql.ValuesStatement;
 import org.jplus.hyb.database.transaction.IDbManager;
 import org.jplus.hyb.database.util.CacheFactory;
-import org.jplus.hyb.database.util.GetSql;
 import org.jplus.hyb.database.util.Pager;
-import org.jplus.util.ConverString;
+import org.jplus.util.ConverterRegistry;
 import org.jplus.util.FieldUtil;
 import org.jplus.util.NumberUtils;
 import org.jplus.util.Reflections;
@@ -37,11 +45,15 @@ import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import org.jplus.util.IgnoreCaseMap;
+import org.jplus.util.CaseInsensitiveMap;
 
 /**
  * 数据库持久层框架核心类之一 此类用于给定POJO类的数据库操作.
@@ -65,6 +77,14 @@ public class Hyberbin<T> extends BaseDbTool {
     private List<FieldColumn> nuList;
     /**主键字段名*/
     private String primaryKey="id";
+    /** 生成主键的序列名 */
+    private String sequenceName;
+    /** 主键生成器名 */
+    private String generator;
+    /** 乐观锁版本号字段 */
+    private FieldColumn versionColumn;
+    /** 表信息 */
+    private TableBean tableBean;
     /**是否解析父类的字段*/
     private boolean superField=true;
 
@@ -75,10 +95,13 @@ public class Hyberbin<T> extends BaseDbTool {
     private void ini(T po) {
         if (po != null) {
             try {
-                TableBean tableBean = CacheFactory.MINSTANCE.getHyberbin(po.getClass(),superField);
+                this.tableBean = CacheFactory.MINSTANCE.getHyberbin(po.getClass(),superField);
                 this.po = po;
                 this.tableName = tableBean.getTableName();
                 this.primaryKey=tableBean.getPrimaryKey();
+                this.sequenceName = tableBean.getSequenceName();
+                this.generator = tableBean.getGenerator();
+                this.versionColumn = tableBean.getVersionColumn();
                 fields = new ArrayList<FieldColumn>(tableBean.getColumns());
             } catch (SecurityException ex) {
                 log.error("初始化错误", ex);
@@ -207,22 +230,31 @@ public class Hyberbin<T> extends BaseDbTool {
     }
 
     /**
-     * 查询的时候获得所有字段名.
+     * 主键字段对应的列名.
      * @return
      */
-    private String getFieldList() {
-        char[] quote = adapter.getQuote();
-        if (fields != null) {
-            StringBuilder fieldlist = new StringBuilder();
-            for (FieldColumn field : fields) {
-                if (!field.isIgnore()) {
-                    fieldlist.append(",").append(quote[0]).append(field.getColumn()).append(quote[1]);
-                }
+    private String getPrimaryColumn() {
+        for (FieldColumn field : fields) {
+            if (field.getField() != null && field.getField().getName().equals(primaryKey)) {
+                return field.getColumn();
             }
-            return fieldlist.substring(1);
-        } else {
-            return "";
         }
+        return primaryKey;
+    }
+
+    /**
+     * 查询表中所有字段的语句.
+     * @param table 表名,原样输出
+     * @return
+     */
+    private Select selectFields(String table) {
+        List<String> names = new ArrayList<String>(fields.size());
+        for (FieldColumn field : fields) {
+            if (!field.isIgnore()) {
+                names.add(field.getColumn());
+            }
+        }
+        return Select.from(table).columns(names.toArray(new String[names.size()]));
     }
 
     /**
@@ -276,15 +308,28 @@ public class Hyberbin<T> extends BaseDbTool {
         List list = new ArrayList(0);
         try {
             while (rs != null && rs.next()) {
-                list.add(loadData(table.getClass().newInstance(), rs));
+                list.add(track(loadData(table.getClass().newInstance(), rs)));
             }
         } catch (Exception ex) {
             throw new IllegalArgumentException("loadData error!", ex);
         }
+        MetricsRegistry.INSTANCE.add(MetricsRegistry.CRUD_ROWS_MAPPED, tableName, list.size());
         return list;
     }
     
 
+    /**
+     * 开启了快照时记录查询出来的实体.
+     * @param row 查询出来的实体
+     * @return
+     */
+    private Object track(Object row) {
+        if (tableBean != null && ConfigCenter.INSTANCE.isDirtyTracking()) {
+            DirtyTracker.INSTANCE.snapshot(row, tableBean, fields);
+        }
+        return row;
+    }
+
     /**
      * 将数据库中取到的值存入POJO类.
      * @param table POJO类.
@@ -294,12 +339,19 @@ public class Hyberbin<T> extends BaseDbTool {
     private void loadDataToPojo(Object table, FieldColumn fieldColumn, ResultSet rs) throws SQLException {
         log.trace("in loadDataToPojo ");
         Class type = fieldColumn.getField().getType();
-        Object getResultSet = rs.getObject(fieldColumn.getColumn(),type);
-        if(getResultSet==null){
+        Object getResultSet = null;
+        if (fieldColumn.isJavaTime()) {
+            try {
+                getResultSet = rs.getObject(fieldColumn.getColumn(), type);
+            } catch (SQLException ex) {//驱动不支持按该类型读取,比如旧驱动读取LocalDateTime
+                log.trace("getObject by type not supported:{}", type, ex);
+            }
+        }
+        if (getResultSet == null) {
             getResultSet = rs.getObject(fieldColumn.getColumn());
         }
         if (getResultSet != null && !type.isAssignableFrom(getResultSet.getClass())) {
-            getResultSet = ConverString.asType(type, getResultSet);
+            getResultSet = ConverterRegistry.INSTANCE.convert(getResultSet, type);
         }
         log.trace("loaded Data object:{},field:{},column:{},value:{}", table.getClass().getSimpleName(), fieldColumn.getField().getName(), fieldColumn.getColumn(), getResultSet);
         if (fieldColumn.isHasGetterAndSetter()) {
@@ -318,31 +370,32 @@ public class Hyberbin<T> extends BaseDbTool {
     }
 
     /**
-     * 根据PO中的信息自动拼接生成SQL语句.
+     * 根据PO中的信息自动设置语句中的字段.
+     * @param gs 插入或更新语句
+     * @param skip 不出现在语句中的字段,可以为空
      * @return
      */
-    private GetSql getSql() {
-        GetSql gs = new GetSql();
+    private <S extends ValuesStatement<S>> S setFields(S gs, FieldColumn skip) {
         for (FieldColumn field : fields) {
-            if(field.isIgnore())continue;
+            if(field.isIgnore()||field.equals(skip))continue;
             Object value = field.getField().isAnnotationPresent(JoinColumn.class)
                     ? FieldUtil.getFatherFieldValue(getPo(), field.getField().getName())
                     : FieldUtil.getFieldValue(getPo(), field.getField().getName());
             String name = field.getColumn();
             if (value != null) {
                 adapter.addParameter(value);
-                gs.add(getQuotedItem(name), "?", "");//生成部分sql语句
+                gs.set(name);
                 if (nuList != null && nuList.size() > 0) {
                     nuList.remove(field);
                 }
             } else if (value == null && updateNull) {
-                gs.add(getQuotedItem(name), "null", "");//生成部分sql语句
+                gs.set(name, "null");
             }
         }
         if (nuList != null && nuList.size() > 0) {
             for (FieldColumn nullF : nuList) {
-                if (fields.contains(nullF)) {
-                    gs.add(getQuotedItem(nullF.getColumn()), "null", "");//生成部分sql语句
+                if (fields.contains(nullF) && !nullF.equals(skip)) {
+                    gs.set(nullF.getColumn(), "null");
                 }
             }
         }
@@ -410,14 +463,234 @@ public class Hyberbin<T> extends BaseDbTool {
      */
     public int insert(String primarkey) throws SQLException {
         log.trace("in insert");
-        removeField(primarkey);
-        GetSql gs = getSql();
-        String sql = gs.getInsert(tableName);//生成sql语句
-        int update = adapter.update(getConnection(), sql);
+        MetricsRegistry.INSTANCE.increment(MetricsRegistry.CRUD_UPDATE, tableName);
+        String autoKey = generateKeys(primarkey, Collections.singletonList(getPo())) ? null : primarkey;
+        removeField(autoKey);
+        initVersion(getPo());
+        Insert gs = setFields(Insert.into(tableName), null);
+        int update;
+        if (autoKey == null || "".equals(autoKey.trim())) {
+            String sql = gs.toSql(adapter);//生成sql语句
+            update = execute(conn -> adapter.update(conn, sql));
+        } else {
+            FieldColumn key = getKeyField(autoKey, gs);
+            String sql = gs.toSql(adapter);//生成sql语句
+            List<Object> keys = new ArrayList<Object>(1);
+            update = execute(conn -> {
+                keys.clear();
+                return adapter.insert(conn, sql, key.getColumn(), keys);
+            });
+            if (!keys.isEmpty()) {
+                setConvertedValue(getPo(), key, keys.get(0));
+            }
+        }
+        tx.closeConnection();
+        return update;
+    }
+
+    /**
+     * 批量插入. 用一条预处理语句批量执行,每一行都包含除主键外的所有字段,值为空的字段也会写入空值.
+     * 主键注册了生成器时在客户端生成主键,否则数据库生成的主键会写回每一个对象;如果驱动只返回了部分主键(如sqlite只返回最后一行)则不写回.
+     * @param primarkey 数据库自动生成的主键，可以为空
+     * @param list 要插入的数据
+     * @return 每一行影响的条数
+     * @throws java.sql.SQLException
+     */
+    public int[] insertBatch(String primarkey, List<T> list) throws SQLException {
+        log.trace("in insertBatch");
+        if (list.isEmpty()) {
+            return new int[0];
+        }
+        MetricsRegistry.INSTANCE.increment(MetricsRegistry.CRUD_UPDATE, tableName);
+        String autoKey = generateKeys(primarkey, list) ? null : primarkey;
+        removeField(autoKey);
+        List<String> columns = null;
+        for (T row : list) {
+            initVersion(row);
+            columns = addRowParameters(row, true);
+            adapter.addBatch();
+        }
+        Insert gs = Insert.into(tableName);
+        for (String column : columns) {
+            gs.set(column);
+        }
+        int[] update;
+        if (autoKey == null || "".equals(autoKey.trim())) {
+            String sql = gs.toSql(adapter);
+            update = execute(conn -> adapter.updateBatch(conn, sql));
+        } else {
+            FieldColumn key = getKeyField(autoKey, gs);
+            String sql = gs.toSql(adapter);
+            List<Object> keys = new ArrayList<Object>(list.size());
+            update = execute(conn -> {
+                keys.clear();
+                return adapter.insertBatch(conn, sql, key.getColumn(), keys);
+            });
+            if (keys.size() == list.size()) {
+                for (int i = 0; i < keys.size(); i++) {
+                    setConvertedValue(list.get(i), key, keys.get(i));
+                }
+            } else if (!keys.isEmpty()) {
+                log.debug("驱动返回了{}个主键,插入了{}行,不写回主键", keys.size(), list.size());
+            }
+        }
         tx.closeConnection();
         return update;
     }
 
+    /**
+     * 主键字段注册了生成器时,给主键为空的对象生成主键.
+     * @param primarkey 主键字段名
+     * @param rows 要插入的对象
+     * @return 是否由生成器生成主键
+     * @throws SQLException 生成器预留主键段出错
+     */
+    private boolean generateKeys(String primarkey, List<?> rows) throws SQLException {
+        if (primarkey == null || !primarkey.equals(primaryKey)) {
+            return false;
+        }
+        IdGenerator idGenerator = CacheFactory.MINSTANCE.getIdGenerator(generator);
+        if (idGenerator == null) {
+            return false;
+        }
+        FieldColumn key = FieldUtil.getFieldColumnByCache(FieldUtil.getField(getPo().getClass(), primarkey));
+        for (Object row : rows) {
+            if (FieldUtil.getFieldValue(row, key.getField().getName()) == null) {
+                setConvertedValue(row, key, idGenerator.nextId());
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 大批量导入. 用本数据库最快的原生方式写入所有字段(包括值为空的字段),
+     * mysql用LOAD DATA LOCAL INFILE,sqlite在一个事务中关闭同步写盘,oracle用数组绑定和直接路径插入,其它数据库用批处理.
+     * 数据从迭代器中边读边写,内存占用不随行数增长.不取回生成的主键,不检查版本号.
+     * @param rows 要导入的数据
+     * @return 导入的行数
+     * @throws java.sql.SQLException
+     */
+    public long bulkLoad(Iterator<T> rows) throws SQLException {
+        log.trace("in bulkLoad");
+        MetricsRegistry.INSTANCE.increment(MetricsRegistry.CRUD_UPDATE, tableName);
+        List<FieldColumn> columns = new ArrayList<FieldColumn>(fields.size());
+        for (FieldColumn field : fields) {
+            if (!field.isIgnore()) {
+                columns.add(field);
+            }
+        }
+        long count = adapter.getBulkLoader().load(getConnection(), getQuotedItem(tableName), columns, rows);
+        tx.closeConnection();
+        return count;
+    }
+
+    /**
+     * 获取自动生成的主键字段.主键用序列生成时在插入语句中加入序列的下一个值.
+     * @param primarkey 主键字段名
+     * @param gs 插入语句
+     * @return
+     */
+    private FieldColumn getKeyField(String primarkey, Insert gs) {
+        FieldColumn key = FieldUtil.getFieldColumnByCache(FieldUtil.getField(getPo().getClass(), primarkey));
+        if (sequenceName != null && primarkey.equals(primaryKey)) {
+            gs.set(key.getColumn(), adapter.getSequenceNextValue(sequenceName));
+        }
+        return key;
+    }
+
+    /**
+     * 把值转换成字段的类型后写回对象.
+     * @param row 表的实体类
+     * @param key 字段
+     * @param value 值
+     */
+    private void setConvertedValue(Object row, FieldColumn key, Object value) {
+        Class type = key.getField().getType();
+        Object converted = ConverterRegistry.INSTANCE.convert(value, type);
+        FieldUtil.setFieldValue(row, key.getField().getName(), converted);
+    }
+
+    /**
+     * 插入或更新一条数据. 按指定字段判断记录是否存在,存在则更新,不存在则插入.
+     * 各数据库分别生成insert ... on duplicate key update或merge语句,sqlite先更新,没有更新到记录时再插入,
+     * 指定字段在数据库中需要有唯一约束. 默认情况下不包含值为空的字段.
+     * hyberbin.upsert("id");
+     * @param key 判断记录是否存在的字段名
+     * @return 影响的条数
+     * @throws java.sql.SQLException
+     */
+    public int upsert(String key) throws SQLException {
+        log.trace("in upsert");
+        MetricsRegistry.INSTANCE.increment(MetricsRegistry.CRUD_UPDATE, tableName);
+        List<String> columns = addRowParameters(getPo(), updateNull);
+        List<String> keys = getKeyColumns(key, columns);
+        int update = execute(conn -> adapter.upsert(conn, tableName, columns, keys));
+        tx.closeConnection();
+        return update;
+    }
+
+    /**
+     * 批量插入或更新. 用一条预处理语句批量执行,每一行都包含所有字段,值为空的字段也会写入空值.
+     * @param key 判断记录是否存在的字段名
+     * @param list 要写入的数据
+     * @return 每一行影响的条数
+     * @throws java.sql.SQLException
+     */
+    public int[] upsertBatch(String key, List<T> list) throws SQLException {
+        log.trace("in upsertBatch");
+        if (list.isEmpty()) {
+            return new int[0];
+        }
+        MetricsRegistry.INSTANCE.increment(MetricsRegistry.CRUD_UPDATE, tableName);
+        List<String> columns = null;
+        for (T row : list) {
+            columns = addRowParameters(row, true);
+            adapter.addBatch();
+        }
+        List<String> keyColumns = getKeyColumns(key, columns);
+        List<String> batchColumns = columns;
+        int[] update = execute(conn -> adapter.upsertBatch(conn, tableName, batchColumns, keyColumns));
+        tx.closeConnection();
+        return update;
+    }
+
+    /**
+     * 把一行数据的字段值加入预处理参数.
+     * @param row 表的实体类
+     * @param withNull 是否包含值为空的字段
+     * @return 加入参数的字段名
+     */
+    private List<String> addRowParameters(Object row, boolean withNull) {
+        List<String> columns = new ArrayList<String>(fields.size());
+        for (FieldColumn field : fields) {
+            if (field.isIgnore()) {
+                continue;
+            }
+            Object value = field.getField().isAnnotationPresent(JoinColumn.class)
+                    ? FieldUtil.getFatherFieldValue(row, field.getField().getName())
+                    : FieldUtil.getFieldValue(row, field.getField().getName());
+            if (value != null || withNull) {
+                adapter.addParameter(value);
+                columns.add(field.getColumn());
+            }
+        }
+        return columns;
+    }
+
+    /**
+     * 获取upsert的判断字段.
+     * @param key 字段名
+     * @param columns 本次写入的字段
+     * @return
+     */
+    private List<String> getKeyColumns(String key, List<String> columns) {
+        String column = FieldUtil.getFieldColumnByCache(FieldUtil.getField(getPo().getClass(), key)).getColumn();
+        if (!columns.contains(column)) {
+            throw new IllegalArgumentException("upsert key:" + key + " has no value!");
+        }
+        return Collections.singletonList(column);
+    }
+
     /**
      * 数据库更新. 此方法用于对数据库单表的修改操作，默认情况下不修改字段值为空的字段. 传入的参数是字段名而不是字段值. Ex: News
      * news=new News();//POJO类，源自于数据库. Hyberbin hyberbin=new
@@ -432,18 +705,188 @@ public class Hyberbin<T> extends BaseDbTool {
      */
     public int updateByKey(String key) throws SQLException {
         log.trace("in updateByKey");
+        MetricsRegistry.INSTANCE.increment(MetricsRegistry.CRUD_UPDATE, tableName);
         removeField(key);
         FieldColumn fieldColumn = FieldUtil.getFieldColumnByCache(FieldUtil.getField(getPo().getClass(), key));
-        GetSql gs = getSql();//自动生成sql语句
+        Update gs = setFields(Update.table(tableName), versionColumn);//自动生成sql语句
         Object PKvalue = FieldUtil.getFieldValue(getPo(), key);
+        Object version = versionColumn == null ? null : getVersion(getPo());
         adapter.addParameter(PKvalue);
-        gs.add(getQuotedItem(fieldColumn.getColumn()), "?", "where");//生成sql的where部分
-        String sql = gs.getUpdate(tableName);//生成sql语句
-        int update = adapter.update(getConnection(), sql);
+        if (versionColumn != null) {
+            adapter.addParameter(version);
+        }
+        String sql = whereKey(gs, fieldColumn).toSql(adapter);//生成sql语句
+        int update = execute(conn -> adapter.update(conn, sql));
         tx.closeConnection();
+        afterUpdate(getPo(), update, PKvalue, version);
         return update;
     }
 
+    /**
+     * 只更新查询出来后修改过的字段. 需要开启ConfigCenter.INSTANCE.setDirtyTracking(true),
+     * 用showOne、showList等方法查询出来的实体会记录快照,更新时只有和快照不同的字段出现在语句中,
+     * 值改为空的字段也会更新为空.没有修改时不执行语句,返回0.
+     * 实体没有快照时和updateByKey相同.相同修改字段组合的语句会被缓存.
+     * hyberbin.updateChanged("id");
+     * @param key 更新条件字段
+     * @return 影响的条数
+     * @throws java.sql.SQLException
+     */
+    public int updateChanged(String key) throws SQLException {
+        log.trace("in updateChanged");
+        BitSet changed = DirtyTracker.INSTANCE.getChanged(getPo());
+        if (changed == null) {
+            log.debug("no snapshot of {},update by key", tableName);
+            return updateByKey(key);
+        }
+        FieldColumn keyColumn = FieldUtil.getFieldColumnByCache(FieldUtil.getField(getPo().getClass(), key));
+        changed.clear(tableBean.getColumnIndex(keyColumn));
+        if (versionColumn != null) {
+            changed.clear(tableBean.getColumnIndex(versionColumn));
+        }
+        if (changed.isEmpty()) {
+            return 0;
+        }
+        MetricsRegistry.INSTANCE.increment(MetricsRegistry.CRUD_UPDATE, tableName);
+        List<FieldColumn> columns = tableBean.getColumns();
+        for (int i = changed.nextSetBit(0); i >= 0; i = changed.nextSetBit(i + 1)) {
+            adapter.addParameter(FieldUtil.getColumnValue(getPo(), columns.get(i)));
+        }
+        Object PKvalue = FieldUtil.getFieldValue(getPo(), key);
+        adapter.addParameter(PKvalue);
+        Object version = null;
+        if (versionColumn != null) {
+            version = getVersion(getPo());
+            adapter.addParameter(version);
+        }
+        List<Object> shape = Arrays.asList(adapter.getClass(), tableName, keyColumn.getColumn(), changed);
+        String cached = tableBean.getUpdateCache().get(shape);
+        if (cached == null) {
+            Update gs = Update.table(tableName);
+            for (int i = changed.nextSetBit(0); i >= 0; i = changed.nextSetBit(i + 1)) {
+                gs.set(columns.get(i).getColumn());
+            }
+            cached = whereKey(gs, keyColumn).toSql(adapter);
+            tableBean.getUpdateCache().putIfAbsent(shape, cached);
+        }
+        String sql = cached;
+        int update = execute(conn -> adapter.update(conn, sql));
+        tx.closeConnection();
+        afterUpdate(getPo(), update, PKvalue, version);
+        return update;
+    }
+
+    /**
+     * 给更新语句加上版本号自增和按主键、版本号更新的条件.
+     * @param gs 更新语句
+     * @param keyColumn 更新条件字段
+     * @return
+     */
+    private Update whereKey(Update gs, FieldColumn keyColumn) {
+        Condition where = Condition.eq(keyColumn.getColumn());
+        if (versionColumn != null) {
+            gs.increment(versionColumn.getColumn(), 1);
+            where = where.and(Condition.eq(versionColumn.getColumn()));
+        }
+        return gs.where(where);
+    }
+
+    /**
+     * 更新一行后检查版本号并刷新快照.
+     * @param row 表的实体类
+     * @param update 影响的条数
+     * @param key 主键值
+     * @param version 更新前的版本号,没有版本号字段时为空
+     * @throws OptimisticLockException 版本号不匹配
+     */
+    private void afterUpdate(Object row, int update, Object key, Object version) throws OptimisticLockException {
+        if (versionColumn != null) {
+            if (update == 0) {
+                throw new OptimisticLockException(tableName, key, version);
+            }
+            setConvertedValue(row, versionColumn, ((Number) version).longValue() + 1);
+        }
+        DirtyTracker.INSTANCE.refresh(row);
+    }
+
+    /**
+     * 按指定字段批量更新. 用一条预处理语句批量执行,每一行都更新所有字段,值为空的字段也会写入空值.
+     * 有@Version字段时每一行都检查版本号,成功的行版本号加1;有行没有更新到时抛出OptimisticLockException,
+     * 这时其它行已经执行,需要在事务中调用才能整体回滚.
+     * @param key 更新条件字段
+     * @param list 要更新的数据
+     * @return 每一行影响的条数
+     * @throws java.sql.SQLException
+     */
+    public int[] updateBatch(String key, List<T> list) throws SQLException {
+        log.trace("in updateBatch");
+        if (list.isEmpty()) {
+            return new int[0];
+        }
+        MetricsRegistry.INSTANCE.increment(MetricsRegistry.CRUD_UPDATE, tableName);
+        FieldColumn keyColumn = FieldUtil.getFieldColumnByCache(FieldUtil.getField(getPo().getClass(), key));
+        Update gs = Update.table(tableName);
+        Object[] versions = new Object[list.size()];
+        for (int i = 0; i < list.size(); i++) {
+            T row = list.get(i);
+            for (FieldColumn field : fields) {
+                if (field.isIgnore() || field.equals(keyColumn) || field.equals(versionColumn)) {
+                    continue;
+                }
+                adapter.addParameter(field.getField().isAnnotationPresent(JoinColumn.class)
+                        ? FieldUtil.getFatherFieldValue(row, field.getField().getName())
+                        : FieldUtil.getFieldValue(row, field.getField().getName()));
+                if (i == 0) {
+                    gs.set(field.getColumn());
+                }
+            }
+            adapter.addParameter(FieldUtil.getFieldValue(row, key));
+            if (versionColumn != null) {
+                versions[i] = getVersion(row);
+                adapter.addParameter(versions[i]);
+            }
+            adapter.addBatch();
+        }
+        String sql = whereKey(gs, keyColumn).toSql(adapter);
+        int[] update = execute(conn -> adapter.updateBatch(conn, sql));
+        tx.closeConnection();
+        OptimisticLockException failed = null;
+        for (int i = 0; i < update.length; i++) {
+            try {//SUCCESS_NO_INFO也认为成功
+                afterUpdate(list.get(i), update[i], FieldUtil.getFieldValue(list.get(i), key), versions[i]);
+            } catch (OptimisticLockException ex) {
+                failed = failed == null ? ex : failed;
+            }
+        }
+        if (failed != null) {
+            throw failed;
+        }
+        return update;
+    }
+
+    /**
+     * 获取对象的版本号.
+     * @param row 表的实体类
+     * @return
+     */
+    private Object getVersion(Object row) {
+        Object version = FieldUtil.getFieldValue(row, versionColumn.getField().getName());
+        if (!(version instanceof Number)) {
+            throw new IllegalArgumentException("version:" + versionColumn.getField().getName() + " must be a number but was:" + version);
+        }
+        return version;
+    }
+
+    /**
+     * 插入时版本号为空的初始化为0.
+     * @param row 表的实体类
+     */
+    private void initVersion(Object row) {
+        if (versionColumn != null && FieldUtil.getFieldValue(row, versionColumn.getField().getName()) == null) {
+            setConvertedValue(row, versionColumn, 0L);
+        }
+    }
+
     /**
      * 给指定字段指定条件的语句自增. 此方法用于给指定字段指定条件的语句自动加1操作，例如用户看一则新闻后点击量自动加1;
      * 参数where中应该包含“where”关键字. hyberbin.autoUp("clickTimes","where id=?");
@@ -454,9 +897,10 @@ public class Hyberbin<T> extends BaseDbTool {
      */
     public int autoUp(String field, String where) throws SQLException {
         log.trace("in autoUp");
+        MetricsRegistry.INSTANCE.increment(MetricsRegistry.CRUD_UPDATE, tableName);
         FieldColumn fieldColumn = FieldUtil.getFieldColumnByCache(FieldUtil.getField(getPo().getClass(), field));
-        String sql = "update  " + getQuotedItem(tableName) + " set " + getQuotedItem(fieldColumn.getColumn()) + "=" + getQuotedItem(field) + "+1 " + where;
-        int update = adapter.update(getConnection(), sql);
+        String sql = Update.table(getQuotedItem(tableName)).increment(fieldColumn.getColumn(), 1).where(where).toSql(adapter);
+        int update = execute(conn -> adapter.update(conn, sql));
         tx.closeConnection();
         return update;
     }
@@ -469,8 +913,9 @@ public class Hyberbin<T> extends BaseDbTool {
      */
     public int delete(String where) throws SQLException {
         log.trace("in delete");
-        String sql = "delete from " + getQuotedItem(tableName) + " " + where;
-        int update = adapter.update(getConnection(), sql);
+        MetricsRegistry.INSTANCE.increment(MetricsRegistry.CRUD_UPDATE, tableName);
+        String sql = Delete.from(getQuotedItem(tableName)).where(where).toSql(adapter);
+        int update = execute(conn -> adapter.update(conn, sql));
         tx.closeConnection();
         return update;
     }
@@ -484,12 +929,40 @@ public class Hyberbin<T> extends BaseDbTool {
      */
     public int deleteByKey(String key) throws SQLException {
         log.trace("in deleteByKey");
+        MetricsRegistry.INSTANCE.increment(MetricsRegistry.CRUD_UPDATE, tableName);
         FieldColumn fieldColumn = FieldUtil.getFieldColumnByCache(FieldUtil.getField(getPo().getClass(), key));
-        String sql = "delete from " + getQuotedItem(tableName) + " where " + fieldColumn.getColumn() + " =?";
+        String sql = Delete.from(getQuotedItem(tableName)).where(Condition.eq(fieldColumn.getColumn())).toSql(adapter);
         Object PKvalue = FieldUtil.getFieldValue(getPo(), key);
         adapter.addParameter(PKvalue);
-        int update = adapter.update(getConnection(), sql);
+        int update = execute(conn -> adapter.update(conn, sql));
+        tx.closeConnection();
+        return update;
+    }
+
+    /**
+     * 根据键值批量删除. 用一条预处理语句批量执行,每一行按键值删除一条数据.
+     * @param key 键值
+     * @param list 要删除的数据
+     * @return 每一行影响的条数
+     * @throws java.sql.SQLException
+     */
+    public int[] deleteBatch(String key, List<T> list) throws SQLException {
+        log.trace("in deleteBatch");
+        if (list.isEmpty()) {
+            return new int[0];
+        }
+        MetricsRegistry.INSTANCE.increment(MetricsRegistry.CRUD_UPDATE, tableName);
+        FieldColumn fieldColumn = FieldUtil.getFieldColumnByCache(FieldUtil.getField(getPo().getClass(), key));
+        String sql = Delete.from(getQuotedItem(tableName)).where(Condition.eq(fieldColumn.getColumn())).toSql(adapter);
+        for (T row : list) {
+            adapter.addParameter(FieldUtil.getFieldValue(row, key));
+            adapter.addBatch();
+        }
+        int[] update = execute(conn -> adapter.updateBatch(conn, sql));
         tx.closeConnection();
+        for (T row : list) {
+            DirtyTracker.INSTANCE.forget(row);
+        }
         return update;
     }
 
@@ -504,11 +977,13 @@ public class Hyberbin<T> extends BaseDbTool {
      */
     public T showOne(String sql,Object... parmeters) throws SQLException {
         log.trace("in showOne");
+        MetricsRegistry.INSTANCE.increment(MetricsRegistry.CRUD_QUERY, tableName);
         addParmeter(parmeters);
-        ResultSet rs = adapter.findSingle(getConnection(), sql);//执行查询
+        ResultSet rs = executeRead(conn -> adapter.findSingle(conn, sql));//执行查询
         try {
             if (rs != null && rs.next()) {
-                loadData(getPo(), rs);
+                track(loadData(getPo(), rs));
+                MetricsRegistry.INSTANCE.increment(MetricsRegistry.CRUD_ROWS_MAPPED, tableName);
             } else {
                 po = (T) getPo().getClass().newInstance();//创建实体
             }
@@ -535,7 +1010,7 @@ public class Hyberbin<T> extends BaseDbTool {
         Object value = FieldUtil.getFieldValue(getPo(), key);
         FieldColumn fieldColumn = FieldUtil.getFieldColumnByCache(FieldUtil.getField(getPo().getClass(), key));
         adapter.addParameter(value);
-        String sql = "select " + getFieldList() + " from " + getQuotedItem(tableName) + " where " + fieldColumn.getColumn() + "=?";
+        String sql = selectFields(getQuotedItem(tableName)).where(Condition.eq(fieldColumn.getColumn())).toSql(adapter);
         return showOne(sql);
     }
 
@@ -546,7 +1021,7 @@ public class Hyberbin<T> extends BaseDbTool {
      */
     public List<T> showAll() throws SQLException {
         log.trace("in showAll");
-        String sql = "select " + getFieldList() + " from " + tableName;
+        String sql = selectFields(tableName).toSql(adapter);
         return showList(sql);
     }
 
@@ -558,7 +1033,7 @@ public class Hyberbin<T> extends BaseDbTool {
      */
     public List<T> showAll(String where) throws SQLException {
         log.trace("in showAll (String where) ");
-        String sql = "select " + getFieldList() + " from " + tableName + " " + where;
+        String sql = selectFields(tableName).where(where).toSql(adapter);
         return showList(sql);
     }
 
@@ -571,7 +1046,8 @@ public class Hyberbin<T> extends BaseDbTool {
      */
     public int getCount(String sql) throws SQLException {
         log.trace("in getCount");
-        int count = NumberUtils.parseInt(adapter.getCount(getConnection(), sql));
+        MetricsRegistry.INSTANCE.increment(MetricsRegistry.CRUD_QUERY, tableName);
+        int count = NumberUtils.parseInt(executeRead(conn -> adapter.getCount(conn, sql)));
         tx.closeConnection();
         return count;
     }
@@ -585,11 +1061,12 @@ public class Hyberbin<T> extends BaseDbTool {
      */
     public void showByPage(String where, Pager pager) throws SQLException {
         log.trace("in showByPage");
-        String sql = "select " + getFieldList() + "  from " + getQuotedItem(tableName) + " " + where;
-        ResultSet rs = adapter.findPageList(getConnection(), sql, pager);
+        MetricsRegistry.INSTANCE.increment(MetricsRegistry.CRUD_QUERY, tableName);
+        Select select = selectFields(getQuotedItem(tableName)).where(where).key(getPrimaryColumn());
+        ResultSet rs = executeRead(conn -> adapter.findPageList(conn, select, pager));
         List list = loadListData(getPo(), rs);
         tx.closeConnection();
-        pager.setItems(NumberUtils.parseInt(adapter.getCount(getConnection(), sql)));
+        pager.setItems(NumberUtils.parseInt(executeRead(conn -> adapter.getCount(conn, select))));
         pager.setData(list);
         tx.closeConnection();
     }
@@ -605,7 +1082,8 @@ public class Hyberbin<T> extends BaseDbTool {
     public List<T> showList(String sql,Object... parmeters) throws SQLException {
         addParmeter(parmeters);
         log.trace("in showList");
-        ResultSet rs = adapter.findList(getConnection(), sql);//执行查询
+        MetricsRegistry.INSTANCE.increment(MetricsRegistry.CRUD_QUERY, tableName);
+        ResultSet rs = executeRead(conn -> adapter.findList(conn, sql));//执行查询
         List list = loadListData(getPo(), rs);
         tx.closeConnection();
         return list;
@@ -613,6 +1091,7 @@ public class Hyberbin<T> extends BaseDbTool {
 
     /**
      * 将查询的结果存放到List中list的每个节点都是Map.
+     * 每行是CaseInsensitiveMap,列名不区分大小写且保持数据库返回的写法,按列的顺序遍历,可以序列化.
      * @param rs 查询的结果.
      * @return
      * @throws SQLException
@@ -623,17 +1102,27 @@ public class Hyberbin<T> extends BaseDbTool {
             ResultSetMetaData metaData = rs.getMetaData();
             int columnCount = metaData.getColumnCount();
             fields = new ArrayList<FieldColumn>(columnCount);
+            CaseInsensitiveMap<Object> template = new CaseInsensitiveMap<Object>(columnCount);
             for (int i = 1; i <= columnCount; i++) {
                 fields.add(new FieldColumn(null, metaData.getColumnName(i), 0, false, true));
+                template.put(metaData.getColumnName(i), null);
             }
             while (rs.next()) {
-                Map<String, Object> map = new IgnoreCaseMap<String, Object>();
-                for (int i = 1; i <= columnCount; i++) {
-                    map.put(metaData.getColumnName(i), rs.getObject(i));
+                Map<String, Object> map = new CaseInsensitiveMap<Object>(template);//所有行共用列名
+                if (template.size() == columnCount) {
+                    int i = 1;
+                    for (Map.Entry<String, Object> entry : map.entrySet()) {
+                        entry.setValue(rs.getObject(i++));
+                    }
+                } else {//有重名的列,后面的覆盖前面的
+                    for (int i = 1; i <= columnCount; i++) {
+                        map.put(metaData.getColumnName(i), rs.getObject(i));
+                    }
                 }
                 list.add(map);
             }
         }
+        MetricsRegistry.INSTANCE.add(MetricsRegistry.CRUD_ROWS_MAPPED, tableName, list.size());
         return list;
     }
 
@@ -646,7 +1135,8 @@ public class Hyberbin<T> extends BaseDbTool {
      */
     public List<Map> getMapList(String sql,Object... parmeters) throws SQLException {
         addParmeter(parmeters);
-        List<Map> mapList = getMapList(adapter.findList(getConnection(), sql));
+        MetricsRegistry.INSTANCE.increment(MetricsRegistry.CRUD_QUERY, tableName);
+        List<Map> mapList = getMapList(executeRead(conn -> adapter.findList(conn, sql)));
         tx.closeConnection();
         return mapList;
     }
@@ -660,10 +1150,46 @@ public class Hyberbin<T> extends BaseDbTool {
      */
     public void getMapList(String sql, Pager pager,Object... parmeters) throws SQLException {
         addParmeter(parmeters);
-        ResultSet findPageList = adapter.findPageList(getConnection(), sql, pager);
+        MetricsRegistry.INSTANCE.increment(MetricsRegistry.CRUD_QUERY, tableName);
+        ResultSet findPageList = executeRead(conn -> adapter.findPageList(conn, sql, pager));
         pager.setData(getMapList(findPageList));
         tx.closeConnection();
-        pager.setItems(adapter.getCount(getConnection(), sql));
+        pager.setItems(executeRead(conn -> adapter.getCount(conn, sql)));
+        tx.closeConnection();
+    }
+
+    /**
+     * 将查询的结果按列存放,适合行数很多的报表查询.
+     * 结果可以当作List&lt;Map&gt;使用,但每行的Map是只读视图.
+     * @param sql 完整的SQL语句.
+     * @param parmeters
+     * @return 按列存放的结果
+     * @throws SQLException
+     */
+    public ColumnarResult getColumnList(String sql, Object... parmeters) throws SQLException {
+        addParmeter(parmeters);
+        MetricsRegistry.INSTANCE.increment(MetricsRegistry.CRUD_QUERY, tableName);
+        ColumnarResult result = ColumnarResult.read(executeRead(conn -> adapter.findList(conn, sql)));
+        tx.closeConnection();
+        MetricsRegistry.INSTANCE.add(MetricsRegistry.CRUD_ROWS_MAPPED, tableName, result.size());
+        return result;
+    }
+
+    /**
+     * 根据SQL语句按列查出一页数据. 数据对象直接放在pager中.
+     * @param sql SQL语句
+     * @param pager 分页对象
+     * @param parmeters
+     * @throws java.sql.SQLException
+     */
+    public void getColumnList(String sql, Pager pager, Object... parmeters) throws SQLException {
+        addParmeter(parmeters);
+        MetricsRegistry.INSTANCE.increment(MetricsRegistry.CRUD_QUERY, tableName);
+        ColumnarResult result = ColumnarResult.read(executeRead(conn -> adapter.findPageList(conn, sql, pager)));
+        MetricsRegistry.INSTANCE.add(MetricsRegistry.CRUD_ROWS_MAPPED, tableName, result.size());
+        pager.setData(result);
+        tx.closeConnection();
+        pager.setItems(executeRead(conn -> adapter.getCount(conn, sql)));
         tx.closeConnection();
     }
 
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2015 www.hyberbin.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * Email:hyberbin@qq.com
+ */
+package org.jplus.hyb.database.crud;
+
+import java.sql.SQLException;
+
+/**
+ * 乐观锁冲突.按@Version字段更新时没有匹配的记录,说明记录已被其它事务修改或删除.
+ * 调用方应重新读取记录后再修改.
+ * @author hyberbin
+ */
+public class OptimisticLockException extends SQLException {
+
+    private static final long serialVersionUID = -4417609830273451226L;
+    private final String table;
+    private final Object key;
+    private final Object version;
+
+    /**
+     * @param table 表名
+     * @param key 更新的主键值
+     * @param version 更新前的版本号
+     */
+    public OptimisticLockException(String table, Object key, Object version) {
+        super("optimistic lock failed on " + table + ",key:" + key + ",version:" + version);
+        this.table = table;
+        this.key = key;
+        this.version = version;
+    }
+
+    public String getTable() {
+        return table;
+    }
+
+    public Object getKey() {
+        return key;
+    }
+
+    public Object getVersion() {
+        return version;
+    }
+}
@@ -0,0 +1,291 @@
+/*
+ * Copyright 2015 www.hyberbin.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * Email:hyberbin@qq.com
+ */
+package org.jplus.hyb.database.crud;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.jplus.hyb.database.bean.FieldColumn;
+import org.jplus.hyb.database.transaction.IDbManager;
+import org.jplus.hyb.database.transaction.TransactionSynchronization;
+import org.jplus.hyb.database.transaction.TxManager;
+import org.jplus.hyb.database.util.CacheFactory;
+import org.jplus.hyb.log.Logger;
+import org.jplus.hyb.log.LoggerManager;
+import org.jplus.util.FieldUtil;
+
+import javax.persistence.JoinColumn;
+
+/**
+ * 工作单元.在内存中记录一个事务里的插入、更新、删除,提交事务时统一写入数据库.
+ * 操作按实体类、操作类型和字段分组,每组用一次JDBC批处理执行.
+ * 插入和更新按@JoinColumn的依赖顺序先写被引用的表,删除则先删引用方的表.
+ * 先插入的父对象生成的主键写回后,子对象的外键在写入时才读取,所以可以一起排队.
+ * 被其它排队对象引用且主键由数据库生成的类逐行插入,因为有的驱动批量插入时只返回最后一个主键.
+ * 回滚时丢弃所有排队的操作. Ex:
+ * TxManager tx = new TxManager(configName);
+ * UnitOfWork uow = new UnitOfWork(tx);
+ * uow.insert(order, "id").insert(item).update(user, "id");
+ * tx.finalCloseConnection();//提交时批量写入
+ * @author hyberbin
+ */
+public class UnitOfWork implements TransactionSynchronization {
+
+    private static final Logger log = LoggerManager.getLogger(UnitOfWork.class);
+    private static final int INSERT = 0;
+    private static final int UPDATE = 1;
+    private static final int DELETE = 2;
+    /** 按(实体类,操作,字段)分组的排队操作,保持第一次出现的顺序 */
+    private final Map<Group, List<Object>> queue = new LinkedHashMap<Group, List<Object>>();
+    private final TxManager manager;
+
+    /**
+     * 创建工作单元并注册到事务上.
+     * @param manager 事务管理器
+     */
+    public UnitOfWork(TxManager manager) {
+        this.manager = manager;
+        manager.registerSynchronization(this);
+    }
+
+    /**
+     * 排队插入,不插入数据库生成的主键.
+     * @param entity 实体
+     * @return 自身
+     */
+    public UnitOfWork insert(Object entity) {
+        return add(INSERT, entity, "");
+    }
+
+    /**
+     * 排队插入,primarkey由数据库生成,写入后取回.
+     * @param entity 实体
+     * @param primarkey 数据库生成的主键
+     * @return 自身
+     */
+    public UnitOfWork insert(Object entity, String primarkey) {
+        return add(INSERT, entity, primarkey == null ? "" : primarkey);
+    }
+
+    /**
+     * 排队按字段更新,写入时实体的所有字段都会更新.
+     * @param entity 实体
+     * @param key 更新条件字段
+     * @return 自身
+     */
+    public UnitOfWork update(Object entity, String key) {
+        return add(UPDATE, entity, key);
+    }
+
+    /**
+     * 排队按字段删除.
+     * @param entity 实体
+     * @param key 删除条件字段
+     * @return 自身
+     */
+    public UnitOfWork delete(Object entity, String key) {
+        return add(DELETE, entity, key);
+    }
+
+    private UnitOfWork add(int operation, Object entity, String key) {
+        Group group = new Group(entity.getClass(), operation, key);
+        List<Object> list = queue.get(group);
+        if (list == null) {
+            list = new ArrayList<Object>();
+            queue.put(group, list);
+        }
+        if (operation == INSERT || !containsSame(list, entity)) {//同一实体重复更新或删除只执行一次
+            list.add(entity);
+        }
+        return this;
+    }
+
+    private static boolean containsSame(List<Object> list, Object entity) {
+        for (Object o : list) {
+            if (o == entity) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 排队中的操作数.
+     * @return
+     */
+    public int size() {
+        int size = 0;
+        for (List<Object> list : queue.values()) {
+            size += list.size();
+        }
+        return size;
+    }
+
+    /**
+     * 立即把排队的操作写入数据库,不提交事务.
+     * @throws SQLException
+     */
+    public void flush() throws SQLException {
+        flush(manager);
+    }
+
+    private void flush(IDbManager tx) throws SQLException {
+        if (queue.isEmpty()) {
+            return;
+        }
+        Set<Class<?>> referenced = new LinkedHashSet<Class<?>>();
+        List<Class<?>> order = dependencyOrder(referenced);
+        List<Group> groups = new ArrayList<Group>(queue.keySet());
+        for (int operation = INSERT; operation <= DELETE; operation++) {
+            List<Class<?>> classes = new ArrayList<Class<?>>(order);
+            if (operation == DELETE) {
+                Collections.reverse(classes);
+            }
+            for (Class<?> clazz : classes) {
+                for (Group group : groups) {
+                    if (group.operation == operation && group.clazz == clazz) {
+                        execute(tx, group, queue.remove(group), referenced.contains(clazz));
+                    }
+                }
+            }
+        }
+    }
+
+    private void execute(IDbManager tx, Group group, List<Object> list, boolean referenced) throws SQLException {
+        if (group.operation == INSERT && referenced && !"".equals(group.key.trim())) {
+            insertEach(tx, group, list);
+            return;
+        }
+        log.debug("flush {} {} rows of {}", group.operation == INSERT ? "insert" : group.operation == UPDATE ? "update" : "delete", list.size(), group.clazz.getSimpleName());
+        Hyberbin<Object> hyberbin = new Hyberbin<Object>(list.get(0), tx);
+        switch (group.operation) {
+            case INSERT:
+                hyberbin.insertBatch(group.key, list);
+                break;
+            case UPDATE:
+                hyberbin.updateBatch(group.key, list);
+                break;
+            default:
+                hyberbin.deleteBatch(group.key, list);
+        }
+    }
+
+    /**
+     * 逐行插入被引用的对象,保证每个对象都取回数据库生成的主键.
+     * 取不回主键时抛出异常,避免子对象写入空的外键.
+     */
+    private void insertEach(IDbManager tx, Group group, List<Object> list) throws SQLException {
+        log.debug("flush insert {} rows of {} one by one", list.size(), group.clazz.getSimpleName());
+        for (Object entity : list) {
+            new Hyberbin<Object>(entity, tx).insert(group.key);
+            if (FieldUtil.getFieldValue(entity, group.key) == null) {
+                throw new SQLException("no generated key " + group.key + " returned for " + group.clazz.getName());
+            }
+        }
+    }
+
+    /**
+     * 按@JoinColumn引用关系排序实体类,被引用的类在前.有循环引用时剩下的类按排队顺序.
+     * @param referenced 收集被其它排队的类引用的类
+     * @return
+     */
+    private List<Class<?>> dependencyOrder(Set<Class<?>> referenced) {
+        Set<Class<?>> classes = new LinkedHashSet<Class<?>>();
+        for (Group group : queue.keySet()) {
+            classes.add(group.clazz);
+        }
+        Map<Class<?>, Set<Class<?>>> depends = new IdentityHashMap<Class<?>, Set<Class<?>>>();
+        for (Class<?> clazz : classes) {
+            Set<Class<?>> set = new LinkedHashSet<Class<?>>();
+            for (FieldColumn column : CacheFactory.MINSTANCE.getHyberbin(clazz, true).getColumns()) {
+                Class<?> type = column.getField().getType();
+                if (column.getField().isAnnotationPresent(JoinColumn.class) && type != clazz && classes.contains(type)) {
+                    set.add(type);
+                }
+            }
+            depends.put(clazz, set);
+            referenced.addAll(set);
+        }
+        List<Class<?>> order = new ArrayList<Class<?>>(classes.size());
+        while (!classes.isEmpty()) {
+            Class<?> next = null;
+            for (Class<?> clazz : classes) {
+                if (order.containsAll(depends.get(clazz))) {
+                    next = clazz;
+                    break;
+                }
+            }
+            if (next == null) {
+                log.warn("cyclic @JoinColumn among:{}", classes);
+                order.addAll(classes);
+                break;
+            }
+            order.add(next);
+            classes.remove(next);
+        }
+        return order;
+    }
+
+    @Override
+    public void beforeCommit(IDbManager manager) throws SQLException {
+        flush(manager);
+    }
+
+    @Override
+    public void afterCompletion(boolean committed) {
+        if (!queue.isEmpty()) {
+            log.warn("discard {} queued operations", size());
+            queue.clear();
+        }
+    }
+
+    /**
+     * 一组可以批量执行的操作.
+     */
+    private static final class Group {
+
+        private final Class<?> clazz;
+        private final int operation;
+        private final String key;
+
+        Group(Class<?> clazz, int operation, String key) {
+            this.clazz = clazz;
+            this.operation = operation;
+            this.key = key;
+        }
+
+        @Override
+        public int hashCode() {
+            return (clazz.hashCode() * 31 + operation) * 31 + key.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Group)) {
+                return false;
+            }
+            Group other = (Group) obj;
+            return clazz == other.clazz && operation == other.operation && key.equals(other.key);
+        }
+    }
+}
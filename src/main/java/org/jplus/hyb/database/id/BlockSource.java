@@ -0,0 +1,34 @@
+/*
+ * Copyright 2015 www.hyberbin.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * Email:hyberbin@qq.com
+ */
+package org.jplus.hyb.database.id;
+
+import java.sql.SQLException;
+
+/**
+ * 主键段的来源.每次向数据库预留一段连续的主键.
+ * @author hyberbin
+ */
+public interface BlockSource {
+
+    /**
+     * 预留一段主键.
+     * @param size 主键段的长度
+     * @return 主键段的第一个值,本段为[返回值,返回值+size)
+     * @throws SQLException
+     */
+    public long reserve(int size) throws SQLException;
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2015 www.hyberbin.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * Email:hyberbin@qq.com
+ */
+package org.jplus.hyb.database.id;
+
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import org.jplus.hyb.database.metrics.MetricsRegistry;
+import org.jplus.hyb.log.Logger;
+import org.jplus.hyb.log.LoggerManager;
+
+/**
+ * hi-lo(pooled)主键生成器.
+ * 一次从序列或表中预留blockSize个主键,之后在内存中分配,每段只访问一次数据库.
+ * 分配主键只有一次原子自增,不加锁;只有当前段用完时才加锁向数据库预留下一段.
+ * 应用重启后未用完的主键会被跳过,主键连续但不保证没有空洞.
+ * @author hyberbin
+ */
+public class HiLoGenerator implements IdGenerator {
+
+    private static final Logger log = LoggerManager.getLogger(HiLoGenerator.class);
+    private final BlockSource source;
+    private final int blockSize;
+    private final AtomicReference<Block> block = new AtomicReference<Block>(new Block(0, 0));
+    private final Object lock = new Object();
+
+    /**
+     * @param source 主键段的来源
+     * @param blockSize 每次预留的主键个数,使用序列时必须和序列的increment by相同
+     */
+    public HiLoGenerator(BlockSource source, int blockSize) {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("blockSize must be positive:" + blockSize);
+        }
+        this.source = source;
+        this.blockSize = blockSize;
+    }
+
+    @Override
+    public long nextId() throws SQLException {
+        for (;;) {
+            Block current = block.get();
+            long id = current.next.getAndIncrement();
+            if (id < current.limit) {
+                return id;
+            }
+            synchronized (lock) {
+                if (block.get() == current) {//其它线程还没有预留新的段
+                    long start = source.reserve(blockSize);
+                    block.set(new Block(start, start + blockSize));
+                    MetricsRegistry.INSTANCE.increment(MetricsRegistry.ID_BLOCK_RESERVED);
+                    log.debug("reserve id block:[{},{})", start, start + blockSize);
+                }
+            }
+        }
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * 内存中的一段主键.
+     */
+    private static final class Block {
+
+        private final AtomicLong next;
+        private final long limit;
+
+        Block(long start, long limit) {
+            this.next = new AtomicLong(start);
+            this.limit = limit;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2015 www.hyberbin.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * Email:hyberbin@qq.com
+ */
+package org.jplus.hyb.database.id;
+
+import java.sql.SQLException;
+
+/**
+ * 主键生成器.在客户端生成主键,插入时不再依赖数据库的自增或序列.
+ * 通过CacheFactory.MINSTANCE.putIdGenerator按名称注册,
+ * 实体的主键字段用@GeneratedValue(generator="名称")引用.
+ * 实现必须是线程安全的.
+ * @author hyberbin
+ */
+public interface IdGenerator {
+
+    /**
+     * 获取下一个主键.
+     * @return
+     * @throws SQLException 需要访问数据库预留主键段时出错
+     */
+    public long nextId() throws SQLException;
+}
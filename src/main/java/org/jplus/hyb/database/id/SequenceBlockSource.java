@@ -0,0 +1,55 @@
+/*
+ * Copyright 2015 www.hyberbin.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * Email:hyberbin@qq.com
+ */
+package org.jplus.hyb.database.id;
+
+import java.sql.SQLException;
+import org.jplus.hyb.database.adapter.IAdapter;
+import org.jplus.hyb.database.config.ConfigCenter;
+import org.jplus.hyb.database.crud.DatabaseAccess;
+import org.jplus.hyb.database.transaction.SimpleManager;
+
+/**
+ * 从数据库序列预留主键段.
+ * 序列的increment by必须等于HiLoGenerator的blockSize,序列的每个值是一段主键的起始值,
+ * 如oracle:create sequence seq_user increment by 50.
+ * @author hyberbin
+ */
+public class SequenceBlockSource implements BlockSource {
+
+    private final String configName;
+    private final String sequence;
+
+    /**
+     * @param configName 数据库配置名
+     * @param sequence 序列名
+     */
+    public SequenceBlockSource(String configName, String sequence) {
+        this.configName = configName;
+        this.sequence = sequence;
+    }
+
+    @Override
+    public long reserve(int size) throws SQLException {
+        SimpleManager manager = new SimpleManager(configName);
+        IAdapter adapter = ConfigCenter.INSTANCE.getAdapter(manager.getDefaultDbConfig().getDriver());
+        Object value = new DatabaseAccess(manager).queryUnique(adapter.getSequenceQuery(sequence));
+        if (value == null) {
+            throw new SQLException("sequence:" + sequence + " returns nothing!");
+        }
+        return value instanceof Number ? ((Number) value).longValue() : Long.parseLong(value.toString());
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2015 www.hyberbin.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * Email:hyberbin@qq.com
+ */
+package org.jplus.hyb.database.id;
+
+import java.sql.SQLException;
+import org.jplus.hyb.database.crud.DatabaseAccess;
+import org.jplus.hyb.database.transaction.IDbManager;
+import org.jplus.hyb.database.transaction.SimpleManager;
+
+/**
+ * 从主键表预留主键段,用于没有序列的数据库(如分库的mysql).
+ * 主键表每行记录一个主键名的下一个可用值,需要预先建好:
+ * create table id_blocks(name varchar(64) primary key, next_val bigint not null)
+ * 预留时使用不和线程绑定的独立连接,不影响调用者当前的事务.
+ * 每次尝试读取最新值后按旧值条件更新,每条语句单独提交;更新失败说明被其它进程抢先,重新读取后再试,
+ * 最多尝试MAX_ATTEMPTS次.
+ * 没有记录时从initialValue开始.
+ * @author hyberbin
+ */
+public class TableBlockSource implements BlockSource {
+
+    private final String configName;
+    private final String table;
+    private final String name;
+    /** 预留主键段最多尝试的次数 */
+    private static final int MAX_ATTEMPTS = 16;
+    private long initialValue = 1;
+
+    /**
+     * @param configName 数据库配置名
+     * @param table 主键表名
+     * @param name 主键名,一般是表名
+     */
+    public TableBlockSource(String configName, String table, String name) {
+        this.configName = configName;
+        this.table = table;
+        this.name = name;
+    }
+
+    public void setInitialValue(long initialValue) {
+        this.initialValue = initialValue;
+    }
+
+    @Override
+    public long reserve(int size) throws SQLException {
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            Object value = read();
+            if (value == null) {
+                try {
+                    update("insert into " + table + "(name,next_val) values(?,?)", name, initialValue + size);
+                    return initialValue;
+                } catch (SQLException ex) {
+                    if (read() == null) {//不是被其它进程抢先插入
+                        throw ex;
+                    }
+                    continue;
+                }
+            }
+            long start = value instanceof Number ? ((Number) value).longValue() : Long.parseLong(value.toString());
+            if (update("update " + table + " set next_val=? where name=? and next_val=?", start + size, name, start) == 1) {
+                return start;
+            }
+        }
+        throw new SQLException("reserve id block:" + name + " failed after " + MAX_ATTEMPTS + " attempts");
+    }
+
+    private Object read() throws SQLException {
+        IDbManager manager = new SimpleManager(configName);
+        try {
+            return new DatabaseAccess(manager).setParmeter(name).queryUnique("select next_val from " + table + " where name=?");
+        } catch (SQLException ex) {
+            abort(manager);
+            throw ex;
+        }
+    }
+
+    private int update(String sql, Object... parmeters) throws SQLException {
+        IDbManager manager = new SimpleManager(configName);
+        DatabaseAccess access = new DatabaseAccess(manager);
+        for (Object parmeter : parmeters) {
+            access.setParmeter(parmeter);
+        }
+        try {
+            return access.update(sql);
+        } catch (SQLException ex) {
+            abort(manager);
+            throw ex;
+        }
+    }
+
+    /**
+     * 出错后回滚并关闭独立连接.
+     * @param manager 连接管理器
+     */
+    private static void abort(IDbManager manager) {
+        try {
+            manager.rollBack();
+            manager.closeConnection();
+        } catch (SQLException | RuntimeException e) {
+            //连接已经不可用
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2015 www.hyberbin.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * Email:hyberbin@qq.com
+ */
+package org.jplus.hyb.database.id;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 按时间递增的64位主键生成器,不访问数据库.
+ * 主键由41位毫秒时间戳(从2015-01-01起,约69年)、10位节点号和12位序号组成,
+ * 同一节点生成的主键严格递增,按主键排序就是按生成时间排序,插入时总是追加在索引末尾.
+ * 同一毫秒内序号用完或者系统时钟回拨时借用后面的时间戳,不会等待也不会重复.
+ * 不同进程必须使用不同的节点号.
+ * @author hyberbin
+ */
+public class TimeOrderedGenerator implements IdGenerator {
+
+    /** 时间戳起点2015-01-01T00:00:00Z */
+    public static final long EPOCH = 1420070400000L;
+    private static final int NODE_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+    public static final int MAX_NODE = (1 << NODE_BITS) - 1;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+    private final long node;
+    /** 最后一次生成的时间戳和序号 */
+    private final AtomicLong last = new AtomicLong();
+
+    /**
+     * @param node 节点号,0到1023
+     */
+    public TimeOrderedGenerator(int node) {
+        if (node < 0 || node > MAX_NODE) {
+            throw new IllegalArgumentException("node must between 0 and " + MAX_NODE + ":" + node);
+        }
+        this.node = node;
+    }
+
+    @Override
+    public long nextId() {
+        for (;;) {
+            long prev = last.get();
+            long now = System.currentTimeMillis() - EPOCH;
+            long next = now > (prev >>> SEQUENCE_BITS) ? now << SEQUENCE_BITS : prev + 1;//序号溢出时进位到时间戳
+            if (last.compareAndSet(prev, next)) {
+                return (next >>> SEQUENCE_BITS) << (NODE_BITS + SEQUENCE_BITS) | node << SEQUENCE_BITS | (next & SEQUENCE_MASK);
+            }
+        }
+    }
+
+    /**
+     * 从主键中取出生成时间.
+     * @param id 主键
+     * @return 毫秒时间
+     */
+    public static long getTime(long id) {
+        return (id >>> (NODE_BITS + SEQUENCE_BITS)) + EPOCH;
+    }
+
+    public int getNode() {
+        return (int) node;
+    }
+}
@@ -0,0 +1,31 @@
+/*
+ * Copyright 2015 www.hyberbin.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * Email:hyberbin@qq.com
+ */
+package org.jplus.hyb.database.metrics;
+
+/**
+ * 瞬时值指标.
+ * 在读取指标快照的时候才计算当前值,例如缓存大小、当前打开的连接数.
+ * @author hyberbin
+ */
+public interface Gauge {
+
+    /**
+     * 获取当前值.
+     * @return
+     */
+    public long getValue();
+}
@@ -0,0 +1,323 @@
+/*
+ * Copyright 2015 www.hyberbin.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * Email:hyberbin@qq.com
+ */
+package org.jplus.hyb.database.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.jplus.hyb.log.LocalLogger;
+import org.jplus.hyb.log.Logger;
+
+/**
+ * 进程内的运行指标注册中心.
+ * 计数器基于LongAdder,高并发下累加没有锁竞争;瞬时值指标在读取快照时才计算.
+ * 带标签的计数器(如按表名统计的查询数)用两级Map存放,累加时不需要拼接字符串.
+ * @author hyberbin
+ */
+public class MetricsRegistry {
+
+    private static final Logger log = new LocalLogger();//CacheFactory中也会计数,此处不能用代理日志
+
+    /** 此对象唯一的实例 */
+    public static final MetricsRegistry INSTANCE = new MetricsRegistry();
+    /** 默认的JMX对象名 */
+    public static final String DEFAULT_OBJECT_NAME = "org.jplus.hyb:type=Metrics";
+
+    /** 查询次数,标签为表名 */
+    public static final String CRUD_QUERY = "crud.query";
+    /** 增删改次数,标签为表名 */
+    public static final String CRUD_UPDATE = "crud.update";
+    /** 映射到POJO或Map的行数,标签为表名 */
+    public static final String CRUD_ROWS_MAPPED = "crud.rows.mapped";
+    /** 执行的SQL语句数 */
+    public static final String SQL_STATEMENTS = "sql.statements";
+    /** 预处理语句数 */
+    public static final String SQL_PREPARED = "sql.prepared";
+    /** 批处理执行的行数 */
+    public static final String SQL_BATCH_ROWS = "sql.batch.rows";
+    /** 受影响的行数 */
+    public static final String SQL_ROWS_UPDATED = "sql.rows.updated";
+    /** 打开的连接数 */
+    public static final String CONNECTION_OPENED = "connection.opened";
+    /** 关闭的连接数 */
+    public static final String CONNECTION_CLOSED = "connection.closed";
+    /** 连接验证失败数 */
+    public static final String CONNECTION_INVALID = "connection.invalid";
+    /** 获取连接时做了验证的次数 */
+    public static final String CONNECTION_VALIDATED = "connection.validated";
+    /** 获取连接时跳过验证的次数 */
+    public static final String CONNECTION_VALIDATION_SKIPPED = "connection.validation.skipped";
+    /** 连接断开后在新连接上重试的次数 */
+    public static final String CONNECTION_RETRIED = "connection.retried";
+    /** 回收的线程内连接数,标签为原因:dead,idle,aged */
+    public static final String CONNECTION_RECLAIMED = "connection.reclaimed";
+    /** 提交次数 */
+    public static final String TX_COMMIT = "tx.commit";
+    /** 回滚次数 */
+    public static final String TX_ROLLBACK = "tx.rollback";
+    /** 事务冲突后的重试次数,标签为配置名 */
+    public static final String TX_RETRY = "tx.retry";
+    /** 重试次数用完仍失败的事务数,标签为配置名 */
+    public static final String TX_RETRY_EXHAUSTED = "tx.retry.exhausted";
+    /** SingleManager获取共享连接的次数 */
+    public static final String SINGLE_ACQUIRE = "single.acquire";
+    /** SingleManager获取共享连接时发生等待的次数 */
+    public static final String SINGLE_CONTENDED = "single.contended";
+    /** SingleManager获取共享连接的等待时间(纳秒) */
+    public static final String SINGLE_WAIT_NANOS = "single.wait.nanos";
+    /** StripedManager获取分段连接的次数 */
+    public static final String STRIPED_ACQUIRE = "striped.acquire";
+    /** 读写分离时从库上的查询数,标签为从库配置名 */
+    public static final String RW_READ_REPLICA = "rw.read.replica";
+    /** 读写分离时仍然走主库的查询数 */
+    public static final String RW_READ_PRIMARY = "rw.read.primary";
+    /** 被剔除的从库次数,标签为从库配置名 */
+    public static final String RW_REPLICA_EJECTED = "rw.replica.ejected";
+    /** 大批量导入的行数,标签为表名 */
+    public static final String BULK_ROWS = "bulk.rows";
+    /** hi-lo生成器向数据库预留主键段的次数 */
+    public static final String ID_BLOCK_RESERVED = "id.block.reserved";
+    /** 缓存命中,标签为缓存名 */
+    public static final String CACHE_HIT = "cache.hit";
+    /** 缓存未命中,标签为缓存名 */
+    public static final String CACHE_MISS = "cache.miss";
+    /** 缓存超过容量淘汰的条目数,标签为缓存名 */
+    public static final String CACHE_EVICTION = "cache.eviction";
+
+    private final ConcurrentMap<String, LongAdder> counters = new ConcurrentHashMap<String, LongAdder>();
+    private final ConcurrentMap<String, ConcurrentMap<String, LongAdder>> taggedCounters = new ConcurrentHashMap<String, ConcurrentMap<String, LongAdder>>();
+    private final ConcurrentMap<String, Gauge> gauges = new ConcurrentHashMap<String, Gauge>();
+    private volatile boolean enabled = true;
+    private ObjectName objectName;
+
+    /**
+     * 获取计数器,不存在则创建.
+     * @param name 指标名
+     * @return
+     */
+    public LongAdder counter(String name) {
+        LongAdder adder = counters.get(name);
+        if (adder == null) {
+            adder = counters.computeIfAbsent(name, k -> new LongAdder());
+        }
+        return adder;
+    }
+
+    /**
+     * 获取带标签的计数器,不存在则创建.
+     * @param name 指标名
+     * @param tag 标签,如表名
+     * @return
+     */
+    public LongAdder counter(String name, String tag) {
+        ConcurrentMap<String, LongAdder> tagged = taggedCounters.get(name);
+        if (tagged == null) {
+            tagged = taggedCounters.computeIfAbsent(name, k -> new ConcurrentHashMap<String, LongAdder>());
+        }
+        LongAdder adder = tagged.get(tag);
+        if (adder == null) {
+            adder = tagged.computeIfAbsent(tag, k -> new LongAdder());
+        }
+        return adder;
+    }
+
+    /**
+     * 计数器加1.
+     * @param name 指标名
+     */
+    public void increment(String name) {
+        if (enabled) {
+            counter(name).increment();
+        }
+    }
+
+    /**
+     * 计数器加上指定的值.
+     * @param name 指标名
+     * @param delta 增量
+     */
+    public void add(String name, long delta) {
+        if (enabled) {
+            counter(name).add(delta);
+        }
+    }
+
+    /**
+     * 带标签的计数器加1,同时累加不带标签的总数.
+     * @param name 指标名
+     * @param tag 标签
+     */
+    public void increment(String name, String tag) {
+        add(name, tag, 1);
+    }
+
+    /**
+     * 带标签的计数器加上指定的值,同时累加不带标签的总数.
+     * @param name 指标名
+     * @param tag 标签
+     * @param delta 增量
+     */
+    public void add(String name, String tag, long delta) {
+        if (enabled) {
+            counter(name).add(delta);
+            if (tag != null) {
+                counter(name, tag).add(delta);
+            }
+        }
+    }
+
+    /**
+     * 获取计数器当前值.
+     * @param name 指标名
+     * @return
+     */
+    public long getCount(String name) {
+        LongAdder adder = counters.get(name);
+        return adder == null ? 0 : adder.sum();
+    }
+
+    /**
+     * 获取带标签的计数器当前值.
+     * @param name 指标名
+     * @param tag 标签
+     * @return
+     */
+    public long getCount(String name, String tag) {
+        ConcurrentMap<String, LongAdder> tagged = taggedCounters.get(name);
+        LongAdder adder = tagged == null ? null : tagged.get(tag);
+        return adder == null ? 0 : adder.sum();
+    }
+
+    /**
+     * 注册一个瞬时值指标,同名的会被替换.
+     * @param name 指标名
+     * @param gauge
+     */
+    public void registerGauge(String name, Gauge gauge) {
+        gauges.put(name, gauge);
+    }
+
+    /**
+     * 获取瞬时值指标的当前值.
+     * @param name 指标名
+     * @return 没有注册时返回0
+     */
+    public long getGauge(String name) {
+        Gauge gauge = gauges.get(name);
+        return gauge == null ? 0 : gauge.getValue();
+    }
+
+    /**
+     * 获取所有指标的快照,按名称排序.
+     * 带标签的计数器名称为"指标名.标签".
+     * @return
+     */
+    public Map<String, Long> snapshot() {
+        Map<String, Long> snapshot = new TreeMap<String, Long>();
+        for (Map.Entry<String, LongAdder> entry : counters.entrySet()) {
+            snapshot.put(entry.getKey(), entry.getValue().sum());
+        }
+        for (Map.Entry<String, ConcurrentMap<String, LongAdder>> entry : taggedCounters.entrySet()) {
+            for (Map.Entry<String, LongAdder> tagged : entry.getValue().entrySet()) {
+                snapshot.put(entry.getKey() + "." + tagged.getKey(), tagged.getValue().sum());
+            }
+        }
+        for (Map.Entry<String, Gauge> entry : gauges.entrySet()) {
+            try {
+                snapshot.put(entry.getKey(), entry.getValue().getValue());
+            } catch (RuntimeException ex) {
+                log.error("read gauge:{} error!", entry.getKey(), ex);
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * 清零所有计数器,瞬时值指标不受影响.
+     */
+    public void reset() {
+        for (LongAdder adder : counters.values()) {
+            adder.reset();
+        }
+        for (ConcurrentMap<String, LongAdder> tagged : taggedCounters.values()) {
+            for (LongAdder adder : tagged.values()) {
+                adder.reset();
+            }
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 是否开启计数.关闭后所有累加操作直接返回.
+     * @param enabled
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * 以默认对象名注册到平台MBeanServer.
+     * @return 注册的对象名
+     */
+    public ObjectName registerMBean() {
+        return registerMBean(DEFAULT_OBJECT_NAME);
+    }
+
+    /**
+     * 注册到平台MBeanServer,重复注册时返回已注册的对象名.
+     * @param name JMX对象名
+     * @return 注册的对象名,失败返回null
+     */
+    public synchronized ObjectName registerMBean(String name) {
+        if (objectName != null) {
+            return objectName;
+        }
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName newName = new ObjectName(name);
+            server.registerMBean(new MetricsMBean(this), newName);
+            objectName = newName;
+            log.info("register metrics mbean:{}", name);
+        } catch (Exception ex) {
+            log.error("register metrics mbean:{} error!", name, ex);
+        }
+        return objectName;
+    }
+
+    /**
+     * 从平台MBeanServer注销.
+     */
+    public synchronized void unregisterMBean() {
+        if (objectName == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (Exception ex) {
+            log.error("unregister metrics mbean:{} error!", objectName, ex);
+        }
+        objectName = null;
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2015 www.hyberbin.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * Email:hyberbin@qq.com
+ */
+package org.jplus.hyb.database.sql;
+
+/**
+ * where条件.
+ * 字段名在渲染时按方言加上关键字括号,比较的值都是预处理参数?.
+ * Condition.eq("id").and(Condition.isNull("deleted"))
+ * @author hyberbin
+ */
+public abstract class Condition {
+
+    /**
+     * 渲染条件.
+     * @param dialect 方言
+     * @param sql 输出
+     */
+    public abstract void render(SqlDialect dialect, SqlBuffer sql);
+
+    /**
+     * 和另一个条件同时成立.
+     * @param other 另一个条件
+     * @return 新的条件
+     */
+    public Condition and(Condition other) {
+        return new Junction(" and ", this, other);
+    }
+
+    /**
+     * 和另一个条件有一个成立.
+     * @param other 另一个条件
+     * @return 新的条件
+     */
+    public Condition or(Condition other) {
+        return new Junction(" or ", this, other);
+    }
+
+    public static Condition eq(String column) {
+        return new Compare(column, "=");
+    }
+
+    public static Condition ne(String column) {
+        return new Compare(column, "<>");
+    }
+
+    public static Condition lt(String column) {
+        return new Compare(column, "<");
+    }
+
+    public static Condition le(String column) {
+        return new Compare(column, "<=");
+    }
+
+    public static Condition gt(String column) {
+        return new Compare(column, ">");
+    }
+
+    public static Condition ge(String column) {
+        return new Compare(column, ">=");
+    }
+
+    public static Condition like(String column) {
+        return new Compare(column, " like ");
+    }
+
+    public static Condition isNull(String column) {
+        return new Compare(column, " is null");
+    }
+
+    public static Condition isNotNull(String column) {
+        return new Compare(column, " is not null");
+    }
+
+    /**
+     * 字段在若干个值中.
+     * @param column 字段名
+     * @param count 值的个数,即?的个数
+     * @return 条件
+     */
+    public static Condition in(String column, int count) {
+        if (count <= 0) {
+            throw new IllegalArgumentException("in needs at least one value:" + column);
+        }
+        return new In(column, count);
+    }
+
+    /**
+     * 原样输出的条件表达式.
+     * @param expression 表达式,如"type=? and name like ?"
+     * @return 条件
+     */
+    public static Condition raw(String expression) {
+        return new Raw(expression);
+    }
+
+    public static Condition and(Condition... conditions) {
+        return new Junction(" and ", conditions);
+    }
+
+    public static Condition or(Condition... conditions) {
+        return new Junction(" or ", conditions);
+    }
+
+    private static final class Compare extends Condition {
+
+        private final String column;
+        private final String operator;
+
+        Compare(String column, String operator) {
+            this.column = column;
+            this.operator = operator;
+        }
+
+        @Override
+        public void render(SqlDialect dialect, SqlBuffer sql) {
+            sql.appendQuoted(column, dialect.getQuote()).append(operator);
+            if (!operator.startsWith(" is")) {
+                sql.append('?');
+            }
+        }
+    }
+
+    private static final class In extends Condition {
+
+        private final String column;
+        private final int count;
+
+        In(String column, int count) {
+            this.column = column;
+            this.count = count;
+        }
+
+        @Override
+        public void render(SqlDialect dialect, SqlBuffer sql) {
+            sql.appendQuoted(column, dialect.getQuote()).append(" in (?");
+            for (int i = 1; i < count; i++) {
+                sql.append(",?");
+            }
+            sql.append(')');
+        }
+    }
+
+    private static final class Raw extends Condition {
+
+        private final String expression;
+
+        Raw(String expression) {
+            this.expression = expression;
+        }
+
+        @Override
+        public void render(SqlDialect dialect, SqlBuffer sql) {
+            sql.append(expression);
+        }
+    }
+
+    private static final class Junction extends Condition {
+
+        private final String operator;
+        private final Condition[] conditions;
+
+        Junction(String operator, Condition... conditions) {
+            this.operator = operator;
+            this.conditions = conditions;
+        }
+
+        @Override
+        public void render(SqlDialect dialect, SqlBuffer sql) {
+            for (int i = 0; i < conditions.length; i++) {
+                if (i > 0) {
+                    sql.append(operator);
+                }
+                boolean nested = conditions[i] instanceof Junction || conditions[i] instanceof Raw;
+                if (nested) {
+                    sql.append('(');
+                }
+                conditions[i].render(dialect, sql);
+                if (nested) {
+                    sql.append(')');
+                }
+            }
+        }
+    }
+}
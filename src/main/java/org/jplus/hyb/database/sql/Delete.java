@@ -0,0 +1,72 @@
+/*
+ * Copyright 2015 www.hyberbin.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * Email:hyberbin@qq.com
+ */
+package org.jplus.hyb.database.sql;
+
+/**
+ * 删除语句.
+ * Delete.from("news").where(Condition.eq("id"))
+ * @author hyberbin
+ */
+public class Delete extends SqlStatement {
+
+    private final String table;
+    private Condition where;
+    private String clause;
+
+    private Delete(String table) {
+        this.table = table;
+    }
+
+    /**
+     * 从一个表中删除.
+     * @param table 表名,原样输出
+     * @return 删除语句
+     */
+    public static Delete from(String table) {
+        return new Delete(table);
+    }
+
+    public Delete where(Condition condition) {
+        this.where = condition;
+        this.clause = null;
+        changed();
+        return this;
+    }
+
+    /**
+     * 设置用户写的条件子句.
+     * @param clause 含有where的子句,原样输出
+     * @return this
+     */
+    public Delete where(String clause) {
+        this.where = null;
+        this.clause = clause;
+        changed();
+        return this;
+    }
+
+    @Override
+    public void render(SqlDialect dialect, SqlBuffer sql) {
+        sql.append("delete from ").append(table);
+        if (where != null) {
+            sql.append(" where ");
+            where.render(dialect, sql);
+        } else if (clause != null) {
+            sql.append(' ').append(clause);
+        }
+    }
+}
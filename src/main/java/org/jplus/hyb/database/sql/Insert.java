@@ -0,0 +1,58 @@
+/*
+ * Copyright 2015 www.hyberbin.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * Email:hyberbin@qq.com
+ */
+package org.jplus.hyb.database.sql;
+
+/**
+ * 插入语句.
+ * Insert.into("news").set("title").set("id", "news_seq.nextval")
+ * @author hyberbin
+ */
+public class Insert extends ValuesStatement<Insert> {
+
+    private Insert(String table) {
+        super(table);
+    }
+
+    /**
+     * 插入到一个表.
+     * @param table 表名,原样输出
+     * @return 插入语句
+     */
+    public static Insert into(String table) {
+        return new Insert(table);
+    }
+
+    @Override
+    public void render(SqlDialect dialect, SqlBuffer sql) {
+        char[] quote = dialect.getQuote();
+        sql.append("insert into ").append(table).append('(');
+        for (int i = 0; i < columns.size(); i++) {
+            if (i > 0) {
+                sql.append(',');
+            }
+            sql.appendQuoted(columns.get(i), quote);
+        }
+        sql.append(") values(");
+        for (int i = 0; i < columns.size(); i++) {
+            if (i > 0) {
+                sql.append(',');
+            }
+            appendValue(i, quote, sql);
+        }
+        sql.append(')');
+    }
+}
@@ -0,0 +1,318 @@
+/*
+ * Copyright 2015 www.hyberbin.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * Email:hyberbin@qq.com
+ */
+package org.jplus.hyb.database.sql;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 查询语句.
+ * 表名原样输出,字段名按方言加上关键字括号.分页由各数据库的方言渲染,
+ * 计数时直接把查询字段换成count(*)并去掉排序,只有无法改写的语句才包一层子查询.
+ * Select.from("news").where(Condition.eq("type")).orderBy("id", false).limit(20, 10)
+ * @author hyberbin
+ */
+public class Select extends SqlStatement {
+
+    private String table;
+    /** 完整的用户语句,不含最外层的order by */
+    private String raw;
+    /** 查询的字段名,为空时使用columns */
+    private String[] columnNames;
+    private String columns = "*";
+    private Condition where;
+    /** 用户写的where、group by等子句,不含最外层的order by */
+    private String clause;
+    /** 用户写的order by子句 */
+    private String rawOrder;
+    private final List<String> orderColumns = new ArrayList<String>(2);
+    private final List<Boolean> ascending = new ArrayList<Boolean>(2);
+    /** 计数时被包在子查询中的语句 */
+    private Select inner;
+    /** 没有排序时分页用的主键列 */
+    private String key;
+    private long offset;
+    private int limit = -1;
+
+    private Select() {
+    }
+
+    /**
+     * 查询一个表.
+     * @param table 表名,原样输出
+     * @return 查询语句
+     */
+    public static Select from(String table) {
+        Select select = new Select();
+        select.table = table;
+        return select;
+    }
+
+    /**
+     * 包装一条用户写的查询语句,最外层的order by会被拆出来,以便分页和计数.
+     * @param sql 完整的查询语句
+     * @return 查询语句
+     */
+    public static Select parse(String sql) {
+        Select select = new Select();
+        int order = SqlScanner.find(sql, "order", "by", true);
+        if (order < 0) {
+            select.raw = sql.trim();
+        } else {
+            select.raw = sql.substring(0, order).trim();
+            select.rawOrder = sql.substring(order).trim();
+        }
+        return select;
+    }
+
+    /**
+     * 设置查询的字段,字段名会加上关键字括号.
+     * @param names 字段名
+     * @return this
+     */
+    public Select columns(String... names) {
+        this.columnNames = names.clone();
+        changed();
+        return this;
+    }
+
+    /**
+     * 设置查询的字段列表,原样输出.
+     * @param expression 如"id,count(*) c"
+     * @return this
+     */
+    public Select columnList(String expression) {
+        this.columnNames = null;
+        this.columns = expression;
+        changed();
+        return this;
+    }
+
+    public Select where(Condition condition) {
+        this.where = condition;
+        this.clause = null;
+        changed();
+        return this;
+    }
+
+    /**
+     * 设置用户写的条件子句,如"where type=? order by id",最外层的order by会被拆出来.
+     * @param clause 含有where的子句,可以为空
+     * @return this
+     */
+    public Select where(String clause) {
+        this.where = null;
+        this.clause = null;
+        if (clause != null && clause.trim().length() > 0) {
+            int order = SqlScanner.find(clause, "order", "by", true);
+            if (order >= 0) {
+                rawOrder = clause.substring(order).trim();
+                clause = clause.substring(0, order);
+            }
+            this.clause = clause.trim().length() == 0 ? null : clause.trim();
+        }
+        changed();
+        return this;
+    }
+
+    /**
+     * 按字段排序.
+     * @param column 字段名
+     * @param asc 是否升序
+     * @return this
+     */
+    public Select orderBy(String column, boolean asc) {
+        orderColumns.add(column);
+        ascending.add(asc);
+        changed();
+        return this;
+    }
+
+    /**
+     * 只取一页数据.
+     * @param offset 跳过的行数
+     * @param size 最多取的行数
+     * @return this
+     */
+    public Select limit(long offset, int size) {
+        this.offset = offset;
+        this.limit = size;
+        changed();
+        return this;
+    }
+
+    public boolean hasLimit() {
+        return limit >= 0;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public boolean hasOrder() {
+        return rawOrder != null || !orderColumns.isEmpty();
+    }
+
+    /**
+     * 设置主键列.需要order by才能分页的数据库在没有排序时按主键排序,保证每页的结果是确定的.
+     * @param column 主键列名
+     * @return this
+     */
+    public Select key(String column) {
+        this.key = column;
+        changed();
+        return this;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * 复制一个语句,修改副本不影响原语句.
+     * @return 副本
+     */
+    public Select copy() {
+        Select copy = new Select();
+        copy.table = table;
+        copy.raw = raw;
+        copy.columnNames = columnNames;
+        copy.columns = columns;
+        copy.where = where;
+        copy.clause = clause;
+        copy.rawOrder = rawOrder;
+        copy.orderColumns.addAll(orderColumns);
+        copy.ascending.addAll(ascending);
+        copy.inner = inner;
+        copy.key = key;
+        copy.offset = offset;
+        copy.limit = limit;
+        return copy;
+    }
+
+    /**
+     * 生成统计总数的语句.
+     * 去掉排序和分页,简单查询直接把字段换成count(*),
+     * 用户语句、原样输出的字段列表和有group by、having、union、limit的查询才包一层子查询.
+     * @return 计数语句
+     */
+    public Select toCount() {
+        Select body = copy();
+        body.rawOrder = null;
+        body.orderColumns.clear();
+        body.ascending.clear();
+        body.limit = -1;
+        body.offset = 0;
+        if (body.raw == null && body.inner == null && isSimple(body.clause)
+                && (body.columnNames != null || "*".equals(body.columns))) {
+            body.columnNames = null;
+            body.columns = "count(*)";
+            return body;
+        }
+        Select count = new Select();
+        count.inner = body;
+        return count;
+    }
+
+    private static boolean isSimple(String clause) {
+        return clause == null || (SqlScanner.find(clause, "group", "by", false) < 0
+                && SqlScanner.find(clause, "having", null, false) < 0
+                && SqlScanner.find(clause, "union", null, false) < 0
+                && SqlScanner.find(clause, "limit", null, false) < 0);
+    }
+
+    @Override
+    public void render(SqlDialect dialect, SqlBuffer sql) {
+        if (hasLimit()) {
+            dialect.renderPage(this, sql);
+        } else {
+            renderBody(dialect, sql);
+        }
+    }
+
+    /**
+     * 渲染不含分页的查询,包括order by.
+     * @param dialect 方言
+     * @param sql 输出
+     */
+    public void renderBody(SqlDialect dialect, SqlBuffer sql) {
+        renderQuery(dialect, sql);
+        if (hasOrder()) {
+            sql.append(' ');
+            renderOrder(dialect, sql);
+        }
+    }
+
+    /**
+     * 渲染不含order by和分页的查询.
+     * @param dialect 方言
+     * @param sql 输出
+     */
+    public void renderQuery(SqlDialect dialect, SqlBuffer sql) {
+        if (inner != null) {
+            sql.append("select count(*) from (");
+            inner.renderBody(dialect, sql);
+            sql.append(") count_");
+            return;
+        }
+        if (raw != null) {
+            sql.append(raw);
+        } else {
+            sql.append("select ");
+            appendColumns(dialect.getQuote(), sql);
+            sql.append(" from ").append(table);
+            if (where != null) {
+                sql.append(" where ");
+                where.render(dialect, sql);
+            } else if (clause != null) {
+                sql.append(' ').append(clause);
+            }
+        }
+    }
+
+    /**
+     * 渲染order by子句,前面不带空格.没有排序时不输出.
+     * @param dialect 方言
+     * @param sql 输出
+     */
+    public void renderOrder(SqlDialect dialect, SqlBuffer sql) {
+        if (rawOrder != null) {
+            sql.append(rawOrder);
+        }
+        for (int i = 0; i < orderColumns.size(); i++) {
+            sql.append(i == 0 && rawOrder == null ? "order by " : ",");
+            sql.appendQuoted(orderColumns.get(i), dialect.getQuote()).append(ascending.get(i) ? " asc" : " desc");
+        }
+    }
+
+    private void appendColumns(char[] quote, SqlBuffer sql) {
+        if (columnNames == null) {
+            sql.append(columns);
+            return;
+        }
+        for (int i = 0; i < columnNames.length; i++) {
+            if (i > 0) {
+                sql.append(',');
+            }
+            sql.appendQuoted(columnNames[i], quote);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2015 www.hyberbin.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * Email:hyberbin@qq.com
+ */
+package org.jplus.hyb.database.sql;
+
+import java.util.Arrays;
+
+/**
+ * 拼接SQL语句的字符缓冲区.
+ * 每个线程复用一个缓冲区,渲染语句时不再为每个片段创建StringBuilder.
+ * @author hyberbin
+ */
+public final class SqlBuffer implements CharSequence {
+
+    private static final int MAX_RETAINED = 64 * 1024;
+    private static final ThreadLocal<SqlBuffer> LOCAL = new ThreadLocal<SqlBuffer>() {
+        @Override
+        protected SqlBuffer initialValue() {
+            return new SqlBuffer(256);
+        }
+    };
+
+    private char[] chars;
+    private int length;
+    private boolean inUse;
+
+    public SqlBuffer(int capacity) {
+        chars = new char[Math.max(16, capacity)];
+    }
+
+    /**
+     * 取得本线程的缓冲区,用完后调用release归还.
+     * 缓冲区正在使用时(嵌套渲染)返回一个新的缓冲区.
+     * @return 清空的缓冲区
+     */
+    public static SqlBuffer acquire() {
+        SqlBuffer buffer = LOCAL.get();
+        if (buffer.inUse) {
+            return new SqlBuffer(256);
+        }
+        buffer.inUse = true;
+        buffer.length = 0;
+        return buffer;
+    }
+
+    /**
+     * 归还缓冲区,过大的缓冲区不再保留.
+     */
+    public void release() {
+        inUse = false;
+        length = 0;
+        if (chars.length > MAX_RETAINED) {
+            chars = new char[256];
+        }
+    }
+
+    private void ensure(int extra) {
+        if (length + extra > chars.length) {
+            chars = Arrays.copyOf(chars, Math.max(length + extra, chars.length * 2));
+        }
+    }
+
+    public SqlBuffer append(char c) {
+        ensure(1);
+        chars[length++] = c;
+        return this;
+    }
+
+    public SqlBuffer append(String str) {
+        int n = str.length();
+        ensure(n);
+        str.getChars(0, n, chars, length);
+        length += n;
+        return this;
+    }
+
+    public SqlBuffer append(long value) {
+        return append(Long.toString(value));
+    }
+
+    /**
+     * 用关键字括号括起标识符.
+     * @param name 标识符
+     * @param quote 左右括号
+     * @return this
+     */
+    public SqlBuffer appendQuoted(String name, char[] quote) {
+        return append(quote[0]).append(name).append(quote[1]);
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index >= length) {
+            throw new IndexOutOfBoundsException(String.valueOf(index));
+        }
+        return chars[index];
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return new String(chars, start, end - start);
+    }
+
+    @Override
+    public String toString() {
+        return new String(chars, 0, length);
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2015 www.hyberbin.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * Email:hyberbin@qq.com
+ */
+package org.jplus.hyb.database.sql;
+
+/**
+ * 语句渲染时和数据库相关的部分,由各数据库的适配器实现.
+ * @author hyberbin
+ */
+public interface SqlDialect {
+
+    /**
+     * 获取用于区分系统关键字的括号字符
+     * @return
+     */
+    public char[] getQuote();
+
+    /**
+     * 渲染带分页的查询.
+     * 查询本身(包括order by)用select.renderBody渲染,分页部分由各数据库决定.
+     * @param select 有limit的查询
+     * @param sql 输出
+     */
+    public void renderPage(Select select, SqlBuffer sql);
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2015 www.hyberbin.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * Email:hyberbin@qq.com
+ */
+package org.jplus.hyb.database.sql;
+
+/**
+ * 在SQL文本中查找最外层的关键字,跳过引号、括号和注释中的内容.
+ * 用于把用户写的语句拆成查询主体和order by,不做完整的语法分析.
+ * @author hyberbin
+ */
+final class SqlScanner {
+
+    private SqlScanner() {
+    }
+
+    /**
+     * 查找最外层的关键字.
+     * @param sql SQL文本
+     * @param first 关键字
+     * @param second 紧跟的第二个关键字,如order by的by,可以为null
+     * @param last 是否查找最后一个
+     * @return 关键字的位置,没有时返回-1
+     */
+    static int find(String sql, String first, String second, boolean last) {
+        int found = -1;
+        int depth = 0;
+        int length = sql.length();
+        for (int i = 0; i < length; i++) {
+            char c = sql.charAt(i);
+            switch (c) {
+                case '\'':
+                case '"':
+                case '`':
+                    i = skipQuoted(sql, i, c);
+                    break;
+                case '[':
+                    i = skipQuoted(sql, i, ']');
+                    break;
+                case '(':
+                    depth++;
+                    break;
+                case ')':
+                    depth--;
+                    break;
+                case '-':
+                    if (i + 1 < length && sql.charAt(i + 1) == '-') {
+                        int end = sql.indexOf('\n', i);
+                        i = end < 0 ? length : end;
+                    }
+                    break;
+                case '/':
+                    if (i + 1 < length && sql.charAt(i + 1) == '*') {
+                        int end = sql.indexOf("*/", i + 2);
+                        i = end < 0 ? length : end + 1;
+                    }
+                    break;
+                default:
+                    if (depth == 0 && matches(sql, i, first, second)) {
+                        if (!last) {
+                            return i;
+                        }
+                        found = i;
+                    }
+            }
+        }
+        return found;
+    }
+
+    private static int skipQuoted(String sql, int start, char close) {
+        for (int i = start + 1; i < sql.length(); i++) {
+            if (sql.charAt(i) == close) {
+                if (close == '\'' && i + 1 < sql.length() && sql.charAt(i + 1) == '\'') {
+                    i++;//转义的单引号
+                    continue;
+                }
+                return i;
+            }
+        }
+        return sql.length();
+    }
+
+    private static boolean matches(String sql, int i, String first, String second) {
+        if (i > 0 && isWordChar(sql.charAt(i - 1))) {
+            return false;
+        }
+        int end = matchWord(sql, i, first);
+        if (end < 0) {
+            return false;
+        }
+        if (second == null) {
+            return true;
+        }
+        int next = end;
+        while (next < sql.length() && Character.isWhitespace(sql.charAt(next))) {
+            next++;
+        }
+        return next > end && matchWord(sql, next, second) > 0;
+    }
+
+    private static int matchWord(String sql, int i, String word) {
+        if (!sql.regionMatches(true, i, word, 0, word.length())) {
+            return -1;
+        }
+        int end = i + word.length();
+        return end < sql.length() && isWordChar(sql.charAt(end)) ? -1 : end;
+    }
+
+    private static boolean isWordChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '$';
+    }
+}
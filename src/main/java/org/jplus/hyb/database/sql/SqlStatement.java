@@ -0,0 +1,65 @@
+/*
+ * Copyright 2015 www.hyberbin.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * Email:hyberbin@qq.com
+ */
+package org.jplus.hyb.database.sql;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * SQL语句的结构.
+ * 值都用预处理参数?表示,同一个语句对象可以反复执行,
+ * 渲染结果按数据库方言缓存,修改语句后缓存失效.
+ * @author hyberbin
+ */
+public abstract class SqlStatement {
+
+    private final ConcurrentMap<Class, String> rendered = new ConcurrentHashMap<Class, String>(2);
+
+    /**
+     * 按数据库方言生成SQL.
+     * @param dialect 方言,一般是适配器
+     * @return SQL语句
+     */
+    public String toSql(SqlDialect dialect) {
+        String sql = rendered.get(dialect.getClass());
+        if (sql == null) {
+            SqlBuffer buffer = SqlBuffer.acquire();
+            try {
+                render(dialect, buffer);
+                sql = buffer.toString();
+            } finally {
+                buffer.release();
+            }
+            rendered.put(dialect.getClass(), sql);
+        }
+        return sql;
+    }
+
+    /**
+     * 把语句渲染到缓冲区.
+     * @param dialect 方言
+     * @param sql 输出
+     */
+    public abstract void render(SqlDialect dialect, SqlBuffer sql);
+
+    /**
+     * 语句结构改变后清除缓存.
+     */
+    protected void changed() {
+        rendered.clear();
+    }
+}
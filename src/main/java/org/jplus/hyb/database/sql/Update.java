@@ -0,0 +1,79 @@
+/*
+ * Copyright 2015 www.hyberbin.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * Email:hyberbin@qq.com
+ */
+package org.jplus.hyb.database.sql;
+
+/**
+ * 更新语句.
+ * Update.table("news").set("title").increment("version", 1).where(Condition.eq("id"))
+ * @author hyberbin
+ */
+public class Update extends ValuesStatement<Update> {
+
+    private Condition where;
+    private String clause;
+
+    private Update(String table) {
+        super(table);
+    }
+
+    /**
+     * 更新一个表.
+     * @param table 表名,原样输出
+     * @return 更新语句
+     */
+    public static Update table(String table) {
+        return new Update(table);
+    }
+
+    public Update where(Condition condition) {
+        this.where = condition;
+        this.clause = null;
+        changed();
+        return this;
+    }
+
+    /**
+     * 设置用户写的条件子句.
+     * @param clause 含有where的子句,原样输出
+     * @return this
+     */
+    public Update where(String clause) {
+        this.where = null;
+        this.clause = clause;
+        changed();
+        return this;
+    }
+
+    @Override
+    public void render(SqlDialect dialect, SqlBuffer sql) {
+        char[] quote = dialect.getQuote();
+        sql.append("update ").append(table).append(" set ");
+        for (int i = 0; i < columns.size(); i++) {
+            if (i > 0) {
+                sql.append(',');
+            }
+            sql.appendQuoted(columns.get(i), quote).append('=');
+            appendValue(i, quote, sql);
+        }
+        if (where != null) {
+            sql.append(" where ");
+            where.render(dialect, sql);
+        } else if (clause != null) {
+            sql.append(' ').append(clause);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2015 www.hyberbin.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * Email:hyberbin@qq.com
+ */
+package org.jplus.hyb.database.sql;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 给字段赋值的语句,即insert和update.
+ * @param <S> 具体的语句类型
+ * @author hyberbin
+ */
+public abstract class ValuesStatement<S extends ValuesStatement<S>> extends SqlStatement {
+
+    protected final String table;
+    protected final List<String> columns = new ArrayList<String>();
+    /** 字段的值,String为原样输出的表达式,Increment为字段自增 */
+    protected final List<Object> values = new ArrayList<Object>();
+
+    protected ValuesStatement(String table) {
+        this.table = table;
+    }
+
+    /**
+     * 字段的值为一个预处理参数?.
+     * @param column 字段名
+     * @return this
+     */
+    public S set(String column) {
+        return set(column, "?");
+    }
+
+    /**
+     * 字段的值为一个表达式,如null或序列的下一个值.
+     * @param column 字段名
+     * @param expression 原样输出的表达式
+     * @return this
+     */
+    public S set(String column, String expression) {
+        columns.add(column);
+        values.add(expression);
+        changed();
+        return (S) this;
+    }
+
+    /**
+     * 字段在原来的值上增加.
+     * @param column 字段名
+     * @param step 增量
+     * @return this
+     */
+    public S increment(String column, int step) {
+        columns.add(column);
+        values.add(new Increment(step));
+        changed();
+        return (S) this;
+    }
+
+    public boolean isEmpty() {
+        return columns.isEmpty();
+    }
+
+    protected void appendValue(int i, char[] quote, SqlBuffer sql) {
+        Object value = values.get(i);
+        if (value instanceof Increment) {
+            sql.appendQuoted(columns.get(i), quote).append('+').append(((Increment) value).step);
+        } else {
+            sql.append((String) value);
+        }
+    }
+
+    private static final class Increment {
+
+        private final int step;
+
+        Increment(int step) {
+            this.step = step;
+        }
+    }
+}
@@ -0,0 +1,482 @@
+/*
+ * Copyright 2015 www.hyberbin.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * Email:hyberbin@qq.com
+ */
+package org.jplus.hyb.database.sqlite;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import org.jplus.hyb.database.transaction.ConnectionCallback;
+import org.jplus.hyb.database.util.BoundedCache;
+import org.jplus.hyb.log.Logger;
+import org.jplus.hyb.log.LoggerManager;
+
+/**
+ * SqliteUtil中一个独立命名空间的K-V存储,每个命名空间是一张kv_名称的表.
+ * 值按类型存在不同的列中:字符串存text_value,整数和布尔存int_value,二进制存blob_value,
+ * 读取时直接得到对应类型,不需要再解析字符串.每条记录可以有过期时间,过期的记录读不到,由后台线程定期删除.
+ * 读到的值缓存在有界的内存缓存中.写入直接写数据库,批量写入用putAll.
+ * @author hyberbin
+ */
+public class KvNamespace {
+
+    private static final Logger log = LoggerManager.getLogger(KvNamespace.class);
+    private static final Pattern NAME = Pattern.compile("[A-Za-z0-9_]+");
+    /** sqlite一条语句最多999个参数 */
+    private static final int MAX_PARAMETERS = 999;
+    private static final int COLUMNS = 5;
+    private static final ConcurrentMap<String, KvNamespace> NAMESPACES = new ConcurrentHashMap<String, KvNamespace>();
+    private static ScheduledExecutorService sweeper;
+    private final String name;
+    private final String table;
+    private volatile BoundedCache<String, Entry> cache;
+
+    static {
+        setSweepInterval(60000);
+    }
+
+    private KvNamespace(String name) {
+        this.name = name;
+        this.table = "kv_" + name;
+        this.cache = new BoundedCache<String, Entry>("sqlite.kv." + name, 10000);
+        SqliteUtil.execute("create table if not exists " + table
+                + "(key text primary key,text_value text,int_value integer,blob_value blob,expires integer) without rowid");
+        SqliteUtil.execute("create index if not exists " + table + "_expires on " + table + "(expires)");
+    }
+
+    /**
+     * 获取命名空间,不存在则建表.
+     * @param name 名称,只能包含字母、数字和下划线
+     * @return
+     */
+    static KvNamespace of(String name) {
+        if (!NAME.matcher(name).matches()) {
+            throw new IllegalArgumentException("invalid namespace:" + name);
+        }
+        KvNamespace namespace = NAMESPACES.get(name);
+        if (namespace == null) {
+            synchronized (NAMESPACES) {
+                namespace = NAMESPACES.get(name);
+                if (namespace == null) {
+                    namespace = new KvNamespace(name);
+                    NAMESPACES.put(name, namespace);
+                }
+            }
+        }
+        return namespace;
+    }
+
+    /**
+     * 设置后台删除过期记录的时间间隔,对所有命名空间生效.
+     * @param millis 毫秒,0表示不自动删除,只能调用sweep
+     */
+    public static synchronized void setSweepInterval(long millis) {
+        if (sweeper != null) {
+            sweeper.shutdown();
+            sweeper = null;
+        }
+        if (millis <= 0) {
+            return;
+        }
+        sweeper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "sqlite-kv-sweep");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        sweeper.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                for (KvNamespace namespace : NAMESPACES.values()) {
+                    try {
+                        namespace.sweep();
+                    } catch (SQLException ex) {
+                        log.error("sweep {} error", namespace.name, ex);
+                    }
+                }
+            }
+        }, millis, millis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 设置缓存的条目数,会清空已有的缓存.
+     * @param size
+     */
+    public void setCacheSize(long size) {
+        cache = new BoundedCache<String, Entry>("sqlite.kv." + name, size);
+    }
+
+    public BoundedCache<String, Entry> getCache() {
+        return cache;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 取值.
+     * @param key
+     * @return 字符串、Long或byte[];不存在或已过期返回null
+     * @throws SQLException
+     */
+    public Object get(String key) throws SQLException {
+        BoundedCache<String, Entry> current = cache;
+        Entry entry = current.get(key);
+        if (entry != null) {
+            if (!entry.isExpired()) {
+                return entry.value;
+            }
+            current.remove(key);
+        } else if (current.isNegative(key)) {
+            return null;
+        }
+        List<String> keys = new ArrayList<String>(1);
+        keys.add(key);
+        Map<String, Entry> loaded = load(current, keys);
+        entry = loaded.get(key);
+        return entry == null ? null : entry.value;
+    }
+
+    public String getString(String key) throws SQLException {
+        Object value = get(key);
+        return value == null ? null : value instanceof byte[] ? null : value.toString();
+    }
+
+    public Long getLong(String key) throws SQLException {
+        Object value = get(key);
+        if (value instanceof Long) {
+            return (Long) value;
+        }
+        return value instanceof String ? Long.valueOf((String) value) : null;
+    }
+
+    public boolean getBoolean(String key) throws SQLException {
+        Object value = get(key);
+        if (value instanceof Long) {
+            return (Long) value != 0;
+        }
+        return value instanceof String && "true".equalsIgnoreCase((String) value);
+    }
+
+    public byte[] getBytes(String key) throws SQLException {
+        Object value = get(key);
+        return value instanceof byte[] ? (byte[]) value : null;
+    }
+
+    /**
+     * 批量取值,没有缓存的key用in查询,每条语句最多999个key.
+     * @param keys
+     * @return key到值的映射,不包括不存在和已过期的key
+     * @throws SQLException
+     */
+    public Map<String, Object> getAll(Collection<String> keys) throws SQLException {
+        BoundedCache<String, Entry> current = cache;
+        Map<String, Object> result = new LinkedHashMap<String, Object>(keys.size() * 2);
+        List<String> misses = new ArrayList<String>();
+        for (String key : keys) {
+            Entry entry = current.get(key);
+            if (entry != null && !entry.isExpired()) {
+                result.put(key, entry.value);
+            } else if (entry != null || !current.isNegative(key)) {
+                misses.add(key);
+            }
+        }
+        if (!misses.isEmpty()) {
+            for (Map.Entry<String, Entry> loaded : load(current, misses).entrySet()) {
+                result.put(loaded.getKey(), loaded.getValue().value);
+            }
+        }
+        return result;
+    }
+
+    private Map<String, Entry> load(BoundedCache<String, Entry> current, final List<String> keys) throws SQLException {
+        final Map<String, Entry> loaded = new LinkedHashMap<String, Entry>(keys.size() * 2);
+        SqliteUtil.read(new ConnectionCallback<Void>() {
+            @Override
+            public Void doInConnection(Connection conn) throws SQLException {
+                select(conn, keys, loaded);
+                return null;
+            }
+        });
+        for (String key : keys) {
+            Entry entry = loaded.get(key);
+            if (entry == null) {
+                current.putNegative(key);
+            } else {
+                current.putIfAbsent(key, entry);
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * 用in查询多个key,每条语句最多999个参数.
+     */
+    private void select(Connection conn, List<String> keys, Map<String, Entry> loaded) throws SQLException {
+        long now = System.currentTimeMillis();
+        for (int from = 0; from < keys.size(); from += MAX_PARAMETERS - 1) {
+            List<String> chunk = keys.subList(from, Math.min(keys.size(), from + MAX_PARAMETERS - 1));
+            StringBuilder sql = new StringBuilder("select key,text_value,int_value,blob_value,expires from ")
+                    .append(table).append(" where (expires is null or expires>?) and key in (");
+            for (int i = 0; i < chunk.size(); i++) {
+                sql.append(i == 0 ? "?" : ",?");
+            }
+            PreparedStatement ps = conn.prepareStatement(sql.append(')').toString());
+            try {
+                ps.setLong(1, now);
+                for (int i = 0; i < chunk.size(); i++) {
+                    ps.setString(i + 2, chunk.get(i));
+                }
+                ResultSet rs = ps.executeQuery();
+                while (rs.next()) {
+                    loaded.put(rs.getString(1), toEntry(rs));
+                }
+                rs.close();
+            } finally {
+                ps.close();
+            }
+        }
+    }
+
+    private static Entry toEntry(ResultSet rs) throws SQLException {
+        Object value = rs.getString(2);
+        if (value == null) {
+            long number = rs.getLong(3);
+            value = rs.wasNull() ? rs.getBytes(4) : Long.valueOf(number);
+        }
+        long expires = rs.getLong(5);
+        return new Entry(value, expires);
+    }
+
+    /**
+     * 写入一个永不过期的值.
+     * @param key
+     * @param value 字符串、整数、布尔或byte[],为null时删除
+     * @throws SQLException
+     */
+    public void put(String key, Object value) throws SQLException {
+        put(key, value, 0);
+    }
+
+    /**
+     * 写入一个值.
+     * @param key
+     * @param value 字符串、整数、布尔或byte[],为null时删除
+     * @param ttl 多少毫秒后过期,0表示永不过期
+     * @throws SQLException
+     */
+    public void put(String key, Object value, long ttl) throws SQLException {
+        Map<String, Object> map = new LinkedHashMap<String, Object>(2);
+        map.put(key, value);
+        putAll(map, ttl);
+    }
+
+    /**
+     * 批量写入永不过期的值.
+     * @param map
+     * @throws SQLException
+     */
+    public void putAll(Map<String, ?> map) throws SQLException {
+        putAll(map, 0);
+    }
+
+    /**
+     * 在一个事务中批量写入,用多行values的insert or replace,每条语句最多999个参数.
+     * 值为null的key会被删除.
+     * @param map
+     * @param ttl 多少毫秒后过期,0表示永不过期
+     * @throws SQLException
+     */
+    public void putAll(Map<String, ?> map, long ttl) throws SQLException {
+        long expires = ttl > 0 ? System.currentTimeMillis() + ttl : 0;
+        final List<Map.Entry<String, Entry>> rows = new ArrayList<Map.Entry<String, Entry>>(map.size());
+        final List<String> removed = new ArrayList<String>();
+        for (Map.Entry<String, ?> item : map.entrySet()) {
+            if (item.getValue() == null) {
+                removed.add(item.getKey());
+            } else {
+                Entry entry = new Entry(normalize(item.getValue()), expires);
+                rows.add(new AbstractMap.SimpleImmutableEntry<String, Entry>(item.getKey(), entry));
+            }
+        }
+        SqliteUtil.write(new ConnectionCallback<Void>() {
+            @Override
+            public Void doInConnection(Connection conn) throws SQLException {
+                int perStatement = MAX_PARAMETERS / COLUMNS;
+                for (int from = 0; from < rows.size(); from += perStatement) {
+                    insert(conn, rows.subList(from, Math.min(rows.size(), from + perStatement)));
+                }
+                delete(conn, removed);
+                return null;
+            }
+        });
+        BoundedCache<String, Entry> current = cache;
+        for (Map.Entry<String, Entry> row : rows) {
+            current.put(row.getKey(), row.getValue());
+        }
+        for (String key : removed) {
+            current.remove(key);
+        }
+    }
+
+    private static Object normalize(Object value) {
+        if (value instanceof String || value instanceof byte[]) {
+            return value;
+        }
+        if (value instanceof Boolean) {
+            return (Boolean) value ? 1L : 0L;
+        }
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return ((Number) value).longValue();
+        }
+        return value.toString();
+    }
+
+    private void insert(Connection conn, List<Map.Entry<String, Entry>> rows) throws SQLException {
+        StringBuilder sql = new StringBuilder("insert or replace into ").append(table)
+                .append("(key,text_value,int_value,blob_value,expires) values ");
+        for (int i = 0; i < rows.size(); i++) {
+            sql.append(i == 0 ? "(?,?,?,?,?)" : ",(?,?,?,?,?)");
+        }
+        PreparedStatement ps = conn.prepareStatement(sql.toString());
+        try {
+            int index = 1;
+            for (Map.Entry<String, Entry> row : rows) {
+                Object value = row.getValue().value;
+                ps.setString(index++, row.getKey());
+                ps.setString(index++, value instanceof String ? (String) value : null);
+                if (value instanceof Long) {
+                    ps.setLong(index++, (Long) value);
+                } else {
+                    ps.setNull(index++, Types.INTEGER);
+                }
+                ps.setBytes(index++, value instanceof byte[] ? (byte[]) value : null);
+                if (row.getValue().expires > 0) {
+                    ps.setLong(index++, row.getValue().expires);
+                } else {
+                    ps.setNull(index++, Types.INTEGER);
+                }
+            }
+            ps.executeUpdate();
+        } finally {
+            ps.close();
+        }
+    }
+
+    private void delete(Connection conn, List<String> keys) throws SQLException {
+        for (int from = 0; from < keys.size(); from += MAX_PARAMETERS) {
+            List<String> chunk = keys.subList(from, Math.min(keys.size(), from + MAX_PARAMETERS));
+            StringBuilder sql = new StringBuilder("delete from ").append(table).append(" where key in (");
+            for (int i = 0; i < chunk.size(); i++) {
+                sql.append(i == 0 ? "?" : ",?");
+            }
+            PreparedStatement ps = conn.prepareStatement(sql.append(')').toString());
+            try {
+                for (int i = 0; i < chunk.size(); i++) {
+                    ps.setString(i + 1, chunk.get(i));
+                }
+                ps.executeUpdate();
+            } finally {
+                ps.close();
+            }
+        }
+    }
+
+    /**
+     * 删除一个key.
+     * @param key
+     * @throws SQLException
+     */
+    public void remove(String key) throws SQLException {
+        put(key, null);
+    }
+
+    /**
+     * 删除过期的记录.
+     * @return 删除的条数
+     * @throws SQLException
+     */
+    public int sweep() throws SQLException {
+        int count = SqliteUtil.write(new ConnectionCallback<Integer>() {
+            @Override
+            public Integer doInConnection(Connection conn) throws SQLException {
+                PreparedStatement ps = conn.prepareStatement("delete from " + table + " where expires<=?");
+                try {
+                    ps.setLong(1, System.currentTimeMillis());
+                    return ps.executeUpdate();
+                } finally {
+                    ps.close();
+                }
+            }
+        });
+        if (count > 0) {
+            log.debug("swept {} expired entries from {}", count, table);
+        }
+        return count;
+    }
+
+    /**
+     * 清空本命名空间.
+     */
+    public void clear() {
+        SqliteUtil.execute("delete from " + table);
+        cache.clear();
+    }
+
+    /**
+     * 缓存的值和过期时间.
+     */
+    public static final class Entry {
+
+        private final Object value;
+        private final long expires;
+
+        Entry(Object value, long expires) {
+            this.value = value;
+            this.expires = expires;
+        }
+
+        boolean isExpired() {
+            return expires > 0 && expires <= System.currentTimeMillis();
+        }
+
+        public Object getValue() {
+            return value;
+        }
+
+        public long getExpires() {
+            return expires;
+        }
+    }
+}
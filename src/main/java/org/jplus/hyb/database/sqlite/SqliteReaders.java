@@ -0,0 +1,124 @@
+/*
+ * Copyright 2015 www.hyberbin.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * Email:hyberbin@qq.com
+ */
+package org.jplus.hyb.database.sqlite;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.jplus.hyb.database.config.DbConfig;
+import org.jplus.hyb.database.metrics.MetricsRegistry;
+import org.jplus.hyb.database.transaction.ConnectionCallback;
+import org.jplus.hyb.log.Logger;
+import org.jplus.hyb.log.LoggerManager;
+
+/**
+ * sqlite的只读连接池.
+ * 连接以只读方式打开并自动提交,WAL模式下读不会等待写线程的事务,也不会阻塞写.
+ * @author hyberbin
+ */
+public class SqliteReaders {
+
+    private static final Logger log = LoggerManager.getLogger(SqliteReaders.class);
+    private final DbConfig config;
+    private final int busyTimeout;
+    private final BlockingQueue<Connection> idle;
+    private final AtomicInteger opened = new AtomicInteger();
+    private final int size;
+    private volatile boolean closed;
+
+    /**
+     * @param config 数据库配置
+     * @param size 最多打开的连接数
+     * @param busyTimeout 等待锁的毫秒数
+     */
+    public SqliteReaders(DbConfig config, int size, int busyTimeout) {
+        this.config = config;
+        this.size = size;
+        this.busyTimeout = busyTimeout;
+        this.idle = new ArrayBlockingQueue<Connection>(size);
+    }
+
+    /**
+     * 在一个只读连接上执行查询.
+     * @param <V>
+     * @param callback 查询
+     * @return 查询结果
+     * @throws SQLException
+     */
+    public <V> V read(ConnectionCallback<V> callback) throws SQLException {
+        Connection conn = borrow();
+        boolean broken = true;
+        try {
+            V result = callback.doInConnection(conn);
+            broken = false;
+            return result;
+        } finally {
+            giveBack(conn, broken);
+        }
+    }
+
+    private Connection borrow() throws SQLException {
+        Connection conn = idle.poll();
+        if (conn != null) {
+            return conn;
+        }
+        if (opened.incrementAndGet() <= size) {
+            Properties pragmas = new Properties();
+            pragmas.setProperty("open_mode", "1");//SQLITE_OPEN_READONLY
+            pragmas.setProperty("busy_timeout", String.valueOf(busyTimeout));
+            try {
+                return SqliteWriter.open(config, pragmas);
+            } catch (SQLException | RuntimeException ex) {
+                opened.decrementAndGet();
+                throw ex;
+            }
+        }
+        opened.decrementAndGet();
+        try {
+            return idle.take();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("interrupted while waiting for sqlite reader", ex);
+        }
+    }
+
+    private void giveBack(Connection conn, boolean broken) {
+        try {
+            if (!closed && !conn.isClosed() && (!broken || conn.getAutoCommit()) && idle.offer(conn)) {
+                return;
+            }
+            opened.decrementAndGet();
+            conn.close();
+            MetricsRegistry.INSTANCE.increment(MetricsRegistry.CONNECTION_CLOSED);
+        } catch (SQLException ex) {
+            log.error("close sqlite reader error", ex);
+        }
+    }
+
+    /**
+     * 关闭所有空闲连接,正在使用的连接归还时关闭.
+     */
+    public void close() {
+        closed = true;
+        for (Connection conn = idle.poll(); conn != null; conn = idle.poll()) {
+            giveBack(conn, true);
+        }
+    }
+}
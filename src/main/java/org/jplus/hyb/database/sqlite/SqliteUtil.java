@@ -1,26 +1,11 @@
-/*
- * Copyright 2015 www.hyberbin.com.
- *
- * Licensed under the Apache License, Version 2.0 (the "License");
- * you may not use this file except in compliance with the License.
- * You may obtain a copy of the License at
- *
- *      http://www.apache.org/licenses/LICENSE-2.0
- *
- * Unless required by applicable law or agreed to in writing, software
- * distributed under the License is distributed on an "AS IS" BASIS,
- * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
- * See the License for the specific language governing permissions and
- * limitations under the License.
- * Email:hyberbin@qq.com
- */
 package org.jplus.hyb.database.sqlite;
 
 import org.jplus.hyb.database.config.DbConfig;
 import org.jplus.hyb.database.config.SimpleConfigurator;
 import org.jplus.hyb.database.crud.DatabaseAccess;
-import org.jplus.hyb.database.crud.Hyberbin;
+import org.jplus.hyb.database.transaction.ConnectionCallback;
 import org.jplus.hyb.database.transaction.IDbManager;
+import org.jplus.hyb.database.util.BoundedCache;
 import org.jplus.hyb.log.Logger;
 import org.jplus.hyb.log.LoggerManager;
 import org.jplus.util.NumberUtils;
@@ -29,30 +14,74 @@ import org.jplus.util.ObjectHelper;
 import javax.swing.*;
 import java.awt.event.FocusEvent;
 import java.lang.reflect.Field;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import org.jplus.hyb.database.transaction.SimpleManager;
 import org.jplus.hyb.database.transaction.SingleManager;
+import org.jplus.hyb.database.transaction.StripedManager;
+import org.jplus.hyb.database.transaction.TransactionCallback;
+import org.jplus.hyb.database.transaction.TransactionTemplate;
 
 /**
  *本类实现了一个方便,简单的K-V缓存模型.
+ * 属性表以key为主键(WITHOUT ROWID),数据库使用WAL日志和synchronous=NORMAL.
+ * setProperty先写内存缓存和写缓冲,由后台线程按时间间隔或缓冲大小在一个事务中批量写入,
+ * 需要立即落盘时用setProperty(key,value,true)或flush().
  * @author Hyberbin
  */
 public class SqliteUtil {
 
     private static final Logger log = LoggerManager.getLogger(SqliteUtil.class);
-    private static final Map<String,String> PropertiesMap=new ConcurrentHashMap<String, String>();
+    /** 属性缓存,按key和值的字符数计算容量 */
+    private static volatile BoundedCache<String, String> cache = newCache(16L * 1024 * 1024);
+    /** 还没有写入数据库的属性,按写入顺序 */
+    private static Map<String, String> pending = new LinkedHashMap<String, String>();
+    /** 正在写入数据库的属性,写完前缓存中被淘汰的属性从这里读 */
+    private static Map<String, String> flushing = Collections.emptyMap();
+    private static final Object PENDING_LOCK = new Object();
+    /** 串行化写库,保证后写的值不会被先写的覆盖 */
+    private static final Object FLUSH_LOCK = new Object();
+    private static volatile int flushSize = 500;
+    private static ScheduledExecutorService flusher;
+    /** 多进程模式下的单写线程和只读连接,为null表示普通模式 */
+    private static volatile SqliteWriter writer;
+    private static volatile SqliteReaders readers;
+    private static volatile int busyTimeout = 5000;
+    /** 多进程模式下缓存值的过期时间,其它进程写入的值最多延迟这么久才能读到 */
+    private static volatile long multiProcessTtl = 1000;
     /**SINGLE_MANAGER_MODE=true 只能在单线程模式下使用,可以加快数据库的访问*/
     public static boolean SINGLE_MANAGER_MODE=false;
+    /**STRIPED_MANAGER_MODE=true 多线程下共用少量长连接,线程按hash分到不同连接上,优先于SINGLE_MANAGER_MODE.
+     * 同一连接上的线程共用事务,一个线程提交或回滚会影响其它线程,不要在这个模式下跨多次调用使用事务*/
+    public static boolean STRIPED_MANAGER_MODE=false;
     static {
         DbConfig dbConfig = SimpleConfigurator.INSTANCE.getDbConfig("sqlite");
         if(dbConfig==null){
             SimpleConfigurator.addConfigurator(new DbConfig("org.sqlite.JDBC", "jdbc:sqlite:data.db", "", "", "sqlite"));
         }
+        pragma("journal_mode=WAL");
         if (!tableExist("properties")) {
             createParmeterTable();
+        } else {
+            migrateParmeterTable();
         }
+        setFlushInterval(1000);
+        Runtime.getRuntime().addShutdownHook(new Thread("sqlite-util-flush") {
+            @Override
+            public void run() {
+                flush();
+            }
+        });
     }
     /**
      * 获取Sqlite的连接管理器.
@@ -61,6 +90,21 @@ public class SqliteUtil {
      * @return 
      */
     public static IDbManager getManager(final boolean... commit) {
+        if (STRIPED_MANAGER_MODE) {
+            return new StripedManager("sqlite") {
+                @Override
+                public void commit() throws SQLException {
+                    if (commit.length == 0 || commit[0]) {
+                        super.commit();
+                    }
+                }
+
+                @Override
+                protected Connection openConnection(String driver, String url, String username, String password) throws SQLException {
+                    return configure(super.openConnection(driver, url, username, password));
+                }
+            };
+        }
         IDbManager manager = SINGLE_MANAGER_MODE?new SingleManager("sqlite"){
             @Override
             public synchronized void commit() throws SQLException {
@@ -70,9 +114,234 @@ public class SqliteUtil {
                     super.commit(); 
                 }
             }
-        }:new SimpleManager("sqlite");
+
+            @Override
+            protected Connection openConnection(String driver, String url, String username, String password) throws SQLException {
+                return configure(super.openConnection(driver, url, username, password));
+            }
+        }:new SimpleManager("sqlite"){
+            @Override
+            protected Connection openConnection(String driver, String url, String username, String password) throws SQLException {
+                return configure(super.openConnection(driver, url, username, password));
+            }
+        };
         return manager;
     }
+
+    /**
+     * 新建连接时设置synchronous=NORMAL.这是连接级的设置,新连接还是自动提交,不会提交其它操作.
+     * @param conn 刚打开的连接
+     * @return
+     * @throws SQLException
+     */
+    private static Connection configure(Connection conn) throws SQLException {
+        Statement stm = conn.createStatement();
+        try {
+            stm.execute("PRAGMA synchronous=NORMAL");
+        } finally {
+            stm.close();
+        }
+        return conn;
+    }
+
+    /**
+     * 设置多进程模式.多个进程共用一个数据库文件时开启:
+     * 本进程的所有写操作交给一个专用的写线程组提交,SQLITE_BUSY时退避重试;
+     * 读操作使用单独的只读连接,WAL模式下不会被写阻塞.
+     * 其它进程可能修改属性,开启后缓存的属性值在setMultiProcessTtl设置的时间后过期.
+     * @param enabled 是否开启
+     */
+    public static synchronized void setMultiProcessMode(boolean enabled) {
+        if (enabled == (writer != null)) {
+            return;
+        }
+        if (enabled) {
+            DbConfig config = SimpleConfigurator.INSTANCE.getDbConfig("sqlite");
+            readers = new SqliteReaders(config, Math.max(2, Runtime.getRuntime().availableProcessors()), busyTimeout);
+            writer = new SqliteWriter(config, busyTimeout);
+            cache.setTtl(multiProcessTtl);
+            cache.clear();//之前缓存的值没有过期时间
+        } else {
+            cache.setTtl(0);
+            flush();
+            SqliteWriter oldWriter = writer;
+            SqliteReaders oldReaders = readers;
+            writer = null;
+            readers = null;
+            oldWriter.close();
+            oldReaders.close();
+        }
+    }
+
+    public static boolean isMultiProcessMode() {
+        return writer != null;
+    }
+
+    /**
+     * 设置多进程模式下缓存的属性值多久后过期,在开启多进程模式前设置.
+     * @param millis 毫秒,0表示不过期
+     */
+    public static void setMultiProcessTtl(long millis) {
+        multiProcessTtl = millis;
+    }
+
+    /**
+     * 设置多进程模式下等待其它进程释放锁的时间,在开启多进程模式前设置.
+     * @param millis 毫秒
+     */
+    public static void setBusyTimeout(int millis) {
+        busyTimeout = millis;
+    }
+
+    /**
+     * 执行写操作.多进程模式下交给写线程组提交,否则在新的连接管理器上执行并提交.
+     * @param <V>
+     * @param callback 写操作,不要提交或回滚
+     * @return
+     * @throws SQLException
+     */
+    static <V> V write(ConnectionCallback<V> callback) throws SQLException {
+        SqliteWriter current = writer;
+        if (current != null) {
+            return current.execute(callback);
+        }
+        IDbManager manager = getManager();
+        Connection conn = null;
+        try {
+            conn = manager.getConnection();
+            V result = callback.doInConnection(conn);
+            manager.closeConnection();
+            return result;
+        } catch (SQLException | RuntimeException ex) {
+            if (conn != null) {
+                rollBack(manager);
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * 执行读操作.多进程模式下使用只读连接.
+     * @param <V>
+     * @param callback 读操作
+     * @return
+     * @throws SQLException
+     */
+    static <V> V read(ConnectionCallback<V> callback) throws SQLException {
+        SqliteReaders current = readers;
+        if (current != null) {
+            return current.read(callback);
+        }
+        IDbManager manager = getManager(false);
+        try {
+            return callback.doInConnection(manager.getConnection());
+        } finally {
+            manager.closeConnection();
+        }
+    }
+
+    /**
+     * 设置后台写入的时间间隔.
+     * @param millis 毫秒,0表示不定时写入,只按缓冲大小或手动flush
+     */
+    public static synchronized void setFlushInterval(long millis) {
+        if (flusher != null) {
+            flusher.shutdown();
+            flusher = null;
+        }
+        if (millis <= 0) {
+            return;
+        }
+        flusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "sqlite-util-flush");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        flusher.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                flush();
+            }
+        }, millis, millis, TimeUnit.MILLISECONDS);
+    }
+
+    private static BoundedCache<String, String> newCache(long maxChars) {
+        return new BoundedCache<String, String>("sqlite.properties", maxChars, new BoundedCache.Weigher<String, String>() {
+            @Override
+            public int weigh(String key, String value) {
+                return key.length() + (value == null ? 0 : value.length()) + 32;//32是条目本身的大致开销
+            }
+        });
+    }
+
+    /**
+     * 设置属性缓存的容量,超过后淘汰最久没有访问的属性.会清空已有的缓存.
+     * @param maxChars 所有key和值的字符数加上每个条目32的开销
+     */
+    public static void setCacheSize(long maxChars) {
+        BoundedCache<String, String> newCache = newCache(maxChars);
+        newCache.setNegativeTtl(cache.getNegativeTtl());
+        newCache.setTtl(cache.getTtl());
+        cache = newCache;
+    }
+
+    /**
+     * 设置数据库中不存在的属性缓存多久,期间再取该属性不查数据库.
+     * @param millis 毫秒,0表示不缓存
+     */
+    public static void setNegativeTtl(long millis) {
+        cache.setNegativeTtl(millis);
+    }
+
+    /**
+     * 获取属性缓存,可以读取命中、未命中和淘汰次数.
+     * @return
+     */
+    public static BoundedCache<String, String> getCache() {
+        return cache;
+    }
+
+    /**
+     * 设置写缓冲的大小,缓冲的属性数达到该值时立即写入.
+     * @param size
+     */
+    public static void setFlushSize(int size) {
+        flushSize = Math.max(1, size);
+    }
+
+    /**
+     * 在事务外执行PRAGMA.sqlite的日志模式和同步级别不能在事务中修改,连接上未提交的操作会先提交.
+     * @param conn 连接
+     * @param pragmas PRAGMA语句,不带PRAGMA关键字
+     * @throws SQLException
+     */
+    private static void pragma(Connection conn, String... pragmas) throws SQLException {
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(true);
+        Statement stm = conn.createStatement();
+        try {
+            for (String pragma : pragmas) {
+                stm.execute("PRAGMA " + pragma);
+            }
+        } finally {
+            stm.close();
+            conn.setAutoCommit(autoCommit);
+        }
+    }
+
+    private static void pragma(String pragma) {
+        IDbManager manager = getManager();
+        try {
+            pragma(manager.getConnection(), pragma);
+            manager.closeConnection();
+        } catch (SQLException ex) {
+            log.error("execute pragma {} error", pragma, ex);
+        }
+    }
+
     /**
      * 表是否存在.
      * @param tableName 表名
@@ -81,10 +350,10 @@ public class SqliteUtil {
     public static boolean tableExist(String tableName) {
         DatabaseAccess lite = new DatabaseAccess(getManager());
         try {
-            Object count = lite.queryUnique("SELECT COUNT(*) FROM sqlite_master where type='table' and name='" + tableName + "'");
+            Object count = lite.setParmeter(tableName).queryUnique("SELECT COUNT(*) FROM sqlite_master where type='table' and name=?");
             return Integer.valueOf(1).equals(count);
         } catch (SQLException ex) {
-            log.error("check table exist error tablename:{}", ex, tableName);
+            log.error("check table exist error tablename:{}", tableName, ex);
         }
         return false;
     }
@@ -92,17 +361,57 @@ public class SqliteUtil {
      * 创建属性表.
      */
     public static void createParmeterTable() {
-        String sql = "create table properties(key text,value text);";
-        execute(sql);
+        execute("create table if not exists properties(key text primary key,value text) without rowid");
+    }
+    /**
+     * 把老的属性表迁移成以key为主键的表.
+     * 老的属性表可能有重复的key,只保留每个key最后写入的一条.整个迁移在一个事务中完成.
+     */
+    private static void migrateParmeterTable() {
+        DatabaseAccess lite = new DatabaseAccess(getManager());
+        try {
+            Object sql = lite.queryUnique("SELECT sql FROM sqlite_master where type='table' and name='properties'");
+            if (sql != null && sql.toString().toLowerCase().contains("without rowid")) {
+                return;
+            }
+        } catch (SQLException ex) {
+            log.error("check properties table error", ex);
+            return;
+        }
+        try {
+            new TransactionTemplate("sqlite").execute(new TransactionCallback<Void>() {
+                @Override
+                public Void doInTransaction(IDbManager manager) throws SQLException {
+                    DatabaseAccess migrate = new DatabaseAccess(manager);
+                    migrate.update("create table properties_new(key text primary key,value text) without rowid");
+                    migrate.update("insert into properties_new select key,value from properties where rowid in (select max(rowid) from properties where key is not null group by key)");
+                    migrate.update("drop table properties");
+                    migrate.update("alter table properties_new rename to properties");
+                    return null;
+                }
+            });
+            log.info("migrated properties table to key primary key");
+        } catch (SQLException ex) {
+            log.error("migrate properties table error", ex);
+        }
     }
     /**
      * 执行sql语句.
      * @param sql 
      */
-    public static void execute(String sql) {
-        DatabaseAccess lite = new DatabaseAccess(getManager());
+    public static void execute(final String sql) {
         try {
-            lite.update(sql);
+            write(new ConnectionCallback<Integer>() {
+                @Override
+                public Integer doInConnection(Connection conn) throws SQLException {
+                    Statement stm = conn.createStatement();
+                    try {
+                        return stm.executeUpdate(sql);
+                    } finally {
+                        stm.close();
+                    }
+                }
+            });
         } catch (SQLException ex) {
             log.error("create table error", ex);
         }
@@ -110,24 +419,63 @@ public class SqliteUtil {
     /**
      * 获取属性.
      * 由于不会对数据库产生数据影响这里都不关闭数据库和提交事务.
+     * 依次查缓存、还没写入数据库的属性和数据库,数据库中不存在的属性在一段时间内直接返回空串.
      * @param key
-     * @return 
+     * @return 不存在时返回空串,查询出错返回null
      */
-    public static String getProperty(String key) {
-        String pvalue = PropertiesMap.get(key);
-        if(pvalue==null){
-            String sql = "select value from properties where key ='" + key + "'";
-            DatabaseAccess lite = new DatabaseAccess(getManager(false));
-            try {
-                Object value = lite.queryUnique(sql);
-                pvalue=value == null ? "" : value.toString();
-            } catch (SQLException ex) {
-                log.error("getProperty error key:{}", ex, key);
+    public static String getProperty(final String key) {
+        BoundedCache<String, String> current = cache;
+        String pvalue = current.get(key);
+        if (pvalue != null) {
+            return pvalue;
+        }
+        synchronized (PENDING_LOCK) {
+            pvalue = pending.get(key);
+            if (pvalue == null) {
+                pvalue = flushing.get(key);
+            }
+        }
+        if (pvalue != null) {
+            current.putIfAbsent(key, pvalue);
+            return pvalue;
+        }
+        if (current.isNegative(key)) {
+            return "";
+        }
+        try {
+            String value = read(new ConnectionCallback<String>() {
+                @Override
+                public String doInConnection(Connection conn) throws SQLException {
+                    PreparedStatement ps = conn.prepareStatement("select value from properties where key=?");
+                    try {
+                        ps.setString(1, key);
+                        ResultSet rs = ps.executeQuery();
+                        return rs.next() ? rs.getString(1) : null;
+                    } finally {
+                        ps.close();
+                    }
+                }
+            });
+            if (value == null) {
+                current.putNegative(key);
+                return "";
             }
+            pvalue = value;
+        } catch (SQLException ex) {
+            log.error("getProperty error key:{}", key, ex);
+            return null;
         }
-        PropertiesMap.put(key,pvalue);
+        current.putIfAbsent(key, pvalue);//查询期间其它线程写入的新值不会被覆盖
         return pvalue;
     }
+    /**
+     * 获取一个独立的K-V命名空间,值按类型存储,可以设置过期时间.
+     * @param name 名称,只能包含字母、数字和下划线
+     * @return
+     */
+    public static KvNamespace getNamespace(String name) {
+        return KvNamespace.of(name);
+    }
     /**
      * 获取对应属性名的布尔值.
      * @param key 属性名.
@@ -148,10 +496,10 @@ public class SqliteUtil {
     }
     /**
      * 设置一个属性名和对应的值.
-     * 如果缓存中已经有一样的值则不对数据库操作反之则更新数据库.
+     * 如果缓存中已经有一样的值则不对数据库操作,反之放入写缓冲,由后台线程批量写入数据库.
      * @param key 属性名.
      * @param value 属性对应的值.
-     * @param commit 是否提交事务.
+     * @param commit 为true时立即把写缓冲写入数据库.
      */
     public static void setProperty(String key, String value,boolean... commit ) {
         if (ObjectHelper.isNullOrEmptyString(key) ){
@@ -160,31 +508,85 @@ public class SqliteUtil {
         if( ObjectHelper.isNullOrEmptyString(value)) {
             value = "";
         }
-        String pvalue =getProperty(key);
-        if(value.equals(pvalue)){
-            return;
+        boolean full;
+        synchronized (PENDING_LOCK) {
+            if (value.equals(cache.get(key))) {
+                full = false;
+            } else {
+                cache.put(key, value);
+                pending.put(key, value);
+                full = pending.size() >= flushSize;
+            }
+        }
+        if (full || commit.length > 0 && commit[0]) {
+            flush();
+        }
+    }
+    /**
+     * 把写缓冲中的属性在一个事务中写入数据库.
+     * 写入失败的属性放回写缓冲,下次再写.
+     */
+    public static void flush() {
+        synchronized (FLUSH_LOCK) {
+            final Map<String, String> batch;
+            synchronized (PENDING_LOCK) {
+                if (pending.isEmpty()) {
+                    return;
+                }
+                batch = pending;
+                flushing = batch;
+                pending = new LinkedHashMap<String, String>();
+            }
+            try {
+                write(new ConnectionCallback<int[]>() {
+                    @Override
+                    public int[] doInConnection(Connection conn) throws SQLException {
+                        PreparedStatement ps = conn.prepareStatement("insert or replace into properties(key,value) values(?,?)");
+                        try {
+                            for (Map.Entry<String, String> entry : batch.entrySet()) {
+                                ps.setString(1, entry.getKey());
+                                ps.setString(2, entry.getValue());
+                                ps.addBatch();
+                            }
+                            return ps.executeBatch();
+                        } finally {
+                            ps.close();
+                        }
+                    }
+                });
+                log.debug("flushed {} properties", batch.size());
+            } catch (SQLException ex) {
+                log.error("flush {} properties error!", batch.size(), ex);
+                synchronized (PENDING_LOCK) {
+                    batch.putAll(pending);
+                    pending = batch;
+                }
+            } finally {
+                synchronized (PENDING_LOCK) {
+                    flushing = Collections.emptyMap();
+                }
+            }
         }
-        Properties property = new Properties(key, value);
-        Hyberbin<Properties> hyberbin = new Hyberbin(property, getManager(commit));
+    }
+
+    private static void rollBack(IDbManager manager) {
         try {
-            hyberbin.deleteByKey("key");
-            hyberbin = new Hyberbin(property, getManager(commit));
-            hyberbin.insert("");
-            PropertiesMap.put(key,value);
+            manager.rollBack();
+            manager.closeConnection();
         } catch (SQLException ex) {
-            log.error("setProperty key:{},value:{} error!", ex, key, value);
+            log.error("rollBack properties error!", ex);
         }
     }
     /**
      * 清空缓存.
      */
     public static void clearProperties() {
-        DatabaseAccess databaseAccess = new DatabaseAccess(getManager());
-        try {
-            databaseAccess.update("delete from Properties");
-            PropertiesMap.clear();
-        } catch (SQLException ex) {
-            log.error("clearProperties error!", ex);
+        synchronized (FLUSH_LOCK) {
+            synchronized (PENDING_LOCK) {
+                pending.clear();
+                cache.clear();
+            }
+            execute("delete from properties");
         }
     }
     /**
@@ -289,34 +691,3 @@ public class SqliteUtil {
 
     }
 }
-
-class Properties {
-
-    private String key;
-    private String value;
-
-    public Properties() {
-    }
-
-    public Properties(String key, String value) {
-        this.key = key;
-        this.value = value;
-    }
-
-    public String getKey() {
-        return key;
-    }
-
-    public void setKey(String key) {
-        this.key = key;
-    }
-
-    public String getValue() {
-        return value;
-    }
-
-    public void setValue(String value) {
-        this.value = value;
-    }
-
-}
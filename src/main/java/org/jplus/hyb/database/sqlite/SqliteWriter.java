@@ -0,0 +1,328 @@
+/*
+ * Copyright 2015 www.hyberbin.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * Email:hyberbin@qq.com
+ */
+package org.jplus.hyb.database.sqlite;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.jplus.hyb.database.adapter.IAdapter;
+import org.jplus.hyb.database.config.ConfigCenter;
+import org.jplus.hyb.database.config.DbConfig;
+import org.jplus.hyb.database.metrics.MetricsRegistry;
+import org.jplus.hyb.database.transaction.ConnectionCallback;
+import org.jplus.hyb.log.Logger;
+import org.jplus.hyb.log.LoggerManager;
+
+/**
+ * sqlite的单写线程.
+ * 一个进程内对一个数据库的所有写操作都交给同一个线程,用一个专用连接执行,
+ * 线程每次取出队列中积攒的所有操作放在一个事务中提交(组提交),减少提交和加锁的次数.
+ * 其它进程持有写锁时sqlite先按busy_timeout等待,仍然返回SQLITE_BUSY时整组回滚后退避重试.
+ * 组中某个操作出现不可重试的错误时,整组回滚后逐个单独提交,只有出错的操作失败.
+ * @author hyberbin
+ */
+public class SqliteWriter {
+
+    private static final Logger log = LoggerManager.getLogger(SqliteWriter.class);
+    /** 一次组提交最多包含的操作数 */
+    private static final int MAX_GROUP = 256;
+    private final DbConfig config;
+    private final IAdapter adapter;
+    private final BlockingQueue<Task<?>> queue = new LinkedBlockingQueue<Task<?>>();
+    private final Thread thread;
+    private final int busyTimeout;
+    private int maxRetries = 10;
+    private long backoffMillis = 10;
+    private long maxBackoffMillis = 1000;
+    private volatile boolean running = true;
+    /** 保护running和入队,关闭后不会再有操作进入队列 */
+    private final Object lock = new Object();
+    private Connection connection;
+
+    /**
+     * @param config 数据库配置
+     * @param busyTimeout 等待其它进程释放锁的毫秒数
+     */
+    public SqliteWriter(DbConfig config, int busyTimeout) {
+        this.config = config;
+        this.busyTimeout = busyTimeout;
+        this.adapter = ConfigCenter.INSTANCE.getAdapter(config.getDriver());
+        this.thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                loop();
+            }
+        }, "sqlite-writer-" + config.getConfigName());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * 设置SQLITE_BUSY时最多重试次数.
+     * @param maxRetries
+     */
+    public void setMaxRetries(int maxRetries) {
+        this.maxRetries = maxRetries;
+    }
+
+    /**
+     * 设置退避时间.第n次重试前随机等待0到min(max,base*2^n)毫秒.
+     * @param backoffMillis 基础等待毫秒数
+     * @param maxBackoffMillis 最大等待毫秒数
+     */
+    public void setBackoff(long backoffMillis, long maxBackoffMillis) {
+        this.backoffMillis = backoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+    }
+
+    /**
+     * 打开sqlite连接,连接参数在打开时生效,不需要在事务外再执行PRAGMA.
+     * @param config 数据库配置
+     * @param pragmas 连接参数,如busy_timeout、journal_mode、open_mode
+     * @return
+     * @throws SQLException
+     */
+    static Connection open(DbConfig config, Properties pragmas) throws SQLException {
+        try {
+            Class.forName(config.getDriver());
+        } catch (ClassNotFoundException ex) {
+            throw new SQLException("数据库连接错误,找不到驱动", ex);
+        }
+        Connection conn = DriverManager.getConnection(config.getUrl(), pragmas);
+        MetricsRegistry.INSTANCE.increment(MetricsRegistry.CONNECTION_OPENED);
+        return conn;
+    }
+
+    private Connection getConnection() throws SQLException {
+        if (connection == null || connection.isClosed()) {
+            Properties pragmas = new Properties();
+            pragmas.setProperty("busy_timeout", String.valueOf(busyTimeout));
+            pragmas.setProperty("journal_mode", "WAL");
+            pragmas.setProperty("synchronous", "NORMAL");
+            connection = open(config, pragmas);
+            connection.setAutoCommit(false);
+        }
+        return connection;
+    }
+
+    /**
+     * 提交写操作,不等待完成.
+     * @param <V>
+     * @param callback 写操作,在写线程的事务中执行,不要提交或回滚
+     * @return 操作结果
+     */
+    public <V> CompletableFuture<V> submit(ConnectionCallback<V> callback) {
+        Task<V> task = new Task<V>(callback);
+        synchronized (lock) {
+            if (running) {
+                queue.add(task);
+                return task.future;
+            }
+        }
+        task.future.completeExceptionally(new SQLException("sqlite writer closed"));
+        return task.future;
+    }
+
+    /**
+     * 提交写操作并等待提交完成.
+     * @param <V>
+     * @param callback 写操作,在写线程的事务中执行,不要提交或回滚
+     * @return 操作结果
+     * @throws SQLException 操作出错或重试次数用完
+     */
+    public <V> V execute(ConnectionCallback<V> callback) throws SQLException {
+        try {
+            return submit(callback).get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("interrupted while waiting for sqlite writer", ex);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof SQLException) {
+                throw (SQLException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new SQLException(cause);
+        }
+    }
+
+    private void loop() {
+        List<Task<?>> group = new ArrayList<Task<?>>();
+        while (running || !queue.isEmpty()) {
+            try {
+                Task<?> first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                group.add(first);
+                queue.drainTo(group, MAX_GROUP - 1);
+                commit(group);
+            } catch (InterruptedException ex) {
+                stop();
+            } catch (RuntimeException ex) {
+                log.error("sqlite writer error", ex);
+                fail(group, new SQLException(ex));
+            } finally {
+                group.clear();
+            }
+        }
+        fail(queue, new SQLException("sqlite writer closed"));
+        closeConnection();
+    }
+
+    private void commit(List<Task<?>> group) {
+        try {
+            Object[] results = run(group);
+            for (int i = 0; i < group.size(); i++) {
+                complete(group.get(i), results[i]);
+            }
+        } catch (SQLException ex) {
+            if (group.size() == 1) {
+                group.get(0).future.completeExceptionally(ex);
+                return;
+            }
+            log.debug("group commit of {} writes failed,commit one by one:{}", group.size(), ex.getMessage());
+            for (Task<?> task : group) {
+                List<Task<?>> single = new ArrayList<Task<?>>(1);
+                single.add(task);
+                try {
+                    complete(task, run(single)[0]);
+                } catch (SQLException taskEx) {
+                    task.future.completeExceptionally(taskEx);
+                }
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> void complete(Task<V> task, Object result) {
+        task.future.complete((V) result);
+    }
+
+    /**
+     * 在一个事务中执行一组操作,SQLITE_BUSY时回滚重试.
+     */
+    private Object[] run(List<Task<?>> group) throws SQLException {
+        for (int attempt = 0;; attempt++) {
+            Connection conn = getConnection();
+            try {
+                Object[] results = new Object[group.size()];
+                for (int i = 0; i < results.length; i++) {
+                    results[i] = group.get(i).callback.doInConnection(conn);
+                }
+                conn.commit();
+                MetricsRegistry.INSTANCE.increment(MetricsRegistry.TX_COMMIT);
+                return results;
+            } catch (SQLException ex) {
+                rollBack(conn);
+                if (!adapter.isRetryable(ex) || attempt >= maxRetries) {
+                    if (adapter.isRetryable(ex)) {
+                        MetricsRegistry.INSTANCE.increment(MetricsRegistry.TX_RETRY_EXHAUSTED, config.getConfigName());
+                    }
+                    throw ex;
+                }
+                MetricsRegistry.INSTANCE.increment(MetricsRegistry.TX_RETRY, config.getConfigName());
+                log.debug("sqlite busy on:{},retry:{} {}", config.getConfigName(), attempt + 1, ex.getMessage());
+                backoff(attempt, ex);
+            } catch (RuntimeException ex) {
+                rollBack(conn);
+                throw new SQLException(ex.getMessage(), ex);
+            }
+        }
+    }
+
+    private void rollBack(Connection conn) {
+        try {
+            conn.rollback();
+            MetricsRegistry.INSTANCE.increment(MetricsRegistry.TX_ROLLBACK);
+        } catch (SQLException ex) {
+            log.error("sqlite writer rollBack error", ex);
+            closeConnection();
+        }
+    }
+
+    private void backoff(int attempt, SQLException cause) throws SQLException {
+        long ceiling = Math.min(maxBackoffMillis, backoffMillis << Math.min(attempt, 20));
+        if (ceiling <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(ceiling + 1));
+        } catch (InterruptedException ex) {
+            stop();
+            throw cause;
+        }
+    }
+
+    private static void fail(Iterable<Task<?>> tasks, SQLException ex) {
+        for (Task<?> task : tasks) {
+            task.future.completeExceptionally(ex);
+        }
+    }
+
+    private void closeConnection() {
+        if (connection == null) {
+            return;
+        }
+        try {
+            connection.close();
+            MetricsRegistry.INSTANCE.increment(MetricsRegistry.CONNECTION_CLOSED);
+        } catch (SQLException ex) {
+            log.error("close sqlite writer connection error", ex);
+        }
+        connection = null;
+    }
+
+    private void stop() {
+        synchronized (lock) {
+            running = false;
+        }
+    }
+
+    /**
+     * 不再接受新的写操作,等待已提交的操作完成后关闭连接.
+     */
+    public void close() {
+        stop();
+        try {
+            thread.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class Task<V> {
+
+        private final ConnectionCallback<V> callback;
+        private final CompletableFuture<V> future = new CompletableFuture<V>();
+
+        Task(ConnectionCallback<V> callback) {
+            this.callback = callback;
+        }
+    }
+}
@@ -19,9 +19,12 @@ package org.jplus.hyb.database.transaction;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLRecoverableException;
 import org.jplus.hyb.database.config.DbConfig;
 import org.jplus.hyb.database.config.IConfigurator;
 import org.jplus.hyb.database.config.SimpleConfigurator;
+import org.jplus.hyb.database.metrics.MetricsRegistry;
 import org.jplus.hyb.log.Logger;
 import org.jplus.hyb.log.LoggerManager;
 import org.jplus.util.NullUtils;
@@ -94,24 +97,40 @@ public abstract class ADbManager implements IDbManager {
         NullUtils.validateNull(driver, "url");
         NullUtils.validateNull(driver, "username");
         NullUtils.validateNull(driver, "password");
+        connection = openConnection(driver, url, username, password);
+        openTransaction();
+        return connection;
+    }
+    /**
+     * 新建一个数据库连接,不改变当前管理器持有的连接.
+     * @param driver 驱动
+     * @param url 地址
+     * @param username 用户名
+     * @param password 密码
+     * @return 
+     * @throws java.sql.SQLException 
+     */
+    protected Connection openConnection(String driver, String url, String username, String password) throws SQLException{
         log.debug("创建数据库连接 driver:{} url:{} username:{} password:{}", driver, url, username, password);
         try {
             Class.forName(driver);
-            connection = DriverManager.getConnection(url, username, password);
-            openTransaction();
+            Connection newConnection = DriverManager.getConnection(url, username, password);
+            MetricsRegistry.INSTANCE.increment(MetricsRegistry.CONNECTION_OPENED);
+            return newConnection;
         } catch (ClassNotFoundException ex) {
             log.error("数据库连接错误\t找不到驱动", ex);
             throw new SQLException("数据库连接错误,找不到驱动",ex);
         } 
-        return connection;
     }
     /**
      * 设置数据库的配置管理器.
+     * 默认配置随之从新的配置管理器中读取.
      * @param configurator 
      */
     @Override
     public void setConfigurator(IConfigurator configurator) {
         this.configurator = configurator;
+        defaultDbConfig = configurator.getDbConfig(defaultConfig);
     }
     /**
      * 提交事务.
@@ -121,6 +140,7 @@ public abstract class ADbManager implements IDbManager {
     public void commit() throws SQLException {
         if (connection != null&&configurator.tranceaction()) {
             connection.commit();
+            MetricsRegistry.INSTANCE.increment(MetricsRegistry.TX_COMMIT);
             log.debug("commit");
         }
     }
@@ -144,6 +164,7 @@ public abstract class ADbManager implements IDbManager {
         if (!connection.isClosed()&&configurator.tranceaction()) {
             log.debug("transaction rollback");
             connection.rollback();
+            MetricsRegistry.INSTANCE.increment(MetricsRegistry.TX_ROLLBACK);
         }
     }
     /**
@@ -155,7 +176,17 @@ public abstract class ADbManager implements IDbManager {
     public void finalCloseConnection() throws SQLException {
         log.debug("finalCloseConnection do nothing!");
     }
-/**
+    /**
+     * 判断异常是否是连接异常.SQLState为08开头或驱动抛出连接类异常.
+     * @param ex 操作抛出的异常
+     * @return
+     */
+    protected static boolean isConnectionError(SQLException ex) {
+        String state = ex.getSQLState();
+        return (state != null && state.startsWith("08"))
+                || ex instanceof SQLNonTransientConnectionException || ex instanceof SQLRecoverableException;
+    }
+    /**
      * 复制一个实例.
      * @return
      */
@@ -21,17 +21,27 @@ import java.sql.SQLException;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import org.jplus.hyb.database.metrics.MetricsRegistry;
 
 /**
  * 自动的数据库连接管理器. <br/>
  * 只对指定数据库连接进行管理. <br/>
  * 每次用完连接后只提交事务但不关闭连接，同一个线程中对一个数据库只开启一个连接.
+ * 获取连接时按验证策略决定是否验证连接,默认只验证空闲超过阈值的连接.
  * @author Hyberbin
  */
 public class AutoManager extends ADbManager {
 
     /** 采用ThreadLocal* */
-    protected static final ThreadLocal<Map<String, Connection>> threadLocal = new ThreadLocal<Map<String, Connection>>();
+    protected static final ThreadLocal<Map<String, ConnectionHolder>> threadLocal = new ThreadLocal<Map<String, ConnectionHolder>>();
+    /** 验证连接的超时时间(秒) */
+    protected static final int VALID_TIMEOUT = 3;
+    /** 验证策略 */
+    private static volatile ValidationPolicy validationPolicy = ValidationPolicy.IDLE;
+    /** IDLE策略下连接空闲多久后需要验证(毫秒) */
+    private static volatile long idleValidateMillis = 30000;
+    /** 当前持有的连接 */
+    protected ConnectionHolder holder;
 
     /**
      * 构造方法.
@@ -41,6 +51,51 @@ public class AutoManager extends ADbManager {
         super(defaultConfig);
     }
 
+    public static ValidationPolicy getValidationPolicy() {
+        return validationPolicy;
+    }
+
+    /**
+     * 设置连接验证策略.
+     * @param policy 验证策略
+     */
+    public static void setValidationPolicy(ValidationPolicy policy) {
+        validationPolicy = policy;
+    }
+
+    public static long getIdleValidateMillis() {
+        return idleValidateMillis;
+    }
+
+    /**
+     * 设置IDLE策略下的空闲阈值.
+     * @param millis 空闲毫秒数
+     */
+    public static void setIdleValidateMillis(long millis) {
+        idleValidateMillis = millis;
+    }
+
+    /**
+     * 配置的连接参数改变后让所有线程的连接失效.
+     * 各线程在下次获取连接时关闭旧连接并用新参数开启,有未结束事务的连接在事务结束后才更换.
+     * @param configName 配置名
+     * @return 失效的连接数
+     */
+    public static int invalidate(String configName) {
+        return ConnectionReaper.invalidate(configName);
+    }
+
+    /**
+     * 当前线程在指定配置上是否已经持有连接.
+     * @param configName 配置名
+     * @return
+     */
+    static boolean hasThreadConnection(String configName) {
+        Map<String, ConnectionHolder> map = threadLocal.get();
+        ConnectionHolder holder = map == null ? null : map.get(configName);
+        return holder != null && !holder.isClosed();
+    }
+
     /**
      * 获取数据连接. 从threadLocal中获取连接.如果连接不能用则新开启连接.
      * @return
@@ -48,36 +103,152 @@ public class AutoManager extends ADbManager {
      */
     @Override
     public Connection getConnection() throws SQLException {
-        Map<String, Connection> map = threadLocal.get();
+        Map<String, ConnectionHolder> map = threadLocal.get();
         if (map == null) {
-            map = Collections.synchronizedMap(new HashMap<String, Connection>());
+            map = Collections.synchronizedMap(new HashMap<String, ConnectionHolder>());
             threadLocal.set(map);
         }
-        connection = map.get(defaultConfig);
-        if (!validConnection(connection)) {
+        holder = map.get(defaultConfig);
+        long idle = holder == null ? -1 : holder.acquire(System.currentTimeMillis());
+        if (idle >= 0 && !holder.isReplaceable() && !expired(holder) && validHolder(holder, idle)) {
+            connection = holder.getConnection();
+        } else {
             log.trace("put connection:{} to threadLocal", defaultConfig);
+            release(holder);
             connection = super.getConnection();
-            map.put(defaultConfig, connection);
+            holder = new ConnectionHolder(connection, defaultConfig);
+            ConnectionReaper.register(holder);
+            map.put(defaultConfig, holder);
             log.debug("reput connection:{} to threadLocal", defaultConfig);
         }
         log.debug("get Connection:{} from threadLocal", defaultConfig);
         return connection;
     }
 
+    /**
+     * 连接是否超过了最长存活时间.
+     * 超时的连接在下次获取时关闭并换新连接.
+     * @param holder 线程内的连接
+     * @return
+     */
+    protected boolean expired(ConnectionHolder holder) {
+        long maxAge = ConnectionReaper.getMaxAgeMillis();
+        if (maxAge > 0 && System.currentTimeMillis() - holder.getCreatedAt() >= maxAge && holder.close()) {
+            MetricsRegistry.INSTANCE.increment(MetricsRegistry.CONNECTION_RECLAIMED, "aged");
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 关闭并注销线程内的连接.
+     * @param holder 线程内的连接
+     */
+    protected void release(ConnectionHolder holder) {
+        if (holder != null) {
+            ConnectionReaper.unregister(holder);
+            if (holder.close()) {
+                MetricsRegistry.INSTANCE.increment(MetricsRegistry.CONNECTION_CLOSED);
+            }
+        }
+    }
+
+    /**
+     * 按验证策略检查线程内的连接.
+     * @param holder 线程内的连接
+     * @param idle 获取前的空闲毫秒数
+     * @return
+     */
+    protected boolean validHolder(ConnectionHolder holder, long idle) {
+        ValidationPolicy policy = validationPolicy;
+        if (policy == ValidationPolicy.ALWAYS
+                || (policy == ValidationPolicy.IDLE && idle >= idleValidateMillis)) {
+            return validConnection(holder.getConnection());
+        }
+        MetricsRegistry.INSTANCE.increment(MetricsRegistry.CONNECTION_VALIDATION_SKIPPED);
+        try {
+            return !holder.getConnection().isClosed();
+        } catch (SQLException ex) {
+            log.error("validConnection:{} error!", defaultConfig, ex);
+            return false;
+        }
+    }
+
     /**
      * 验证连接是否可用.
      * @param connection 连接
      * @return
      */
     protected boolean validConnection(Connection connection) {
+        if (connection == null) {
+            return false;
+        }
+        MetricsRegistry.INSTANCE.increment(MetricsRegistry.CONNECTION_VALIDATED);
         try {
-            return connection != null && connection.isValid(3);
+            if (connection.isValid(VALID_TIMEOUT)) {
+                return true;
+            }
         } catch (SQLException ex) {
-            log.error("validConnection:{} error!", ex, defaultConfig);
+            log.error("validConnection:{} error!", defaultConfig, ex);
         }
+        MetricsRegistry.INSTANCE.increment(MetricsRegistry.CONNECTION_INVALID);
         return false;
     }
 
+    /**
+     * 操作出错后检查连接,如果连接已断开则从线程中移除,可以在新连接上重试.
+     * @param ex 操作抛出的异常
+     * @return
+     * @throws SQLException
+     */
+    @Override
+    public boolean recover(SQLException ex) throws SQLException {
+        if (connection == null || !isBroken(ex)) {
+            return false;
+        }
+        evict();
+        return true;
+    }
+
+    /**
+     * 判断异常是否由连接断开引起.
+     * SQLState为08开头的是连接异常;不调用isValid,部分驱动(如sqlite)的isValid总是返回false.
+     * @param ex 操作抛出的异常
+     * @return
+     */
+    protected boolean isBroken(SQLException ex) {
+        if (isConnectionError(ex)) {
+            return true;
+        }
+        try {
+            return connection.isClosed();
+        } catch (SQLException e) {
+            return true;
+        }
+    }
+
+    /**
+     * 丢弃当前线程的连接.
+     */
+    protected void evict() {
+        Map<String, ConnectionHolder> map = threadLocal.get();
+        if (map != null) {
+            map.remove(defaultConfig);
+        }
+        if (holder != null) {
+            release(holder);
+        } else {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                log.debug("close broken connection:{} error!", defaultConfig, e);
+            }
+        }
+        log.info("evict broken connection:{}", defaultConfig);
+        connection = null;
+        holder = null;
+    }
+
     /**
      * 关闭数据库连接. 在本管理器中没有真正关闭数据库而只是提交事务.
      * @throws SQLException
@@ -85,25 +256,41 @@ public class AutoManager extends ADbManager {
     @Override
     public void closeConnection() throws SQLException {
         commit();
+        touch();
         log.trace("use outer manager nothing to do close just commit:{}", defaultConfig);
     }
 
+    /**
+     * 记录连接的一次成功使用.
+     */
+    protected void touch() {
+        if (holder != null) {
+            holder.touch();
+        }
+    }
+
     /**
      * 最终关闭数据库连接. 用户程序运行到最后或者线程结束的时候释放数据库连接资源.
      * @throws SQLException
      */
     @Override
     public void finalCloseConnection() throws SQLException {
-        getConnection();
-        Map<String, Connection> map = threadLocal.get();
+        Map<String, ConnectionHolder> map = threadLocal.get();
         log.trace("config map isnull:{}", map == null);
         if (map != null) {
-            map.remove(defaultConfig);
+            ConnectionHolder current = map.remove(defaultConfig);
+            if (current != null) {//不通过getConnection取,失效的连接不必换新连接再关闭
+                holder = current;
+            }
             log.trace("remove config:{}", defaultConfig);
         }
-        if (connection != null && !connection.isClosed()) {
+        if (holder != null) {
+            release(holder);
+        } else if (connection != null && !connection.isClosed()) {
             connection.close();
+            MetricsRegistry.INSTANCE.increment(MetricsRegistry.CONNECTION_CLOSED);
         }
+        holder = null;
         log.trace("in finalCloseConnection:{}", defaultConfig);
     }
    
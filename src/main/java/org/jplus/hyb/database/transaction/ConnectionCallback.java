@@ -0,0 +1,30 @@
+/*
+ * Copyright 2015 www.hyberbin.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * Email:hyberbin@qq.com
+ */
+package org.jplus.hyb.database.transaction;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * 在一个连接上执行的数据库操作.
+ * @param <V> 返回值类型
+ * @author hyberbin
+ */
+public interface ConnectionCallback<V> {
+
+    public V doInConnection(Connection connection) throws SQLException;
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2015 www.hyberbin.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * Email:hyberbin@qq.com
+ */
+package org.jplus.hyb.database.transaction;
+
+import java.lang.ref.WeakReference;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * 线程内的连接及其使用时间.
+ * 持有所属线程的弱引用,线程结束后回收器可以据此关闭连接.
+ * 所属线程获取连接和回收器关闭连接都在本对象上同步,被回收的连接不会再交给所属线程使用.
+ * @author hyberbin
+ */
+public class ConnectionHolder {
+
+    private final Connection connection;
+    private final String configName;
+    private final WeakReference<Thread> owner;
+    private final long createdAt;
+    private volatile long lastUsed;
+    private boolean closed;
+    /** 连接已被所属线程取出,还没有归还 */
+    private boolean checkedOut = true;
+    /** 连接上有未结束的事务 */
+    private boolean transactional;
+    /** 配置已经改变,所属线程在事务结束后下次获取时换新连接 */
+    private volatile boolean stale;
+
+    public ConnectionHolder(Connection connection, String configName) {
+        this.connection = connection;
+        this.configName = configName;
+        this.owner = new WeakReference<Thread>(Thread.currentThread());
+        this.createdAt = System.currentTimeMillis();
+        this.lastUsed = createdAt;
+    }
+
+    public Connection getConnection() {
+        return connection;
+    }
+
+    public String getConfigName() {
+        return configName;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    public long getLastUsed() {
+        return lastUsed;
+    }
+
+    /**
+     * 记录一次成功的使用,连接归还给线程.
+     */
+    public synchronized void touch() {
+        lastUsed = System.currentTimeMillis();
+        checkedOut = false;
+    }
+
+    /**
+     * 设置连接上是否有未结束的事务,有事务时不会因为空闲被回收.
+     * @param transactional 是否有事务
+     */
+    public synchronized void setTransactional(boolean transactional) {
+        this.transactional = transactional;
+    }
+
+    public synchronized boolean isTransactional() {
+        return transactional;
+    }
+
+    /**
+     * 距上次成功使用的毫秒数.
+     * @param now 当前时间
+     * @return
+     */
+    public long idleMillis(long now) {
+        return now - lastUsed;
+    }
+
+    /**
+     * 所属线程获取连接,同时记录使用时间.
+     * @param now 当前时间
+     * @return 获取前的空闲毫秒数,连接已被回收返回-1
+     */
+    public synchronized long acquire(long now) {
+        if (closed) {
+            return -1;
+        }
+        long idle = now - lastUsed;
+        lastUsed = now;
+        checkedOut = true;
+        return idle;
+    }
+
+    /**
+     * 标记连接已失效.不在其它线程中关闭正在使用的连接,由所属线程下次获取时关闭.
+     */
+    public void invalidate() {
+        stale = true;
+    }
+
+    /**
+     * 连接是否已失效并且可以更换,事务进行中的连接要等事务结束.
+     * @return
+     */
+    public synchronized boolean isReplaceable() {
+        return stale && !transactional;
+    }
+
+    /**
+     * 所属线程是否已经结束.
+     * @return
+     */
+    public boolean isOwnerDead() {
+        Thread thread = owner.get();
+        return thread == null || !thread.isAlive();
+    }
+
+    /**
+     * 按回收规则检查并关闭连接.
+     * 所属线程已结束的连接总是回收;空闲超时只回收已归还且没有事务的连接,
+     * 正在执行语句或在事务中的连接不会被其它线程关闭.
+     * @param now 当前时间
+     * @param maxIdle 最大空闲毫秒数,不大于0表示不限制
+     * @return 回收原因:dead或idle;不需要回收返回null
+     */
+    synchronized String reclaim(long now, long maxIdle) {
+        String reason = null;
+        if (isOwnerDead()) {
+            reason = "dead";
+        } else if (maxIdle > 0 && !checkedOut && !transactional && now - lastUsed >= maxIdle) {
+            reason = "idle";
+        }
+        if (reason != null) {
+            close();
+        }
+        return reason;
+    }
+
+    /**
+     * 关闭连接.未提交的事务先回滚,有的数据库(如Oracle)关闭连接时会提交未完成的事务.
+     * @return 本次调用真正关闭了连接返回true
+     */
+    public synchronized boolean close() {
+        if (closed) {
+            return false;
+        }
+        closed = true;
+        try {
+            if (!connection.isClosed()) {
+                try {
+                    if (!connection.getAutoCommit()) {
+                        connection.rollback();
+                    }
+                } catch (SQLException ex) {
+                    //回滚失败也要关闭连接
+                }
+                connection.close();
+                return true;
+            }
+        } catch (SQLException ex) {
+            //连接已经不可用,关闭失败不影响回收
+        }
+        return false;
+    }
+
+    public synchronized boolean isClosed() {
+        return closed;
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2015 www.hyberbin.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * Email:hyberbin@qq.com
+ */
+package org.jplus.hyb.database.transaction;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import org.jplus.hyb.database.metrics.MetricsRegistry;
+import org.jplus.hyb.log.Logger;
+import org.jplus.hyb.log.LoggerManager;
+
+/**
+ * 共享连接的使用计数.
+ * SingleManager和StripedManager的连接被多个管理器共用,配置改变后旧连接先退役,
+ * 新的调用者拿到新连接,正在使用旧连接的管理器都归还后才关闭旧连接.
+ * @author hyberbin
+ */
+final class ConnectionLeases {
+
+    private static final Logger log = LoggerManager.getLogger(ConnectionLeases.class);
+    /** 正在使用的连接和使用者数 */
+    private static final Map<Connection, int[]> USERS = new IdentityHashMap<Connection, int[]>();
+    /** 已退役、等待使用者归还的连接 */
+    private static final Map<Connection, Boolean> RETIRED = new IdentityHashMap<Connection, Boolean>();
+
+    private ConnectionLeases() {
+    }
+
+    /**
+     * 开始使用连接.
+     * @param conn 连接
+     */
+    static synchronized void lease(Connection conn) {
+        int[] users = USERS.get(conn);
+        if (users == null) {
+            users = new int[1];
+            USERS.put(conn, users);
+        }
+        users[0]++;
+    }
+
+    /**
+     * 归还连接,退役的连接在最后一个使用者归还后关闭.
+     * @param conn 连接
+     */
+    static void release(Connection conn) {
+        synchronized (ConnectionLeases.class) {
+            int[] users = USERS.get(conn);
+            if (users == null || --users[0] > 0) {
+                return;
+            }
+            USERS.remove(conn);
+            if (RETIRED.remove(conn) == null) {
+                return;
+            }
+        }
+        close(conn);
+    }
+
+    /**
+     * 退役连接.没有使用者时立即关闭,否则等最后一个使用者归还.
+     * @param conn 连接
+     */
+    static void retire(Connection conn) {
+        synchronized (ConnectionLeases.class) {
+            if (USERS.containsKey(conn)) {
+                RETIRED.put(conn, Boolean.TRUE);
+                return;
+            }
+        }
+        close(conn);
+    }
+
+    /**
+     * 等待使用者归还的退役连接数.
+     * @return
+     */
+    static synchronized int retiredCount() {
+        return RETIRED.size();
+    }
+
+    /**
+     * 一个管理器当前使用的共享连接.
+     */
+    static final class Lease {
+
+        private Connection connection;
+
+        /**
+         * 使用连接,换了连接时归还原来的连接.
+         * @param conn 连接
+         */
+        synchronized void use(Connection conn) {
+            if (connection == conn) {
+                return;
+            }
+            release();
+            if (conn != null) {
+                lease(conn);
+            }
+            connection = conn;
+        }
+
+        /**
+         * 归还当前使用的连接.
+         */
+        synchronized void release() {
+            if (connection != null) {
+                Connection old = connection;
+                connection = null;
+                ConnectionLeases.release(old);
+            }
+        }
+    }
+
+    /**
+     * 关闭退役的连接,未提交的事务先回滚.
+     * @param conn 连接
+     */
+    private static void close(Connection conn) {
+        try {
+            if (!conn.isClosed()) {
+                try {
+                    if (!conn.getAutoCommit()) {
+                        conn.rollback();
+                    }
+                } catch (SQLException ex) {
+                    log.error("rollback retired connection error!", ex);
+                }
+                conn.close();
+                MetricsRegistry.INSTANCE.increment(MetricsRegistry.CONNECTION_CLOSED);
+            }
+        } catch (SQLException ex) {
+            log.error("close retired connection error!", ex);
+        }
+    }
+}
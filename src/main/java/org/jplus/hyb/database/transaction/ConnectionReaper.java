@@ -0,0 +1,175 @@
+/*
+ * Copyright 2015 www.hyberbin.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * Email:hyberbin@qq.com
+ */
+package org.jplus.hyb.database.transaction;
+
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.jplus.hyb.database.metrics.Gauge;
+import org.jplus.hyb.database.metrics.MetricsRegistry;
+import org.jplus.hyb.log.Logger;
+import org.jplus.hyb.log.LoggerManager;
+
+/**
+ * 线程内连接的回收器.
+ * AutoManager和TxManager开启的连接都登记在这里,后台线程定期关闭所属线程已经结束或者空闲超时的连接,
+ * 防止忘记调用finalCloseConnection时连接泄漏.
+ * 连接的最长存活时间在AutoManager获取连接时检查,回收器不会关闭正在使用的老连接.
+ * @author hyberbin
+ */
+public class ConnectionReaper {
+
+    private static final Logger log = LoggerManager.getLogger(ConnectionReaper.class);
+    /** 所有线程内的连接 */
+    private static final Set<ConnectionHolder> HOLDERS = ConcurrentHashMap.newKeySet();
+    /** 最大空闲时间(毫秒),不大于0表示不限制 */
+    private static volatile long maxIdleMillis = 600000;
+    /** 最长存活时间(毫秒),不大于0表示不限制 */
+    private static volatile long maxAgeMillis = 0;
+    private static Thread reaper;
+
+    static {
+        MetricsRegistry.INSTANCE.registerGauge("auto.connections", new Gauge() {
+            @Override
+            public long getValue() {
+                return HOLDERS.size();
+            }
+        });
+    }
+
+    private ConnectionReaper() {
+    }
+
+    static void register(ConnectionHolder holder) {
+        HOLDERS.add(holder);
+    }
+
+    static void unregister(ConnectionHolder holder) {
+        HOLDERS.remove(holder);
+    }
+
+    /**
+     * 把指定配置的所有线程内连接标记为失效.
+     * @param configName 配置名
+     * @return 标记的连接数
+     */
+    static int invalidate(String configName) {
+        int count = 0;
+        for (ConnectionHolder holder : HOLDERS) {
+            if (configName.equals(holder.getConfigName())) {
+                holder.invalidate();
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public static long getMaxIdleMillis() {
+        return maxIdleMillis;
+    }
+
+    /**
+     * 设置连接最大空闲时间,超过后由回收器关闭.
+     * @param millis 毫秒数,不大于0表示不限制
+     */
+    public static void setMaxIdleMillis(long millis) {
+        maxIdleMillis = millis;
+    }
+
+    public static long getMaxAgeMillis() {
+        return maxAgeMillis;
+    }
+
+    /**
+     * 设置连接最长存活时间,超过后在下次获取连接时换新连接.
+     * @param millis 毫秒数,不大于0表示不限制
+     */
+    public static void setMaxAgeMillis(long millis) {
+        maxAgeMillis = millis;
+    }
+
+    /**
+     * 当前登记的连接数.
+     * @return
+     */
+    public static int size() {
+        return HOLDERS.size();
+    }
+
+    /**
+     * 回收一遍连接.
+     * @return 本次回收的连接数
+     */
+    public static int reap() {
+        long now = System.currentTimeMillis();
+        long maxIdle = maxIdleMillis;
+        int count = 0;
+        for (Iterator<ConnectionHolder> it = HOLDERS.iterator(); it.hasNext();) {
+            ConnectionHolder holder = it.next();
+            if (holder.isClosed()) {
+                it.remove();
+                continue;
+            }
+            String reason = holder.reclaim(now, maxIdle);
+            if (reason != null) {
+                it.remove();
+                count++;
+                MetricsRegistry.INSTANCE.increment(MetricsRegistry.CONNECTION_RECLAIMED, reason);
+                log.info("reclaim {} connection:{}", reason, holder.getConfigName());
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 启动后台回收线程,已经启动时什么也不做.
+     * @param periodMillis 回收间隔(毫秒)
+     */
+    public static synchronized void start(final long periodMillis) {
+        if (reaper != null) {
+            return;
+        }
+        reaper = new Thread("hyberbin-connection-reaper") {
+            @Override
+            public void run() {
+                while (!isInterrupted()) {
+                    try {
+                        Thread.sleep(periodMillis);
+                        reap();
+                    } catch (InterruptedException ex) {
+                        break;
+                    } catch (RuntimeException ex) {
+                        log.error("reap connections error!", ex);
+                    }
+                }
+            }
+        };
+        reaper.setDaemon(true);
+        reaper.start();
+        log.info("connection reaper started,period:{}ms", periodMillis);
+    }
+
+    /**
+     * 停止后台回收线程.
+     */
+    public static synchronized void stop() {
+        if (reaper != null) {
+            reaper.interrupt();
+            reaper = null;
+        }
+    }
+}
@@ -29,6 +29,15 @@ public interface IDbManager {
 
     public Connection getConnection() throws SQLException;
 
+    /**
+     * 获取用于只读查询的连接.读写分离时可能是从库的连接,默认和getConnection相同.
+     * @return
+     * @throws SQLException
+     */
+    public default Connection getReadConnection() throws SQLException {
+        return getConnection();
+    }
+
     public void openTransaction() throws SQLException;
 
     public void commit() throws SQLException;
@@ -39,6 +48,16 @@ public interface IDbManager {
     
     public void finalCloseConnection() throws SQLException;
 
+    /**
+     * 操作出错后尝试恢复连接.默认不重试.
+     * @param ex 操作抛出的异常
+     * @return 连接已断开并被丢弃,可以在新连接上重试一次时返回true
+     * @throws SQLException
+     */
+    public default boolean recover(SQLException ex) throws SQLException {
+        return false;
+    }
+
     public void setConfigurator(IConfigurator configurator);
     
     public IDbManager newInstance();
@@ -0,0 +1,443 @@
+/*
+ * Copyright 2015 www.hyberbin.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * Email:hyberbin@qq.com
+ */
+package org.jplus.hyb.database.transaction;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.jplus.hyb.database.config.DbConfig;
+import org.jplus.hyb.database.config.IConfigurator;
+import org.jplus.hyb.database.config.SimpleConfigurator;
+import org.jplus.hyb.database.metrics.MetricsRegistry;
+import org.jplus.hyb.log.Logger;
+import org.jplus.hyb.log.LoggerManager;
+import org.jplus.util.Reflections;
+
+/**
+ * 读写分离的数据库连接管理器.<br/>
+ * 写操作和事务使用主库配置,Hyberbin的查询通过getReadConnection分配到该主库登记的从库上.<br/>
+ * 以下情况查询仍然走主库:本管理器已经写过主库或者显式开启了事务;
+ * 当前线程在stickyMillis内写过主库(读到自己的写入);当前线程在主库上的TxManager事务还没有结束;没有可用的从库.<br/>
+ * 从库出现连接异常后在ejectMillis内不再被选择.<br/>
+ * 主从库分别由委托管理器(默认SimpleManager)管理,委托管理器需要有(String)构造方法.
+ * 从库和主库应该是同一种数据库,适配器按主库的驱动选择.
+ * <pre>
+ * ReadWriteManager.addReplica("default", "replica1");
+ * ConfigCenter.INSTANCE.setManager(new ReadWriteManager("default"));
+ * </pre>
+ * @author hyberbin
+ */
+public class ReadWriteManager implements IDbManager {
+
+    private static final Logger log = LoggerManager.getLogger(ReadWriteManager.class);
+    /** 主库配置名到从库列表的映射 */
+    private static final ConcurrentMap<String, Replicas> REPLICAS = new ConcurrentHashMap<String, Replicas>();
+    /** 当前线程最后一次写主库的时间,按主库配置名 */
+    private static final ThreadLocal<Map<String, Long>> LAST_WRITE = new ThreadLocal<Map<String, Long>>();
+    private static volatile ReplicaSelection selection = ReplicaSelection.ROUND_ROBIN;
+    /** 写主库后当前线程的查询继续走主库的时间(毫秒) */
+    private static volatile long stickyMillis = 1000;
+    /** 从库出现连接异常后被剔除的时间(毫秒) */
+    private static volatile long ejectMillis = 30000;
+
+    private final String defaultConfig;
+    private final Class<? extends IDbManager> delegateClass;
+    private final IDbManager primary;
+    private IConfigurator configurator = SimpleConfigurator.INSTANCE;
+    /** 本次使用的从库 */
+    private Replica replica;
+    private IDbManager reader;
+    private boolean primaryUsed;
+    private boolean written;
+    private boolean inTransaction;
+
+    /**
+     * 用SimpleManager管理主从库连接.
+     * @param defaultConfig 主库配置名
+     */
+    public ReadWriteManager(String defaultConfig) {
+        this(defaultConfig, SimpleManager.class);
+    }
+
+    /**
+     * 构造方法.
+     * @param defaultConfig 主库配置名
+     * @param delegateClass 主从库的连接管理器类型
+     */
+    public ReadWriteManager(String defaultConfig, Class<? extends IDbManager> delegateClass) {
+        this.defaultConfig = defaultConfig;
+        this.delegateClass = delegateClass;
+        this.primary = newDelegate(defaultConfig);
+    }
+
+    /**
+     * 给主库登记一个从库.
+     * @param primaryConfig 主库配置名
+     * @param replicaConfig 从库配置名
+     */
+    public static void addReplica(String primaryConfig, String replicaConfig) {
+        Replicas replicas = REPLICAS.get(primaryConfig);
+        if (replicas == null) {
+            REPLICAS.putIfAbsent(primaryConfig, new Replicas());
+            replicas = REPLICAS.get(primaryConfig);
+        }
+        replicas.add(new Replica(replicaConfig));
+        log.info("add replica:{} to:{}", replicaConfig, primaryConfig);
+    }
+
+    /**
+     * 移除主库的所有从库.
+     * @param primaryConfig 主库配置名
+     */
+    public static void clearReplicas(String primaryConfig) {
+        REPLICAS.remove(primaryConfig);
+    }
+
+    /**
+     * 主库的所有从库上正在执行的读操作数.
+     * @param primaryConfig 主库配置名
+     * @return
+     */
+    public static int getActiveReads(String primaryConfig) {
+        Replicas replicas = REPLICAS.get(primaryConfig);
+        int count = 0;
+        if (replicas != null) {
+            for (Replica r : replicas.replicas) {
+                count += r.active.get();
+            }
+        }
+        return count;
+    }
+
+    public static ReplicaSelection getSelection() {
+        return selection;
+    }
+
+    public static void setSelection(ReplicaSelection selection) {
+        ReadWriteManager.selection = selection;
+    }
+
+    public static long getStickyMillis() {
+        return stickyMillis;
+    }
+
+    /**
+     * 设置写主库后当前线程的查询继续走主库的时间.
+     * @param millis 毫秒数,0表示只在同一个管理器内保持
+     */
+    public static void setStickyMillis(long millis) {
+        stickyMillis = millis;
+    }
+
+    public static long getEjectMillis() {
+        return ejectMillis;
+    }
+
+    /**
+     * 设置从库出现连接异常后被剔除的时间.
+     * @param millis 毫秒数,必须大于0,否则坏掉的从库会被立即再次选中
+     */
+    public static void setEjectMillis(long millis) {
+        if (millis <= 0) {
+            throw new IllegalArgumentException("ejectMillis must be positive:" + millis);
+        }
+        ejectMillis = millis;
+    }
+
+    private IDbManager newDelegate(String configName) {
+        IDbManager manager = (IDbManager) Reflections.instance(delegateClass.getName(), new Class[]{String.class}, new Object[]{configName});
+        manager.setConfigurator(configurator);
+        return manager;
+    }
+
+    /**
+     * 获取主库连接.写操作和事务都使用主库.
+     * @return
+     * @throws SQLException
+     */
+    @Override
+    public Connection getConnection() throws SQLException {
+        written = true;
+        if (stickyMillis > 0) {
+            Map<String, Long> map = LAST_WRITE.get();
+            if (map == null) {
+                map = new HashMap<String, Long>();
+                LAST_WRITE.set(map);
+            }
+            map.put(defaultConfig, System.currentTimeMillis());
+        }
+        return usePrimary();
+    }
+
+    private Connection usePrimary() throws SQLException {
+        primaryUsed = true;
+        return primary.getConnection();
+    }
+
+    /**
+     * 获取查询用的连接.按选择策略从健康的从库中选一个,从库连不上时剔除并换下一个.
+     * @return
+     * @throws SQLException
+     */
+    @Override
+    public Connection getReadConnection() throws SQLException {
+        if (reader != null) {
+            return reader.getConnection();
+        }
+        if (isSticky()) {
+            MetricsRegistry.INSTANCE.increment(MetricsRegistry.RW_READ_PRIMARY);
+            return usePrimary();
+        }
+        Replicas replicas = REPLICAS.get(defaultConfig);
+        Replica selected;
+        while (replicas != null && (selected = replicas.select(System.currentTimeMillis())) != null) {
+            IDbManager manager = newDelegate(selected.configName);
+            try {
+                Connection conn = manager.getConnection();
+                selected.active.incrementAndGet();
+                replica = selected;
+                reader = manager;
+                MetricsRegistry.INSTANCE.increment(MetricsRegistry.RW_READ_REPLICA, selected.configName);
+                return conn;
+            } catch (SQLException ex) {
+                eject(selected, ex);
+            }
+        }
+        MetricsRegistry.INSTANCE.increment(MetricsRegistry.RW_READ_PRIMARY);
+        return usePrimary();
+    }
+
+    private boolean isSticky() {
+        if (written || inTransaction || primaryInTransaction()) {
+            return true;
+        }
+        if (stickyMillis > 0) {
+            Map<String, Long> map = LAST_WRITE.get();
+            Long last = map == null ? null : map.get(defaultConfig);
+            return last != null && System.currentTimeMillis() - last < stickyMillis;
+        }
+        return false;
+    }
+
+    /**
+     * 当前线程在主库上是否有还没有提交或回滚的TxManager事务.
+     * @return
+     */
+    private boolean primaryInTransaction() {
+        if (!(primary instanceof TxManager)) {
+            return false;
+        }
+        Map<String, ConnectionHolder> held = AutoManager.threadLocal.get();
+        ConnectionHolder holder = held == null ? null : held.get(defaultConfig);
+        return holder != null && holder.isTransactional();
+    }
+
+    private void eject(Replica selected, SQLException ex) {
+        selected.ejectedUntil = System.currentTimeMillis() + ejectMillis;
+        MetricsRegistry.INSTANCE.increment(MetricsRegistry.RW_REPLICA_EJECTED, selected.configName);
+        log.error("eject replica:{} of:{}", selected.configName, defaultConfig, ex);
+    }
+
+    /**
+     * 从库查询出错时释放从库连接,调用者通常不会再调用closeConnection.
+     * 连接异常时剔除该从库并关闭坏掉的连接,可以重试一次(会选到其它从库或主库).
+     * @param ex 操作抛出的异常
+     * @return
+     * @throws SQLException
+     */
+    @Override
+    public boolean recover(SQLException ex) throws SQLException {
+        if (reader != null) {
+            boolean broken = ADbManager.isConnectionError(ex);
+            try {
+                if (broken) {
+                    eject(replica, ex);
+                    reader.recover(ex);
+                    reader.finalCloseConnection();
+                } else {
+                    reader.closeConnection();
+                }
+            } catch (SQLException e) {
+                log.debug("close replica:{} error!", replica.configName, e);
+            } finally {
+                releaseReader();
+            }
+            return broken;
+        }
+        return primaryUsed && primary.recover(ex);
+    }
+
+    private void releaseReader() {
+        replica.active.decrementAndGet();
+        replica = null;
+        reader = null;
+    }
+
+    /**
+     * 显式开启事务,之后的查询都走主库直到提交或回滚.
+     * @throws SQLException
+     */
+    @Override
+    public void openTransaction() throws SQLException {
+        usePrimary();
+        primary.openTransaction();
+        inTransaction = true;
+    }
+
+    @Override
+    public void commit() throws SQLException {
+        if (primaryUsed || primaryInTransaction()) {//TxManager的事务在closeConnection后仍然进行中
+            primary.commit();
+        }
+        written = false;
+        inTransaction = false;
+    }
+
+    @Override
+    public void rollBack() throws SQLException {
+        if (primaryUsed || primaryInTransaction()) {//TxManager的事务在closeConnection后仍然进行中
+            primary.rollBack();
+        }
+        written = false;
+        inTransaction = false;
+    }
+
+    /**
+     * 关闭本次使用的主从库连接.
+     * @throws SQLException
+     */
+    @Override
+    public void closeConnection() throws SQLException {
+        try {
+            if (reader != null) {
+                reader.closeConnection();
+            }
+        } finally {
+            if (reader != null) {
+                releaseReader();
+            }
+            if (primaryUsed) {
+                primaryUsed = false;
+                written = false;
+                primary.closeConnection();
+            }
+        }
+    }
+
+    /**
+     * 最终关闭主库连接以及当前线程持有的从库连接.
+     * @throws SQLException
+     */
+    @Override
+    public void finalCloseConnection() throws SQLException {
+        if (reader != null) {
+            releaseReader();
+        }
+        Replicas replicas = REPLICAS.get(defaultConfig);
+        Map<String, ConnectionHolder> held = AutoManager.threadLocal.get();
+        if (replicas != null && held != null) {
+            for (Replica r : replicas.replicas) {
+                if (held.containsKey(r.configName)) {
+                    try {
+                        newDelegate(r.configName).finalCloseConnection();
+                    } catch (SQLException ex) {
+                        log.error("close replica:{} error!", r.configName, ex);
+                    }
+                }
+            }
+        }
+        primaryUsed = false;
+        written = false;
+        inTransaction = false;
+        primary.finalCloseConnection();
+    }
+
+    @Override
+    public void setConfigurator(IConfigurator configurator) {
+        this.configurator = configurator;
+        primary.setConfigurator(configurator);
+    }
+
+    @Override
+    public IDbManager newInstance() {
+        return new ReadWriteManager(defaultConfig, delegateClass);
+    }
+
+    @Override
+    public DbConfig getDefaultDbConfig() {
+        return primary.getDefaultDbConfig();
+    }
+
+    /**
+     * 一个主库的所有从库.
+     */
+    private static final class Replicas {
+
+        private volatile Replica[] replicas = new Replica[0];
+        private final AtomicInteger cursor = new AtomicInteger();
+
+        synchronized void add(Replica replica) {
+            Replica[] copy = new Replica[replicas.length + 1];
+            System.arraycopy(replicas, 0, copy, 0, replicas.length);
+            copy[replicas.length] = replica;
+            replicas = copy;
+        }
+
+        Replica select(long now) {
+            Replica[] array = replicas;
+            int n = array.length;
+            if (n == 0) {
+                return null;
+            }
+            int start = Math.floorMod(cursor.getAndIncrement(), n);
+            Replica best = null;
+            for (int i = 0; i < n; i++) {
+                Replica r = array[(start + i) % n];
+                if (r.ejectedUntil > now) {
+                    continue;
+                }
+                if (selection == ReplicaSelection.ROUND_ROBIN) {
+                    return r;
+                }
+                if (best == null || r.active.get() < best.active.get()) {
+                    best = r;
+                }
+            }
+            return best;
+        }
+    }
+
+    /**
+     * 从库的状态.
+     */
+    private static final class Replica {
+
+        private final String configName;
+        /** 正在执行的读操作数 */
+        private final AtomicInteger active = new AtomicInteger();
+        /** 被剔除到的时间 */
+        private volatile long ejectedUntil;
+
+        Replica(String configName) {
+            this.configName = configName;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+/*
+ * Copyright 2015 www.hyberbin.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * Email:hyberbin@qq.com
+ */
+package org.jplus.hyb.database.transaction;
+
+/**
+ * 读写分离时选择从库的策略.
+ * @author hyberbin
+ */
+public enum ReplicaSelection {
+
+    /** 轮询 */
+    ROUND_ROBIN,
+    /** 选择正在执行的读操作最少的从库 */
+    LEAST_LOADED
+}
@@ -17,6 +17,7 @@
 package org.jplus.hyb.database.transaction;
 
 import java.sql.SQLException;
+import org.jplus.hyb.database.metrics.MetricsRegistry;
 
 /**
  * 简单的数据库连接管理器.<br/>
@@ -37,6 +38,7 @@ public class SimpleManager extends ADbManager {
         commit();
         log.debug("close Connection");
         connection.close();
+        MetricsRegistry.INSTANCE.increment(MetricsRegistry.CONNECTION_CLOSED);
     }
 
 }
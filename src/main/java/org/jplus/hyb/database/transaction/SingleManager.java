@@ -23,12 +23,15 @@ import java.util.HashMap;
 import java.util.Map;
 import org.jplus.hyb.database.config.DbConfig;
 import org.jplus.hyb.database.config.IConfigurator;
+import org.jplus.hyb.database.metrics.Gauge;
+import org.jplus.hyb.database.metrics.MetricsRegistry;
 import org.jplus.util.MD5Util;
 
 /**
  * 单个静态的数据库连接管理.
  * 不是每次操作完成后都关闭数据库连接以提高操作速度.
  * 只有在调用finalCloseConnection才强制关闭连接.
+ * 配置的连接参数改变后旧连接退役,正在使用的管理器都归还后才关闭.
  * 该类中所有方法皆线程安全.
  * @author hyberbin
  */
@@ -36,6 +39,20 @@ public class SingleManager extends ADbManager {
 
     private static final Map<String, Connection> CONN_NAME_MAP = Collections.synchronizedMap(new HashMap<String, Connection>());
     private static final Map<String, Connection> CONN_MD5_MAP = Collections.synchronizedMap(new HashMap<String, Connection>());
+    /** 获取共享连接时等待超过这个时间(纳秒)就认为发生了争用 */
+    private static final long CONTENDED_NANOS = 10000;
+
+    static {
+        MetricsRegistry.INSTANCE.registerGauge("single.connections", new Gauge() {
+            @Override
+            public long getValue() {
+                return CONN_NAME_MAP.size();
+            }
+        });
+    }
+
+    /** 本管理器正在使用的共享连接 */
+    private final ConnectionLeases.Lease lease = new ConnectionLeases.Lease();
 
     public SingleManager(String defaultConfig) {
         super(defaultConfig);
@@ -48,14 +65,38 @@ public class SingleManager extends ADbManager {
 
     @Override
     public synchronized void finalCloseConnection() throws SQLException {
+        lease.release();
         super.connection.close();
+        MetricsRegistry.INSTANCE.increment(MetricsRegistry.CONNECTION_CLOSED);
         CONN_NAME_MAP.remove(getDefaultDbConfig().getConfigName());
-        CONN_MD5_MAP.remove(MD5Util.MD5(getDefaultDbConfig().getDriver() + getDefaultDbConfig().getUrl() + getDefaultDbConfig().getUsername() + getDefaultDbConfig().getPassword()));
+        CONN_MD5_MAP.remove(getDefaultDbConfig().getIdentityKey());
+    }
+
+    /**
+     * 让指定配置的共享连接退役,下次获取时重新开启.
+     * 没有在使用时立即关闭,否则在使用它的管理器都归还后关闭.
+     * @param configName 配置名
+     */
+    public static void invalidate(String configName) {
+        Connection conn;
+        synchronized (CONN_NAME_MAP) {
+            conn = CONN_NAME_MAP.remove(configName);
+            if (conn != null) {
+                CONN_MD5_MAP.values().remove(conn);
+            }
+        }
+        if (conn != null) {
+            ConnectionLeases.retire(conn);
+        }
     }
 
     @Override
     public synchronized void rollBack() throws SQLException {
-        super.rollBack();
+        try {
+            super.rollBack();
+        } finally {
+            lease.release();
+        }
     }
 
     @Override
@@ -85,33 +126,66 @@ public class SingleManager extends ADbManager {
      */
     @Override
     protected synchronized Connection getConnection(String driver, String url, String username, String password) {
-        String md5 = MD5Util.MD5(driver + url + username + password);
-        Connection getByMd5 = CONN_MD5_MAP.get(md5);
-        Connection getByName = CONN_NAME_MAP.get(getDefaultDbConfig().getConfigName());
-        try {
-            if (getByMd5 == null && getByName == null) {
-                super.connection = super.getConnection(driver, url, username, password);
-                super.connection.close();
-                super.connection = super.getConnection(driver, url, username, password);
-                CONN_MD5_MAP.put(md5, super.connection);
-                CONN_NAME_MAP.put(getDefaultDbConfig().getConfigName(), super.connection);
-            } else if (getByMd5 != getByName) {//连接已经更新
-                getByName.close();
-                super.connection = super.getConnection(driver, url, username, password);
-                CONN_MD5_MAP.put(md5, super.connection);
-                CONN_NAME_MAP.put(getDefaultDbConfig().getConfigName(), super.connection);
-            } else {
-                super.connection = CONN_NAME_MAP.get(getDefaultDbConfig().getConfigName());
+        return getSharedConnection(MD5Util.MD5(driver + url + username + password), driver, url, username, password);
+    }
+
+    /**
+     * 获取共享的数据库连接.
+     * @param md5 连接参数的摘要.
+     * @param driver 驱动.
+     * @param url 连接服务器地址.
+     * @param username 用户名.
+     * @param password 密码.
+     * @return 
+     */
+    private Connection getSharedConnection(String md5, String driver, String url, String username, String password) {
+        MetricsRegistry metrics = MetricsRegistry.INSTANCE;
+        long start = System.nanoTime();
+        synchronized (CONN_NAME_MAP) {//两个缓存要一起更新,所有实例共用一把锁
+            long waited = System.nanoTime() - start;
+            metrics.increment(MetricsRegistry.SINGLE_ACQUIRE);
+            if (waited > CONTENDED_NANOS) {
+                metrics.increment(MetricsRegistry.SINGLE_CONTENDED);
+                metrics.add(MetricsRegistry.SINGLE_WAIT_NANOS, waited);
+            }
+            Connection getByMd5 = CONN_MD5_MAP.get(md5);
+            Connection getByName = CONN_NAME_MAP.get(getDefaultDbConfig().getConfigName());
+            try {
+                if (getByMd5 == null && getByName == null) {
+                    super.connection = super.getConnection(driver, url, username, password);
+                    super.connection.close();
+                    metrics.increment(MetricsRegistry.CONNECTION_CLOSED);
+                    super.connection = super.getConnection(driver, url, username, password);
+                    CONN_MD5_MAP.put(md5, super.connection);
+                    CONN_NAME_MAP.put(getDefaultDbConfig().getConfigName(), super.connection);
+                } else if (getByMd5 != getByName) {//连接已经更新
+                    if (getByName != null) {
+                        ConnectionLeases.retire(getByName);
+                    }
+                    super.connection = super.getConnection(driver, url, username, password);
+                    CONN_MD5_MAP.put(md5, super.connection);
+                    CONN_NAME_MAP.put(getDefaultDbConfig().getConfigName(), super.connection);
+                } else {
+                    super.connection = CONN_NAME_MAP.get(getDefaultDbConfig().getConfigName());
+                }
+            } catch (SQLException ex) {
+                log.error("获取链接失败!", ex);
             }
-        } catch (SQLException ex) {
-            log.error("获取链接失败!", ex);
         }
+        lease.use(super.connection);
         return super.connection;
     }
 
+    /**
+     * 获取指定数据库配置的连接.
+     * 连接参数的摘要由配置缓存,不必每次都计算MD5.
+     * @param config
+     * @return 
+     * @throws java.sql.SQLException 
+     */
     @Override
     protected synchronized Connection getConnection(DbConfig config) throws SQLException {
-        return super.getConnection(config);
+        return getSharedConnection(config.getIdentityKey(), config.getDriver(), config.getUrl(), config.getUsername(), config.getPassword());
     }
 
     @Override
@@ -129,12 +203,16 @@ public class SingleManager extends ADbManager {
         return super.getDefaultDbConfig();
     }
     /**
-     * 不真正关闭连接,只提交事务.
+     * 不真正关闭连接,只提交事务并归还连接.
      * @throws SQLException 
      */
     @Override
     public synchronized void closeConnection() throws SQLException {
-        commit();
+        try {
+            commit();
+        } finally {
+            lease.release();
+        }
     }
 
 }
@@ -0,0 +1,253 @@
+/*
+ * Copyright 2015 www.hyberbin.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * Email:hyberbin@qq.com
+ */
+package org.jplus.hyb.database.transaction;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import org.jplus.hyb.database.config.DbConfig;
+import org.jplus.hyb.database.metrics.Gauge;
+import org.jplus.hyb.database.metrics.MetricsRegistry;
+
+/**
+ * 分段的静态数据库连接管理.
+ * 和SingleManager一样只保持少量长连接,但每个配置固定开启若干个连接,
+ * 线程按自身的hash选择其中一个,不同分段上的线程互不等待.
+ * 同一个线程总是落在同一个连接上;同一分段上的线程共用一个连接,事务也是共用的:
+ * 一个线程的commit或rollBack会提交或回滚同一分段上其它线程未完成的操作,
+ * 所以只适合每次操作都自动提交的场景,需要隔离的事务请使用TxManager.
+ * 只有在调用finalCloseConnection才强制关闭该配置的所有连接.
+ * 配置的连接参数改变后旧的分段退役,正在使用的管理器都归还后才关闭.
+ * @author hyberbin
+ */
+public class StripedManager extends ADbManager {
+
+    /** 配置名到连接分段的映射 */
+    private static final ConcurrentMap<String, Stripes> STRIPES = new ConcurrentHashMap<String, Stripes>();
+    /** 每个配置的连接数,必须是2的幂 */
+    private static volatile int stripeCount = defaultStripeCount();
+
+    static {
+        MetricsRegistry.INSTANCE.registerGauge("striped.connections", new Gauge() {
+            @Override
+            public long getValue() {
+                long count = 0;
+                for (Stripes stripes : STRIPES.values()) {
+                    count += stripes.openCount();
+                }
+                return count;
+            }
+        });
+    }
+
+    /** 本管理器正在使用的分段连接 */
+    private final ConnectionLeases.Lease lease = new ConnectionLeases.Lease();
+
+    public StripedManager(String defaultConfig) {
+        super(defaultConfig);
+    }
+
+    private static int defaultStripeCount() {
+        return powerOfTwo(Math.min(4, Runtime.getRuntime().availableProcessors()));
+    }
+
+    private static int powerOfTwo(int count) {
+        int n = 1;
+        while (n < count) {
+            n <<= 1;
+        }
+        return n;
+    }
+
+    /**
+     * 设置每个配置的连接数.
+     * 会向上取整为2的幂,只对之后新建的分段生效.
+     * @param count 连接数
+     */
+    public static void setStripeCount(int count) {
+        stripeCount = powerOfTwo(Math.max(1, count));
+    }
+
+    public static int getStripeCount() {
+        return stripeCount;
+    }
+
+    /**
+     * 获取指定数据库配置的连接.
+     * 配置的连接参数改变后原来的分段退役,用新参数重新开启.
+     * @param config
+     * @return
+     * @throws SQLException
+     */
+    @Override
+    protected Connection getConnection(DbConfig config) throws SQLException {
+        Stripes stripes = getStripes(config);
+        int index = stripes.indexFor(Thread.currentThread());
+        Connection conn = stripes.connections.get(index);
+        if (conn == null || conn.isClosed()) {
+            synchronized (stripes.locks[index]) {
+                conn = stripes.connections.get(index);
+                if (conn == null || conn.isClosed()) {
+                    conn = openConnection(config.getDriver(), config.getUrl(), config.getUsername(), config.getPassword());
+                    stripes.connections.set(index, conn);
+                    log.debug("open striped connection:{}[{}]", config.getConfigName(), index);
+                }
+            }
+        }
+        MetricsRegistry.INSTANCE.increment(MetricsRegistry.STRIPED_ACQUIRE);
+        lease.use(conn);
+        connection = conn;
+        openTransaction();
+        return connection;
+    }
+
+    private Stripes getStripes(DbConfig config) throws SQLException {
+        String key = config.getIdentityKey();
+        Stripes stripes = STRIPES.get(config.getConfigName());
+        if (stripes != null && stripes.identityKey.equals(key)) {
+            return stripes;
+        }
+        synchronized (STRIPES) {
+            stripes = STRIPES.get(config.getConfigName());
+            if (stripes == null || !stripes.identityKey.equals(key)) {
+                if (stripes != null) {//连接参数已经更新
+                    stripes.retireAll();
+                }
+                stripes = new Stripes(key, stripeCount);
+                STRIPES.put(config.getConfigName(), stripes);
+            }
+            return stripes;
+        }
+    }
+
+    /**
+     * 让指定配置的所有分段连接退役,下次获取时重新开启.
+     * 没有在使用的连接立即关闭,正在使用的连接在使用它的管理器都归还后关闭.
+     * @param configName 配置名
+     */
+    public static void invalidate(String configName) {
+        Stripes stripes = STRIPES.remove(configName);
+        if (stripes != null) {
+            stripes.retireAll();
+        }
+    }
+
+    /**
+     * 不真正关闭连接,只提交事务并归还连接.
+     * @throws SQLException
+     */
+    @Override
+    public void closeConnection() throws SQLException {
+        try {
+            commit();
+        } finally {
+            lease.release();
+        }
+    }
+
+    @Override
+    public void rollBack() throws SQLException {
+        try {
+            super.rollBack();
+        } finally {
+            lease.release();
+        }
+    }
+
+    /**
+     * 最终关闭数据库连接.关闭本配置的所有分段连接.
+     * @throws SQLException
+     */
+    @Override
+    public void finalCloseConnection() throws SQLException {
+        lease.release();
+        Stripes stripes = STRIPES.remove(defaultConfig);
+        if (stripes != null) {
+            stripes.closeAll();
+        }
+        log.trace("in finalCloseConnection:{}", defaultConfig);
+    }
+
+    /**
+     * 一个配置的所有连接分段.
+     */
+    private static final class Stripes {
+
+        private final String identityKey;
+        private final AtomicReferenceArray<Connection> connections;
+        private final Object[] locks;
+        private final int mask;
+
+        Stripes(String identityKey, int count) {
+            this.identityKey = identityKey;
+            this.connections = new AtomicReferenceArray<Connection>(count);
+            this.locks = new Object[count];
+            for (int i = 0; i < count; i++) {
+                locks[i] = new Object();
+            }
+            this.mask = count - 1;
+        }
+
+        int indexFor(Thread thread) {
+            long id = thread.getId();
+            int h = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+            return (h ^ (h >>> 16)) & mask;
+        }
+
+        int openCount() {
+            int count = 0;
+            for (int i = 0; i < connections.length(); i++) {
+                if (connections.get(i) != null) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        void retireAll() {
+            for (int i = 0; i < connections.length(); i++) {
+                Connection conn = connections.getAndSet(i, null);
+                if (conn != null) {
+                    ConnectionLeases.retire(conn);
+                }
+            }
+        }
+
+        void closeAll() throws SQLException {
+            SQLException error = null;
+            for (int i = 0; i < connections.length(); i++) {
+                Connection conn = connections.getAndSet(i, null);
+                if (conn == null) {
+                    continue;
+                }
+                try {
+                    if (!conn.isClosed()) {
+                        conn.close();
+                        MetricsRegistry.INSTANCE.increment(MetricsRegistry.CONNECTION_CLOSED);
+                    }
+                } catch (SQLException ex) {
+                    error = ex;
+                }
+            }
+            if (error != null) {
+                throw error;
+            }
+        }
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2015 www.hyberbin.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * Email:hyberbin@qq.com
+ */
+package org.jplus.hyb.database.transaction;
+
+import java.sql.SQLException;
+
+/**
+ * 在一个事务中执行的数据库操作.
+ * 发生可重试的冲突时会被再次调用,实现中不要有数据库以外的副作用.
+ * @param <V> 返回值类型
+ * @author hyberbin
+ */
+public interface TransactionCallback<V> {
+
+    /**
+     * 执行操作.
+     * @param manager 本次事务的连接管理器,用它构造Hyberbin或DatabaseAccess
+     * @return
+     * @throws SQLException
+     */
+    public V doInTransaction(IDbManager manager) throws SQLException;
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2015 www.hyberbin.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * Email:hyberbin@qq.com
+ */
+package org.jplus.hyb.database.transaction;
+
+import java.sql.SQLException;
+
+/**
+ * 事务作用域,配合try-with-resources使用.
+ * 关闭时如果没有提交则回滚,然后释放线程内的连接,不会因为忘记调用finalCloseConnection而泄漏连接.
+ * <pre>
+ * try (TransactionScope scope = TransactionScope.begin("default")) {
+ *     new Hyberbin(bean, scope.getManager()).insert("id");
+ *     scope.commit();
+ * }
+ * </pre>
+ * @author hyberbin
+ */
+public class TransactionScope implements AutoCloseable {
+
+    private final IDbManager manager;
+    private boolean completed;
+
+    public TransactionScope(IDbManager manager) throws SQLException {
+        this.manager = manager;
+        manager.getConnection();
+    }
+
+    /**
+     * 用TxManager开启一个事务作用域.
+     * @param configName 数据库配置名
+     * @return
+     * @throws SQLException
+     */
+    public static TransactionScope begin(String configName) throws SQLException {
+        return new TransactionScope(new TxManager(configName));
+    }
+
+    public IDbManager getManager() {
+        return manager;
+    }
+
+    /**
+     * 提交事务.
+     * @throws SQLException
+     */
+    public void commit() throws SQLException {
+        manager.commit();
+        completed = true;
+    }
+
+    /**
+     * 回滚事务.
+     * @throws SQLException
+     */
+    public void rollBack() throws SQLException {
+        manager.rollBack();
+        completed = true;
+    }
+
+    public boolean isCompleted() {
+        return completed;
+    }
+
+    /**
+     * 没有提交或回滚的事务先回滚,再释放连接.
+     * @throws SQLException
+     */
+    @Override
+    public void close() throws SQLException {
+        try {
+            if (!completed) {
+                manager.rollBack();
+            }
+        } finally {
+            manager.finalCloseConnection();
+        }
+    }
+}
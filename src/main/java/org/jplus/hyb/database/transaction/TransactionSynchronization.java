@@ -0,0 +1,39 @@
+/*
+ * Copyright 2015 www.hyberbin.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * Email:hyberbin@qq.com
+ */
+package org.jplus.hyb.database.transaction;
+
+import java.sql.SQLException;
+
+/**
+ * 事务同步回调.注册到TxManager上,在当前线程该配置的事务提交或回滚时被调用,调用后自动注销.
+ * @author hyberbin
+ */
+public interface TransactionSynchronization {
+
+    /**
+     * 提交之前调用,可以在事务中执行最后的数据库操作.抛出异常时事务不会提交.
+     * @param manager 当前事务的连接管理器
+     * @throws SQLException
+     */
+    public void beforeCommit(IDbManager manager) throws SQLException;
+
+    /**
+     * 事务结束后调用.
+     * @param committed 是否已提交,false表示回滚或者提交前出错
+     */
+    public void afterCompletion(boolean committed);
+}
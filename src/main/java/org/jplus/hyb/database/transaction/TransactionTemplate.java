@@ -0,0 +1,199 @@
+/*
+ * Copyright 2015 www.hyberbin.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * Email:hyberbin@qq.com
+ */
+package org.jplus.hyb.database.transaction;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.ThreadLocalRandom;
+import org.jplus.hyb.database.adapter.IAdapter;
+import org.jplus.hyb.database.config.ConfigCenter;
+import org.jplus.hyb.database.config.DbConfig;
+import org.jplus.hyb.database.metrics.MetricsRegistry;
+import org.jplus.hyb.log.Logger;
+import org.jplus.hyb.log.LoggerManager;
+
+/**
+ * 声明式事务模板.
+ * 基于TxManager,每次尝试使用一个新连接,成功则提交,失败则回滚.
+ * 遇到死锁、串行化失败等由适配器判定为可重试的异常时,按带随机抖动的指数退避重试.
+ * <pre>
+ * new TransactionTemplate("default").execute(new TransactionCallback&lt;Integer&gt;() {
+ *     public Integer doInTransaction(IDbManager manager) throws SQLException {
+ *         return new Hyberbin(bean, manager).updateByKey("id");
+ *     }
+ * });
+ * </pre>
+ * 当前线程在该配置上已经有AutoManager或TxManager的连接时,加入外层的事务:
+ * 不设置隔离级别和只读提示,不提交、不回滚、不重试也不关闭连接,由外层负责.
+ * @author hyberbin
+ */
+public class TransactionTemplate {
+
+    private static final Logger log = LoggerManager.getLogger(TransactionTemplate.class);
+    /** 不改变隔离级别 */
+    public static final int ISOLATION_DEFAULT = -1;
+
+    private final String configName;
+    private int isolation = ISOLATION_DEFAULT;
+    private boolean readOnly;
+    private int maxRetries = 3;
+    private long backoffMillis = 20;
+    private long maxBackoffMillis = 1000;
+
+    public TransactionTemplate(String configName) {
+        this.configName = configName;
+    }
+
+    public TransactionTemplate() {
+        this(DbConfig.DEFAULT_CONFIG_NAME);
+    }
+
+    public int getIsolation() {
+        return isolation;
+    }
+
+    /**
+     * 设置事务隔离级别.
+     * @param isolation Connection.TRANSACTION_*,ISOLATION_DEFAULT表示使用连接的默认级别
+     */
+    public void setIsolation(int isolation) {
+        this.isolation = isolation;
+    }
+
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+    /**
+     * 设置只读提示.驱动不支持时忽略.
+     * @param readOnly
+     */
+    public void setReadOnly(boolean readOnly) {
+        this.readOnly = readOnly;
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    /**
+     * 设置最多重试次数,0表示不重试.
+     * @param maxRetries
+     */
+    public void setMaxRetries(int maxRetries) {
+        this.maxRetries = maxRetries;
+    }
+
+    /**
+     * 设置退避时间.第n次重试前随机等待0到min(max,base*2^n)毫秒.
+     * @param backoffMillis 基础等待毫秒数
+     * @param maxBackoffMillis 最大等待毫秒数
+     */
+    public void setBackoff(long backoffMillis, long maxBackoffMillis) {
+        this.backoffMillis = backoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+    }
+
+    /**
+     * 在事务中执行操作.
+     * @param <V> 返回值类型
+     * @param callback 数据库操作
+     * @return 操作的返回值
+     * @throws SQLException 不可重试的异常或重试次数用完后的最后一个异常
+     */
+    public <V> V execute(TransactionCallback<V> callback) throws SQLException {
+        if (AutoManager.hasThreadConnection(configName)) {
+            TxManager manager = new TxManager(configName);
+            manager.setConfigurator(ConfigCenter.INSTANCE.getConfigurator());
+            log.debug("join outer transaction on:{}", configName);
+            return callback.doInTransaction(manager);
+        }
+        IAdapter adapter = null;
+        for (int attempt = 0;; attempt++) {
+            TxManager manager = new TxManager(configName);
+            manager.setConfigurator(ConfigCenter.INSTANCE.getConfigurator());
+            if (adapter == null) {
+                adapter = ConfigCenter.INSTANCE.getAdapter(manager.getDefaultDbConfig().getDriver());
+            }
+            try {
+                applyHints(manager.getConnection());
+                V result = callback.doInTransaction(manager);
+                manager.commit();
+                return result;
+            } catch (SQLException ex) {
+                rollBack(manager);
+                if (!adapter.isRetryable(ex)) {
+                    throw ex;
+                }
+                if (attempt >= maxRetries) {
+                    MetricsRegistry.INSTANCE.increment(MetricsRegistry.TX_RETRY_EXHAUSTED, configName);
+                    throw ex;
+                }
+                MetricsRegistry.INSTANCE.increment(MetricsRegistry.TX_RETRY, configName);
+                log.info("transaction conflict on:{},retry:{} {}", configName, attempt + 1, ex.getMessage());
+                backoff(attempt, ex);
+            } catch (RuntimeException ex) {
+                rollBack(manager);
+                throw ex;
+            } finally {
+                close(manager);
+            }
+        }
+    }
+
+    private void applyHints(Connection connection) throws SQLException {
+        if (isolation != ISOLATION_DEFAULT && connection.getTransactionIsolation() != isolation) {
+            connection.setTransactionIsolation(isolation);
+        }
+        if (readOnly) {
+            try {
+                connection.setReadOnly(true);
+            } catch (SQLException ex) {
+                log.debug("driver ignore readOnly hint:{}", ex.getMessage());
+            }
+        }
+    }
+
+    private void rollBack(TxManager manager) {
+        try {
+            manager.rollBack();
+        } catch (SQLException | RuntimeException ex) {
+            log.error("rollBack:{} error!", configName, ex);
+        }
+    }
+
+    private void close(TxManager manager) {
+        try {
+            manager.finalCloseConnection();
+        } catch (SQLException ex) {
+            log.error("close:{} error!", configName, ex);
+        }
+    }
+
+    private void backoff(int attempt, SQLException cause) throws SQLException {
+        long ceiling = Math.min(maxBackoffMillis, backoffMillis << Math.min(attempt, 20));
+        if (ceiling <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(ceiling + 1));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw cause;
+        }
+    }
+}
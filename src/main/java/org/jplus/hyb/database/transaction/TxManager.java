@@ -16,7 +16,12 @@
  */
 package org.jplus.hyb.database.transaction;
 
+import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import org.jplus.util.Reflections;
 
 /**
@@ -28,9 +33,104 @@ import org.jplus.util.Reflections;
  */
 public class TxManager extends AutoManager{
 
+    /** 每个线程各配置上注册的事务同步回调 */
+    private static final ThreadLocal<Map<String, List<TransactionSynchronization>>> SYNCHRONIZATIONS = new ThreadLocal<Map<String, List<TransactionSynchronization>>>() {
+        @Override
+        protected Map<String, List<TransactionSynchronization>> initialValue() {
+            return new HashMap<String, List<TransactionSynchronization>>(4);
+        }
+    };
+
     public TxManager(String defaultConfig) {
         super(defaultConfig);
     }
+
+    /**
+     * 在当前线程本配置的事务上注册同步回调.事务提交或回滚后回调自动注销.
+     * @param synchronization 同步回调
+     */
+    public void registerSynchronization(TransactionSynchronization synchronization) {
+        Map<String, List<TransactionSynchronization>> map = SYNCHRONIZATIONS.get();
+        List<TransactionSynchronization> list = map.get(defaultConfig);
+        if (list == null) {
+            list = new ArrayList<TransactionSynchronization>(2);
+            map.put(defaultConfig, list);
+        }
+        list.add(synchronization);
+    }
+
+    /**
+     * 获取线程内的连接,并标记连接上有事务,事务结束前不会因为空闲被回收.
+     * @return
+     * @throws SQLException
+     */
+    @Override
+    public Connection getConnection() throws SQLException {
+        Connection conn = super.getConnection();
+        holder.setTransactional(true);
+        return conn;
+    }
+
+    /**
+     * 提交事务.提交前依次调用同步回调的beforeCommit,提交后调用afterCompletion.
+     * @throws SQLException
+     */
+    @Override
+    public void commit() throws SQLException {
+        List<TransactionSynchronization> list = SYNCHRONIZATIONS.get().remove(defaultConfig);
+        if (list == null) {
+            super.commit();
+            endTransaction();
+            return;
+        }
+        try {
+            for (int i = 0; i < list.size(); i++) {//回调中可能注册新的回调
+                list.get(i).beforeCommit(this);
+            }
+            super.commit();
+            endTransaction();
+        } catch (SQLException | RuntimeException ex) {
+            afterCompletion(list, false);
+            throw ex;
+        }
+        afterCompletion(list, true);
+    }
+
+    /**
+     * 回滚事务.回滚后调用同步回调的afterCompletion.
+     * @throws SQLException
+     */
+    @Override
+    public void rollBack() throws SQLException {
+        List<TransactionSynchronization> list = SYNCHRONIZATIONS.get().remove(defaultConfig);
+        try {
+            super.rollBack();
+        } finally {
+            endTransaction();
+            if (list != null) {
+                afterCompletion(list, false);
+            }
+        }
+    }
+
+    /**
+     * 事务已经结束,连接可以因为空闲被回收.
+     */
+    private void endTransaction() {
+        if (holder != null) {
+            holder.setTransactional(false);
+        }
+    }
+
+    private void afterCompletion(List<TransactionSynchronization> list, boolean committed) {
+        for (TransactionSynchronization synchronization : list) {
+            try {
+                synchronization.afterCompletion(committed);
+            } catch (RuntimeException ex) {
+                log.error("afterCompletion error on:{}", defaultConfig, ex);
+            }
+        }
+    }
     
     /**
      * 关闭数据库连接. 在本管理器中没有做任何操作.
@@ -38,9 +138,34 @@ public class TxManager extends AutoManager{
      */
     @Override
     public void closeConnection() throws SQLException {
+        touch();
         log.trace("use outer manager nothing to do close ");
     }
 
+    /**
+     * 事务进行中不能换连接,最长存活时间不生效.
+     * @param holder 线程内的连接
+     * @return
+     */
+    @Override
+    protected boolean expired(ConnectionHolder holder) {
+        return false;
+    }
+
+    /**
+     * 事务中的连接断开后之前的操作已经丢失,只丢弃连接不重试.
+     * @param ex 操作抛出的异常
+     * @return
+     * @throws SQLException
+     */
+    @Override
+    public boolean recover(SQLException ex) throws SQLException {
+        if (super.recover(ex)) {
+            log.error("connection:{} broken in transaction!", defaultConfig);
+        }
+        return false;
+    }
+
     /**
      * 最终关闭数据库连接. 用户程序运行到最后或者线程结束的时候提交事务并释放数据库连接资源.
      * @throws SQLException
@@ -0,0 +1,31 @@
+/*
+ * Copyright 2015 www.hyberbin.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * Email:hyberbin@qq.com
+ */
+package org.jplus.hyb.database.transaction;
+
+/**
+ * 线程内连接的验证策略.
+ * @author hyberbin
+ */
+public enum ValidationPolicy {
+
+    /** 每次获取连接都调用isValid验证,每次操作多一次网络往返 */
+    ALWAYS,
+    /** 连接空闲超过阈值后才验证,默认策略 */
+    IDLE,
+    /** 获取时不验证,执行出错后判断连接是否已断开,断开则换新连接重试一次 */
+    ON_ERROR
+}
@@ -0,0 +1,337 @@
+/*
+ * Copyright 2015 www.hyberbin.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * Email:hyberbin@qq.com
+ */
+package org.jplus.hyb.database.transfer;
+
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * 导入导出文件的格式.
+ * @author hyberbin
+ */
+public enum ExportFormat {
+
+    /** 逗号分隔,第一行是字段名,按RFC 4180加引号,空值不写,空串写成"" */
+    CSV {
+        @Override
+        void header(String[] columns, StringBuilder out) {
+            for (int i = 0; i < columns.length; i++) {
+                if (i > 0) {
+                    out.append(',');
+                }
+                csv(columns[i], out);
+            }
+            out.append('\n');
+        }
+
+        @Override
+        void row(String[] columns, Object[] values, StringBuilder out) {
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    out.append(',');
+                }
+                if (values[i] != null) {
+                    csv(text(values[i]), out);
+                }
+            }
+            out.append('\n');
+        }
+
+        @Override
+        void parse(String record, List<String> names, List<String> values) {
+            StringBuilder field = new StringBuilder();
+            boolean quoted = false;
+            boolean wasQuoted = false;
+            for (int i = 0; i < record.length(); i++) {
+                char c = record.charAt(i);
+                if (quoted) {
+                    if (c != '"') {
+                        field.append(c);
+                    } else if (i + 1 < record.length() && record.charAt(i + 1) == '"') {
+                        field.append(c);
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else if (c == '"') {
+                    quoted = true;
+                    wasQuoted = true;
+                } else if (c == ',') {
+                    values.add(field(field, wasQuoted));
+                    field.setLength(0);
+                    wasQuoted = false;
+                } else if (c != '\r') {
+                    field.append(c);
+                }
+            }
+            if (quoted) {
+                throw new IllegalArgumentException("unclosed quote");
+            }
+            values.add(field(field, wasQuoted));
+        }
+    },
+    /** 每行一个JSON对象 */
+    NDJSON {
+        @Override
+        void header(String[] columns, StringBuilder out) {
+        }
+
+        @Override
+        void row(String[] columns, Object[] values, StringBuilder out) {
+            out.append('{');
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    out.append(',');
+                }
+                json(columns[i], out);
+                out.append(':');
+                Object value = values[i];
+                if (value == null) {
+                    out.append("null");
+                } else if (value instanceof Number || value instanceof Boolean) {
+                    out.append(value);
+                } else {
+                    json(text(value), out);
+                }
+            }
+            out.append("}\n");
+        }
+
+        @Override
+        void parse(String record, List<String> names, List<String> values) {
+            JsonCursor cursor = new JsonCursor(record);
+            cursor.expect('{');
+            if (cursor.skip('}')) {
+                cursor.end();
+                return;
+            }
+            do {
+                names.add(cursor.string());
+                cursor.expect(':');
+                values.add(cursor.value());
+            } while (cursor.skip(','));
+            cursor.expect('}');
+            cursor.end();
+        }
+    };
+
+    /**
+     * 写文件头.
+     * @param columns 字段名
+     * @param out 输出
+     */
+    abstract void header(String[] columns, StringBuilder out);
+
+    /**
+     * 写一行.
+     * @param columns 字段名
+     * @param values 字段值
+     * @param out 输出
+     */
+    abstract void row(String[] columns, Object[] values, StringBuilder out);
+
+    /**
+     * 解析一条记录.CSV只有值,字段名在第一条记录中;空值解析为null.
+     * @param record 记录
+     * @param names 解析出的字段名
+     * @param values 解析出的值
+     * @throws IllegalArgumentException 记录格式不正确
+     */
+    abstract void parse(String record, List<String> names, List<String> values);
+
+    /**
+     * 记录是否可以跨行.CSV引号中的换行属于字段值.
+     * @return
+     */
+    boolean isMultiline() {
+        return this == CSV;
+    }
+
+    /**
+     * 文件扩展名.
+     * @return
+     */
+    public String getExtension() {
+        return name().toLowerCase();
+    }
+
+    private static String text(Object value) {
+        if (value instanceof byte[]) {
+            return Base64.getEncoder().encodeToString((byte[]) value);
+        }
+        return value.toString();
+    }
+
+    private static void csv(String str, StringBuilder out) {
+        boolean quote = str.isEmpty();//空串加引号,和空值区分
+        for (int i = 0; i < str.length() && !quote; i++) {
+            char c = str.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            out.append(str);
+            return;
+        }
+        out.append('"');
+        for (int i = 0; i < str.length(); i++) {
+            char c = str.charAt(i);
+            if (c == '"') {
+                out.append('"');
+            }
+            out.append(c);
+        }
+        out.append('"');
+    }
+
+    private static String field(StringBuilder field, boolean quoted) {
+        return field.length() == 0 && !quoted ? null : field.toString();
+    }
+
+    private static void json(String str, StringBuilder out) {
+        out.append('"');
+        for (int i = 0; i < str.length(); i++) {
+            char c = str.charAt(i);
+            switch (c) {
+                case '"':
+                    out.append("\\\"");
+                    break;
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+        out.append('"');
+    }
+
+    /**
+     * 只解析一层对象的简单JSON读取器,值只能是字符串、数字、布尔或null.
+     */
+    private static final class JsonCursor {
+
+        private final String text;
+        private int pos;
+
+        JsonCursor(String text) {
+            this.text = text;
+        }
+
+        private void blank() {
+            while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        boolean skip(char c) {
+            blank();
+            if (pos < text.length() && text.charAt(pos) == c) {
+                pos++;
+                return true;
+            }
+            return false;
+        }
+
+        void expect(char c) {
+            if (!skip(c)) {
+                throw new IllegalArgumentException("expect '" + c + "' at " + pos);
+            }
+        }
+
+        void end() {
+            blank();
+            if (pos < text.length()) {
+                throw new IllegalArgumentException("unexpected content at " + pos);
+            }
+        }
+
+        String string() {
+            expect('"');
+            StringBuilder sb = new StringBuilder();
+            while (pos < text.length()) {
+                char c = text.charAt(pos++);
+                if (c == '"') {
+                    return sb.toString();
+                }
+                if (c != '\\') {
+                    sb.append(c);
+                    continue;
+                }
+                if (pos >= text.length()) {
+                    break;
+                }
+                c = text.charAt(pos++);
+                switch (c) {
+                    case 'n':
+                        sb.append('\n');
+                        break;
+                    case 'r':
+                        sb.append('\r');
+                        break;
+                    case 't':
+                        sb.append('\t');
+                        break;
+                    case 'b':
+                        sb.append('\b');
+                        break;
+                    case 'f':
+                        sb.append('\f');
+                        break;
+                    case 'u':
+                        if (pos + 4 > text.length()) {
+                            throw new IllegalArgumentException("bad unicode escape at " + pos);
+                        }
+                        sb.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+                        pos += 4;
+                        break;
+                    default:
+                        sb.append(c);
+                }
+            }
+            throw new IllegalArgumentException("unclosed string");
+        }
+
+        String value() {
+            blank();
+            if (pos < text.length() && text.charAt(pos) == '"') {
+                return string();
+            }
+            int start = pos;
+            while (pos < text.length() && ",}".indexOf(text.charAt(pos)) < 0 && !Character.isWhitespace(text.charAt(pos))) {
+                pos++;
+            }
+            String value = text.substring(start, pos);
+            if (value.isEmpty() || value.charAt(0) == '{' || value.charAt(0) == '[') {
+                throw new IllegalArgumentException("unsupported value at " + start);
+            }
+            return "null".equals(value) ? null : value;
+        }
+    }
+}
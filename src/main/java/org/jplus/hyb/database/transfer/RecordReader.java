@@ -0,0 +1,113 @@
+/*
+ * Copyright 2015 www.hyberbin.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * Email:hyberbin@qq.com
+ */
+package org.jplus.hyb.database.transfer;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 按记录流式读取文件.通过文件通道和固定大小的字符缓冲区边读边解析,不把整个文件读入内存.
+ * 多行模式下引号中的换行不结束记录.
+ * @author hyberbin
+ */
+class RecordReader {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private final FileChannel channel;
+    private final Reader reader;
+    private final boolean multiline;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private final StringBuilder record = new StringBuilder(256);
+    private int pos;
+    private int limit;
+    private long line;
+    private long recordLine;
+
+    RecordReader(File file, boolean multiline) throws IOException {
+        this.channel = new FileInputStream(file).getChannel();
+        this.reader = Channels.newReader(channel, StandardCharsets.UTF_8.newDecoder(), BUFFER_SIZE);
+        this.multiline = multiline;
+    }
+
+    /**
+     * 读取下一条记录,跳过空行,去掉行尾的回车.
+     * @return 记录,没有更多记录时返回null
+     * @throws IOException
+     */
+    String next() throws IOException {
+        record.setLength(0);
+        boolean quoted = false;
+        recordLine = line + 1;
+        for (;;) {
+            if (pos == limit) {
+                limit = reader.read(buffer);
+                pos = 0;
+                if (limit <= 0) {
+                    limit = 0;
+                    if (record.length() == 0) {
+                        return null;
+                    }
+                    line++;
+                    return record.toString();
+                }
+            }
+            char c = buffer[pos++];
+            if (c == '"' && multiline) {
+                quoted = !quoted;
+            } else if (c == '\n') {
+                line++;
+                if (!quoted) {
+                    if (record.length() > 0 && record.charAt(record.length() - 1) == '\r') {
+                        record.setLength(record.length() - 1);
+                    }
+                    if (record.length() == 0) {
+                        recordLine = line + 1;
+                        continue;
+                    }
+                    return record.toString();
+                }
+            }
+            record.append(c);
+        }
+    }
+
+    /**
+     * 上一条记录开始的行号,从1开始.
+     * @return
+     */
+    long getLine() {
+        return recordLine;
+    }
+
+    /**
+     * 已经从文件中读取的字节数.
+     * @return
+     * @throws IOException
+     */
+    long getPosition() throws IOException {
+        return channel.position();
+    }
+
+    void close() throws IOException {
+        reader.close();
+    }
+}
@@ -0,0 +1,344 @@
+/*
+ * Copyright 2015 www.hyberbin.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * Email:hyberbin@qq.com
+ */
+package org.jplus.hyb.database.transfer;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
+import org.jplus.hyb.database.config.DbConfig;
+import org.jplus.hyb.database.transaction.IDbManager;
+import org.jplus.hyb.database.transaction.SimpleManager;
+import org.jplus.hyb.log.Logger;
+import org.jplus.hyb.log.LoggerManager;
+
+/**
+ * 并行分区导出整张表.
+ * 按数字主键的最小最大值把表切成若干段,每段用单独的连接和只进游标读取,
+ * 写到各自的临时文件,全部完成后按主键顺序拼接成目标文件.
+ * gzip压缩时每段是一个独立的gzip成员,拼接后仍是合法的gzip文件.
+ * 主键不是数字或表为空时只有一段.
+ * @author hyberbin
+ */
+public class TableExporter {
+
+    private static final Logger log = LoggerManager.getLogger(TableExporter.class);
+    /** 累计多少行更新一次报告 */
+    private static final int REPORT_STEP = 1000;
+    private final String configName;
+    private final String table;
+    private final String keyColumn;
+    private String columns = "*";
+    private int partitions = 4;
+    private int fetchSize = 1000;
+    private ExportFormat format = ExportFormat.CSV;
+    private boolean gzip;
+    private long progressInterval = 100000;
+
+    /**
+     * @param configName 数据库配置名
+     * @param table 表名
+     * @param keyColumn 用来分区的主键字段
+     */
+    public TableExporter(String configName, String table, String keyColumn) {
+        this.configName = configName;
+        this.table = table;
+        this.keyColumn = keyColumn;
+    }
+
+    /**
+     * 设置导出的字段,默认全部.
+     * @param columns 逗号分隔的字段
+     */
+    public void setColumns(String columns) {
+        this.columns = columns;
+    }
+
+    public void setPartitions(int partitions) {
+        this.partitions = Math.max(1, partitions);
+    }
+
+    /**
+     * 设置游标每次取回的行数.mysql驱动会改用流式读取.
+     * @param fetchSize
+     */
+    public void setFetchSize(int fetchSize) {
+        this.fetchSize = fetchSize;
+    }
+
+    public void setFormat(ExportFormat format) {
+        this.format = format;
+    }
+
+    public void setGzip(boolean gzip) {
+        this.gzip = gzip;
+    }
+
+    /**
+     * 设置每导出多少行打印一次进度,0表示不打印.
+     * @param progressInterval
+     */
+    public void setProgressInterval(long progressInterval) {
+        this.progressInterval = progressInterval;
+    }
+
+    /**
+     * 导出到文件.
+     * @param target 目标文件,已存在则覆盖
+     * @return 导出报告
+     * @throws SQLException
+     * @throws IOException
+     */
+    public TransferReport export(File target) throws SQLException, IOException {
+        List<long[]> ranges = split();
+        TransferReport report = new TransferReport(ranges.size());
+        List<File> parts = new ArrayList<File>(ranges.size());
+        ExecutorService executor = Executors.newFixedThreadPool(ranges.size());
+        try {
+            List<Future<?>> futures = new ArrayList<Future<?>>(ranges.size());
+            for (int i = 0; i < ranges.size(); i++) {
+                File part = new File(target.getPath() + ".part" + i);
+                parts.add(part);
+                futures.add(executor.submit(new Partition(ranges.get(i), i == 0, part, report)));
+            }
+            for (Future<?> future : futures) {
+                await(future, futures);
+            }
+            concat(parts, target);
+            report.finish();
+            log.info("export {} to {} finished,{}", table, target, report);
+            return report;
+        } finally {
+            executor.shutdownNow();
+            for (File part : parts) {
+                part.delete();
+            }
+        }
+    }
+
+    private static void await(Future<?> future, List<Future<?>> futures) throws SQLException, IOException {
+        try {
+            future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("export interrupted", ex);
+        } catch (ExecutionException ex) {
+            for (Future<?> other : futures) {
+                other.cancel(true);
+            }
+            Throwable cause = ex.getCause();
+            if (cause instanceof SQLException) {
+                throw (SQLException) cause;
+            }
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * 按主键范围分区,每段是闭区间[lo,hi].
+     * @return 分区;只有一个null元素表示不分区
+     */
+    private List<long[]> split() throws SQLException {
+        List<long[]> ranges = new ArrayList<long[]>();
+        IDbManager manager = new SimpleManager(configName);
+        try {
+            Statement stm = manager.getConnection().createStatement();
+            try {
+                ResultSet rs = stm.executeQuery("select min(" + keyColumn + "),max(" + keyColumn + ") from " + table);
+                Object min = rs.next() ? rs.getObject(1) : null;
+                Object max = rs.getObject(2);
+                rs.close();
+                if (partitions == 1 || !isIntegral(min) || !isIntegral(max)) {
+                    ranges.add(null);
+                    return ranges;
+                }
+                long lo = ((Number) min).longValue();
+                long hi = ((Number) max).longValue();
+                long step = Math.max(1, (hi - lo) / partitions + 1);
+                for (long start = lo; start <= hi; start += step) {
+                    ranges.add(new long[]{start, hi - start < step ? hi : start + step - 1});
+                    if (hi - start < step) {
+                        break;
+                    }
+                }
+                return ranges;
+            } finally {
+                stm.close();
+            }
+        } finally {
+            manager.closeConnection();
+        }
+    }
+
+    private static boolean isIntegral(Object value) {
+        return value instanceof Integer || value instanceof Long || value instanceof Short
+                || value instanceof BigDecimal && ((BigDecimal) value).scale() <= 0;
+    }
+
+    /**
+     * 拼接各段文件.
+     */
+    private static void concat(List<File> parts, File target) throws IOException {
+        FileChannel out = new FileOutputStream(target).getChannel();
+        try {
+            for (File part : parts) {
+                FileChannel in = new FileInputStream(part).getChannel();
+                try {
+                    long size = in.size();
+                    for (long position = 0; position < size;) {
+                        position += in.transferTo(position, size - position, out);
+                    }
+                } finally {
+                    in.close();
+                }
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * 一个分区的导出任务.
+     */
+    private class Partition implements Callable<Void> {
+
+        private final long[] range;
+        private final boolean first;
+        private final File file;
+        private final TransferReport report;
+        /** 已计入报告的字节数 */
+        private long reported;
+
+        Partition(long[] range, boolean first, File file, TransferReport report) {
+            this.range = range;
+            this.first = first;
+            this.file = file;
+            this.report = report;
+        }
+
+        @Override
+        public Void call() throws SQLException, IOException {
+            IDbManager manager = new SimpleManager(configName);
+            try {
+                Connection connection = manager.getConnection();
+                DbConfig config = manager.getDefaultDbConfig();
+                PreparedStatement ps = connection.prepareStatement(getSql(), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                try {
+                    //mysql驱动只有Integer.MIN_VALUE才是真正的流式读取
+                    ps.setFetchSize(DbConfig.DRIVER_MYSQL.equals(config.getDriver()) ? Integer.MIN_VALUE : fetchSize);
+                    if (range != null) {
+                        ps.setLong(1, range[0]);
+                        ps.setLong(2, range[1]);
+                    }
+                    write(ps.executeQuery());
+                } finally {
+                    ps.close();
+                }
+                log.debug("export {} partition {} finished", table, file);
+            } finally {
+                manager.closeConnection();
+            }
+            report.finishPart();
+            return null;
+        }
+
+        private String getSql() {
+            String sql = "select " + columns + " from " + table;
+            if (range == null) {
+                return sql;
+            }
+            return sql + " where " + keyColumn + ">=? and " + keyColumn + "<=? order by " + keyColumn;
+        }
+
+        private void write(ResultSet rs) throws SQLException, IOException {
+            ResultSetMetaData meta = rs.getMetaData();
+            String[] names = new String[meta.getColumnCount()];
+            for (int i = 0; i < names.length; i++) {
+                names[i] = meta.getColumnLabel(i + 1);
+            }
+            ChannelSink sink = new ChannelSink(open());
+            try {
+                StringBuilder line = new StringBuilder(256);
+                if (first) {
+                    format.header(names, line);
+                    sink.write(line);
+                }
+                Object[] values = new Object[names.length];
+                int pending = 0;
+                while (rs.next()) {
+                    for (int i = 0; i < values.length; i++) {
+                        values[i] = rs.getObject(i + 1);
+                    }
+                    line.setLength(0);
+                    format.row(names, values, line);
+                    sink.write(line);
+                    if (++pending == REPORT_STEP) {
+                        progress(pending, sink);
+                        pending = 0;
+                    }
+                }
+                rs.close();
+                sink.close();
+                progress(pending, sink);
+            } catch (IOException | SQLException | RuntimeException ex) {
+                sink.close();
+                throw ex;
+            }
+        }
+
+        private void progress(int rows, ChannelSink sink) {
+            long before = report.getRows();
+            report.addRows(rows);
+            report.addBytes(sink.getBytes() - reported);
+            reported = sink.getBytes();
+            if (progressInterval > 0 && before / progressInterval != (before + rows) / progressInterval) {
+                log.info("export {}:{}", table, report);
+            }
+        }
+
+        private WritableByteChannel open() throws IOException {
+            FileOutputStream out = new FileOutputStream(file);
+            if (!gzip) {
+                return out.getChannel();
+            }
+            OutputStream stream = new GZIPOutputStream(out, 64 * 1024);
+            return Channels.newChannel(stream);
+        }
+    }
+}
@@ -0,0 +1,447 @@
+/*
+ * Copyright 2015 www.hyberbin.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * Email:hyberbin@qq.com
+ */
+package org.jplus.hyb.database.transfer;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import javax.persistence.JoinColumn;
+import org.jplus.hyb.database.bean.FieldColumn;
+import org.jplus.hyb.database.crud.Hyberbin;
+import org.jplus.hyb.database.util.CacheFactory;
+import org.jplus.hyb.database.transaction.TxManager;
+import org.jplus.hyb.log.Logger;
+import org.jplus.hyb.log.LoggerManager;
+import org.jplus.util.ConverString;
+import org.jplus.util.FieldUtil;
+import org.jplus.util.Reflections;
+
+/**
+ * 把CSV或NDJSON文件并行导入到实体对应的表.
+ * 调用线程流式读取记录,每攒够一批交给解析线程转换成实体,转换好的批次放入有界队列,
+ * 由若干写入线程各用一个连接批量插入,每批一个事务.
+ * 解析失败的行和批量插入失败后逐行重试仍失败的行写入死信文件,格式和原文件相同,修正后可以重新导入.
+ * CSV第一行是字段名,字段名和NDJSON的键按数据库字段名或实体属性名匹配,不区分大小写,不认识的字段忽略.
+ * @author hyberbin
+ * @param <T> 实体类型
+ */
+public class TableImporter<T> {
+
+    private static final Logger log = LoggerManager.getLogger(TableImporter.class);
+    private final String configName;
+    private final Class<T> type;
+    private final Map<String, FieldColumn> columns = new HashMap<String, FieldColumn>();
+    private ExportFormat format = ExportFormat.CSV;
+    private int parsers = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    private int writers = 2;
+    private int batchSize = 1000;
+    private File deadLetter;
+    private long progressInterval = 100000;
+
+    /**
+     * @param configName 数据库配置名
+     * @param type 实体类
+     */
+    public TableImporter(String configName, Class<T> type) {
+        this.configName = configName;
+        this.type = type;
+        for (FieldColumn column : CacheFactory.MINSTANCE.getHyberbin(type, false).getColumns()) {
+            if (!column.isIgnore()) {
+                columns.put(column.getColumn().toUpperCase(), column);
+                columns.put(column.getField().getName().toUpperCase(), column);
+            }
+        }
+    }
+
+    public void setFormat(ExportFormat format) {
+        this.format = format;
+    }
+
+    /**
+     * 设置解析线程数.
+     * @param parsers
+     */
+    public void setParsers(int parsers) {
+        this.parsers = Math.max(1, parsers);
+    }
+
+    /**
+     * 设置写入线程数,每个写入线程占用一个连接.
+     * @param writers
+     */
+    public void setWriters(int writers) {
+        this.writers = Math.max(1, writers);
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    /**
+     * 设置死信文件,默认是导入文件名加.rejected.
+     * @param deadLetter
+     */
+    public void setDeadLetter(File deadLetter) {
+        this.deadLetter = deadLetter;
+    }
+
+    /**
+     * 设置每导入多少行打印一次进度,0表示不打印.
+     * @param progressInterval
+     */
+    public void setProgressInterval(long progressInterval) {
+        this.progressInterval = progressInterval;
+    }
+
+    /**
+     * 导入文件.
+     * @param file 要导入的文件
+     * @return 导入报告,rows是成功插入的行数,bytes是读取的文件字节数
+     * @throws IOException
+     * @throws SQLException 写入线程出现无法按行处理的错误
+     */
+    public TransferReport importFile(File file) throws IOException, SQLException {
+        Pipeline pipeline = new Pipeline(new RecordReader(file, format.isMultiline()),
+                new DeadLetter(deadLetter == null ? new File(file.getPath() + ".rejected") : deadLetter));
+        try {
+            pipeline.run();
+        } finally {
+            pipeline.close();
+        }
+        log.info("import {} finished,{}", file, pipeline.report);
+        return pipeline.report;
+    }
+
+    /**
+     * 解析一条记录为实体.
+     * @param names CSV的字段,NDJSON为null
+     * @param record 记录
+     * @return 实体
+     */
+    private T parse(FieldColumn[] names, String record) throws ReflectiveOperationException {
+        List<String> keys = new ArrayList<String>();
+        List<String> values = new ArrayList<String>();
+        format.parse(record, keys, values);
+        if (names != null && values.size() != names.length) {
+            throw new IllegalArgumentException("expect " + names.length + " fields but found " + values.size());
+        }
+        T entity = type.newInstance();
+        for (int i = 0; i < values.size(); i++) {
+            FieldColumn column = names != null ? names[i] : columns.get(keys.get(i).toUpperCase());
+            if (column != null && values.get(i) != null) {
+                setValue(entity, column, values.get(i));
+            }
+        }
+        return entity;
+    }
+
+    private void setValue(T entity, FieldColumn column, String str) throws IllegalAccessException {
+        Field field = column.getField();
+        if (field.isAnnotationPresent(JoinColumn.class)) {
+            String key = field.getAnnotation(JoinColumn.class).name();
+            FieldUtil.setFatherFieldValue(entity, field.getName(), convert(FieldUtil.getField(field.getType(), key).getType(), str, column));
+        } else if (column.isHasGetterAndSetter()) {
+            Reflections.invokeSetter(entity, field.getName(), convert(field.getType(), str, column), field.getType());
+        } else {
+            field.set(entity, convert(field.getType(), str, column));
+        }
+    }
+
+    private static Object convert(Class fieldType, String str, FieldColumn column) {
+        Object value = ConverString.asType(fieldType, str, null);
+        if (value == null) {
+            throw new IllegalArgumentException("bad value for " + column.getColumn() + ":" + str);
+        }
+        return value;
+    }
+
+    /**
+     * 一批原始记录和解析出的实体.
+     */
+    private final class Batch {
+
+        private final List<String> records;
+        private final List<T> rows;
+
+        Batch(List<String> records, List<T> rows) {
+            this.records = records;
+            this.rows = rows;
+        }
+    }
+
+    /**
+     * 一次导入的读取、解析和写入线程.
+     */
+    private final class Pipeline {
+
+        private final RecordReader reader;
+        private final DeadLetter deadLetter;
+        private final TransferReport report = new TransferReport(writers);
+        private final BlockingQueue<Batch> queue = new ArrayBlockingQueue<Batch>(writers * 2);
+        private final Batch end = new Batch(Collections.<String>emptyList(), Collections.<T>emptyList());
+        private final ExecutorService parserPool;
+        private final ExecutorService writerPool;
+        private volatile Throwable failure;
+        private FieldColumn[] header;
+
+        Pipeline(RecordReader reader, DeadLetter deadLetter) {
+            this.reader = reader;
+            this.deadLetter = deadLetter;
+            //解析跟不上时由读取线程自己解析,避免无限堆积
+            this.parserPool = new ThreadPoolExecutor(parsers, parsers, 0, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<Runnable>(parsers * 2), new ThreadPoolExecutor.CallerRunsPolicy());
+            this.writerPool = Executors.newFixedThreadPool(writers);
+        }
+
+        void run() throws IOException, SQLException {
+            List<Future<?>> futures = new ArrayList<Future<?>>(writers);
+            for (int i = 0; i < writers; i++) {
+                futures.add(writerPool.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        write();
+                    }
+                }));
+            }
+            if (format == ExportFormat.CSV) {
+                readHeader();
+            }
+            long read = 0;
+            List<String> records = new ArrayList<String>(batchSize);
+            for (String record = reader.next(); record != null && failure == null; record = reader.next()) {
+                records.add(record);
+                if (records.size() == batchSize) {
+                    submit(records);
+                    records = new ArrayList<String>(batchSize);
+                    report.addBytes(reader.getPosition() - read);
+                    read = reader.getPosition();
+                }
+            }
+            submit(records);
+            report.addBytes(reader.getPosition() - read);
+            parserPool.shutdown();
+            try {
+                parserPool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+                for (int i = 0; i < writers; i++) {
+                    put(end);
+                }
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IOException("import interrupted", ex);
+            } catch (ExecutionException ex) {
+                failure = ex.getCause();
+            }
+            report.finish();
+            if (failure instanceof SQLException) {
+                throw (SQLException) failure;
+            }
+            if (failure instanceof IOException) {
+                throw (IOException) failure;
+            }
+            if (failure != null) {
+                throw new IllegalStateException(failure);
+            }
+        }
+
+        private void readHeader() throws IOException {
+            String record = reader.next();
+            if (record == null) {
+                return;
+            }
+            List<String> names = new ArrayList<String>();
+            format.parse(record, null, names);
+            header = new FieldColumn[names.size()];
+            for (int i = 0; i < header.length; i++) {
+                header[i] = names.get(i) == null ? null : columns.get(names.get(i).toUpperCase());
+                if (header[i] == null) {
+                    log.warn("import {} ignore unknown column:{}", type.getSimpleName(), names.get(i));
+                }
+            }
+            deadLetter.setHeader(record);
+        }
+
+        private void submit(final List<String> records) {
+            if (records.isEmpty()) {
+                return;
+            }
+            final long line = reader.getLine() - records.size() + 1;
+            parserPool.execute(new Runnable() {
+                @Override
+                public void run() {
+                    List<T> rows = new ArrayList<T>(records.size());
+                    List<String> parsed = new ArrayList<String>(records.size());
+                    for (int i = 0; i < records.size(); i++) {
+                        try {
+                            rows.add(parse(header, records.get(i)));
+                            parsed.add(records.get(i));
+                        } catch (ReflectiveOperationException | RuntimeException ex) {
+                            reject(records.get(i), "line ~" + (line + i), ex);
+                        }
+                    }
+                    if (!rows.isEmpty()) {
+                        put(new Batch(parsed, rows));
+                    }
+                }
+            });
+        }
+
+        private void put(Batch batch) {
+            try {
+                while (!queue.offer(batch, 100, TimeUnit.MILLISECONDS)) {
+                    if (failure != null) {
+                        return;
+                    }
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void write() {
+            TxManager tx = new TxManager(configName);
+            try {
+                for (Batch batch = queue.take(); batch != end; batch = queue.take()) {
+                    try {
+                        insert(tx, batch.rows);
+                        progress(batch.rows.size());
+                    } catch (SQLException ex) {
+                        log.debug("import batch failed,retry row by row", ex);
+                        for (int i = 0; i < batch.rows.size(); i++) {
+                            try {
+                                insert(tx, Collections.singletonList(batch.rows.get(i)));
+                                progress(1);
+                            } catch (SQLException rowEx) {
+                                reject(batch.records.get(i), "insert", rowEx);
+                            }
+                        }
+                    }
+                }
+                report.finishPart();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException ex) {
+                failure = ex;
+                throw ex;
+            } finally {
+                try {
+                    tx.finalCloseConnection();
+                } catch (SQLException ex) {
+                    log.error("close import connection error", ex);
+                }
+            }
+        }
+
+        /**
+         * 在写入线程的连接上用一个事务插入一批数据.每次新建Hyberbin,失败的批次不会残留在适配器中.
+         */
+        private void insert(TxManager tx, List<T> rows) throws SQLException {
+            try {
+                new Hyberbin<T>(rows.get(0), tx).insertBatch(null, rows);
+                tx.commit();
+            } catch (SQLException ex) {
+                tx.rollBack();
+                throw ex;
+            }
+        }
+
+        private void progress(int rows) {
+            long before = report.getRows();
+            report.addRows(rows);
+            if (progressInterval > 0 && before / progressInterval != (before + rows) / progressInterval) {
+                log.info("import {}:{}", type.getSimpleName(), report);
+            }
+        }
+
+        private void reject(String record, String where, Exception ex) {
+            report.addRejected(1);
+            log.warn("import {} reject {}:{}", type.getSimpleName(), where, ex.getMessage());
+            try {
+                deadLetter.write(record);
+            } catch (IOException ioEx) {
+                failure = ioEx;
+            }
+        }
+
+        void close() throws IOException {
+            parserPool.shutdownNow();
+            writerPool.shutdownNow();
+            try {
+                reader.close();
+            } finally {
+                deadLetter.close();
+            }
+        }
+    }
+
+    /**
+     * 死信文件.第一次写入时才创建,CSV会先写入字段行.
+     */
+    private static final class DeadLetter {
+
+        private final File file;
+        private String header;
+        private Writer writer;
+
+        DeadLetter(File file) {
+            this.file = file;
+        }
+
+        void setHeader(String header) {
+            this.header = header;
+        }
+
+        synchronized void write(String record) throws IOException {
+            if (writer == null) {
+                writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8));
+                if (header != null) {
+                    writer.write(header);
+                    writer.write('\n');
+                }
+            }
+            writer.write(record);
+            writer.write('\n');
+        }
+
+        synchronized void close() throws IOException {
+            if (writer != null) {
+                writer.close();
+            }
+        }
+    }
+}
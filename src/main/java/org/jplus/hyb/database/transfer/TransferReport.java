@@ -0,0 +1,108 @@
+/*
+ * Copyright 2015 www.hyberbin.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * Email:hyberbin@qq.com
+ */
+package org.jplus.hyb.database.transfer;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.jplus.util.FileUtils;
+
+/**
+ * 导入导出的进度和吞吐量.各工作线程并发更新,可以在其它线程中随时读取.
+ * @author hyberbin
+ */
+public class TransferReport {
+
+    private final AtomicLong rows = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicInteger finishedParts = new AtomicInteger();
+    private final int parts;
+    private final long start = System.currentTimeMillis();
+    private volatile long end;
+
+    public TransferReport(int parts) {
+        this.parts = parts;
+    }
+
+    void addRows(long count) {
+        rows.addAndGet(count);
+    }
+
+    void addBytes(long count) {
+        bytes.addAndGet(count);
+    }
+
+    void addRejected(long count) {
+        rejected.addAndGet(count);
+    }
+
+    void finishPart() {
+        finishedParts.incrementAndGet();
+    }
+
+    void finish() {
+        end = System.currentTimeMillis();
+    }
+
+    /** 已处理的行数 */
+    public long getRows() {
+        return rows.get();
+    }
+
+    /** 已读写的字节数 */
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    /** 出错被丢弃的行数 */
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    /** 分区或工作线程总数 */
+    public int getParts() {
+        return parts;
+    }
+
+    /** 已完成的分区或工作线程数 */
+    public int getFinishedParts() {
+        return finishedParts.get();
+    }
+
+    public boolean isDone() {
+        return end > 0;
+    }
+
+    public long getElapsedMillis() {
+        return (end > 0 ? end : System.currentTimeMillis()) - start;
+    }
+
+    public long getRowsPerSecond() {
+        return getRows() * 1000 / Math.max(1, getElapsedMillis());
+    }
+
+    public long getBytesPerSecond() {
+        return getBytes() * 1000 / Math.max(1, getElapsedMillis());
+    }
+
+    @Override
+    public String toString() {
+        return "rows:" + getRows() + ",rejected:" + getRejected() + ",size:" + FileUtils.byteCountToDisplaySize(getBytes())
+                + ",parts:" + getFinishedParts() + "/" + parts + ",elapsed:" + getElapsedMillis() + "ms,"
+                + getRowsPerSecond() + " rows/s," + FileUtils.byteCountToDisplaySize(getBytesPerSecond()) + "/s";
+    }
+}
@@ -0,0 +1,339 @@
+/*
+ * Copyright 2015 www.hyberbin.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * Email:hyberbin@qq.com
+ */
+package org.jplus.hyb.database.util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import org.jplus.hyb.database.metrics.MetricsRegistry;
+
+/**
+ * 有界的内存缓存.
+ * 按key的hash分成若干段,每段是一个按访问顺序排列的LinkedHashMap,由各自的锁保护,
+ * 超过该段的容量时淘汰最久没有访问的条目(LRU).容量按条目的权重计算,默认每个条目权重为1.
+ * 支持缓存"不存在"的结果,在指定时间后过期,避免反复查询数据库中没有的key.
+ * 数据可能被其它进程修改时可以给缓存值也设置过期时间.
+ * @author hyberbin
+ * @param <K> key类型
+ * @param <V> 值类型
+ */
+public class BoundedCache<K, V> {
+
+    /**
+     * 计算条目的权重.
+     * @param <K>
+     * @param <V>
+     */
+    public interface Weigher<K, V> {
+
+        /**
+         * @param key key
+         * @param value 值,不存在的结果为null
+         * @return 权重,不小于1
+         */
+        int weigh(K key, V value);
+    }
+
+    private final String name;
+    private final Segment<K, V>[] segments;
+    private final int mask;
+    private final Weigher<K, V> weigher;
+    private volatile long negativeTtl = 60000;
+    private volatile long ttl;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder negativeHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * 每个条目权重为1,即按条目数限制.
+     * @param name 缓存名,用作指标的标签
+     * @param maxSize 最大条目数
+     */
+    public BoundedCache(String name, long maxSize) {
+        this(name, maxSize, null);
+    }
+
+    /**
+     * @param name 缓存名,用作指标的标签
+     * @param maxWeight 最大总权重
+     * @param weigher 权重计算,为null时每个条目权重为1
+     */
+    @SuppressWarnings("unchecked")
+    public BoundedCache(String name, long maxWeight, Weigher<K, V> weigher) {
+        this.name = name;
+        this.weigher = weigher;
+        int count = 1;
+        while (count < 16 && count * 64L < maxWeight) {//容量很小时少分段,避免每段只能放几个条目
+            count <<= 1;
+        }
+        this.segments = new Segment[count];
+        this.mask = count - 1;
+        for (int i = 0; i < count; i++) {
+            segments[i] = new Segment<K, V>(Math.max(1, maxWeight / count));
+        }
+    }
+
+    /**
+     * 设置不存在的结果缓存多久.
+     * @param millis 毫秒,0表示不缓存不存在的结果
+     */
+    public void setNegativeTtl(long millis) {
+        this.negativeTtl = millis;
+    }
+
+    public long getNegativeTtl() {
+        return negativeTtl;
+    }
+
+    /**
+     * 设置缓存值多久后过期,只对之后放入的值生效.
+     * @param millis 毫秒,0表示不过期
+     */
+    public void setTtl(long millis) {
+        this.ttl = millis;
+    }
+
+    public long getTtl() {
+        return ttl;
+    }
+
+    private Segment<K, V> segmentFor(Object key) {
+        int h = key.hashCode() * 0x9E3779B9;
+        return segments[(h ^ (h >>> 16)) & mask];
+    }
+
+    /**
+     * 取缓存的值.
+     * @param key
+     * @return 值;没有缓存或缓存的是不存在的结果时返回null
+     */
+    public V get(K key) {
+        Entry<V> entry = lookup(key);
+        if (entry == null) {
+            misses.increment();
+            MetricsRegistry.INSTANCE.increment(MetricsRegistry.CACHE_MISS, name);
+            return null;
+        }
+        if (entry.value == null) {
+            negativeHits.increment();
+        } else {
+            hits.increment();
+        }
+        MetricsRegistry.INSTANCE.increment(MetricsRegistry.CACHE_HIT, name);
+        return entry.value;
+    }
+
+    /**
+     * 是否缓存了该key不存在的结果,且没有过期.不计入命中统计.
+     * @param key
+     * @return
+     */
+    public boolean isNegative(K key) {
+        Segment<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            Entry<V> entry = segment.map.get(key);
+            return entry != null && entry.value == null && entry.expires > System.currentTimeMillis();
+        }
+    }
+
+    private Entry<V> lookup(K key) {
+        Segment<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            Entry<V> entry = segment.map.get(key);
+            if (entry != null && entry.expires > 0 && entry.expires <= System.currentTimeMillis()) {
+                segment.remove(key);
+                return null;
+            }
+            return entry;
+        }
+    }
+
+    /**
+     * 放入值,覆盖原来的值.
+     * @param key
+     * @param value 不能为null
+     */
+    public void put(K key, V value) {
+        put(key, new Entry<V>(value, expires(), weigh(key, value)), true);
+    }
+
+    /**
+     * 没有缓存该key时才放入.用于从数据库加载的值,不覆盖加载期间写入的新值.
+     * @param key
+     * @param value 不能为null
+     */
+    public void putIfAbsent(K key, V value) {
+        put(key, new Entry<V>(value, expires(), weigh(key, value)), false);
+    }
+
+    private long expires() {
+        long millis = ttl;
+        return millis > 0 ? System.currentTimeMillis() + millis : 0;
+    }
+
+    /**
+     * 缓存该key不存在的结果.
+     * @param key
+     */
+    public void putNegative(K key) {
+        long ttl = negativeTtl;
+        if (ttl > 0) {
+            put(key, new Entry<V>(null, System.currentTimeMillis() + ttl, weigh(key, null)), false);
+        }
+    }
+
+    private int weigh(K key, V value) {
+        return weigher == null ? 1 : Math.max(1, weigher.weigh(key, value));
+    }
+
+    private void put(K key, Entry<V> entry, boolean replace) {
+        Segment<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            if (!replace) {
+                Entry<V> old = segment.map.get(key);
+                if (old != null && (old.expires == 0 || old.expires > System.currentTimeMillis())) {
+                    return;
+                }
+            }
+            segment.remove(key);
+            segment.map.put(key, entry);
+            segment.weight += entry.weight;
+            int evicted = segment.evict(key);
+            if (evicted > 0) {
+                evictions.add(evicted);
+                MetricsRegistry.INSTANCE.add(MetricsRegistry.CACHE_EVICTION, name, evicted);
+            }
+        }
+    }
+
+    public void remove(K key) {
+        Segment<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            segment.remove(key);
+        }
+    }
+
+    public void clear() {
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                segment.map.clear();
+                segment.weight = 0;
+            }
+        }
+    }
+
+    /** 条目数,包括不存在的结果 */
+    public long size() {
+        long size = 0;
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                size += segment.map.size();
+            }
+        }
+        return size;
+    }
+
+    /** 总权重 */
+    public long weight() {
+        long weight = 0;
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                weight += segment.weight;
+            }
+        }
+        return weight;
+    }
+
+    /** 命中缓存值的次数 */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /** 命中不存在结果的次数 */
+    public long getNegativeHitCount() {
+        return negativeHits.sum();
+    }
+
+    /** 未命中的次数 */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /** 因超过容量被淘汰的条目数 */
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    @Override
+    public String toString() {
+        return name + "[size:" + size() + ",weight:" + weight() + ",hit:" + getHitCount() + ",negativeHit:" + getNegativeHitCount()
+                + ",miss:" + getMissCount() + ",eviction:" + getEvictionCount() + "]";
+    }
+
+    private static final class Entry<V> {
+
+        private final V value;
+        /** 过期时间,0表示不过期;不存在的结果总是有过期时间 */
+        private final long expires;
+        private final int weight;
+
+        Entry(V value, long expires, int weight) {
+            this.value = value;
+            this.expires = expires;
+            this.weight = weight;
+        }
+    }
+
+    private static final class Segment<K, V> {
+
+        private final LinkedHashMap<K, Entry<V>> map = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true);
+        private final long maxWeight;
+        private long weight;
+
+        Segment(long maxWeight) {
+            this.maxWeight = maxWeight;
+        }
+
+        void remove(Object key) {
+            Entry<V> old = map.remove(key);
+            if (old != null) {
+                weight -= old.weight;
+            }
+        }
+
+        /**
+         * 从最久没有访问的条目开始淘汰,直到不超过容量.刚放入的条目不淘汰.
+         * @return 淘汰的条目数
+         */
+        int evict(K keep) {
+            int evicted = 0;
+            Iterator<Map.Entry<K, Entry<V>>> it = map.entrySet().iterator();
+            while (weight > maxWeight && it.hasNext()) {
+                Map.Entry<K, Entry<V>> eldest = it.next();
+                if (eldest.getKey().equals(keep)) {
+                    continue;
+                }
+                weight -= eldest.getValue().weight;
+                it.remove();
+                evicted++;
+            }
+            return evicted;
+        }
+    }
+}
@@ -18,12 +18,18 @@ package org.jplus.hyb.database.util;
 
 import org.jplus.hyb.database.bean.FieldColumn;
 import org.jplus.hyb.database.bean.TableBean;
+import org.jplus.hyb.database.id.IdGenerator;
+import org.jplus.hyb.database.metrics.Gauge;
+import org.jplus.hyb.database.metrics.MetricsRegistry;
 import org.jplus.hyb.log.LocalLogger;
 import org.jplus.hyb.log.Logger;
 import org.jplus.util.FieldUtil;
 import org.jplus.util.ObjectHelper;
 
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.SequenceGenerator;
 import javax.persistence.Table;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
@@ -51,11 +57,19 @@ public class CacheFactory {
     private final Map<Class, Map<String, Method>> methodMap = Collections.synchronizedMap(new HashMap<Class, Map<String, Method>>());
     /** 所有字段映射集合* */
     private final Map<Class, Map<String, Field>> fieldMap = Collections.synchronizedMap(new HashMap<Class, Map<String, Field>>());
+    /** 按名称注册的主键生成器 */
+    private final Map<String, IdGenerator> idGeneratorMap = Collections.synchronizedMap(new HashMap<String, IdGenerator>());
 
     /**
      * 私有构造方法不允许其它类实例化
      */
     private CacheFactory() {
+        MetricsRegistry.INSTANCE.registerGauge("cache.tables", new Gauge() {
+            @Override
+            public long getValue() {
+                return hyberbinMap.size();
+            }
+        });
     }
 
 
@@ -80,6 +94,7 @@ public class CacheFactory {
         log.trace("in getHyberbin");
         TableBean tableBean = hyberbinMap.get(po);
         if (tableBean == null) {
+            MetricsRegistry.INSTANCE.increment(MetricsRegistry.CACHE_MISS, "table");
             tableBean = new TableBean();
             if (po.isAnnotationPresent(Table.class)) {
                 Table annotation = (Table) po.getAnnotation(Table.class);
@@ -93,15 +108,65 @@ public class CacheFactory {
                 columns.add(FieldUtil.getFieldColumn(field));
                 if(field.isAnnotationPresent(Id.class)){
                     tableBean.setPrimaryKey(field.getName());
+                    tableBean.setSequenceName(getSequenceName(po, field));
+                    GeneratedValue generated = field.getAnnotation(GeneratedValue.class);
+                    if (generated != null && ObjectHelper.isNotEmpty(generated.generator())) {
+                        tableBean.setGenerator(generated.generator());
+                    }
                 }
             }
             tableBean.setColumns(columns);
             putHyberbin(po, tableBean);
+        } else {
+            MetricsRegistry.INSTANCE.increment(MetricsRegistry.CACHE_HIT, "table");
         }
         log.trace("out getHyberbin");
         return tableBean;
     }
 
+    /**
+     * 获取主键使用的序列名.
+     * 主键字段有@GeneratedValue(strategy=SEQUENCE)时按generator在字段和类上查找@SequenceGenerator,
+     * 找不到时直接用generator作为序列名.
+     * @param po PO类
+     * @param id 主键字段
+     * @return 序列名,不使用序列时为空
+     */
+    private String getSequenceName(Class po, Field id) {
+        GeneratedValue generated = id.getAnnotation(GeneratedValue.class);
+        if (generated == null || generated.strategy() != GenerationType.SEQUENCE) {
+            return null;
+        }
+        SequenceGenerator generator = id.getAnnotation(SequenceGenerator.class);
+        if (generator == null) {
+            generator = (SequenceGenerator) po.getAnnotation(SequenceGenerator.class);
+        }
+        if (generator != null && (ObjectHelper.isEmpty(generated.generator()) || generated.generator().equals(generator.name()))) {
+            return ObjectHelper.isEmpty(generator.sequenceName()) ? generator.name() : generator.sequenceName();
+        }
+        return ObjectHelper.isEmpty(generated.generator()) ? null : generated.generator();
+    }
+
+    /**
+     * 注册主键生成器.
+     * 主键字段上@GeneratedValue的generator等于name时,插入前用它在客户端生成主键.
+     * @param name 生成器名
+     * @param generator 主键生成器
+     */
+    public void putIdGenerator(String name, IdGenerator generator) {
+        idGeneratorMap.put(name, generator);
+        log.debug("注册主键生成器:{}", name);
+    }
+
+    /**
+     * 获取主键生成器.
+     * @param name 生成器名
+     * @return 没有注册时返回空
+     */
+    public IdGenerator getIdGenerator(String name) {
+        return name == null ? null : idGeneratorMap.get(name);
+    }
+
     /**
      * 获得封装的字段信息
      * @param po PO类
@@ -157,8 +222,11 @@ public class CacheFactory {
         log.trace("in getMethod from {}, get:{}", clazz.getName(), name);
         Map<String, Method> objectMethodMap = methodMap.get(clazz);
         if (objectMethodMap != null) {
-            return objectMethodMap.get(name+getTypes(types));
+            Method method = objectMethodMap.get(name+getTypes(types));
+            MetricsRegistry.INSTANCE.increment(method == null ? MetricsRegistry.CACHE_MISS : MetricsRegistry.CACHE_HIT, "method");
+            return method;
         }
+        MetricsRegistry.INSTANCE.increment(MetricsRegistry.CACHE_MISS, "method");
         log.debug("缓存中没有类：{}，方法名：{},参数个数：{}", clazz.getName(), name, types.length);
         return null;
     }
@@ -191,8 +259,11 @@ public class CacheFactory {
         log.trace("in getField:get class {},fieldName {}", clazz.getName(), name);
         Map<String, Field> fields = fieldMap.get(clazz);
         if (fields != null) {
-            return fields.get(name);
+            Field field = fields.get(name);
+            MetricsRegistry.INSTANCE.increment(field == null ? MetricsRegistry.CACHE_MISS : MetricsRegistry.CACHE_HIT, "field");
+            return field;
         }
+        MetricsRegistry.INSTANCE.increment(MetricsRegistry.CACHE_MISS, "field");
         log.debug("缓存中没有对象：{},字段：{}的信息", clazz.getName(), name);
         return null;
     }
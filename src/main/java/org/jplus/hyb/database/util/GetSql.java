@@ -21,6 +21,7 @@ import java.util.List;
 
 /**
  * 自动生成SQL语句
+ * Hyberbin已改用org.jplus.hyb.database.sql包中按数据库方言输出的语句构造器,本类只为兼容保留.
  *
  * @version 1.2
  * @author hyberbin
@@ -16,11 +16,12 @@
  */
 package org.jplus.hyb.database.util;
 
-import java.text.SimpleDateFormat;
+import java.time.temporal.Temporal;
 import java.util.Date;
 import java.util.List;
 import org.jplus.hyb.database.bean.ParmeterPair;
 import org.jplus.hyb.database.config.ConfigCenter;
+import org.jplus.util.DateUtils;
 import org.jplus.util.ObjectHelper;
 
 /**
@@ -29,7 +30,6 @@ import org.jplus.util.ObjectHelper;
  */
 public class SimpleSqlout implements ISqlout {
 
-    private static final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
     private Boolean needout;
 
     @Override
@@ -39,11 +39,13 @@ public class SimpleSqlout implements ISqlout {
                 try {
                     for (ParmeterPair parmeter : parmeters) {
                         Object o = parmeter.getParmeter();
+                        if (o instanceof Date || o instanceof Temporal) {
+                            String time = DateUtils.format(o, DateUtils.DATE_TIME_PATTERN);
+                            o = time == null ? o : time;
+                        }
                         if (o != null) {
                             if (o instanceof Number) {
                                 sql = sql.replaceFirst("[?]", o + "");
-                            } else if (o instanceof Date) {
-                                sql = sql.replaceFirst("[?]", "'" + dateFormat.format((Date) o) + "'");
                             } else {
                                 sql = sql.replaceFirst("[?]", "'" + o + "'");
                             }
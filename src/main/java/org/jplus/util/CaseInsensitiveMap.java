@@ -0,0 +1,355 @@
+/*
+ * Copyright 2015 www.hyberbin.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * Email:hyberbin@qq.com
+ */
+package org.jplus.util;
+
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * 键不区分大小写的Map,键保持第一次放入时的写法,按放入顺序遍历.
+ * 哈希和比较都按字符折叠大小写,查找时不会生成新的字符串.
+ * 用开放寻址的小表实现,适合列名这种键不多的场景,删除的代价是O(n).
+ * 从模板创建的Map共用模板的键,只有增删键时才复制,适合大量列相同的行.
+ * 不支持null键.可以序列化,值需要可以序列化;同一个流中的多个Map反序列化后仍然共用键.
+ * @param <V> 值类型
+ * @author hyberbin
+ */
+public class CaseInsensitiveMap<V> extends AbstractMap<String, V> implements Serializable {
+
+    private static final long serialVersionUID = 2853087134406120761L;
+    private static final int DEFAULT_CAPACITY = 8;
+
+    /** 按放入顺序保存的键 */
+    private String[] keys;
+    /** 键对应的哈希 */
+    private int[] hashes;
+    /** 开放寻址表,保存键的下标+1,0表示空 */
+    private int[] table;
+    /** 键数组是否和其他Map共用 */
+    private boolean shared;
+    private Object[] values;
+    private int size;
+    private transient int modCount;
+
+    public CaseInsensitiveMap() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public CaseInsensitiveMap(int expectedSize) {
+        int capacity = Math.max(expectedSize, 2);
+        keys = new String[capacity];
+        hashes = new int[capacity];
+        values = new Object[capacity];
+        table = new int[tableSize(capacity)];
+    }
+
+    /**
+     * 创建和模板有相同键的Map,值都为null,键数组在修改前和模板共用.
+     * @param template 模板
+     */
+    public CaseInsensitiveMap(CaseInsensitiveMap<?> template) {
+        keys = template.keys;
+        hashes = template.hashes;
+        table = template.table;
+        size = template.size;
+        values = new Object[keys.length];
+        shared = true;
+        template.shared = true;
+    }
+
+    private static int tableSize(int capacity) {
+        int n = 4;
+        while (n < capacity * 2) {
+            n <<= 1;
+        }
+        return n;
+    }
+
+    /**
+     * 不区分大小写的哈希,和String.equalsIgnoreCase一致.
+     * @param str 字符串
+     * @return 哈希值
+     */
+    public static int hash(CharSequence str) {
+        int h = 0;
+        for (int i = 0; i < str.length(); i++) {
+            h = 31 * h + fold(str.charAt(i));
+        }
+        return h ^ (h >>> 16);
+    }
+
+    private static char fold(char c) {
+        if (c < 128) {
+            return c >= 'A' && c <= 'Z' ? (char) (c + 32) : c;
+        }
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+
+    private int indexOf(Object key) {
+        if (!(key instanceof String)) {
+            return -1;
+        }
+        String str = (String) key;
+        int h = hash(str);
+        int mask = table.length - 1;
+        for (int slot = h & mask;; slot = (slot + 1) & mask) {
+            int i = table[slot] - 1;
+            if (i < 0) {
+                return -1;
+            }
+            if (hashes[i] == h && keys[i].equalsIgnoreCase(str)) {
+                return i;
+            }
+        }
+    }
+
+    /**
+     * 获取键在Map中的写法.
+     * @param key 任意大小写的键
+     * @return 不存在时返回null
+     */
+    public String getKey(Object key) {
+        int i = indexOf(key);
+        return i < 0 ? null : keys[i];
+    }
+
+    @Override
+    public V get(Object key) {
+        int i = indexOf(key);
+        return i < 0 ? null : (V) values[i];
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return indexOf(key) >= 0;
+    }
+
+    @Override
+    public V put(String key, V value) {
+        if (key == null) {
+            throw new NullPointerException("key");
+        }
+        int i = indexOf(key);
+        if (i >= 0) {
+            V old = (V) values[i];
+            values[i] = value;
+            return old;
+        }
+        own();
+        if (size == keys.length) {
+            resize(keys.length * 2);
+        }
+        keys[size] = key;
+        hashes[size] = hash(key);
+        values[size] = value;
+        insert(size);
+        size++;
+        modCount++;
+        return null;
+    }
+
+    @Override
+    public V remove(Object key) {
+        int i = indexOf(key);
+        if (i < 0) {
+            return null;
+        }
+        own();
+        V old = (V) values[i];
+        int moved = size - i - 1;
+        System.arraycopy(keys, i + 1, keys, i, moved);
+        System.arraycopy(hashes, i + 1, hashes, i, moved);
+        System.arraycopy(values, i + 1, values, i, moved);
+        size--;
+        keys[size] = null;
+        values[size] = null;
+        rehash();
+        modCount++;
+        return old;
+    }
+
+    @Override
+    public void clear() {
+        if (shared) {
+            keys = new String[keys.length];
+            hashes = new int[keys.length];
+            table = new int[table.length];
+            shared = false;
+        } else {
+            Arrays.fill(keys, 0, size, null);
+            Arrays.fill(table, 0);
+        }
+        Arrays.fill(values, 0, size, null);
+        size = 0;
+        modCount++;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 增删键前复制共用的键数组.
+     */
+    private void own() {
+        if (shared) {
+            keys = keys.clone();
+            hashes = hashes.clone();
+            table = table.clone();
+            shared = false;
+        }
+    }
+
+    private void resize(int capacity) {
+        keys = Arrays.copyOf(keys, capacity);
+        hashes = Arrays.copyOf(hashes, capacity);
+        values = Arrays.copyOf(values, capacity);
+        if (tableSize(capacity) > table.length) {
+            table = new int[tableSize(capacity)];
+            rehash();
+        }
+    }
+
+    private void rehash() {
+        Arrays.fill(table, 0);
+        for (int i = 0; i < size; i++) {
+            insert(i);
+        }
+    }
+
+    private void insert(int i) {
+        int mask = table.length - 1;
+        int slot = hashes[i] & mask;
+        while (table[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = i + 1;
+    }
+
+    @Override
+    public Set<Map.Entry<String, V>> entrySet() {
+        return new AbstractSet<Map.Entry<String, V>>() {
+            @Override
+            public Iterator<Map.Entry<String, V>> iterator() {
+                return new EntryIterator();
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+
+            @Override
+            public void clear() {
+                CaseInsensitiveMap.this.clear();
+            }
+        };
+    }
+
+    private final class EntryIterator implements Iterator<Map.Entry<String, V>> {
+
+        private int next;
+        private int last = -1;
+        private int expectedModCount = modCount;
+
+        @Override
+        public boolean hasNext() {
+            return next < size;
+        }
+
+        @Override
+        public Map.Entry<String, V> next() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (next >= size) {
+                throw new NoSuchElementException();
+            }
+            last = next++;
+            return new Entry(last);
+        }
+
+        @Override
+        public void remove() {
+            if (last < 0) {
+                throw new IllegalStateException();
+            }
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            CaseInsensitiveMap.this.remove(keys[last]);
+            next = last;
+            last = -1;
+            expectedModCount = modCount;
+        }
+    }
+
+    private final class Entry implements Map.Entry<String, V> {
+
+        private final int index;
+
+        Entry(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public String getKey() {
+            return keys[index];
+        }
+
+        @Override
+        public V getValue() {
+            return (V) values[index];
+        }
+
+        @Override
+        public V setValue(V value) {
+            V old = (V) values[index];
+            values[index] = value;
+            return old;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry e = (Map.Entry) o;
+            Object value = values[index];
+            return keys[index].equals(e.getKey()) && (value == null ? e.getValue() == null : value.equals(e.getValue()));
+        }
+
+        @Override
+        public int hashCode() {
+            Object value = values[index];
+            return keys[index].hashCode() ^ (value == null ? 0 : value.hashCode());
+        }
+
+        @Override
+        public String toString() {
+            return keys[index] + "=" + values[index];
+        }
+    }
+}
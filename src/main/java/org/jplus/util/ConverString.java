@@ -18,9 +18,6 @@ package org.jplus.util;
 
 import java.math.BigDecimal;
 import java.math.BigInteger;
-import java.text.DateFormat;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.Date;
 
 /**
@@ -201,7 +198,7 @@ public class ConverString {
      */
     public static Character asCharacter(String str, Character defaultValue) {
         try {
-            return new Character(str.trim().charAt(0));
+            return Character.valueOf(str.trim().charAt(0));
         } catch (NullPointerException nullpointerexception) {
             return defaultValue;
         } catch (IndexOutOfBoundsException indexoutofboundsexception) {
@@ -242,7 +239,7 @@ public class ConverString {
      */
     public static Double asDouble(String str, Double defaultValue) {
         try {
-            return new Double(str.trim());
+            return Double.valueOf(str.trim());
         } catch (NullPointerException nullpointerexception) {
             return defaultValue;
         } catch (NumberFormatException numberformatexception) {
@@ -258,7 +255,7 @@ public class ConverString {
      */
     public static double asDouble(String str, double defaultValue) {
         try {
-            return (new Double(str.trim())).doubleValue();
+            return Double.parseDouble(str.trim());
         } catch (NullPointerException nullpointerexception) {
             return defaultValue;
         } catch (NumberFormatException numberformatexception) {
@@ -283,7 +280,7 @@ public class ConverString {
      */
     public static Float asFloat(String str, Float defaultValue) {
         try {
-            return new Float(str.trim());
+            return Float.valueOf(str.trim());
         } catch (NullPointerException nullpointerexception) {
             return defaultValue;
         } catch (NumberFormatException numberformatexception) {
@@ -299,7 +296,7 @@ public class ConverString {
      */
     public static float asFloat(String str, float defaultValue) {
         try {
-            return (new Float(str.trim())).floatValue();
+            return Float.parseFloat(str.trim());
         } catch (NullPointerException nullpointerexception) {
             return defaultValue;
         } catch (NumberFormatException numberformatexception) {
@@ -487,18 +484,12 @@ public class ConverString {
      * 将 String 解码为 Date
      * @param str String
      * @param defaultValue 默认值
-     * @param pattern String
+     * @param pattern 模式,为null时按ISO格式解析
      * @return Date
      */
     public static Date asDate(String str, Date defaultValue, String pattern) {
-        DateFormat formatter = new SimpleDateFormat(pattern != null ? pattern : DEFAULT_DATE_PATTTERN);
-        try {
-            return formatter.parse(str);
-        } catch (ParseException parseexception) {
-            return defaultValue;
-        } catch (NullPointerException nullpointerexception) {
-            return defaultValue;
-        }
+        Date date = DateUtils.parse(str, pattern);
+        return date == null ? defaultValue : date;
     }
 
     /**
@@ -508,50 +499,7 @@ public class ConverString {
      * @return Object
      */
     public static Object asType(Class type, String str) {
-        if (type.isAssignableFrom(java.lang.String.class)) {
-            return asString(str, "", "");
-        }
-        if (type.isAssignableFrom(java.lang.Integer.class) || type.equals(Integer.TYPE)) {
-            return asInteger(str, new Integer(0));
-        }
-        if (type.isAssignableFrom(java.lang.Double.class) || type.equals(Double.TYPE)) {
-            return asDouble(str, new Double(0.0D));
-        }
-        if (type.isAssignableFrom(java.lang.Boolean.class) || type.equals(Boolean.TYPE)) {
-            return asBoolean(str, Boolean.FALSE);
-        }
-        if (type.isAssignableFrom(java.lang.Float.class) || type.equals(Float.TYPE)) {
-            return asFloat(str, new Float(0.0F));
-        }
-        if (type.isAssignableFrom(java.lang.Long.class) || type.equals(Long.TYPE)) {
-            return asLong(str, new Long(0L));
-        }
-        if (type.isAssignableFrom(java.lang.Short.class) || type.equals(Short.TYPE)) {
-            return asShort(str, new Short((short) 0));
-        }
-        if (type.isAssignableFrom(java.lang.Byte.class) || type.equals(Byte.TYPE)) {
-            return asByte(str, new Byte((byte) 0));
-        }
-        if (type.isAssignableFrom(java.lang.Character.class) || type.equals(Character.TYPE)) {
-            return asCharacter(str, new Character('\0'));
-        }
-        if (type.isAssignableFrom(java.math.BigDecimal.class)) {
-            return asBigDecimal(str, new BigDecimal(BigInteger.ZERO));
-        }
-        if (type.isAssignableFrom(java.math.BigInteger.class)) {
-            return asBigInteger(str, BigInteger.ZERO);
-        }
-        if (type.isAssignableFrom(java.sql.Date.class)) {
-            return java.sql.Date.valueOf(str);
-        }
-        if (type.isAssignableFrom(java.sql.Timestamp.class)) {
-            return java.sql.Timestamp.valueOf(str);
-        }
-        if (type.isAssignableFrom(java.util.Date.class)) {
-            return asDate(str, new Date(), null);
-        } else {
-            return null;
-        }
+        return ConverterRegistry.INSTANCE.convert(str, type);
     }
 
     /**
@@ -595,16 +543,20 @@ public class ConverString {
         if (type.isAssignableFrom(java.math.BigInteger.class)) {
             return asBigInteger(str, (BigInteger) defaultValue);
         }
-        if (type.isAssignableFrom(java.sql.Date.class)) {
-            return java.sql.Date.valueOf(str);
-        }
-        if (type.isAssignableFrom(java.sql.Timestamp.class)) {
-            return java.sql.Timestamp.valueOf(str);
+        try {
+            if (type.isAssignableFrom(java.sql.Date.class)) {
+                return java.sql.Date.valueOf(str.trim());
+            }
+            if (type.isAssignableFrom(java.sql.Timestamp.class)) {
+                return java.sql.Timestamp.valueOf(str.trim());
+            }
+        } catch (NullPointerException | IllegalArgumentException ex) {
+            return defaultValue;
         }
         if (type.isAssignableFrom(java.util.Date.class)) {
             return asDate(str, (Date) defaultValue);
         } else {
-            return null;
+            return defaultValue;
         }
     }
 
@@ -615,96 +567,29 @@ public class ConverString {
      * @return Object
      */
     public static Object asType(Class type, Object obj) {
-        if (!type.equals(java.lang.String.class) && type.isInstance(obj)) {
-            return obj;
-        }
-        if (obj == null || (obj instanceof String)) {
-            return asType(type, (String) obj);
-        }
-        if ((obj instanceof Date) && (java.lang.String.class).isAssignableFrom(type)) {
-            return (new SimpleDateFormat(DEFAULT_DATE_PATTTERN)).format((Date) obj);
-        }
-        if ((obj instanceof Number) && (java.lang.Number.class).isAssignableFrom(type)) {
-            Number num = (Number) obj;
-            if (type.isAssignableFrom(java.lang.Number.class)) {
-                return num;
-            }
-            if (type.isAssignableFrom(java.lang.Integer.class)) {
-                return new Integer(num.intValue());
-            }
-            if (type.isAssignableFrom(java.lang.Double.class)) {
-                return new Double(num.doubleValue());
-            }
-            if (type.isAssignableFrom(java.lang.Float.class)) {
-                return new Float(num.floatValue());
-            }
-            if (type.isAssignableFrom(java.lang.Long.class)) {
-                return new Long(num.longValue());
-            }
-            if (type.isAssignableFrom(java.lang.Short.class)) {
-                return new Short(num.shortValue());
-            }
-            if (type.isAssignableFrom(java.lang.Byte.class)) {
-                return new Byte(num.byteValue());
-            }
-            if (type.isAssignableFrom(java.math.BigInteger.class)) {
-                return (new BigDecimal(num.toString())).toBigInteger();
-            }
-            if (type.isAssignableFrom(java.math.BigDecimal.class)) {
-                return new BigDecimal(num.toString());
-            }
-        }
-        return asType(type, obj.toString());
+        return ConverterRegistry.INSTANCE.convert(obj, type);
     }
 
     /**
      * 将Object按指定的type进行解码
      * @param type 指定类型
      * @param obj Object
-     * @param defaultValue 默认值
+     * @param defaultValue 默认值 （obj为null、不能转换或转换出错时的值）
      * @return Object
      */
     public static Object asType(Class type, Object obj, Object defaultValue) {
-        if (!type.equals(java.lang.String.class) && type.isInstance(obj)) {
-            return obj;
-        }
         if (obj == null || (obj instanceof String)) {
             return asType(type, (String) obj, defaultValue);
         }
-        if ((obj instanceof Date) && (java.lang.String.class).isAssignableFrom(type)) {
-            return (new SimpleDateFormat(DEFAULT_DATE_PATTTERN)).format((Date) obj);
+        if (ConverterRegistry.INSTANCE.isParseString(obj.getClass(), type)) {//没有专门转换器的按字符串转换,解析失败时取默认值
+            return asType(type, obj.toString(), defaultValue);
         }
-        if ((obj instanceof Number) && (java.lang.Number.class).isAssignableFrom(type)) {
-            Number num = (Number) obj;
-            if (type.isAssignableFrom(java.lang.Number.class)) {
-                return num;
-            }
-            if (type.isAssignableFrom(java.lang.Integer.class)) {
-                return new Integer(num.intValue());
-            }
-            if (type.isAssignableFrom(java.lang.Double.class)) {
-                return new Double(num.doubleValue());
-            }
-            if (type.isAssignableFrom(java.lang.Float.class)) {
-                return new Float(num.floatValue());
-            }
-            if (type.isAssignableFrom(java.lang.Long.class)) {
-                return new Long(num.longValue());
-            }
-            if (type.isAssignableFrom(java.lang.Short.class)) {
-                return new Short(num.shortValue());
-            }
-            if (type.isAssignableFrom(java.lang.Byte.class)) {
-                return new Byte(num.byteValue());
-            }
-            if (type.isAssignableFrom(java.math.BigInteger.class)) {
-                return (new BigDecimal(num.toString())).toBigInteger();
-            }
-            if (type.isAssignableFrom(java.math.BigDecimal.class)) {
-                return new BigDecimal(num.toString());
-            }
+        try {
+            Object value = ConverterRegistry.INSTANCE.convert(obj, type);
+            return value == null ? defaultValue : value;
+        } catch (RuntimeException ex) {
+            return defaultValue;
         }
-        return asType(type, obj.toString(), defaultValue);
     }
 
     /**
@@ -734,11 +619,6 @@ public class ConverString {
      * 指定解析为false的字符串
      */
     private static String FALSE_STRINGS[] = {"false", "null", "nul", "off", "no", "n"};
-    /**
-     * 默认日期模式
-     */
-    private static String DEFAULT_DATE_PATTTERN = "yyyy-MM-dd";
-
     /**
      * 将字符串转换成整数
      * @param str String
@@ -0,0 +1,34 @@
+/*
+ * Copyright 2015 www.hyberbin.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * Email:hyberbin@qq.com
+ */
+package org.jplus.util;
+
+/**
+ * 把一种类型的值转换成另一种类型.
+ * 通过ConverterRegistry.register注册后,对应的(源类型,目标类型)都会使用它.
+ * @param <S> 源类型
+ * @param <T> 目标类型
+ * @author hyberbin
+ */
+public interface Converter<S, T> {
+
+    /**
+     * 转换一个值.
+     * @param value 源值,从字符串转换时可能为null
+     * @return 转换后的值
+     */
+    public T convert(S value);
+}
@@ -0,0 +1,556 @@
+/*
+ * Copyright 2015 www.hyberbin.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * Email:hyberbin@qq.com
+ */
+package org.jplus.util;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.TemporalAccessor;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 类型转换器注册中心.
+ * 每一对(源类型,目标类型)只在第一次使用时按规则解析一次,之后直接取缓存的转换器.
+ * 基本类型和对应的包装类型共用转换器,数字之间直接转换不经过字符串,
+ * 只有没有专门转换器的类型才退回到toString后再按字符串解析.
+ * 自定义类型可以通过register注册转换器,注册应在启动时完成.
+ * @author hyberbin
+ */
+public class ConverterRegistry {
+
+    public static final ConverterRegistry INSTANCE = new ConverterRegistry();
+
+    /** 注册的转换器,源类型->目标类型->转换器 */
+    private final ConcurrentMap<Class<?>, Map<Class<?>, Converter<?, ?>>> registered = new ConcurrentHashMap<Class<?>, Map<Class<?>, Converter<?, ?>>>();
+    /** 解析过的转换器,源类型->目标类型->转换器 */
+    private final ConcurrentMap<Class<?>, ConcurrentMap<Class<?>, Converter<?, ?>>> resolved = new ConcurrentHashMap<Class<?>, ConcurrentMap<Class<?>, Converter<?, ?>>>();
+
+    /**
+     * 注册一个转换器.
+     * 源类型的子类也会使用该转换器,目标类型为包装类型时对应的基本类型也会使用.
+     * @param <S> 源类型
+     * @param <T> 目标类型
+     * @param source 源类型
+     * @param target 目标类型
+     * @param converter 转换器
+     */
+    public <S, T> void register(Class<S> source, Class<T> target, Converter<? super S, ? extends T> converter) {
+        synchronized (registered) {
+            Map<Class<?>, Converter<?, ?>> targets = registered.get(source);
+            Map<Class<?>, Converter<?, ?>> copy = targets == null ? new ConcurrentHashMap<Class<?>, Converter<?, ?>>() : new ConcurrentHashMap<Class<?>, Converter<?, ?>>(targets);
+            copy.put(target, converter);
+            registered.put(source, copy);
+            resolved.clear();
+        }
+    }
+
+    /**
+     * 获取(源类型,目标类型)对应的转换器.
+     * @param <S> 源类型
+     * @param <T> 目标类型
+     * @param source 源类型,null表示从null值转换,按字符串处理
+     * @param target 目标类型,基本类型时转换结果是对应的包装类型
+     * @return 转换器,不能转换时返回结果为null的转换器
+     */
+    public <S, T> Converter<S, T> getConverter(Class<S> source, Class<T> target) {
+        return cast(lookup(source, target));
+    }
+
+    /**
+     * 把值转换成指定类型.
+     * @param value 值
+     * @param target 目标类型
+     * @return 转换后的值
+     */
+    public Object convert(Object value, Class<?> target) {
+        Converter<Object, Object> converter = cast(lookup(value == null ? null : value.getClass(), target));
+        return converter.convert(value);
+    }
+
+    /**
+     * 该转换是否先toString再按字符串解析.
+     * @param source 源类型
+     * @param target 目标类型
+     * @return
+     */
+    boolean isParseString(Class<?> source, Class<?> target) {
+        return lookup(source, target) instanceof ParseString;
+    }
+
+    /**
+     * 转换器按(源类型,目标类型)存取,取出时类型参数由调用者保证.
+     */
+    @SuppressWarnings("unchecked")
+    private static <S, T> Converter<S, T> cast(Converter<?, ?> converter) {
+        return (Converter<S, T>) converter;
+    }
+
+    private Converter<?, ?> lookup(Class<?> source, Class<?> target) {
+        if (source == null) {
+            source = String.class;
+        }
+        ConcurrentMap<Class<?>, Converter<?, ?>> targets = resolved.get(source);
+        if (targets == null) {
+            targets = new ConcurrentHashMap<Class<?>, Converter<?, ?>>();
+            ConcurrentMap<Class<?>, Converter<?, ?>> old = resolved.putIfAbsent(source, targets);
+            if (old != null) {
+                targets = old;
+            }
+        }
+        Converter<?, ?> converter = targets.get(target);
+        if (converter == null) {
+            converter = resolve(source, target);
+            targets.put(target, converter);
+        }
+        return converter;
+    }
+
+    private Converter<?, ?> resolve(Class<?> source, Class<?> target) {
+        Converter<?, ?> converter = findRegistered(source, target);
+        if (converter != null) {
+            return converter;
+        }
+        if (target.isPrimitive()) {
+            return lookup(source, wrap(target));
+        }
+        if (target != String.class && target.isAssignableFrom(source)) {
+            return IDENTITY;
+        }
+        converter = fromTemporal(source, target);
+        if (converter != null) {
+            return converter;
+        }
+        if (source == String.class) {
+            return fromString(target);
+        }
+        if (target == String.class) {
+            return Date.class.isAssignableFrom(source) ? DATE_TO_STRING : TO_STRING;
+        }
+        if (Number.class.isAssignableFrom(source)) {
+            converter = fromNumber(source, target);
+            if (converter != null) {
+                return converter;
+            }
+        }
+        return new ParseString(fromString(target));
+    }
+
+    private Converter<?, ?> findRegistered(Class<?> source, Class<?> target) {
+        if (registered.isEmpty()) {
+            return null;
+        }
+        for (Class<?> type = source; type != null; type = type.getSuperclass()) {
+            Converter<?, ?> converter = getRegistered(type, target);
+            if (converter != null) {
+                return converter;
+            }
+            for (Class<?> face : type.getInterfaces()) {
+                converter = getRegistered(face, target);
+                if (converter != null) {
+                    return converter;
+                }
+            }
+        }
+        return null;
+    }
+
+    private Converter<?, ?> getRegistered(Class<?> source, Class<?> target) {
+        Map<Class<?>, Converter<?, ?>> targets = registered.get(source);
+        if (targets == null) {
+            return null;
+        }
+        Converter<?, ?> converter = targets.get(target);
+        return converter == null && target.isPrimitive() ? targets.get(wrap(target)) : converter;
+    }
+
+    private static Class<?> wrap(Class<?> type) {
+        if (type == Integer.TYPE) {
+            return Integer.class;
+        } else if (type == Long.TYPE) {
+            return Long.class;
+        } else if (type == Double.TYPE) {
+            return Double.class;
+        } else if (type == Boolean.TYPE) {
+            return Boolean.class;
+        } else if (type == Float.TYPE) {
+            return Float.class;
+        } else if (type == Short.TYPE) {
+            return Short.class;
+        } else if (type == Byte.TYPE) {
+            return Byte.class;
+        } else if (type == Character.TYPE) {
+            return Character.class;
+        }
+        return type;
+    }
+
+    private static boolean isIntegral(Class<?> type) {
+        return type == Integer.class || type == Long.class || type == Short.class || type == Byte.class
+                || type == AtomicInteger.class || type == AtomicLong.class;
+    }
+
+    /**
+     * 字符串到各类型的转换,顺序和规则与原来的ConverString.asType(Class, String)一致.
+     */
+    private static Converter<String, ?> fromString(Class<?> type) {
+        if (type.isAssignableFrom(String.class)) {
+            return STRING_TO_STRING;
+        } else if (type.isAssignableFrom(Integer.class)) {
+            return STRING_TO_INTEGER;
+        } else if (type.isAssignableFrom(Double.class)) {
+            return STRING_TO_DOUBLE;
+        } else if (type.isAssignableFrom(Boolean.class)) {
+            return STRING_TO_BOOLEAN;
+        } else if (type.isAssignableFrom(Float.class)) {
+            return STRING_TO_FLOAT;
+        } else if (type.isAssignableFrom(Long.class)) {
+            return STRING_TO_LONG;
+        } else if (type.isAssignableFrom(Short.class)) {
+            return STRING_TO_SHORT;
+        } else if (type.isAssignableFrom(Byte.class)) {
+            return STRING_TO_BYTE;
+        } else if (type.isAssignableFrom(Character.class)) {
+            return STRING_TO_CHARACTER;
+        } else if (type.isAssignableFrom(BigDecimal.class)) {
+            return STRING_TO_BIG_DECIMAL;
+        } else if (type.isAssignableFrom(BigInteger.class)) {
+            return STRING_TO_BIG_INTEGER;
+        } else if (type.isAssignableFrom(java.sql.Date.class)) {
+            return STRING_TO_SQL_DATE;
+        } else if (type.isAssignableFrom(java.sql.Timestamp.class)) {
+            return STRING_TO_TIMESTAMP;
+        } else if (type.isAssignableFrom(Date.class)) {
+            return STRING_TO_DATE;
+        }
+        return UNSUPPORTED;
+    }
+
+    /**
+     * 日期时间之间的转换,java.time类型也可以从字符串和毫秒数转换,没有对应规则时返回null.
+     */
+    private static Converter<?, ?> fromTemporal(Class<?> source, Class<?> target) {
+        if (target == LocalDateTime.class) {
+            return TO_LOCAL_DATE_TIME;
+        } else if (target == LocalDate.class) {
+            return TO_LOCAL_DATE;
+        } else if (target == Instant.class) {
+            return TO_INSTANT;
+        } else if (TemporalAccessor.class.isAssignableFrom(source)) {
+            if (target == java.sql.Timestamp.class) {
+                return TEMPORAL_TO_TIMESTAMP;
+            } else if (target == java.sql.Date.class) {
+                return TEMPORAL_TO_SQL_DATE;
+            } else if (target == Date.class) {
+                return TEMPORAL_TO_DATE;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 数字之间的转换,没有对应规则时返回null.
+     */
+    private static Converter<?, ?> fromNumber(Class<?> source, Class<?> target) {
+        if (target == Integer.class) {
+            return NUMBER_TO_INTEGER;
+        } else if (target == Long.class) {
+            return NUMBER_TO_LONG;
+        } else if (target == Double.class) {
+            return NUMBER_TO_DOUBLE;
+        } else if (target == Float.class) {
+            return NUMBER_TO_FLOAT;
+        } else if (target == Short.class) {
+            return NUMBER_TO_SHORT;
+        } else if (target == Byte.class) {
+            return NUMBER_TO_BYTE;
+        } else if (target == BigDecimal.class) {
+            if (isIntegral(source)) {
+                return LONG_TO_BIG_DECIMAL;
+            } else if (source == Double.class) {
+                return DOUBLE_TO_BIG_DECIMAL;
+            } else if (source == BigInteger.class) {
+                return BIG_INTEGER_TO_BIG_DECIMAL;
+            }
+            return NUMBER_TO_BIG_DECIMAL;
+        } else if (target == BigInteger.class) {
+            if (isIntegral(source)) {
+                return LONG_TO_BIG_INTEGER;
+            } else if (source == BigDecimal.class) {
+                return BIG_DECIMAL_TO_BIG_INTEGER;
+            }
+            return NUMBER_TO_BIG_INTEGER;
+        } else if (target == Boolean.class && isIntegral(source)) {
+            return LONG_TO_BOOLEAN;
+        }
+        return null;
+    }
+
+    /**
+     * 先toString再按字符串解析,用于没有专门转换器的类型.
+     */
+    private static final class ParseString implements Converter<Object, Object> {
+
+        private final Converter<String, ?> parser;
+
+        ParseString(Converter<String, ?> parser) {
+            this.parser = parser;
+        }
+
+        @Override
+        public Object convert(Object value) {
+            return parser.convert(value == null ? null : value.toString());
+        }
+    }
+
+    private static final Converter<Object, Object> IDENTITY = new Converter<Object, Object>() {
+        @Override
+        public Object convert(Object value) {
+            return value;
+        }
+    };
+    private static final Converter<String, Object> UNSUPPORTED = new Converter<String, Object>() {
+        @Override
+        public Object convert(String value) {
+            return null;
+        }
+    };
+    private static final Converter<Object, String> TO_STRING = new Converter<Object, String>() {
+        @Override
+        public String convert(Object value) {
+            return value == null ? "" : value.toString();
+        }
+    };
+    private static final Converter<Date, String> DATE_TO_STRING = new Converter<Date, String>() {
+        @Override
+        public String convert(Date value) {
+            return DateUtils.format(value, DateUtils.DATE_PATTERN);
+        }
+    };
+    private static final Converter<String, String> STRING_TO_STRING = new Converter<String, String>() {
+        @Override
+        public String convert(String value) {
+            return ConverString.asString(value, "", "");
+        }
+    };
+    private static final Converter<String, Integer> STRING_TO_INTEGER = new Converter<String, Integer>() {
+        @Override
+        public Integer convert(String value) {
+            return ConverString.asInteger(value, Integer.valueOf(0));
+        }
+    };
+    private static final Converter<String, Double> STRING_TO_DOUBLE = new Converter<String, Double>() {
+        @Override
+        public Double convert(String value) {
+            return ConverString.asDouble(value, Double.valueOf(0.0D));
+        }
+    };
+    private static final Converter<String, Boolean> STRING_TO_BOOLEAN = new Converter<String, Boolean>() {
+        @Override
+        public Boolean convert(String value) {
+            return ConverString.asBoolean(value, Boolean.FALSE);
+        }
+    };
+    private static final Converter<String, Float> STRING_TO_FLOAT = new Converter<String, Float>() {
+        @Override
+        public Float convert(String value) {
+            return ConverString.asFloat(value, Float.valueOf(0.0F));
+        }
+    };
+    private static final Converter<String, Long> STRING_TO_LONG = new Converter<String, Long>() {
+        @Override
+        public Long convert(String value) {
+            return ConverString.asLong(value, Long.valueOf(0L));
+        }
+    };
+    private static final Converter<String, Short> STRING_TO_SHORT = new Converter<String, Short>() {
+        @Override
+        public Short convert(String value) {
+            return ConverString.asShort(value, Short.valueOf((short) 0));
+        }
+    };
+    private static final Converter<String, Byte> STRING_TO_BYTE = new Converter<String, Byte>() {
+        @Override
+        public Byte convert(String value) {
+            return ConverString.asByte(value, Byte.valueOf((byte) 0));
+        }
+    };
+    private static final Converter<String, Character> STRING_TO_CHARACTER = new Converter<String, Character>() {
+        @Override
+        public Character convert(String value) {
+            return ConverString.asCharacter(value, Character.valueOf('\0'));
+        }
+    };
+    private static final Converter<String, BigDecimal> STRING_TO_BIG_DECIMAL = new Converter<String, BigDecimal>() {
+        @Override
+        public BigDecimal convert(String value) {
+            return ConverString.asBigDecimal(value, BigDecimal.ZERO);
+        }
+    };
+    private static final Converter<String, BigInteger> STRING_TO_BIG_INTEGER = new Converter<String, BigInteger>() {
+        @Override
+        public BigInteger convert(String value) {
+            return ConverString.asBigInteger(value, BigInteger.ZERO);
+        }
+    };
+    private static final Converter<String, java.sql.Date> STRING_TO_SQL_DATE = new Converter<String, java.sql.Date>() {
+        @Override
+        public java.sql.Date convert(String value) {
+            return value == null ? null : java.sql.Date.valueOf(value);
+        }
+    };
+    private static final Converter<String, java.sql.Timestamp> STRING_TO_TIMESTAMP = new Converter<String, java.sql.Timestamp>() {
+        @Override
+        public java.sql.Timestamp convert(String value) {
+            return value == null ? null : java.sql.Timestamp.valueOf(value);
+        }
+    };
+    private static final Converter<String, Date> STRING_TO_DATE = new Converter<String, Date>() {
+        @Override
+        public Date convert(String value) {
+            return ConverString.asDate(value, new Date(), null);
+        }
+    };
+    private static final Converter<Number, Integer> NUMBER_TO_INTEGER = new Converter<Number, Integer>() {
+        @Override
+        public Integer convert(Number value) {
+            return Integer.valueOf(value.intValue());
+        }
+    };
+    private static final Converter<Number, Long> NUMBER_TO_LONG = new Converter<Number, Long>() {
+        @Override
+        public Long convert(Number value) {
+            return Long.valueOf(value.longValue());
+        }
+    };
+    private static final Converter<Number, Double> NUMBER_TO_DOUBLE = new Converter<Number, Double>() {
+        @Override
+        public Double convert(Number value) {
+            return Double.valueOf(value.doubleValue());
+        }
+    };
+    private static final Converter<Number, Float> NUMBER_TO_FLOAT = new Converter<Number, Float>() {
+        @Override
+        public Float convert(Number value) {
+            return Float.valueOf(value.floatValue());
+        }
+    };
+    private static final Converter<Number, Short> NUMBER_TO_SHORT = new Converter<Number, Short>() {
+        @Override
+        public Short convert(Number value) {
+            return Short.valueOf(value.shortValue());
+        }
+    };
+    private static final Converter<Number, Byte> NUMBER_TO_BYTE = new Converter<Number, Byte>() {
+        @Override
+        public Byte convert(Number value) {
+            return Byte.valueOf(value.byteValue());
+        }
+    };
+    private static final Converter<Number, Boolean> LONG_TO_BOOLEAN = new Converter<Number, Boolean>() {
+        @Override
+        public Boolean convert(Number value) {
+            return value.longValue() != 0;
+        }
+    };
+    private static final Converter<Number, BigDecimal> LONG_TO_BIG_DECIMAL = new Converter<Number, BigDecimal>() {
+        @Override
+        public BigDecimal convert(Number value) {
+            return BigDecimal.valueOf(value.longValue());
+        }
+    };
+    private static final Converter<Number, BigDecimal> DOUBLE_TO_BIG_DECIMAL = new Converter<Number, BigDecimal>() {
+        @Override
+        public BigDecimal convert(Number value) {
+            return BigDecimal.valueOf(value.doubleValue());
+        }
+    };
+    private static final Converter<BigInteger, BigDecimal> BIG_INTEGER_TO_BIG_DECIMAL = new Converter<BigInteger, BigDecimal>() {
+        @Override
+        public BigDecimal convert(BigInteger value) {
+            return new BigDecimal(value);
+        }
+    };
+    private static final Converter<Number, BigDecimal> NUMBER_TO_BIG_DECIMAL = new Converter<Number, BigDecimal>() {
+        @Override
+        public BigDecimal convert(Number value) {
+            return new BigDecimal(value.toString());
+        }
+    };
+    private static final Converter<Number, BigInteger> LONG_TO_BIG_INTEGER = new Converter<Number, BigInteger>() {
+        @Override
+        public BigInteger convert(Number value) {
+            return BigInteger.valueOf(value.longValue());
+        }
+    };
+    private static final Converter<BigDecimal, BigInteger> BIG_DECIMAL_TO_BIG_INTEGER = new Converter<BigDecimal, BigInteger>() {
+        @Override
+        public BigInteger convert(BigDecimal value) {
+            return value.toBigInteger();
+        }
+    };
+    private static final Converter<Number, BigInteger> NUMBER_TO_BIG_INTEGER = new Converter<Number, BigInteger>() {
+        @Override
+        public BigInteger convert(Number value) {
+            return new BigDecimal(value.toString()).toBigInteger();
+        }
+    };
+    private static final Converter<Object, LocalDateTime> TO_LOCAL_DATE_TIME = new Converter<Object, LocalDateTime>() {
+        @Override
+        public LocalDateTime convert(Object value) {
+            return DateUtils.toLocalDateTime(value);
+        }
+    };
+    private static final Converter<Object, LocalDate> TO_LOCAL_DATE = new Converter<Object, LocalDate>() {
+        @Override
+        public LocalDate convert(Object value) {
+            return DateUtils.toLocalDate(value);
+        }
+    };
+    private static final Converter<Object, Instant> TO_INSTANT = new Converter<Object, Instant>() {
+        @Override
+        public Instant convert(Object value) {
+            return DateUtils.toInstant(value);
+        }
+    };
+    private static final Converter<Object, Date> TEMPORAL_TO_DATE = new Converter<Object, Date>() {
+        @Override
+        public Date convert(Object value) {
+            return DateUtils.toDate(value);
+        }
+    };
+    private static final Converter<Object, java.sql.Timestamp> TEMPORAL_TO_TIMESTAMP = new Converter<Object, java.sql.Timestamp>() {
+        @Override
+        public java.sql.Timestamp convert(Object value) {
+            LocalDateTime time = DateUtils.toLocalDateTime(value);
+            return time == null ? null : java.sql.Timestamp.valueOf(time);
+        }
+    };
+    private static final Converter<Object, java.sql.Date> TEMPORAL_TO_SQL_DATE = new Converter<Object, java.sql.Date>() {
+        @Override
+        public java.sql.Date convert(Object value) {
+            LocalDate date = DateUtils.toLocalDate(value);
+            return date == null ? null : java.sql.Date.valueOf(date);
+        }
+    };
+}
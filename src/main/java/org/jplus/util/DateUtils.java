@@ -0,0 +1,310 @@
+/*
+ * Copyright 2015 www.hyberbin.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * Email:hyberbin@qq.com
+ */
+package org.jplus.util;
+
+import java.sql.Timestamp;
+import java.text.ParsePosition;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoField;
+import java.time.temporal.TemporalAccessor;
+import java.time.temporal.TemporalQueries;
+import java.util.Date;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 日期时间的格式化、解析和类型转换.
+ * 格式化器按模式缓存,DateTimeFormatter不可变,可以在多个线程间共用.
+ * ISO格式(yyyy-MM-dd、yyyy-MM-dd HH:mm:ss.SSS、yyyy-MM-ddTHH:mm:ssZ等)直接按字符解析,不经过格式化器.
+ * @author hyberbin
+ */
+public class DateUtils {
+
+    public static final String DATE_PATTERN = "yyyy-MM-dd";
+    public static final String DATE_TIME_PATTERN = "yyyy-MM-dd HH:mm:ss";
+    /** 非ISO格式时的宽松日期模式,月和日可以是一位 */
+    private static final String LENIENT_DATE_PATTERN = "yyyy-M-d";
+    private static final LocalDate EPOCH_DAY = LocalDate.of(1970, 1, 1);
+    private static final ConcurrentMap<String, DateTimeFormatter> FORMATTERS = new ConcurrentHashMap<String, DateTimeFormatter>();
+
+    /**
+     * 获取指定模式的格式化器,同一模式只创建一次.
+     * @param pattern 模式
+     * @return DateTimeFormatter
+     */
+    public static DateTimeFormatter getFormatter(String pattern) {
+        DateTimeFormatter formatter = FORMATTERS.get(pattern);
+        if (formatter == null) {
+            formatter = DateTimeFormatter.ofPattern(pattern);
+            DateTimeFormatter old = FORMATTERS.putIfAbsent(pattern, formatter);
+            if (old != null) {
+                formatter = old;
+            }
+        }
+        return formatter;
+    }
+
+    /**
+     * 按模式格式化日期.模式中可以有时区(z、X、Z),带时区的值按自身时区,其它按系统时区.
+     * @param value Date或java.time的日期时间
+     * @param pattern 模式
+     * @return 不能转换成日期时返回null
+     */
+    public static String format(Object value, String pattern) {
+        ZonedDateTime time;
+        if (value instanceof ZonedDateTime) {
+            time = (ZonedDateTime) value;
+        } else if (value instanceof OffsetDateTime) {
+            time = ((OffsetDateTime) value).toZonedDateTime();
+        } else {
+            LocalDateTime local = toLocalDateTime(value);
+            if (local == null) {
+                return null;
+            }
+            time = local.atZone(ZoneId.systemDefault());
+        }
+        return getFormatter(pattern).format(time);
+    }
+
+    /**
+     * 按模式解析日期,可以只匹配字符串的开头部分.
+     * @param str 字符串
+     * @param pattern 模式,为null时按ISO格式解析,不是ISO格式再按yyyy-M-d解析
+     * @return 解析失败时返回null
+     */
+    public static Date parse(String str, String pattern) {
+        if (str == null) {
+            return null;
+        }
+        if (pattern == null) {
+            LocalDateTime time = parseIso(str);
+            if (time != null) {
+                return toDate(time);
+            }
+            pattern = LENIENT_DATE_PATTERN;
+        }
+        try {
+            TemporalAccessor parsed = getFormatter(pattern).parse(str.trim(), new ParsePosition(0));
+            if (parsed.isSupported(ChronoField.INSTANT_SECONDS)) {
+                return Date.from(Instant.from(parsed));
+            }
+            LocalDate date = parsed.query(TemporalQueries.localDate());
+            LocalTime time = parsed.query(TemporalQueries.localTime());
+            return toDate(LocalDateTime.of(date == null ? EPOCH_DAY : date, time == null ? LocalTime.MIDNIGHT : time));
+        } catch (DateTimeException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * 解析ISO格式的日期时间.
+     * 支持yyyy-MM-dd,后面可以跟空格或T分隔的HH:mm[:ss[.SSSSSSSSS]],最后可以有Z或+HH:mm时区,
+     * 带时区时转换为本地时间.
+     * @param str 字符串
+     * @return 不是ISO格式时返回null
+     */
+    public static LocalDateTime parseIso(CharSequence str) {
+        if (str == null) {
+            return null;
+        }
+        int length = str.length();
+        if (length < 10 || str.charAt(4) != '-' || str.charAt(7) != '-') {
+            return null;
+        }
+        int year = digits(str, 0, 4);
+        int month = digits(str, 5, 2);
+        int day = digits(str, 8, 2);
+        if ((year | month | day) < 0) {
+            return null;
+        }
+        int hour = 0, minute = 0, second = 0, nano = 0;
+        int pos = 10;
+        if (pos < length && (str.charAt(pos) == ' ' || str.charAt(pos) == 'T')) {
+            if (length < 16 || str.charAt(13) != ':') {
+                return null;
+            }
+            hour = digits(str, 11, 2);
+            minute = digits(str, 14, 2);
+            pos = 16;
+            if (pos < length && str.charAt(pos) == ':') {
+                second = digits(str, 17, 2);
+                pos = 19;
+                if (pos < length && str.charAt(pos) == '.') {
+                    int start = ++pos;
+                    while (pos < length && pos - start < 9 && isDigit(str.charAt(pos))) {
+                        nano = nano * 10 + (str.charAt(pos++) - '0');
+                    }
+                    if (pos == start) {
+                        return null;
+                    }
+                    for (int i = pos - start; i < 9; i++) {
+                        nano *= 10;
+                    }
+                }
+            }
+            if ((hour | minute | second) < 0) {
+                return null;
+            }
+        }
+        ZoneOffset offset = null;
+        if (pos < length) {
+            char c = str.charAt(pos);
+            if (c == 'Z' && pos + 1 == length) {
+                offset = ZoneOffset.UTC;
+            } else if ((c == '+' || c == '-') && pos + 6 == length && str.charAt(pos + 3) == ':') {
+                int hours = digits(str, pos + 1, 2);
+                int minutes = digits(str, pos + 4, 2);
+                if ((hours | minutes) < 0) {
+                    return null;
+                }
+                try {
+                    offset = ZoneOffset.ofHoursMinutes(c == '-' ? -hours : hours, c == '-' ? -minutes : minutes);
+                } catch (DateTimeException ex) {
+                    return null;
+                }
+            } else {
+                return null;
+            }
+        }
+        try {
+            LocalDateTime time = LocalDateTime.of(year, month, day, hour, minute, second, nano);
+            return offset == null ? time : OffsetDateTime.of(time, offset).atZoneSameInstant(ZoneId.systemDefault()).toLocalDateTime();
+        } catch (DateTimeException ex) {
+            return null;
+        }
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * 读取固定位数的数字.
+     * @return 有非数字字符或越界时返回-1
+     */
+    private static int digits(CharSequence str, int start, int count) {
+        if (start + count > str.length()) {
+            return -1;
+        }
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            char c = str.charAt(i);
+            if (!isDigit(c)) {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    /**
+     * 转换成时间点.
+     * 支持Date、Instant、LocalDateTime、LocalDate、ZonedDateTime、OffsetDateTime、
+     * 毫秒数和ISO格式字符串,本地时间按系统默认时区处理.
+     * @param value 值
+     * @return 不能转换时返回null
+     */
+    public static Instant toInstant(Object value) {
+        if (value instanceof Instant) {
+            return (Instant) value;
+        } else if (value instanceof Timestamp) {
+            return ((Timestamp) value).toInstant();
+        } else if (value instanceof Date) {
+            return Instant.ofEpochMilli(((Date) value).getTime());
+        } else if (value instanceof Number) {
+            return Instant.ofEpochMilli(((Number) value).longValue());
+        } else if (value instanceof ZonedDateTime) {
+            return ((ZonedDateTime) value).toInstant();
+        } else if (value instanceof OffsetDateTime) {
+            return ((OffsetDateTime) value).toInstant();
+        }
+        LocalDateTime time = value instanceof LocalDateTime || value instanceof LocalDate || value instanceof CharSequence
+                ? toLocalDateTime(value) : null;
+        return time == null ? null : time.atZone(ZoneId.systemDefault()).toInstant();
+    }
+
+    /**
+     * 转换成本地日期时间.
+     * @param value 值,支持的类型同toInstant
+     * @return 不能转换时返回null
+     */
+    public static LocalDateTime toLocalDateTime(Object value) {
+        if (value instanceof LocalDateTime) {
+            return (LocalDateTime) value;
+        } else if (value instanceof Timestamp) {
+            return ((Timestamp) value).toLocalDateTime();
+        } else if (value instanceof LocalDate) {
+            return ((LocalDate) value).atStartOfDay();
+        } else if (value instanceof CharSequence) {
+            return parseIso(((CharSequence) value).toString().trim());
+        }
+        Instant instant = toInstant(value);
+        return instant == null ? null : LocalDateTime.ofInstant(instant, ZoneId.systemDefault());
+    }
+
+    /**
+     * 转换成本地日期.
+     * @param value 值,支持的类型同toInstant
+     * @return 不能转换时返回null
+     */
+    public static LocalDate toLocalDate(Object value) {
+        if (value instanceof LocalDate) {
+            return (LocalDate) value;
+        } else if (value instanceof java.sql.Date) {
+            return ((java.sql.Date) value).toLocalDate();
+        }
+        LocalDateTime time = toLocalDateTime(value);
+        return time == null ? null : time.toLocalDate();
+    }
+
+    /**
+     * 转换成java.util.Date.
+     * @param value 值,支持的类型同toInstant
+     * @return 不能转换时返回null
+     */
+    public static Date toDate(Object value) {
+        Instant instant = toInstant(value);
+        return instant == null ? null : Date.from(instant);
+    }
+
+    /**
+     * 把java.time的日期时间转换成JDBC驱动都支持的java.sql类型,其他值原样返回.
+     * @param value 参数值
+     * @return 绑定到语句上的值
+     */
+    public static Object toSqlValue(Object value) {
+        if (value instanceof LocalDateTime) {
+            return Timestamp.valueOf((LocalDateTime) value);
+        } else if (value instanceof LocalDate) {
+            return java.sql.Date.valueOf((LocalDate) value);
+        } else if (value instanceof LocalTime) {
+            return java.sql.Time.valueOf((LocalTime) value);
+        } else if (value instanceof Instant || value instanceof ZonedDateTime || value instanceof OffsetDateTime) {
+            return Timestamp.from(toInstant(value));
+        }
+        return value;
+    }
+}
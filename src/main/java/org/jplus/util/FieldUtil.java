@@ -21,6 +21,7 @@ import java.lang.reflect.Method;
 import javax.persistence.Column;
 import javax.persistence.JoinColumn;
 import javax.persistence.Transient;
+import javax.persistence.Version;
 import org.jplus.hyb.database.bean.FieldColumn;
 import org.jplus.hyb.database.util.CacheFactory;
 import org.jplus.hyb.log.Logger;
@@ -102,6 +103,18 @@ public class FieldUtil {
         return null;
     }
     
+    /**
+     * 获取实体中字段对应的数据库值,外键字段取被引用对象的主键值.
+     * @param tablebean 实体
+     * @param column 字段
+     * @return
+     */
+    public static Object getColumnValue(Object tablebean, FieldColumn column) {
+        return column.getField().isAnnotationPresent(JoinColumn.class)
+                ? getFatherFieldValue(tablebean, column.getField().getName())
+                : getFieldValue(tablebean, column.getField().getName());
+    }
+
     /**
      * 获取字段对应的FieldColumn
      * @param field
@@ -137,6 +150,7 @@ public class FieldUtil {
         if (ObjectHelper.isNullOrEmptyString(fieldColumn.getColumn())) {
             fieldColumn.setColumn(field.getName());
         }
+        fieldColumn.setVersion(field.isAnnotationPresent(Version.class));
         Method getter = Reflections.getAccessibleMethod(field.getDeclaringClass(), Reflections.get(field.getName()), EMPTY_ARG);
         Method setter = Reflections.getAccessibleMethod(field.getDeclaringClass(), Reflections.set(field.getName()), new Class[]{field.getType()});
         fieldColumn.setHasGetterAndSetter(getter!=null&&setter!=null);
@@ -115,6 +115,14 @@ public class LoadProperties {
         return object;
     }
 
+    /**
+     * 配置文件的路径.从类路径读取时为资源名,从输入流读取时为空.
+     * @return
+     */
+    public String getFilePath() {
+        return filePath;
+    }
+
     public Properties getProps() {
         return props;
     }
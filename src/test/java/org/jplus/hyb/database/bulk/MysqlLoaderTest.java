@@ -0,0 +1,104 @@
+/*
+ * Copyright 2015 www.hyberbin.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * Email:hyberbin@qq.com
+ */
+package org.jplus.hyb.database.bulk;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import org.jplus.hyb.database.bean.FieldColumn;
+import org.jplus.hyb.database.util.CacheFactory;
+import org.jplus.model.Servers;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author hyberbin
+ */
+public class MysqlLoaderTest {
+
+    /**
+     * Test of RowInputStream, of class MysqlLoader.
+     */
+    @Test
+    public void testRowInputStream() throws Exception {
+        System.out.println("RowInputStream");
+        Servers first = new Servers();
+        first.setId(1);
+        first.setName("a\tb\\c\nd");
+        Servers second = new Servers();
+        second.setId(2);
+        FieldColumn id = CacheFactory.MINSTANCE.getFieldColumn(Servers.class, "id");
+        FieldColumn name = CacheFactory.MINSTANCE.getFieldColumn(Servers.class, "name");
+        MysqlLoader.RowInputStream in = new MysqlLoader.RowInputStream(Arrays.asList(id, name), Arrays.asList(first, second).iterator());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[3];
+        int read;
+        while ((read = in.read(buffer, 0, buffer.length)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        assertEquals("1\ta\\tb\\\\c\\nd\n2\t\\N\n", out.toString("UTF-8"));
+        assertEquals(2, in.getRows());
+        assertEquals(-1, new MysqlLoader.RowInputStream(Collections.singletonList(id), Collections.emptyIterator()).read());
+    }
+
+    /**
+     * Test of getLoadData method, of class MysqlLoader.byte[]按十六进制写入并用unhex还原.
+     */
+    @Test
+    public void testBinary() throws Exception {
+        System.out.println("binary");
+        Attachment attachment = new Attachment();
+        attachment.id = 1;
+        attachment.data = new byte[]{0, 9, 10, (byte) 0xff};
+        FieldColumn id = CacheFactory.MINSTANCE.getFieldColumn(Attachment.class, "id");
+        FieldColumn data = CacheFactory.MINSTANCE.getFieldColumn(Attachment.class, "data");
+        MysqlLoader.RowInputStream in = new MysqlLoader.RowInputStream(Arrays.asList(id, data), Collections.singletonList(attachment).iterator());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int read;
+        while ((read = in.read()) != -1) {
+            out.write(read);
+        }
+        assertEquals("1\t00090AFF\n", out.toString("UTF-8"));
+        String sql = new MysqlLoader(new char[]{'`', '`'}).getLoadData("attachment", Arrays.asList(id, data));
+        assertTrue(sql.contains("character set utf8mb4"));
+        assertTrue(sql.endsWith("(`ID`,@c1) set `DATA`=unhex(@c1)"));
+    }
+
+    public static class Attachment {
+
+        private Integer id;
+        private byte[] data;
+
+        public Integer getId() {
+            return id;
+        }
+
+        public void setId(Integer id) {
+            this.id = id;
+        }
+
+        public byte[] getData() {
+            return data;
+        }
+
+        public void setData(byte[] data) {
+            this.data = data;
+        }
+    }
+}
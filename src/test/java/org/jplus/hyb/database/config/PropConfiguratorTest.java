@@ -0,0 +1,172 @@
+/*
+ * Copyright 2015 www.hyberbin.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * Email:hyberbin@qq.com
+ */
+package org.jplus.hyb.database.config;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+import org.jplus.hyb.database.transaction.SingleManager;
+import org.jplus.hyb.database.transaction.StripedManager;
+import org.jplus.hyb.database.transaction.TxManager;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author hyberbin
+ */
+public class PropConfiguratorTest {
+
+    /** 测试中创建的数据库文件 */
+    private final List<File> databases = new ArrayList<File>();
+
+    @After
+    public void tearDown() {
+        for (File database : databases) {
+            database.delete();
+        }
+    }
+
+    /**
+     * 创建一个临时的sqlite数据库文件,测试结束后删除.
+     * @param prefix 文件名前缀
+     * @return 连接地址
+     */
+    private String newDatabase(String prefix) throws IOException {
+        File database = File.createTempFile(prefix, ".db");
+        databases.add(database);
+        return "jdbc:sqlite:" + database.getAbsolutePath().replace('\\', '/');
+    }
+
+    private static void write(File file, String content) throws IOException {
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content.getBytes("utf-8"));
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Test of reload method, of class PropConfigurator.
+     */
+    @Test
+    public void testReload() throws Exception {
+        System.out.println("reload");
+        File file = File.createTempFile("database", ".properties");
+        file.deleteOnExit();
+        write(file, "driver=org.sqlite.JDBC\nurl=jdbc:sqlite:a.db\nsqlout=true\nlog-url=jdbc:sqlite:log.db\n");
+        PropConfigurator instance = new PropConfigurator(file.getAbsolutePath());
+        assertTrue(instance.sqlOut());
+        assertFalse(instance.prepare());
+        assertEquals("jdbc:sqlite:a.db", instance.getDefaultConfig().getUrl());
+        assertEquals("jdbc:sqlite:log.db", instance.getDbConfig("log").getUrl());
+        DbConfig old = instance.getDefaultConfig();
+        write(file, "driver=org.sqlite.JDBC\nurl=jdbc:sqlite:b.db\nprepare=true\n");
+        assertTrue(instance.reload());
+        assertFalse(instance.sqlOut());
+        assertTrue(instance.prepare());
+        assertEquals("jdbc:sqlite:b.db", instance.getDefaultConfig().getUrl());
+        assertEquals("jdbc:sqlite:a.db", old.getUrl());
+        assertNull(instance.getDbConfig("log").getUrl());
+        write(file, "");
+        assertFalse(instance.reload());
+        assertEquals("jdbc:sqlite:b.db", instance.getDefaultConfig().getUrl());
+        write(file, "driver=org.sqlite.JDBC\n");//只写了一半
+        assertFalse(instance.reload());
+        assertEquals("jdbc:sqlite:b.db", instance.getDefaultConfig().getUrl());
+    }
+
+    /**
+     * Test of reload method while connections are in use, of class PropConfigurator.
+     */
+    @Test
+    public void testReloadInTransaction() throws Exception {
+        System.out.println("reloadInTransaction");
+        File file = File.createTempFile("database", ".properties");
+        file.deleteOnExit();
+        write(file, "reload-driver=org.sqlite.JDBC\nreload-url=" + newDatabase("reload_a") + "\n");
+        PropConfigurator instance = new PropConfigurator(file.getAbsolutePath());
+        TxManager tx = new TxManager("reload");
+        tx.setConfigurator(instance);
+        Connection inTransaction = tx.getConnection();
+        StripedManager striped = new StripedManager("reload");
+        striped.setConfigurator(instance);
+        Connection stripe = striped.getConnection();
+        SingleManager single = new SingleManager("reload");
+        single.setConfigurator(instance);
+        Connection shared = single.getConnection();
+        write(file, "reload-driver=org.sqlite.JDBC\nreload-url=" + newDatabase("reload_b") + "\n");
+        assertTrue(instance.reload());
+        assertSame(inTransaction, tx.getConnection());//事务中不换连接
+        assertFalse(inTransaction.isClosed());
+        assertFalse(stripe.isClosed());
+        assertFalse(shared.isClosed());
+        StripedManager other = new StripedManager("reload");
+        other.setConfigurator(instance);
+        assertNotSame(stripe, other.getConnection());
+        other.closeConnection();
+        striped.closeConnection();
+        assertTrue(stripe.isClosed());
+        SingleManager otherSingle = new SingleManager("reload");
+        otherSingle.setConfigurator(instance);
+        assertNotSame(shared, otherSingle.getConnection());
+        otherSingle.closeConnection();
+        single.closeConnection();
+        assertTrue(shared.isClosed());
+        tx.commit();
+        assertNotSame(inTransaction, tx.getConnection());//事务结束后换新连接
+        assertTrue(inTransaction.isClosed());
+        tx.finalCloseConnection();
+        other.finalCloseConnection();
+        otherSingle.finalCloseConnection();
+    }
+
+    /**
+     * Test of startWatching method, of class PropConfigurator.
+     */
+    @Test
+    public void testStartWatching() throws Exception {
+        System.out.println("startWatching");
+        File file = File.createTempFile("database", ".properties");
+        file.deleteOnExit();
+        write(file, "watch-driver=org.sqlite.JDBC\nwatch-url=" + newDatabase("watch_a") + "\n");
+        PropConfigurator instance = new PropConfigurator(file.getAbsolutePath());
+        StripedManager striped = new StripedManager("watch");
+        striped.setConfigurator(instance);
+        Connection idle = striped.getConnection();
+        striped.closeConnection();
+        instance.startWatching();
+        try {
+            String url = newDatabase("watch_b");
+            write(file, "watch-driver=org.sqlite.JDBC\nwatch-url=" + url + "\n");
+            for (int i = 0; i < 100 && !url.equals(instance.getDbConfig("watch").getUrl()); i++) {
+                Thread.sleep(50);
+            }
+            assertEquals(url, instance.getDbConfig("watch").getUrl());
+            assertTrue(idle.isClosed());//没有在使用的连接立即关闭
+        } finally {
+            instance.stopWatching();
+        }
+    }
+}
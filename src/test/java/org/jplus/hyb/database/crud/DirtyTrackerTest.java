@@ -0,0 +1,52 @@
+/*
+ * Copyright 2015 www.hyberbin.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * Email:hyberbin@qq.com
+ */
+package org.jplus.hyb.database.crud;
+
+import java.sql.Date;
+import java.util.BitSet;
+import org.jplus.hyb.database.bean.TableBean;
+import org.jplus.hyb.database.util.CacheFactory;
+import org.jplus.model.User;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author hyberbin
+ */
+public class DirtyTrackerTest {
+
+    /**
+     * Test of getChanged method, of class DirtyTracker.
+     */
+    @Test
+    public void testGetChanged() {
+        System.out.println("getChanged");
+        TableBean table = CacheFactory.MINSTANCE.getHyberbin(User.class, true);
+        User user = new User();
+        user.setCreateDate(new Date(1000));
+        DirtyTracker.INSTANCE.snapshot(user, table, table.getColumns());
+        assertTrue(DirtyTracker.INSTANCE.getChanged(user).isEmpty());
+        user.getCreateDate().setTime(2000);//原地修改
+        BitSet changed = DirtyTracker.INSTANCE.getChanged(user);
+        assertEquals(1, changed.cardinality());
+        DirtyTracker.INSTANCE.refresh(user);
+        assertTrue(DirtyTracker.INSTANCE.getChanged(user).isEmpty());
+        DirtyTracker.INSTANCE.forget(user);
+    }
+}
@@ -16,15 +16,18 @@
  */
 package org.jplus.hyb.database.crud;
 
+import org.jplus.hyb.database.bean.ColumnarResult;
 import org.jplus.hyb.database.bean.FieldColumn;
 import org.jplus.hyb.database.config.ConfigCenter;
 import org.jplus.hyb.database.config.DbConfig;
 import org.jplus.hyb.database.config.SimpleConfigurator;
 import org.jplus.hyb.database.sqlite.SqliteUtil;
 import org.jplus.hyb.database.transaction.TxManager;
+import org.jplus.hyb.database.util.CacheFactory;
 import org.jplus.hyb.database.util.Pager;
 import org.jplus.hyb.log.LocalLogger;
 import org.jplus.hyb.log.LoggerManager;
+import org.jplus.model.Article;
 import org.jplus.model.Servers;
 import org.jplus.util.ObjectHelper;
 import org.junit.*;
@@ -32,6 +35,9 @@ import org.slf4j.LoggerFactory;
 
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
@@ -88,6 +94,9 @@ public class HyberbinTest {
                     + ") ";
             SqliteUtil.execute(sql);
         }
+        if (!SqliteUtil.tableExist("article")) {
+            SqliteUtil.execute("CREATE TABLE `article` (`id` integer PRIMARY KEY, `title` varchar(255), `version` int)");
+        }
         DatabaseAccess access = new DatabaseAccess(ConfigCenter.INSTANCE.getManager());
         try {
             int update = access.update("delete from servers");
@@ -278,6 +287,41 @@ public class HyberbinTest {
         }
     }
 
+    /**
+     * Test of insert method, of class Hyberbin.
+     */
+    @Test
+    public void testInsertGeneratedKey() throws SQLException {
+        System.out.println("insertGeneratedKey");
+        Servers servers = getDefault();
+        servers.setId(null);
+        assertEquals(1, new Hyberbin(servers).insert("id"));
+        assertNotNull(servers.getId());
+        assertEquals("Default", getByID(servers.getId()).getName());
+    }
+
+    /**
+     * Test of insertBatch method, of class Hyberbin.
+     */
+    @Test
+    public void testInsertBatch() throws SQLException {
+        System.out.println("insertBatch");
+        List<Servers> list = new ArrayList<Servers>();
+        for (int i = 0; i < 3; i++) {
+            Servers servers = getDefault();
+            servers.setId(null);
+            servers.setName("insert" + i);
+            list.add(servers);
+        }
+        int[] result = new Hyberbin(new Servers()).insertBatch("id", list);
+        assertEquals(3, result.length);
+        assertEquals(8, new Hyberbin(new Servers()).getCount("select * from servers"));
+        Servers single = getDefault();
+        single.setId(null);
+        new Hyberbin(new Servers()).insertBatch("id", Collections.singletonList(single));
+        assertNotNull(single.getId());
+    }
+
     /**
      * Test of updateByKey method, of class Hyberbin.
      */
@@ -298,6 +342,163 @@ public class HyberbinTest {
         assertEquals(servers.getName(), name);
     }
 
+    /**
+     * Test of upsert method, of class Hyberbin.
+     */
+    @Test
+    public void testUpsert() throws SQLException {
+        System.out.println("upsert");
+        Servers servers = getByID(1);
+        servers.setName("testUpsert");
+        assertEquals(1, new Hyberbin(servers).upsert("id"));
+        assertEquals("testUpsert", getByID(1).getName());
+        Servers added = getDefault();
+        added.setId(10);
+        new Hyberbin(added).upsert("id");
+        assertEquals("Default", getByID(10).getName());
+        assertEquals(6, new Hyberbin(new Servers()).getCount("select * from servers"));
+        Servers partial = new Servers();
+        partial.setId(10);
+        partial.setName("partial");
+        assertEquals(1, new Hyberbin(partial).upsert("id"));
+        assertEquals("partial", getByID(10).getName());
+        assertEquals("adds", getByID(10).getAdds());//未列出的字段保持原值
+    }
+
+    /**
+     * Test of upsertBatch method, of class Hyberbin.
+     */
+    @Test
+    public void testUpsertBatch() throws SQLException {
+        System.out.println("upsertBatch");
+        List<Servers> list = new ArrayList<Servers>();
+        for (int i = 3; i < 8; i++) {
+            Servers servers = getDefault();
+            servers.setId(i);
+            servers.setName("batch" + i);
+            list.add(servers);
+        }
+        int[] result = new Hyberbin(new Servers()).upsertBatch("id", list);
+        assertEquals(5, result.length);
+        assertEquals("batch3", getByID(3).getName());
+        assertEquals("batch7", getByID(7).getName());
+        assertEquals(8, new Hyberbin(new Servers()).getCount("select * from servers"));
+    }
+
+    /**
+     * Test of updateByKey method with @Version, of class Hyberbin.
+     */
+    @Test
+    public void testUpdateByKeyVersion() throws SQLException {
+        System.out.println("updateByKeyVersion");
+        new DatabaseAccess(ConfigCenter.INSTANCE.getManager()).update("delete from article");
+        Article article = new Article();
+        article.setId(1);
+        article.setTitle("first");
+        new Hyberbin(article).insert("");
+        assertEquals(Integer.valueOf(0), article.getVersion());
+        Article stale = new Article();
+        stale.setId(1);
+        stale.setTitle("stale");
+        stale.setVersion(0);
+        article.setTitle("second");
+        assertEquals(1, new Hyberbin(article).updateByKey("id"));
+        assertEquals(Integer.valueOf(1), article.getVersion());
+        try {
+            new Hyberbin(stale).updateByKey("id");
+            fail("stale update should fail");
+        } catch (OptimisticLockException ex) {
+            assertEquals(0, ex.getVersion());
+        }
+    }
+
+    /**
+     * Test of updateBatch method, of class Hyberbin.
+     */
+    @Test
+    public void testUpdateBatch() throws SQLException {
+        System.out.println("updateBatch");
+        new DatabaseAccess(ConfigCenter.INSTANCE.getManager()).update("delete from article");
+        List<Article> list = new ArrayList<Article>();
+        for (int i = 0; i < 3; i++) {
+            Article article = new Article();
+            article.setId(i);
+            article.setTitle("title" + i);
+            list.add(article);
+        }
+        new Hyberbin(new Article()).insertBatch("", list);
+        list.get(0).setTitle("changed");
+        new Hyberbin(new Article()).updateBatch("id", list);
+        assertEquals(Integer.valueOf(1), list.get(2).getVersion());
+        list.get(1).setVersion(0);
+        try {
+            new Hyberbin(new Article()).updateBatch("id", list);
+            fail("stale batch should fail");
+        } catch (OptimisticLockException ex) {
+            assertEquals(1, ex.getKey());
+        }
+        assertEquals(Integer.valueOf(2), list.get(2).getVersion());
+        Article loaded = new Article();
+        loaded.setId(0);
+        new Hyberbin(loaded).showOnebyKey("id");
+        assertEquals("changed", loaded.getTitle());
+        assertEquals(Integer.valueOf(2), loaded.getVersion());
+    }
+
+    /**
+     * Test of updateChanged method, of class Hyberbin.
+     */
+    @Test
+    public void testUpdateChanged() throws SQLException {
+        System.out.println("updateChanged");
+        ConfigCenter.INSTANCE.setDirtyTracking(true);
+        try {
+            Servers servers = new Servers();
+            servers.setId(2);
+            Hyberbin<Servers> hyb = new Hyberbin(servers);
+            hyb.showOnebyKey("id");
+            servers.setName("changed");
+            servers.setNote(null);
+            assertEquals(1, new Hyberbin(servers).updateChanged("id"));
+            assertEquals(0, new Hyberbin(servers).updateChanged("id"));
+            Servers loaded = getByID(2);
+            assertEquals("changed", loaded.getName());
+            assertNull(loaded.getNote());
+            assertEquals("adds2", loaded.getAdds());
+            String sql = CacheFactory.MINSTANCE.getHyberbin(Servers.class, true).getUpdateCache().values().iterator().next();
+            assertFalse(sql.contains("ADDS"));
+        } finally {
+            ConfigCenter.INSTANCE.setDirtyTracking(false);
+        }
+    }
+
+    /**
+     * Test of bulkLoad method, of class Hyberbin.
+     */
+    @Test
+    public void testBulkLoad() throws SQLException {
+        System.out.println("bulkLoad");
+        Iterator<Servers> rows = new Iterator<Servers>() {
+            private int i = 100;
+
+            @Override
+            public boolean hasNext() {
+                return i < 20100;
+            }
+
+            @Override
+            public Servers next() {
+                Servers servers = getDefault();
+                servers.setId(i);
+                servers.setName("bulk" + i++);
+                return servers;
+            }
+        };
+        assertEquals(20000, new Hyberbin(new Servers()).bulkLoad(rows));
+        assertEquals(20005, new Hyberbin(new Servers()).getCount("select * from servers"));
+        assertEquals("bulk20099", getByID(20099).getName());
+    }
+
     /**
      * Test of autoUp method, of class Hyberbin.
      */
@@ -516,6 +717,24 @@ public class HyberbinTest {
         }
     }
 
+    /**
+     * Test of getColumnList method, of class Hyberbin.
+     */
+    @Test
+    public void testGetColumnList() throws SQLException {
+        System.out.println("getColumnList");
+        Hyberbin instance = new Hyberbin();
+        ColumnarResult result = instance.getColumnList("select id,name,type,null as note from Servers where id>=? order by id", 1);
+        List<Map> mapList = new Hyberbin().getMapList("select id,name,type,null as note from Servers where id>=? order by id", 1);
+        assertEquals(4, result.size());
+        assertEquals(mapList, new ArrayList<Map>(result));
+        assertEquals(3, result.getInt(2, result.getColumnIndex("TYPE")));
+        assertEquals("server1", result.get(0).get("Name"));
+        assertTrue(result.isNull(0, 3));
+        assertTrue(result.get(0).containsKey("note"));
+        assertNull(result.get(0).get("note"));
+    }
+
     /**
      * Test of getNuList method, of class Hyberbin.
      */
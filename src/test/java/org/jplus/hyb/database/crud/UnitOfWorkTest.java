@@ -0,0 +1,150 @@
+/*
+ * Copyright 2015 www.hyberbin.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * Email:hyberbin@qq.com
+ */
+package org.jplus.hyb.database.crud;
+
+import java.io.File;
+import org.jplus.hyb.database.config.DbConfig;
+import org.jplus.hyb.database.config.SimpleConfigurator;
+import org.jplus.hyb.database.transaction.SimpleManager;
+import org.jplus.hyb.database.transaction.TxManager;
+import org.jplus.model.Player;
+import org.jplus.model.Team;
+import org.junit.Before;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author hyberbin
+ */
+public class UnitOfWorkTest {
+
+    private static final String CONFIG = "uow";
+    private static File db;
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        db = File.createTempFile("uow", ".db");
+        SimpleConfigurator.addConfigurator(new DbConfig(DbConfig.DRIVER_SQLITE, "jdbc:sqlite:" + db.getAbsolutePath(), "", "", CONFIG));
+        DatabaseAccess access = new DatabaseAccess(new SimpleManager(CONFIG));
+        access.update("create table if not exists team(teamId integer primary key autoincrement, name varchar(64))");
+        new DatabaseAccess(new SimpleManager(CONFIG)).update("create table if not exists player(id integer primary key, name varchar(64), teamId int)");
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        db.delete();
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        new DatabaseAccess(new SimpleManager(CONFIG)).update("delete from player");
+        new DatabaseAccess(new SimpleManager(CONFIG)).update("delete from team");
+    }
+
+    private static int count(String table) throws Exception {
+        return new Hyberbin(new SimpleManager(CONFIG)).getCount("select * from " + table);
+    }
+
+    /**
+     * Test of beforeCommit method, of class UnitOfWork.
+     */
+    @Test
+    public void testCommit() throws Exception {
+        System.out.println("commit");
+        TxManager tx = new TxManager(CONFIG);
+        UnitOfWork uow = new UnitOfWork(tx);
+        Team team = new Team();
+        team.setName("red");
+        for (int i = 0; i < 2; i++) {
+            Player player = new Player();
+            player.setId(i);
+            player.setName("player" + i);
+            player.setTeam(team);
+            uow.insert(player);//先排队的子表在父表之后写入
+        }
+        uow.insert(team, "teamId");
+        Player removed = new Player();
+        removed.setId(1);
+        uow.delete(removed, "id");
+        assertEquals(4, uow.size());
+        tx.finalCloseConnection();
+        assertEquals(0, uow.size());
+        assertNotNull(team.getTeamId());
+        assertEquals(1, count("player"));
+        Player loaded = new Player();
+        loaded.setId(0);
+        new Hyberbin(loaded, new SimpleManager(CONFIG)).showOnebyKey("id");
+        assertEquals(team.getTeamId(), loaded.getTeam().getTeamId());
+    }
+
+    /**
+     * Test of beforeCommit method, of class UnitOfWork.多个父对象逐行插入取回各自的主键.
+     */
+    @Test
+    public void testCommitParents() throws Exception {
+        System.out.println("commitParents");
+        TxManager tx = new TxManager(CONFIG);
+        UnitOfWork uow = new UnitOfWork(tx);
+        Team[] teams = new Team[3];
+        for (int i = 0; i < teams.length; i++) {
+            teams[i] = new Team();
+            teams[i].setName("team" + i);
+            uow.insert(teams[i], "teamId");
+            for (int j = 0; j < 2; j++) {
+                Player player = new Player();
+                player.setId(i * 2 + j);
+                player.setName("player" + i + j);
+                player.setTeam(teams[i]);
+                uow.insert(player);
+            }
+        }
+        tx.finalCloseConnection();
+        assertEquals(3, count("team"));
+        assertEquals(6, count("player"));
+        for (int i = 0; i < teams.length; i++) {
+            assertNotNull(teams[i].getTeamId());
+            for (int j = 0; j < 2; j++) {
+                Player loaded = new Player();
+                loaded.setId(i * 2 + j);
+                new Hyberbin(loaded, new SimpleManager(CONFIG)).showOnebyKey("id");
+                assertEquals(teams[i].getTeamId(), loaded.getTeam().getTeamId());
+            }
+        }
+    }
+
+    /**
+     * Test of afterCompletion method, of class UnitOfWork.
+     */
+    @Test
+    public void testRollBack() throws Exception {
+        System.out.println("rollBack");
+        TxManager tx = new TxManager(CONFIG);
+        UnitOfWork uow = new UnitOfWork(tx);
+        Team team = new Team();
+        team.setName("blue");
+        uow.insert(team, "teamId");
+        tx.getConnection();
+        tx.rollBack();
+        tx.finalCloseConnection();
+        assertEquals(0, uow.size());
+        assertEquals(0, count("team"));
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2015 www.hyberbin.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * Email:hyberbin@qq.com
+ */
+package org.jplus.hyb.database.id;
+
+import java.io.File;
+import java.sql.Connection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import org.jplus.hyb.database.config.DbConfig;
+import org.jplus.hyb.database.config.SimpleConfigurator;
+import org.jplus.hyb.database.crud.DatabaseAccess;
+import org.jplus.hyb.database.metrics.MetricsRegistry;
+import org.jplus.hyb.database.transaction.SimpleManager;
+import org.jplus.hyb.database.transaction.TxManager;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author hyberbin
+ */
+public class HiLoGeneratorTest {
+
+    private static final String CONFIG = "hilo";
+    private static File db;
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        db = File.createTempFile("hilo", ".db");
+        SimpleConfigurator.addConfigurator(new DbConfig(DbConfig.DRIVER_SQLITE, "jdbc:sqlite:" + db.getAbsolutePath(), "", "", CONFIG));
+        new DatabaseAccess(new SimpleManager(CONFIG)).update("create table if not exists id_blocks(name varchar(64) primary key, next_val bigint not null)");
+        new DatabaseAccess(new SimpleManager(CONFIG)).update("delete from id_blocks");
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        db.delete();
+    }
+
+    /**
+     * Test of nextId method, of class HiLoGenerator.
+     */
+    @Test
+    public void testNextId() throws Exception {
+        System.out.println("nextId");
+        final HiLoGenerator instance = new HiLoGenerator(new TableBlockSource(CONFIG, "id_blocks", "servers"), 10);
+        long reserved = MetricsRegistry.INSTANCE.getCount(MetricsRegistry.ID_BLOCK_RESERVED);
+        final Set<Long> ids = Collections.synchronizedSet(new HashSet<Long>());
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int j = 0; j < 25; j++) {
+                            ids.add(instance.nextId());
+                        }
+                    } catch (Exception ex) {
+                        throw new IllegalStateException(ex);
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(100, ids.size());
+        assertEquals(10, MetricsRegistry.INSTANCE.getCount(MetricsRegistry.ID_BLOCK_RESERVED) - reserved);
+        assertEquals(Long.valueOf(1), Collections.min(ids));
+        assertEquals(Long.valueOf(100), Collections.max(ids));
+        HiLoGenerator other = new HiLoGenerator(new TableBlockSource(CONFIG, "id_blocks", "servers"), 10);
+        assertEquals(101, other.nextId());
+    }
+
+    /**
+     * Test of reserve method, of class TableBlockSource.
+     */
+    @Test
+    public void testReserveInTransaction() throws Exception {
+        System.out.println("reserve in transaction");
+        TxManager outer = new TxManager(CONFIG);
+        Connection connection = outer.getConnection();
+        TableBlockSource source = new TableBlockSource(CONFIG, "id_blocks", "orders");
+        assertEquals(1, source.reserve(5));
+        assertEquals(6, source.reserve(5));
+        assertFalse(connection.isClosed());
+        assertSame(connection, new TxManager(CONFIG).getConnection());
+        outer.finalCloseConnection();
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2015 www.hyberbin.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * Email:hyberbin@qq.com
+ */
+package org.jplus.hyb.database.id;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author hyberbin
+ */
+public class TimeOrderedGeneratorTest {
+
+    /**
+     * Test of nextId method, of class TimeOrderedGenerator.
+     */
+    @Test
+    public void testNextId() {
+        System.out.println("nextId");
+        TimeOrderedGenerator instance = new TimeOrderedGenerator(5);
+        long begin = System.currentTimeMillis();
+        long last = instance.nextId();
+        for (int i = 0; i < 100000; i++) {
+            long id = instance.nextId();
+            assertTrue(id > last);
+            last = id;
+        }
+        assertTrue(TimeOrderedGenerator.getTime(last) >= begin);
+        assertEquals(5, (last >>> 12) & TimeOrderedGenerator.MAX_NODE);
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2015 www.hyberbin.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * Email:hyberbin@qq.com
+ */
+package org.jplus.hyb.database.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import javax.management.ObjectName;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author hyberbin
+ */
+public class MetricsRegistryTest {
+
+    /**
+     * Test of increment method, of class MetricsRegistry.
+     */
+    @Test
+    public void testIncrement() {
+        System.out.println("increment");
+        MetricsRegistry instance = new MetricsRegistry();
+        instance.increment("a");
+        instance.add("a", 4);
+        instance.increment("b", "servers");
+        instance.add("b", "user", 2);
+        assertEquals(5, instance.getCount("a"));
+        assertEquals(3, instance.getCount("b"));
+        assertEquals(1, instance.getCount("b", "servers"));
+        assertEquals(2, instance.getCount("b", "user"));
+        assertEquals(0, instance.getCount("none"));
+    }
+
+    /**
+     * Test of snapshot method, of class MetricsRegistry.
+     */
+    @Test
+    public void testSnapshot() {
+        System.out.println("snapshot");
+        MetricsRegistry instance = new MetricsRegistry();
+        instance.increment("b", "servers");
+        instance.registerGauge("g", new Gauge() {
+            @Override
+            public long getValue() {
+                return 42;
+            }
+        });
+        Map<String, Long> snapshot = instance.snapshot();
+        assertEquals(Long.valueOf(1), snapshot.get("b"));
+        assertEquals(Long.valueOf(1), snapshot.get("b.servers"));
+        assertEquals(Long.valueOf(42), snapshot.get("g"));
+        instance.reset();
+        assertEquals(0, instance.getCount("b"));
+        assertEquals(42, instance.getGauge("g"));
+    }
+
+    /**
+     * Test of setEnabled method, of class MetricsRegistry.
+     */
+    @Test
+    public void testSetEnabled() {
+        System.out.println("setEnabled");
+        MetricsRegistry instance = new MetricsRegistry();
+        instance.setEnabled(false);
+        instance.increment("a");
+        assertEquals(0, instance.getCount("a"));
+    }
+
+    /**
+     * Test of registerMBean method, of class MetricsRegistry.
+     */
+    @Test
+    public void testRegisterMBean() throws Exception {
+        System.out.println("registerMBean");
+        MetricsRegistry instance = new MetricsRegistry();
+        instance.add("a", 3);
+        ObjectName name = instance.registerMBean("org.jplus.hyb:type=MetricsTest");
+        assertNotNull(name);
+        assertEquals(3L, ManagementFactory.getPlatformMBeanServer().getAttribute(name, "a"));
+        instance.unregisterMBean();
+        assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2015 www.hyberbin.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * Email:hyberbin@qq.com
+ */
+package org.jplus.hyb.database.sql;
+
+import org.jplus.hyb.database.adapter.MysqlAdapter;
+import org.jplus.hyb.database.adapter.OracleAdapter;
+import org.jplus.hyb.database.adapter.SqlserverAdapter;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author hyberbin
+ */
+public class SelectTest {
+
+    /**
+     * Test of toSql method, of class Select.
+     */
+    @Test
+    public void testToSql() {
+        System.out.println("toSql");
+        Select select = Select.from("news").columns("id", "title").where(Condition.eq("type")).orderBy("id", false).limit(20, 10);
+        assertEquals("select `id`,`title` from news where `type`=? order by `id` desc limit 20,10", select.toSql(new MysqlAdapter()));
+        assertEquals("select * from (select res.*,row_number() over (order by [id] desc) rn_ from (select [id],[title] from news where [type]=?) res) page_ where page_.rn_>20 and page_.rn_<=30 order by page_.rn_", select.toSql(new SqlserverAdapter()));
+        assertEquals("select * from ( select row_.*, rownum rownum_ from ( select \"id\",\"title\" from news where \"type\"=? order by \"id\" desc) row_ where rownum <= 30) where rownum_ > 20", select.toSql(new OracleAdapter()));
+        assertEquals("select * from (select res.*,row_number() over (order by [newsId]) rn_ from (select * from news) res) page_ where page_.rn_>0 and page_.rn_<=5 order by page_.rn_", Select.from("news").key("newsId").limit(0, 5).toSql(new SqlserverAdapter()));
+        assertEquals("select * from (select res.*,row_number() over (order by title) rn_ from (select * from news) res) page_ where page_.rn_>5 and page_.rn_<=10 order by page_.rn_", Select.parse("select * from news order by title").limit(5, 5).toSql(new SqlserverAdapter()));
+    }
+
+    /**
+     * Test of toCount method, of class Select.
+     */
+    @Test
+    public void testToCount() {
+        System.out.println("toCount");
+        MysqlAdapter adapter = new MysqlAdapter();
+        assertEquals("select count(*) from news where type=?", Select.from("news").columns("id").where("where type=? order by id").toCount().toSql(adapter));
+        assertEquals("select count(*) from (select type from news group by type) count_", Select.parse("select type from news group by type order by type").toCount().toSql(adapter));
+        assertEquals("select * from news where id in (select id from t order by id) limit 0,5", Select.parse("select * from news where id in (select id from t order by id)").limit(0, 5).toSql(adapter));
+    }
+}
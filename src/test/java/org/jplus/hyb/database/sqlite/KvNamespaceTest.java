@@ -0,0 +1,97 @@
+/*
+ * Copyright 2015 www.hyberbin.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * Email:hyberbin@qq.com
+ */
+package org.jplus.hyb.database.sqlite;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author hyberbin
+ */
+public class KvNamespaceTest {
+
+    private KvNamespace instance;
+
+    @Before
+    public void setUp() {
+        instance = SqliteUtil.getNamespace("test");
+        instance.clear();
+    }
+
+    /**
+     * Test of put method, of class KvNamespace.
+     */
+    @Test
+    public void testPut() throws Exception {
+        System.out.println("put");
+        instance.put("s", "text");
+        instance.put("l", 42);
+        instance.put("b", true);
+        instance.put("bytes", new byte[]{1, 2, 3});
+        instance.setCacheSize(100);
+        assertEquals("text", instance.getString("s"));
+        assertEquals(Long.valueOf(42), instance.getLong("l"));
+        assertSame(instance.get("l"), instance.get("l"));
+        assertTrue(instance.getBoolean("b"));
+        assertArrayEquals(new byte[]{1, 2, 3}, instance.getBytes("bytes"));
+        assertNull(instance.get("none"));
+        instance.remove("s");
+        assertNull(instance.get("s"));
+    }
+
+    /**
+     * Test of getAll method, of class KvNamespace.
+     */
+    @Test
+    public void testGetAll() throws Exception {
+        System.out.println("getAll");
+        Map<String, Object> map = new HashMap<String, Object>();
+        List<String> keys = new ArrayList<String>();
+        for (int i = 0; i < 1500; i++) {
+            map.put("k" + i, i);
+            keys.add("k" + i);
+        }
+        instance.putAll(map);
+        instance.setCacheSize(100);
+        keys.add("missing");
+        Map<String, Object> result = instance.getAll(keys);
+        assertEquals(1500, result.size());
+        assertEquals(Long.valueOf(1499), result.get("k1499"));
+    }
+
+    /**
+     * Test of sweep method, of class KvNamespace.
+     */
+    @Test
+    public void testSweep() throws Exception {
+        System.out.println("sweep");
+        instance.put("short", "v", 30);
+        instance.put("long", "v", 60000);
+        assertEquals("v", instance.getString("short"));
+        Thread.sleep(50);
+        assertNull(instance.getString("short"));
+        assertEquals(1, instance.sweep());
+        assertEquals("v", instance.getString("long"));
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright 2015 www.hyberbin.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * Email:hyberbin@qq.com
+ */
+package org.jplus.hyb.database.sqlite;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import org.jplus.hyb.database.crud.DatabaseAccess;
+import org.jplus.hyb.database.metrics.MetricsRegistry;
+import org.jplus.hyb.database.transaction.IDbManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author hyberbin
+ */
+public class SqliteUtilTest {
+
+    @Before
+    public void setUp() {
+        SqliteUtil.setFlushInterval(0);
+        SqliteUtil.clearProperties();
+    }
+
+    @After
+    public void tearDown() {
+        SqliteUtil.setFlushInterval(1000);
+        SqliteUtil.setFlushSize(500);
+    }
+
+    private static Object stored(String key) throws SQLException {
+        return new DatabaseAccess(SqliteUtil.getManager()).setParmeter(key).queryUnique("select value from properties where key=?");
+    }
+
+    /**
+     * Test of setProperty method, of class SqliteUtil.
+     */
+    @Test
+    public void testSetProperty() throws Exception {
+        System.out.println("setProperty");
+        SqliteUtil.setProperty("kv.a", "1");
+        assertEquals("1", SqliteUtil.getProperty("kv.a"));
+        assertNull(stored("kv.a"));
+        SqliteUtil.setProperty("kv.a", "2");
+        SqliteUtil.flush();
+        assertEquals("2", stored("kv.a"));
+        SqliteUtil.setProperty("kv.b", "3", true);
+        assertEquals("3", stored("kv.b"));
+        SqliteUtil.setFlushSize(2);
+        SqliteUtil.setProperty("kv.c", "4");
+        SqliteUtil.setProperty("kv.d", "5");
+        assertEquals("5", stored("kv.d"));
+    }
+
+    /**
+     * Test of getManager method, of class SqliteUtil.
+     */
+    @Test
+    public void testGetManager() throws Exception {
+        System.out.println("getManager");
+        for (boolean striped : new boolean[]{false, true}) {
+            SqliteUtil.STRIPED_MANAGER_MODE = striped;
+            try {
+                IDbManager manager = SqliteUtil.getManager();
+                ResultSet rs = manager.getConnection().createStatement().executeQuery("PRAGMA synchronous");
+                assertTrue(rs.next());
+                assertEquals(1, rs.getInt(1));//NORMAL
+                rs.close();
+                manager.closeConnection();
+            } finally {
+                SqliteUtil.STRIPED_MANAGER_MODE = false;
+            }
+        }
+    }
+
+    /**
+     * Throughput of setProperty and getProperty, of class SqliteUtil.
+     */
+    @Test
+    public void testThroughput() throws Exception {
+        System.out.println("throughput");
+        int count = 20000;
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            SqliteUtil.setProperty("bench." + i, String.valueOf(i));
+        }
+        SqliteUtil.flush();
+        long write = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            assertEquals(String.valueOf(i), SqliteUtil.getProperty("bench." + i));
+        }
+        long read = System.nanoTime() - start;
+        System.out.println("setProperty:" + count * 1000000000L / write + " ops/s,getProperty:" + count * 1000000000L / read + " ops/s");
+        assertEquals(String.valueOf(count - 1), stored("bench." + (count - 1)));
+    }
+
+    /**
+     * Test of setMultiProcessMode method, of class SqliteUtil.
+     */
+    @Test
+    public void testMultiProcessMode() throws Exception {
+        System.out.println("multiProcessMode");
+        SqliteUtil.setBusyTimeout(50);
+        SqliteUtil.setMultiProcessTtl(50);
+        SqliteUtil.setMultiProcessMode(true);
+        try {
+            final KvNamespace namespace = SqliteUtil.getNamespace("mp");
+            namespace.clear();
+            Connection other = DriverManager.getConnection("jdbc:sqlite:data.db");
+            other.createStatement().execute("begin immediate");//模拟另一个进程持有写锁
+            Thread[] threads = new Thread[8];
+            final List<Throwable> errors = new ArrayList<Throwable>();
+            for (int t = 0; t < threads.length; t++) {
+                final int base = t * 100;
+                threads[t] = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            for (int i = base; i < base + 100; i++) {
+                                namespace.put("k" + i, i);
+                            }
+                        } catch (SQLException ex) {
+                            errors.add(ex);
+                        }
+                    }
+                });
+                threads[t].start();
+            }
+            Thread.sleep(200);
+            other.createStatement().execute("commit");
+            other.close();
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            assertTrue(errors.isEmpty());
+            assertTrue(MetricsRegistry.INSTANCE.getCount(MetricsRegistry.TX_RETRY, "sqlite") > 0);
+            namespace.setCacheSize(1000);
+            List<String> keys = new ArrayList<String>();
+            for (int i = 0; i < 800; i++) {
+                keys.add("k" + i);
+            }
+            assertEquals(800, namespace.getAll(keys).size());
+            SqliteUtil.setProperty("mp.a", "1", true);
+            SqliteUtil.setCacheSize(1024 * 1024);
+            assertEquals("1", SqliteUtil.getProperty("mp.a"));
+            other = DriverManager.getConnection("jdbc:sqlite:data.db");
+            other.createStatement().executeUpdate("update properties set value='2' where key='mp.a'");//另一个进程修改属性
+            other.close();
+            Thread.sleep(80);
+            assertEquals("2", SqliteUtil.getProperty("mp.a"));
+        } finally {
+            SqliteUtil.setMultiProcessMode(false);
+            SqliteUtil.setBusyTimeout(5000);
+            SqliteUtil.setMultiProcessTtl(1000);
+        }
+    }
+}
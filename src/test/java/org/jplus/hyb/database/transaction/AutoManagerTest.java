@@ -0,0 +1,90 @@
+/*
+ * Copyright 2015 www.hyberbin.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * Email:hyberbin@qq.com
+ */
+package org.jplus.hyb.database.transaction;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.SQLException;
+import org.jplus.hyb.database.config.DbConfig;
+import org.jplus.hyb.database.config.SimpleConfigurator;
+import org.jplus.hyb.database.metrics.MetricsRegistry;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author hyberbin
+ */
+public class AutoManagerTest {
+
+    private static final String CONFIG = "auto";
+    private static File db;
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        db = File.createTempFile("auto", ".db");
+        SimpleConfigurator.addConfigurator(new DbConfig(DbConfig.DRIVER_SQLITE, "jdbc:sqlite:" + db.getAbsolutePath(), "", "", CONFIG));
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        db.delete();
+        AutoManager.setValidationPolicy(ValidationPolicy.IDLE);
+    }
+
+    /**
+     * Test of getConnection method, of class AutoManager.
+     */
+    @Test
+    public void testGetConnection() throws Exception {
+        System.out.println("getConnection");
+        AutoManager.setValidationPolicy(ValidationPolicy.IDLE);
+        AutoManager manager = new AutoManager(CONFIG);
+        Connection first = manager.getConnection();
+        manager.closeConnection();
+        long validated = MetricsRegistry.INSTANCE.getCount(MetricsRegistry.CONNECTION_VALIDATED);
+        assertSame(first, new AutoManager(CONFIG).getConnection());
+        assertEquals(validated, MetricsRegistry.INSTANCE.getCount(MetricsRegistry.CONNECTION_VALIDATED));
+        AutoManager.setValidationPolicy(ValidationPolicy.ALWAYS);
+        new AutoManager(CONFIG).getConnection();
+        assertEquals(validated + 1, MetricsRegistry.INSTANCE.getCount(MetricsRegistry.CONNECTION_VALIDATED));
+        manager.finalCloseConnection();
+    }
+
+    /**
+     * Test of recover method, of class AutoManager.
+     */
+    @Test
+    public void testRecover() throws Exception {
+        System.out.println("recover");
+        AutoManager.setValidationPolicy(ValidationPolicy.ON_ERROR);
+        AutoManager manager = new AutoManager(CONFIG);
+        Connection first = manager.getConnection();
+        assertFalse(manager.recover(new SQLException("syntax error")));
+        assertTrue(manager.recover(new SQLException("communications link failure", "08S01")));
+        assertTrue(first.isClosed());
+        Connection second = manager.getConnection();
+        assertNotSame(first, second);
+        TxManager txManager = new TxManager(CONFIG);
+        txManager.getConnection();
+        assertFalse(txManager.recover(new SQLException("communications link failure", "08S01")));
+        assertTrue(second.isClosed());
+    }
+}
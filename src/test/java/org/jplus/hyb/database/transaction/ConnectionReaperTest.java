@@ -0,0 +1,202 @@
+/*
+ * Copyright 2015 www.hyberbin.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * Email:hyberbin@qq.com
+ */
+package org.jplus.hyb.database.transaction;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicReference;
+import org.jplus.hyb.database.config.DbConfig;
+import org.jplus.hyb.database.config.SimpleConfigurator;
+import org.jplus.hyb.database.metrics.MetricsRegistry;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author hyberbin
+ */
+public class ConnectionReaperTest {
+
+    private static final String CONFIG = "reaper";
+    private static File db;
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        db = File.createTempFile("reaper", ".db");
+        SimpleConfigurator.addConfigurator(new DbConfig(DbConfig.DRIVER_SQLITE, "jdbc:sqlite:" + db.getAbsolutePath(), "", "", CONFIG));
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        db.delete();
+    }
+
+    @After
+    public void tearDown() {
+        ConnectionReaper.setMaxIdleMillis(600000);
+        ConnectionReaper.setMaxAgeMillis(0);
+    }
+
+    /**
+     * Test of reap method, of class ConnectionReaper.
+     */
+    @Test
+    public void testReapDeadThread() throws Exception {
+        System.out.println("reap dead thread");
+        final AtomicReference<Connection> leaked = new AtomicReference<Connection>();
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    leaked.set(new AutoManager(CONFIG).getConnection());
+                } catch (SQLException ex) {
+                    throw new IllegalStateException(ex);
+                }
+            }
+        });
+        thread.start();
+        thread.join();
+        long reclaimed = MetricsRegistry.INSTANCE.getCount(MetricsRegistry.CONNECTION_RECLAIMED, "dead");
+        assertTrue(ConnectionReaper.reap() >= 1);
+        assertTrue(leaked.get().isClosed());
+        assertTrue(MetricsRegistry.INSTANCE.getCount(MetricsRegistry.CONNECTION_RECLAIMED, "dead") > reclaimed);
+    }
+
+    /**
+     * Test of reap method, of class ConnectionReaper.
+     */
+    @Test
+    public void testReapDeadTransaction() throws Exception {
+        System.out.println("reap dead transaction");
+        AutoManager manager = new AutoManager(CONFIG);
+        manager.getConnection().createStatement().executeUpdate("create table if not exists reap_test(id integer)");
+        manager.getConnection().createStatement().executeUpdate("delete from reap_test");
+        manager.closeConnection();
+        final AtomicReference<Connection> leaked = new AtomicReference<Connection>();
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Connection connection = new TxManager(CONFIG).getConnection();
+                    connection.createStatement().executeUpdate("insert into reap_test values(1)");
+                    leaked.set(connection);//没有提交线程就结束了
+                } catch (SQLException ex) {
+                    throw new IllegalStateException(ex);
+                }
+            }
+        });
+        thread.start();
+        thread.join();
+        assertNotNull(leaked.get());
+        ConnectionReaper.reap();
+        assertTrue(leaked.get().isClosed());
+        ResultSet rs = manager.getConnection().createStatement().executeQuery("select count(*) from reap_test");
+        assertTrue(rs.next());
+        assertEquals(0, rs.getInt(1));
+        rs.close();
+        manager.finalCloseConnection();
+    }
+
+    /**
+     * Test of reap method, of class ConnectionReaper.
+     */
+    @Test
+    public void testReapIdle() throws Exception {
+        System.out.println("reap idle");
+        AutoManager manager = new AutoManager(CONFIG);
+        Connection first = manager.getConnection();
+        ConnectionReaper.setMaxIdleMillis(1);
+        Thread.sleep(5);
+        ConnectionReaper.reap();
+        assertFalse(first.isClosed());//还没有归还
+        manager.closeConnection();
+        Thread.sleep(5);
+        ConnectionReaper.reap();
+        assertTrue(first.isClosed());
+        ConnectionReaper.setMaxIdleMillis(600000);
+        Connection second = new AutoManager(CONFIG).getConnection();
+        assertNotSame(first, second);
+        assertFalse(second.isClosed());
+        new AutoManager(CONFIG).finalCloseConnection();
+    }
+
+    /**
+     * Test of reap method, of class ConnectionReaper.
+     */
+    @Test
+    public void testReapInTransaction() throws Exception {
+        System.out.println("reap in transaction");
+        TxManager manager = new TxManager(CONFIG);
+        Connection connection = manager.getConnection();
+        manager.closeConnection();
+        ConnectionReaper.setMaxIdleMillis(1);
+        Thread.sleep(5);
+        ConnectionReaper.reap();
+        assertFalse(connection.isClosed());
+        manager.commit();
+        Thread.sleep(5);
+        ConnectionReaper.reap();
+        assertTrue(connection.isClosed());
+        new AutoManager(CONFIG).finalCloseConnection();
+    }
+
+    /**
+     * Test of setMaxAgeMillis method, of class ConnectionReaper.
+     */
+    @Test
+    public void testMaxAge() throws Exception {
+        System.out.println("setMaxAgeMillis");
+        AutoManager manager = new AutoManager(CONFIG);
+        Connection first = manager.getConnection();
+        ConnectionReaper.setMaxAgeMillis(1);
+        Thread.sleep(5);
+        Connection second = new AutoManager(CONFIG).getConnection();
+        assertTrue(first.isClosed());
+        assertNotSame(first, second);
+        new AutoManager(CONFIG).finalCloseConnection();
+    }
+
+    /**
+     * Test of close method, of class TransactionScope.
+     */
+    @Test
+    public void testTransactionScope() throws Exception {
+        System.out.println("TransactionScope");
+        try (TransactionScope scope = TransactionScope.begin(CONFIG)) {
+            Connection connection = scope.getManager().getConnection();
+            connection.createStatement().executeUpdate("create table if not exists scope_test(id integer)");
+            scope.commit();
+        }
+        try (TransactionScope scope = TransactionScope.begin(CONFIG)) {
+            scope.getManager().getConnection().createStatement().executeUpdate("insert into scope_test values(1)");
+        }
+        int before = ConnectionReaper.size();
+        try (TransactionScope scope = TransactionScope.begin(CONFIG)) {
+            ResultSet rs = scope.getManager().getConnection().createStatement().executeQuery("select count(*) from scope_test");
+            assertTrue(rs.next());
+            assertEquals(0, rs.getInt(1));
+            rs.close();
+        }
+        assertEquals(before, ConnectionReaper.size());
+    }
+}
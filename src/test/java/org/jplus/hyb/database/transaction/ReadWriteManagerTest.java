@@ -0,0 +1,167 @@
+/*
+ * Copyright 2015 www.hyberbin.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * Email:hyberbin@qq.com
+ */
+package org.jplus.hyb.database.transaction;
+
+import java.io.File;
+import java.sql.SQLException;
+import java.util.List;
+import org.jplus.hyb.database.config.DbConfig;
+import org.jplus.hyb.database.config.SimpleConfigurator;
+import org.jplus.hyb.database.crud.DatabaseAccess;
+import org.jplus.hyb.database.crud.Hyberbin;
+import org.jplus.hyb.database.metrics.MetricsRegistry;
+import org.jplus.model.Servers;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author hyberbin
+ */
+public class ReadWriteManagerTest {
+
+    private static final String PRIMARY = "rw_primary";
+    private static final String REPLICA = "rw_replica";
+    private static final String BROKEN = "rw_broken";
+    private static File primaryDb;
+    private static File replicaDb;
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        primaryDb = File.createTempFile("rw_primary", ".db");
+        SimpleConfigurator.addConfigurator(new DbConfig(DbConfig.DRIVER_SQLITE, "jdbc:sqlite:" + primaryDb.getAbsolutePath(), "", "", PRIMARY));
+        replicaDb = File.createTempFile("rw_replica", ".db");
+        SimpleConfigurator.addConfigurator(new DbConfig(DbConfig.DRIVER_SQLITE, "jdbc:sqlite:" + replicaDb.getAbsolutePath(), "", "", REPLICA));
+        SimpleConfigurator.addConfigurator(new DbConfig(DbConfig.DRIVER_SQLITE, "jdbc:sqlite:no/such/dir/rw.db", "", "", BROKEN));
+        init(PRIMARY);
+        init(REPLICA);
+    }
+
+    private static void init(String config) throws SQLException {
+        DatabaseAccess access = new DatabaseAccess(new AutoManager(config));
+        access.update("create table if not exists servers(id integer,name varchar(255),adds varchar(255),note varchar(255),type int)");
+        access.update("delete from servers");
+        access.update("insert into servers(id,name) values(1,'" + config + "')");
+        new AutoManager(config).finalCloseConnection();
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        primaryDb.delete();
+        replicaDb.delete();
+        ReadWriteManager.clearReplicas(PRIMARY);
+    }
+
+    @After
+    public void tearDown() {
+        ReadWriteManager.clearReplicas(PRIMARY);
+        ReadWriteManager.setStickyMillis(1000);
+    }
+
+    private static String readName() throws SQLException {
+        return readName(new ReadWriteManager(PRIMARY));
+    }
+
+    private static String readName(IDbManager manager) throws SQLException {
+        List<Servers> list = new Hyberbin<Servers>(new Servers(), manager).showList("select * from servers where id=1");
+        return list.get(0).getName();
+    }
+
+    /**
+     * Test of getReadConnection method, of class ReadWriteManager.
+     */
+    @Test
+    public void testGetReadConnection() throws Exception {
+        System.out.println("getReadConnection");
+        assertEquals(PRIMARY, readName());
+        ReadWriteManager.addReplica(PRIMARY, REPLICA);
+        ReadWriteManager.setStickyMillis(0);
+        assertEquals(REPLICA, readName());
+        ReadWriteManager.setStickyMillis(60000);
+        Servers servers = new Servers();
+        servers.setId(2);
+        servers.setName("written");
+        new Hyberbin<Servers>(servers, new ReadWriteManager(PRIMARY)).insert("");
+        assertEquals(PRIMARY, readName());
+    }
+
+    /**
+     * Test of getReadConnection method, of class ReadWriteManager.
+     */
+    @Test
+    public void testEject() throws Exception {
+        System.out.println("eject");
+        ReadWriteManager.setStickyMillis(0);
+        ReadWriteManager.addReplica(PRIMARY, BROKEN);
+        ReadWriteManager.addReplica(PRIMARY, REPLICA);
+        long ejected = MetricsRegistry.INSTANCE.getCount(MetricsRegistry.RW_REPLICA_EJECTED, BROKEN);
+        for (int i = 0; i < 4; i++) {
+            assertEquals(REPLICA, readName());
+        }
+        assertEquals(ejected + 1, MetricsRegistry.INSTANCE.getCount(MetricsRegistry.RW_REPLICA_EJECTED, BROKEN));
+    }
+
+    /**
+     * Test of recover method, of class ReadWriteManager.
+     */
+    @Test
+    public void testRecover() throws Exception {
+        System.out.println("recover");
+        ReadWriteManager.setStickyMillis(0);
+        ReadWriteManager.addReplica(PRIMARY, REPLICA);
+        try {
+            new Hyberbin<Servers>(new Servers(), new ReadWriteManager(PRIMARY)).showList("select * from no_such_table");
+            fail("expected SQLException");
+        } catch (SQLException ex) {
+            assertEquals(0, ReadWriteManager.getActiveReads(PRIMARY));
+        }
+        assertEquals(REPLICA, readName());
+        assertEquals(0, ReadWriteManager.getActiveReads(PRIMARY));
+        try {
+            ReadWriteManager.setEjectMillis(0);
+            fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException ex) {
+            assertEquals(30000, ReadWriteManager.getEjectMillis());
+        }
+    }
+
+    /**
+     * Test of getReadConnection method with a TxManager primary, of class ReadWriteManager.
+     */
+    @Test
+    public void testTxManagerPrimary() throws Exception {
+        System.out.println("TxManager primary");
+        ReadWriteManager.setStickyMillis(0);
+        ReadWriteManager.addReplica(PRIMARY, REPLICA);
+        ReadWriteManager manager = new ReadWriteManager(PRIMARY, TxManager.class);
+        assertEquals(REPLICA, readName(manager));//还没有写过,读从库
+        Servers servers = new Servers();
+        servers.setId(3);
+        servers.setName("tx");
+        new Hyberbin<Servers>(servers, manager).insert("");
+        assertEquals(PRIMARY, readName(manager));
+        assertEquals(PRIMARY, readName(new ReadWriteManager(PRIMARY, TxManager.class)));//同一线程的事务还没有结束
+        manager.commit();
+        assertEquals(REPLICA, readName(manager));
+        new DatabaseAccess(manager).update("delete from servers where id=3");
+        manager.finalCloseConnection();
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2015 www.hyberbin.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * Email:hyberbin@qq.com
+ */
+package org.jplus.hyb.database.transaction;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import org.jplus.hyb.database.config.DbConfig;
+import org.jplus.hyb.database.config.SimpleConfigurator;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author hyberbin
+ */
+public class StripedManagerTest {
+
+    private static final String CONFIG = "striped";
+    private static File db;
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        db = File.createTempFile("striped", ".db");
+        SimpleConfigurator.addConfigurator(new DbConfig(DbConfig.DRIVER_SQLITE, "jdbc:sqlite:" + db.getAbsolutePath(), "", "", CONFIG));
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        db.delete();
+    }
+
+    /**
+     * Test of getConnection method, of class StripedManager.
+     */
+    @Test
+    public void testGetConnection() throws Exception {
+        System.out.println("getConnection");
+        StripedManager.setStripeCount(2);
+        final Set<Connection> connections = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<Connection, Boolean>()));
+        Thread[] threads = new Thread[16];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        StripedManager manager = new StripedManager(CONFIG);
+                        Connection first = manager.getConnection();
+                        assertSame(first, new StripedManager(CONFIG).getConnection());
+                        connections.add(first);
+                        manager.closeConnection();
+                    } catch (SQLException ex) {
+                        throw new IllegalStateException(ex);
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertTrue(connections.size() <= 2);
+        new StripedManager(CONFIG).finalCloseConnection();
+        for (Connection connection : connections) {
+            assertTrue(connection.isClosed());
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2015 www.hyberbin.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * Email:hyberbin@qq.com
+ */
+package org.jplus.hyb.database.transaction;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransactionRollbackException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.jplus.hyb.database.config.DbConfig;
+import org.jplus.hyb.database.config.SimpleConfigurator;
+import org.jplus.hyb.database.crud.DatabaseAccess;
+import org.jplus.hyb.database.metrics.MetricsRegistry;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author hyberbin
+ */
+public class TransactionTemplateTest {
+
+    private static final String CONFIG = "template";
+    private static File db;
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        db = File.createTempFile("template", ".db");
+        SimpleConfigurator.addConfigurator(new DbConfig(DbConfig.DRIVER_SQLITE, "jdbc:sqlite:" + db.getAbsolutePath(), "", "", CONFIG));
+        new TransactionTemplate(CONFIG).execute(new TransactionCallback<Integer>() {
+            @Override
+            public Integer doInTransaction(IDbManager manager) throws SQLException {
+                DatabaseAccess access = new DatabaseAccess(manager);
+                access.update("create table if not exists template_test(id integer)");
+                return access.update("delete from template_test");
+            }
+        });
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        db.delete();
+    }
+
+    /**
+     * Test of execute method, of class TransactionTemplate.
+     */
+    @Test
+    public void testExecuteRetry() throws Exception {
+        System.out.println("execute retry");
+        final AtomicInteger attempts = new AtomicInteger();
+        long retries = MetricsRegistry.INSTANCE.getCount(MetricsRegistry.TX_RETRY, CONFIG);
+        TransactionTemplate template = new TransactionTemplate(CONFIG);
+        template.setBackoff(1, 5);
+        Integer result = template.execute(new TransactionCallback<Integer>() {
+            @Override
+            public Integer doInTransaction(IDbManager manager) throws SQLException {
+                new DatabaseAccess(manager).update("insert into template_test values(1)");
+                if (attempts.incrementAndGet() < 3) {
+                    throw new SQLTransactionRollbackException("deadlock", "40001");
+                }
+                return ((Number) new DatabaseAccess(manager).queryUnique("select count(*) from template_test")).intValue();
+            }
+        });
+        assertEquals(3, attempts.get());
+        assertEquals(Integer.valueOf(1), result);
+        assertEquals(retries + 2, MetricsRegistry.INSTANCE.getCount(MetricsRegistry.TX_RETRY, CONFIG));
+        new DatabaseAccess(new SimpleManager(CONFIG)).update("delete from template_test");
+    }
+
+    /**
+     * Test of execute method, of class TransactionTemplate.
+     */
+    @Test
+    public void testExecuteNotRetryable() throws Exception {
+        System.out.println("execute not retryable");
+        final AtomicInteger attempts = new AtomicInteger();
+        try {
+            new TransactionTemplate(CONFIG).execute(new TransactionCallback<Object>() {
+                @Override
+                public Object doInTransaction(IDbManager manager) throws SQLException {
+                    attempts.incrementAndGet();
+                    new DatabaseAccess(manager).update("insert into template_test values(2)");
+                    throw new SQLException("constraint", "23000", 19);
+                }
+            });
+            fail("expected SQLException");
+        } catch (SQLException ex) {
+            assertEquals("23000", ex.getSQLState());
+        }
+        assertEquals(1, attempts.get());
+        Object count = new DatabaseAccess(new SimpleManager(CONFIG)).queryUnique("select count(*) from template_test where id=2");
+        assertEquals(0, ((Number) count).intValue());
+    }
+
+    /**
+     * Test of execute method, of class TransactionTemplate.
+     */
+    @Test
+    public void testExecuteJoin() throws Exception {
+        System.out.println("execute join");
+        TxManager outer = new TxManager(CONFIG);
+        Connection connection = outer.getConnection();
+        new DatabaseAccess(outer).update("insert into template_test values(3)");
+        new TransactionTemplate(CONFIG).execute(new TransactionCallback<Integer>() {
+            @Override
+            public Integer doInTransaction(IDbManager manager) throws SQLException {
+                assertSame(connection, manager.getConnection());
+                return new DatabaseAccess(manager).update("insert into template_test values(3)");
+            }
+        });
+        assertFalse(connection.isClosed());
+        outer.rollBack();
+        outer.finalCloseConnection();
+        Object count = new DatabaseAccess(new SimpleManager(CONFIG)).queryUnique("select count(*) from template_test where id=3");
+        assertEquals(0, ((Number) count).intValue());
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2015 www.hyberbin.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * Email:hyberbin@qq.com
+ */
+package org.jplus.hyb.database.transfer;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import org.jplus.hyb.database.config.DbConfig;
+import org.jplus.hyb.database.config.SimpleConfigurator;
+import org.jplus.hyb.database.transaction.IDbManager;
+import org.jplus.hyb.database.transaction.SimpleManager;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author hyberbin
+ */
+public class TableExporterTest {
+
+    private static final String CONFIG = "export";
+    private static File db;
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        db = File.createTempFile("export", ".db");
+        SimpleConfigurator.addConfigurator(new DbConfig(DbConfig.DRIVER_SQLITE, "jdbc:sqlite:" + db.getAbsolutePath(), "", "", CONFIG));
+        IDbManager manager = new SimpleManager(CONFIG);
+        Connection conn = manager.getConnection();
+        Statement stm = conn.createStatement();
+        stm.execute("drop table if exists export_item");
+        stm.execute("create table export_item(id integer primary key, name varchar(32), price double)");
+        stm.close();
+        PreparedStatement ps = conn.prepareStatement("insert into export_item values(?,?,?)");
+        for (int i = 1; i <= 1000; i++) {
+            ps.setInt(1, i);
+            ps.setString(2, i % 10 == 0 ? "a,\"b\"" : i % 7 == 0 ? null : i % 13 == 0 ? "" : "item" + i);
+            ps.setDouble(3, i / 2.0);
+            ps.addBatch();
+        }
+        ps.executeBatch();
+        ps.close();
+        manager.closeConnection();
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        db.delete();
+    }
+
+    private static List<String> readLines(File file, boolean gzip) throws Exception {
+        InputStream in = new FileInputStream(file);
+        if (gzip) {
+            in = new GZIPInputStream(in);
+        }
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+        List<String> lines = new ArrayList<String>();
+        for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+            lines.add(line);
+        }
+        reader.close();
+        return lines;
+    }
+
+    /**
+     * Test of export method, of class TableExporter.
+     */
+    @Test
+    public void testExportCsv() throws Exception {
+        System.out.println("exportCsv");
+        TableExporter instance = new TableExporter(CONFIG, "export_item", "id");
+        instance.setPartitions(3);
+        File file = new File("export_item.csv");
+        TransferReport report = instance.export(file);
+        assertEquals(1000, report.getRows());
+        assertEquals(3, report.getFinishedParts());
+        assertTrue(report.isDone());
+        List<String> lines = readLines(file, false);
+        assertEquals(1001, lines.size());
+        assertEquals("id,name,price", lines.get(0));
+        assertEquals("1,item1,0.5", lines.get(1));
+        assertEquals("7,,3.5", lines.get(7));
+        assertEquals("10,\"a,\"\"b\"\"\",5.0", lines.get(10));
+        assertEquals("13,\"\",6.5", lines.get(13));
+        assertEquals("1000,\"a,\"\"b\"\"\",500.0", lines.get(1000));
+        file.delete();
+    }
+
+    /**
+     * Test of export method with gzip, of class TableExporter.
+     */
+    @Test
+    public void testExportJsonGzip() throws Exception {
+        System.out.println("exportJsonGzip");
+        TableExporter instance = new TableExporter(CONFIG, "export_item", "id");
+        instance.setFormat(ExportFormat.NDJSON);
+        instance.setGzip(true);
+        File file = new File("export_item.json.gz");
+        assertEquals(1000, instance.export(file).getRows());
+        List<String> lines = readLines(file, true);
+        assertEquals(1000, lines.size());
+        assertEquals("{\"id\":7,\"name\":null,\"price\":3.5}", lines.get(6));
+        assertEquals("{\"id\":10,\"name\":\"a,\\\"b\\\"\",\"price\":5.0}", lines.get(9));
+        file.delete();
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2015 www.hyberbin.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * Email:hyberbin@qq.com
+ */
+package org.jplus.hyb.database.transfer;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.List;
+import org.jplus.hyb.database.config.DbConfig;
+import org.jplus.hyb.database.config.SimpleConfigurator;
+import org.jplus.hyb.database.crud.DatabaseAccess;
+import org.jplus.hyb.database.transaction.SimpleManager;
+import org.jplus.model.Team;
+import org.jplus.util.FileUtils;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author hyberbin
+ */
+public class TableImporterTest {
+
+    private static final String CONFIG = "import";
+    private static File db;
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        db = File.createTempFile("import", ".db");
+        SimpleConfigurator.addConfigurator(new DbConfig(DbConfig.DRIVER_SQLITE, "jdbc:sqlite:" + db.getAbsolutePath(), "", "", CONFIG));
+        new DatabaseAccess(new SimpleManager(CONFIG)).update("drop table if exists team");
+        new DatabaseAccess(new SimpleManager(CONFIG)).update("create table team(teamId integer primary key, name varchar(64))");
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        db.delete();
+    }
+
+    private static File write(String name, String text) throws Exception {
+        File file = new File(name);
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        writer.write(text);
+        writer.close();
+        return file;
+    }
+
+    /**
+     * Test of importFile method, of class TableImporter.
+     */
+    @Test
+    public void testImportFile() throws Exception {
+        System.out.println("importFile");
+        StringBuilder csv = new StringBuilder("teamId,NAME,unknown\r\n");
+        for (int i = 1; i <= 500; i++) {
+            csv.append(i).append(",team").append(i).append(",x\r\n");
+        }
+        csv.append("x,bad,x\n");
+        csv.append("501,\"multi\nline, \"\"quoted\"\"\",x\n");
+        csv.append("1,duplicate,x\n");
+        File file = write("import_team.csv", csv.toString());
+        TableImporter<Team> instance = new TableImporter<Team>(CONFIG, Team.class);
+        instance.setBatchSize(100);
+        instance.setParsers(2);
+        instance.setWriters(2);
+        TransferReport report = instance.importFile(file);
+        assertEquals(501, report.getRows());
+        assertEquals(2, report.getRejected());
+        assertEquals(file.length(), report.getBytes());
+        assertEquals(501, ((Number) new DatabaseAccess(new SimpleManager(CONFIG)).queryUnique("select count(*) from team")).intValue());
+        File rejected = new File("import_team.csv.rejected");
+        List lines = FileUtils.readLines(rejected, "UTF-8");
+        assertEquals("teamId,NAME,unknown", lines.get(0));
+        assertTrue(lines.contains("x,bad,x"));
+        //写入线程并行,两条teamId为1的记录哪条先写入不确定,被拒绝的是另一条
+        assertTrue(lines.contains("1,duplicate,x") || lines.contains("1,team1,x"));
+        assertEquals(3, lines.size());
+        file.delete();
+        rejected.delete();
+    }
+}
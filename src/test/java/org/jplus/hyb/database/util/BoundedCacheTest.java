@@ -0,0 +1,108 @@
+/*
+ * Copyright 2015 www.hyberbin.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * Email:hyberbin@qq.com
+ */
+package org.jplus.hyb.database.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author hyberbin
+ */
+public class BoundedCacheTest {
+
+    /**
+     * Test of put method, of class BoundedCache.
+     */
+    @Test
+    public void testPut() {
+        System.out.println("put");
+        BoundedCache<String, String> instance = new BoundedCache<String, String>("test", 3);
+        instance.put("a", "1");
+        instance.put("b", "2");
+        instance.put("c", "3");
+        assertEquals("1", instance.get("a"));
+        instance.put("d", "4");
+        assertNull(instance.get("b"));
+        assertEquals("1", instance.get("a"));
+        assertEquals(3, instance.size());
+        assertEquals(1, instance.getEvictionCount());
+        assertEquals(2, instance.getHitCount());
+        assertEquals(1, instance.getMissCount());
+        instance.putIfAbsent("a", "x");
+        assertEquals("1", instance.get("a"));
+    }
+
+    /**
+     * Test of weigher, of class BoundedCache.
+     */
+    @Test
+    public void testWeigher() {
+        System.out.println("weigher");
+        BoundedCache<String, String> instance = new BoundedCache<String, String>("test", 10, new BoundedCache.Weigher<String, String>() {
+            @Override
+            public int weigh(String key, String value) {
+                return value == null ? 1 : value.length();
+            }
+        });
+        instance.put("a", "12345");
+        instance.put("b", "1234");
+        assertEquals(9, instance.weight());
+        instance.put("c", "12");
+        assertNull(instance.get("a"));
+        assertEquals(6, instance.weight());
+    }
+
+    /**
+     * Test of putNegative method, of class BoundedCache.
+     */
+    @Test
+    public void testPutNegative() throws Exception {
+        System.out.println("putNegative");
+        BoundedCache<String, String> instance = new BoundedCache<String, String>("test", 10);
+        instance.setNegativeTtl(50);
+        instance.putNegative("a");
+        assertTrue(instance.isNegative("a"));
+        assertNull(instance.get("a"));
+        assertEquals(1, instance.getNegativeHitCount());
+        instance.put("a", "1");
+        assertFalse(instance.isNegative("a"));
+        instance.putNegative("b");
+        Thread.sleep(80);
+        assertFalse(instance.isNegative("b"));
+        assertNull(instance.get("b"));
+        assertEquals(1, instance.getMissCount());
+    }
+
+    /**
+     * Test of setTtl method, of class BoundedCache.
+     */
+    @Test
+    public void testTtl() throws Exception {
+        System.out.println("ttl");
+        BoundedCache<String, String> instance = new BoundedCache<String, String>("test", 10);
+        instance.put("a", "1");
+        instance.setTtl(50);
+        instance.put("b", "2");
+        assertEquals("2", instance.get("b"));
+        Thread.sleep(80);
+        assertEquals("1", instance.get("a"));
+        assertNull(instance.get("b"));
+        assertFalse(instance.isNegative("b"));
+    }
+}
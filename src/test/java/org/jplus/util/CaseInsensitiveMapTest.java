@@ -0,0 +1,110 @@
+/*
+ * Copyright 2015 www.hyberbin.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * Email:hyberbin@qq.com
+ */
+package org.jplus.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author hyberbin
+ */
+public class CaseInsensitiveMapTest {
+
+    /**
+     * Test of put method, of class CaseInsensitiveMap.
+     */
+    @Test
+    public void testPut() {
+        System.out.println("put");
+        CaseInsensitiveMap<Integer> instance = new CaseInsensitiveMap<Integer>(2);
+        for (int i = 0; i < 100; i++) {
+            assertNull(instance.put("Column" + i, i));
+        }
+        assertEquals(Integer.valueOf(5), instance.put("COLUMN5", 50));
+        assertEquals(100, instance.size());
+        assertEquals(Integer.valueOf(50), instance.get("column5"));
+        assertEquals("Column5", instance.getKey("cOlUmN5"));
+        assertTrue(instance.containsKey("COLUMN99"));
+        assertFalse(instance.containsKey(99));
+        assertEquals(Integer.valueOf(7), instance.remove("column7"));
+        assertNull(instance.get("Column7"));
+        assertEquals(Integer.valueOf(8), instance.get("COLUMN8"));
+        assertEquals(99, instance.size());
+        assertEquals(CaseInsensitiveMap.hash("Straße"), CaseInsensitiveMap.hash("STRAßE"));
+    }
+
+    /**
+     * Test of CaseInsensitiveMap(CaseInsensitiveMap) constructor, of class CaseInsensitiveMap.
+     */
+    @Test
+    public void testTemplate() {
+        System.out.println("template");
+        CaseInsensitiveMap<Object> template = new CaseInsensitiveMap<Object>();
+        template.put("id", null);
+        template.put("Name", null);
+        CaseInsensitiveMap<Object> row = new CaseInsensitiveMap<Object>(template);
+        for (Map.Entry<String, Object> entry : row.entrySet()) {
+            entry.setValue(entry.getKey().length());
+        }
+        row.put("extra", 1);
+        Iterator<String> keys = row.keySet().iterator();
+        keys.next();
+        keys.remove();
+        assertEquals(Arrays.asList("Name", "extra"), Arrays.asList(row.keySet().toArray()));
+        assertEquals(Arrays.asList("id", "Name"), Arrays.asList(template.keySet().toArray()));
+        assertNull(template.get("NAME"));
+        Map<String, Object> expected = new HashMap<String, Object>();
+        expected.put("Name", 4);
+        expected.put("extra", 1);
+        assertEquals(expected, row);
+    }
+
+    /**
+     * Test of serialization, of class CaseInsensitiveMap.
+     */
+    @Test
+    public void testSerialize() throws Exception {
+        System.out.println("serialize");
+        CaseInsensitiveMap<Object> template = new CaseInsensitiveMap<Object>();
+        template.put("Id", null);
+        CaseInsensitiveMap<Object> row = new CaseInsensitiveMap<Object>(template);
+        row.put("id", 1);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(Arrays.asList(template, row));
+        out.close();
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        List<?> list = (List<?>) in.readObject();
+        @SuppressWarnings("unchecked")
+        CaseInsensitiveMap<Object> copy = (CaseInsensitiveMap<Object>) list.get(1);
+        assertEquals(1, copy.get("ID"));
+        copy.put("name", "a");//共用的键在修改前复制
+        assertEquals(Arrays.asList("Id"), Arrays.asList(((Map<?, ?>) list.get(0)).keySet().toArray()));
+        assertEquals(Arrays.asList("Id", "name"), Arrays.asList(copy.keySet().toArray()));
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2015 www.hyberbin.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * Email:hyberbin@qq.com
+ */
+package org.jplus.util;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author hyberbin
+ */
+public class ConverterRegistryTest {
+
+    /**
+     * Test of convert method, of class ConverterRegistry.
+     */
+    @Test
+    public void testConvert() {
+        System.out.println("convert");
+        ConverterRegistry instance = new ConverterRegistry();
+        assertEquals(Integer.valueOf(5), instance.convert(5L, Integer.TYPE));
+        assertSame(instance.convert(7L, Integer.class), instance.convert(7, Integer.class));
+        assertEquals(new BigDecimal("2.5"), instance.convert(2.5D, BigDecimal.class));
+        assertEquals(BigInteger.valueOf(3), instance.convert(new BigDecimal("3.9"), BigInteger.class));
+        assertEquals(Long.valueOf(12), instance.convert("12", Long.TYPE));
+        assertEquals(Integer.valueOf(0), instance.convert(null, Integer.TYPE));
+        assertEquals("12", instance.convert(12, String.class));
+        assertEquals(Boolean.TRUE, instance.convert(1, Boolean.TYPE));
+        assertSame(instance.getConverter(Long.class, Integer.TYPE), instance.getConverter(Long.class, Integer.TYPE));
+    }
+
+    /**
+     * Test of register method, of class ConverterRegistry.
+     */
+    @Test
+    public void testRegister() {
+        System.out.println("register");
+        ConverterRegistry instance = new ConverterRegistry();
+        assertNull(instance.convert("a,b", StringBuilder.class));
+        instance.register(CharSequence.class, StringBuilder.class, new Converter<CharSequence, StringBuilder>() {
+            @Override
+            public StringBuilder convert(CharSequence value) {
+                return new StringBuilder(value).reverse();
+            }
+        });
+        assertEquals("b,a", instance.convert("a,b", StringBuilder.class).toString());
+    }
+
+    /**
+     * Test of asType method with default value, of class ConverString.
+     */
+    @Test
+    public void testAsTypeDefault() {
+        System.out.println("asTypeDefault");
+        Integer defaultValue = Integer.valueOf(-1);
+        assertEquals(defaultValue, ConverString.asType(Integer.class, (Object) new StringBuilder("x"), defaultValue));
+        assertEquals(Integer.valueOf(3), ConverString.asType(Integer.class, (Object) new StringBuilder("3"), defaultValue));
+        java.sql.Date date = new java.sql.Date(0);
+        assertSame(date, ConverString.asType(java.sql.Date.class, (Object) "bad", date));
+        assertSame(date, ConverString.asType(java.sql.Date.class, (Object) null, date));
+        StringBuilder builder = new StringBuilder();
+        assertSame(builder, ConverString.asType(StringBuilder.class, (Object) 1, builder));
+    }
+}
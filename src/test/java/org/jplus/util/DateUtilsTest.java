@@ -0,0 +1,88 @@
+/*
+ * Copyright 2015 www.hyberbin.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * Email:hyberbin@qq.com
+ */
+package org.jplus.util;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.Date;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author hyberbin
+ */
+public class DateUtilsTest {
+
+    /**
+     * Test of parseIso method, of class DateUtils.
+     */
+    @Test
+    public void testParseIso() {
+        System.out.println("parseIso");
+        assertEquals(LocalDateTime.of(2015, 3, 4, 0, 0), DateUtils.parseIso("2015-03-04"));
+        assertEquals(LocalDateTime.of(2015, 3, 4, 5, 6), DateUtils.parseIso("2015-03-04T05:06"));
+        assertEquals(LocalDateTime.of(2015, 3, 4, 5, 6, 7, 120000000), DateUtils.parseIso("2015-03-04 05:06:07.12"));
+        LocalDateTime utc = LocalDateTime.of(2015, 3, 4, 5, 6, 7);
+        LocalDateTime local = utc.atOffset(ZoneOffset.UTC).atZoneSameInstant(ZoneId.systemDefault()).toLocalDateTime();
+        assertEquals(local, DateUtils.parseIso("2015-03-04T05:06:07Z"));
+        assertEquals(local, DateUtils.parseIso("2015-03-04T07:06:07+02:00"));
+        assertNull(DateUtils.parseIso("2015-3-4"));
+        assertNull(DateUtils.parseIso("2015-02-30"));
+        assertNull(DateUtils.parseIso("2015-03-04 05"));
+    }
+
+    /**
+     * Test of parse method, of class DateUtils.
+     */
+    @Test
+    public void testParse() {
+        System.out.println("parse");
+        Date expected = DateUtils.toDate(LocalDate.of(2015, 3, 4));
+        assertEquals(expected, DateUtils.parse("2015-3-4", null));
+        assertEquals(expected, DateUtils.parse("04/03/2015 trailing", "dd/MM/yyyy"));
+        assertEquals(expected, ConverString.asDate("2015-03-04"));
+        assertNull(DateUtils.parse("not a date", null));
+        assertEquals("2015-03-04 00:00:00", DateUtils.format(expected, DateUtils.DATE_TIME_PATTERN));
+        String zone = ZonedDateTime.of(2015, 3, 4, 0, 0, 0, 0, ZoneId.systemDefault()).getOffset().getId().replace("Z", "+00:00");
+        assertEquals("2015-03-04 00:00 " + zone, DateUtils.format(expected, "yyyy-MM-dd HH:mm xxx"));
+        assertEquals("00:00 Z", DateUtils.format(OffsetDateTime.of(2015, 3, 4, 0, 0, 0, 0, ZoneOffset.UTC), "HH:mm X"));
+        assertEquals("2015-03-04", ConverString.asType(String.class, new java.sql.Date(expected.getTime())));
+    }
+
+    /**
+     * Test of toSqlValue method, of class DateUtils.
+     */
+    @Test
+    public void testToSqlValue() {
+        System.out.println("toSqlValue");
+        LocalDateTime time = LocalDateTime.of(2015, 3, 4, 5, 6, 7);
+        Timestamp timestamp = (Timestamp) DateUtils.toSqlValue(time);
+        assertEquals(time, timestamp.toLocalDateTime());
+        assertEquals(time, ConverterRegistry.INSTANCE.convert(timestamp, LocalDateTime.class));
+        assertEquals(time, ConverterRegistry.INSTANCE.convert(timestamp.getTime(), LocalDateTime.class));
+        assertEquals(LocalDate.of(2015, 3, 4), ConverterRegistry.INSTANCE.convert("2015-03-04 05:06:07", LocalDate.class));
+        assertEquals(timestamp, ConverterRegistry.INSTANCE.convert(time, Timestamp.class));
+        assertEquals("x", DateUtils.toSqlValue("x"));
+    }
+}